@@ -1,108 +1,197 @@
 package org.matsim;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.w3c.dom.Node;
-import org.w3c.dom.Element;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.util.zip.GZIPInputStream;
-
-public class ModifyPlansFile {
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.prepare.StreamingPlansTransformer;
+import org.matsim.prepare.StreamingPlansTransformer.Element;
+import org.matsim.vehicles.MatsimVehicleWriter;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.VehicleUtils;
+import org.matsim.vehicles.Vehicles;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.matsim.run.RunDuesseldorfScenario.VERSION;
+
+/**
+ * Modifies the plans file for electric vehicles: car legs are changed to {@code EV_car}, legs get the vehicle id
+ * of their person, and charging activities are added while the car is parked.
+ * The vehicles of all persons using {@code EV_car} are written in the same pass.
+ */
+@CommandLine.Command(
+		name = "modify-plans",
+		description = "Change car legs to EV_car and add charging activities"
+)
+public class ModifyPlansFile implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(ModifyPlansFile.class);
+
+	static final String EV_CAR = "EV_car";
+
+	/**
+	 * Activities where charging might occur.
+	 */
+	private static final Set<String> CHARGING_AT = Set.of("home", "work", "leisure", "shopping");
+
+	@CommandLine.Parameters(arity = "1", paramLabel = "INPUT", description = "Input plans", defaultValue = "scenarios/input/duesseldorf-" + VERSION + "-1pct.plans.xml.gz")
+	private Path input;
+
+	@CommandLine.Option(names = "--output", description = "Output plans", defaultValue = "scenarios/input/duesseldorf-" + VERSION + "-1pct.ev-plans.xml.gz")
+	private Path output;
+
+	@CommandLine.Option(names = "--vehicles", description = "Output vehicles of EV users", defaultValue = "scenarios/input/duesseldorf-" + VERSION + "-1pct.ev-vehicles.xml.gz")
+	private Path vehiclesPath;
+
+	@CommandLine.Option(names = "--threads", description = "Number of threads applying the modifications")
+	private Integer threads;
 
 	public static void main(String[] args) {
-		try {
-			String inputFilePath = "C:\\Users\\omkarp\\IdeaProjects\\MATSim-Projects07-duesseldorf\\Inputfiles\\duesseldorf-v1.7-1pct.plans.xml.gz";
-			String outputFilePath = "C:\\Users\\omkarp\\IdeaProjects\\MATSim-Projects07-duesseldorf\\Inputfiles\\mod_duf-v1.7-1pct.plans.xml";
-
-			// Decompress the .gz file first
-			File inputFile = new File(inputFilePath);
-			InputStream fileIn = new FileInputStream(inputFile);
-			GZIPInputStream gzis = new GZIPInputStream(fileIn);
-			FileOutputStream fileOutputStream = new FileOutputStream(outputFilePath);
-
-			byte[] buffer = new byte[1024];
-			int len;
-			int carToEVCarCount = 0;
-			int chargingActivitiesAdded = 0;
-			int vehicleIdsAssigned = 0;
-
-			while ((len = gzis.read(buffer)) > 0) {
-				fileOutputStream.write(buffer, 0, len);
-			}
-			gzis.close();
-			fileOutputStream.close();
-
-			// Now parse the decompressed XML file
-			File decompressedFile = new File(outputFilePath);
-			DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-			Document doc = dBuilder.parse(decompressedFile);
-			doc.getDocumentElement().normalize();
-
-			NodeList legs = doc.getElementsByTagName("leg");
-			for (int i = 0; i < legs.getLength(); i++) {
-				Node leg = legs.item(i);
-				if (leg.getNodeType() == Node.ELEMENT_NODE) {
-					Element legElement = (Element) leg;
-					if ("car".equals(legElement.getAttribute("mode"))) {
-						legElement.setAttribute("mode", "EV_car");
-						carToEVCarCount++;
-						String personId = ((Element) leg.getParentNode().getParentNode()).getAttribute("id");
-						legElement.setAttribute("vehicleId", "veh_" + personId);
-						vehicleIdsAssigned++;
-					}
+		new ModifyPlansFile().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		StreamingPlansTransformer transformer = threads != null ? new StreamingPlansTransformer(threads) : new StreamingPlansTransformer();
+
+		CarToEv carToEv = new CarToEv();
+		VehicleIds vehicleIds = new VehicleIds();
+		ChargingActivities charging = new ChargingActivities();
+
+		// indices of person ids, in the order of the plans
+		IntList evUsers = new IntArrayList();
+
+		transformer.addRule(carToEv)
+				.addRule(vehicleIds)
+				.addRule(charging)
+				.addListener(person -> {
+					if (person.find("leg").stream().anyMatch(leg -> EV_CAR.equals(leg.getAttribute("mode"))))
+						evUsers.add(Id.createPersonId(person.getAttribute("id")).index());
+				});
+
+		transformer.transform(input, output);
+
+		log.info("Total 'car' to 'EV_car' modifications: {}", carToEv.count.sum());
+		log.info("Total charging activities added: {}", charging.count.sum());
+		log.info("Total vehicle IDs assigned: {}", vehicleIds.count.sum());
+
+		new MatsimVehicleWriter(createVehicles(evUsers)).writeFile(vehiclesPath.toString());
+
+		log.info("Vehicle specifications generated for {} users", evUsers.size());
+
+		return 0;
+	}
+
+	/**
+	 * Create one EV for each person.
+	 *
+	 * @param persons indices of the person ids
+	 */
+	static Vehicles createVehicles(IntList persons) {
+
+		Vehicles vehicles = VehicleUtils.createVehiclesContainer();
+
+		VehicleType type = VehicleUtils.createVehicleType(Id.create(EV_CAR, VehicleType.class));
+		type.setNetworkMode(EV_CAR);
+		vehicles.addVehicleType(type);
+
+		for (int i = 0; i < persons.size(); i++) {
+			Id<Person> person = Id.get(persons.getInt(i), Person.class);
+			Vehicle vehicle = VehicleUtils.createVehicle(Id.createVehicleId(vehicleId(person.toString())), type);
+			vehicle.getAttributes().putAttribute("initialSoC", 100.0);
+			vehicles.addVehicle(vehicle);
+		}
+
+		return vehicles;
+	}
+
+	/**
+	 * Vehicle id used by a person.
+	 */
+	static String vehicleId(String personId) {
+		return "veh_" + personId;
+	}
+
+	/**
+	 * Changes the mode of car legs.
+	 */
+	static final class CarToEv implements StreamingPlansTransformer.Rule {
+
+		private final LongAdder count = new LongAdder();
+
+		@Override
+		public void apply(Element person) {
+			for (Element leg : person.find("leg")) {
+				if ("car".equals(leg.getAttribute("mode"))) {
+					leg.setAttribute("mode", EV_CAR);
+					count.increment();
 				}
 			}
+		}
+	}
 
-			NodeList activities = doc.getElementsByTagName("activity");
-			for (int i = 0; i < activities.getLength(); i++) {
-				Node activity = activities.item(i);
-				if (activity.getNodeType() == Node.ELEMENT_NODE) {
-					Element actElement = (Element) activity;
-					String type = actElement.getAttribute("type");
-
-					// Check if it's a home, work, leisure or shopping activity where charging might occur
-					if (type.contains("home") || type.contains("work") || type.contains("leisure") || type.contains("shopping")) {
-						Element chargingActivity = (Element) actElement.cloneNode(true);
-						chargingActivity.setAttribute("type", "charging");
-						chargingActivity.setAttribute("start_time", actElement.getAttribute("end_time"));
-						chargingActivity.setAttribute("end_time", ""); // Handle this in your simulation specific logic
-
-						Node nextSibling = actElement.getNextSibling();
-						if (nextSibling != null) {
-							actElement.getParentNode().insertBefore(chargingActivity, nextSibling);
-						} else {
-							actElement.getParentNode().appendChild(chargingActivity);
-						}
-						chargingActivitiesAdded++;
-					}
+	/**
+	 * Assigns the vehicle of the person to all EV legs.
+	 */
+	static final class VehicleIds implements StreamingPlansTransformer.Rule {
+
+		private final LongAdder count = new LongAdder();
+
+		@Override
+		public void apply(Element person) {
+			for (Element leg : person.find("leg")) {
+				if (EV_CAR.equals(leg.getAttribute("mode"))) {
+					leg.setAttribute("vehicleId", vehicleId(person.getAttribute("id")));
+					count.increment();
 				}
 			}
+		}
+	}
+
+	/**
+	 * Inserts a charging activity after each activity where charging might occur. It starts at the end time
+	 * of that activity, the end time is left empty and has to be handled by the simulation.
+	 */
+	static final class ChargingActivities implements StreamingPlansTransformer.Rule {
+
+		private final LongAdder count = new LongAdder();
 
-			// Write the content into XML file
-			TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			Transformer transformer = transformerFactory.newTransformer();
-			DOMSource source = new DOMSource(doc);
-			StreamResult result = new StreamResult(new File(outputFilePath));
-			transformer.transform(source, result);
+		@Override
+		public void apply(Element person) {
+			for (Element plan : person.getChildren()) {
 
-			System.out.println("Modifying the plans file:");
-			System.out.println("Total 'car' to 'EV_car' modifications: " + carToEVCarCount);
-			System.out.println("Total charging activities added: " + chargingActivitiesAdded);
-			System.out.println("Total vehicle IDs assigned: " + vehicleIdsAssigned);
+				List<Element> elements = plan.getChildren();
+				for (int i = 0; i < elements.size(); i++) {
 
-		} catch (Exception e) {
-			e.printStackTrace();
+					Element act = elements.get(i);
+					if (!"activity".equals(act.getName()))
+						continue;
+
+					String type = act.getAttribute("type");
+					if (type == null || CHARGING_AT.stream().noneMatch(type::contains))
+						continue;
+
+					Element charging = act.copy();
+					charging.setAttribute("type", "charging");
+					charging.setAttribute("start_time", Objects.requireNonNullElse(act.getAttribute("end_time"), ""));
+					charging.setAttribute("end_time", "");
+
+					// skip the inserted activity
+					elements.add(++i, charging);
+					count.increment();
+				}
+			}
 		}
 	}
 }
-
-// this code modifies the plans file by revising the car to- 'EV_car'; adds charging activities while car is parked/stationary and vehicle IDs to legs.
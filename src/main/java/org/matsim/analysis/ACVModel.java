@@ -1,740 +1,20 @@
 package org.matsim.analysis;
+
+/**
+ * Flow capacity model for autonomous connected vehicles.
+ * The regression tree is loaded from {@code ACVModel.csv}, see {@link TreeModel}.
+ */
 public class ACVModel {
-    public static double score(double... input) {
-        double var0;
-        if ((input[1]) <= (0.75)) {
-            if ((input[1]) <= (0.45000000298023224)) {
-                if ((input[0]) <= (18.05555534362793)) {
-                    if ((input[1]) <= (0.2500000074505806)) {
-                        if ((input[1]) <= (0.15000000223517418)) {
-                            if ((input[1]) <= (0.05000000074505806)) {
-                                var0 = 1.0;
-                            } else {
-                                if ((input[0]) <= (12.5)) {
-                                    if ((input[0]) <= (6.944444179534912)) {
-                                        if ((input[0]) <= (2.5)) {
-                                            if ((input[0]) <= (2.083333373069763)) {
-                                                if ((input[0]) <= (1.5277777314186096)) {
-                                                    var0 = 1.0500911503403716;
-                                                } else {
-                                                    if ((input[0]) <= (1.805555522441864)) {
-                                                        var0 = 1.0553143841515935;
-                                                    } else {
-                                                        var0 = 1.0521174794704204;
-                                                    }
-                                                }
-                                            } else {
-                                                var0 = 1.0467479674796747;
-                                            }
-                                        } else {
-                                            if ((input[0]) <= (4.8611109256744385)) {
-                                                if ((input[0]) <= (3.472222089767456)) {
-                                                    var0 = 1.05938617365306;
-                                                } else {
-                                                    var0 = 1.0595238095238098;
-                                                }
-                                            } else {
-                                                var0 = 1.056143205858422;
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (9.722221851348877)) {
-                                            var0 = 1.0398488754796416;
-                                        } else {
-                                            var0 = 1.035612139551738;
-                                        }
-                                    }
-                                } else {
-                                    if ((input[0]) <= (15.277777671813965)) {
-                                        var0 = 1.0201289412639345;
-                                    } else {
-                                        var0 = 1.0154864041767362;
-                                    }
-                                }
-                            }
-                        } else {
-                            if ((input[0]) <= (6.944444179534912)) {
-                                if ((input[0]) <= (2.083333373069763)) {
-                                    if ((input[0]) <= (1.805555522441864)) {
-                                        if ((input[0]) <= (1.5277777314186096)) {
-                                            var0 = 1.1401869158878504;
-                                        } else {
-                                            var0 = 1.1453488372093026;
-                                        }
-                                    } else {
-                                        var0 = 1.1266968325791855;
-                                    }
-                                } else {
-                                    if ((input[0]) <= (4.8611109256744385)) {
-                                        if ((input[0]) <= (2.5)) {
-                                            var0 = 1.1178861788617889;
-                                        } else {
-                                            if ((input[0]) <= (3.472222089767456)) {
-                                                var0 = 1.112026359143328;
-                                            } else {
-                                                var0 = 1.114285714285714;
-                                            }
-                                        }
-                                    } else {
-                                        var0 = 1.092351505288853;
-                                    }
-                                }
-                            } else {
-                                if ((input[0]) <= (12.5)) {
-                                    if ((input[0]) <= (9.722221851348877)) {
-                                        var0 = 1.0725269342696857;
-                                    } else {
-                                        var0 = 1.0679890771452285;
-                                    }
-                                } else {
-                                    if ((input[0]) <= (15.277777671813965)) {
-                                        var0 = 1.0504821136422466;
-                                    } else {
-                                        var0 = 1.0385151981397491;
-                                    }
-                                }
-                            }
-                        }
-                    } else {
-                        if ((input[1]) <= (0.3500000089406967)) {
-                            if ((input[0]) <= (12.5)) {
-                                if ((input[0]) <= (6.944444179534912)) {
-                                    if ((input[0]) <= (1.805555522441864)) {
-                                        if ((input[0]) <= (1.5277777314186096)) {
-                                            var0 = 1.1464174454828662;
-                                        } else {
-                                            var0 = 1.1598837209302324;
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (2.5)) {
-                                            if ((input[0]) <= (2.083333373069763)) {
-                                                var0 = 1.1266968325791853;
-                                            } else {
-                                                var0 = 1.1321138211382116;
-                                            }
-                                        } else {
-                                            if ((input[0]) <= (4.8611109256744385)) {
-                                                if ((input[0]) <= (3.472222089767456)) {
-                                                    var0 = 1.1367380560131797;
-                                                } else {
-                                                    var0 = 1.142857142857143;
-                                                }
-                                            } else {
-                                                var0 = 1.1363244733749214;
-                                            }
-                                        }
-                                    }
-                                } else {
-                                    if ((input[0]) <= (9.722221851348877)) {
-                                        var0 = 1.1084563094979032;
-                                    } else {
-                                        var0 = 1.1050569723537107;
-                                    }
-                                }
-                            } else {
-                                if ((input[0]) <= (15.277777671813965)) {
-                                    var0 = 1.0844786250986216;
-                                } else {
-                                    var0 = 1.068595124582387;
-                                }
-                            }
-                        } else {
-                            if ((input[0]) <= (6.944444179534912)) {
-                                if ((input[0]) <= (1.805555522441864)) {
-                                    if ((input[0]) <= (1.5277777314186096)) {
-                                        var0 = 1.2211838006230529;
-                                    } else {
-                                        var0 = 1.2209302325581397;
-                                    }
-                                } else {
-                                    if ((input[0]) <= (3.472222089767456)) {
-                                        if ((input[0]) <= (2.083333373069763)) {
-                                            var0 = 1.1787330316742082;
-                                        } else {
-                                            if ((input[0]) <= (2.5)) {
-                                                var0 = 1.1727642276422765;
-                                            } else {
-                                                var0 = 1.1779242174629323;
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (4.8611109256744385)) {
-                                            var0 = 1.1845238095238095;
-                                        } else {
-                                            var0 = 1.1855166802278276;
-                                        }
-                                    }
-                                }
-                            } else {
-                                if ((input[0]) <= (15.277777671813965)) {
-                                    if ((input[0]) <= (12.5)) {
-                                        if ((input[0]) <= (9.722221851348877)) {
-                                            var0 = 1.1512263191737089;
-                                        } else {
-                                            var0 = 1.1451611718461698;
-                                        }
-                                    } else {
-                                        var0 = 1.1305613106953127;
-                                    }
-                                } else {
-                                    var0 = 1.1104637527521823;
-                                }
-                            }
-                        }
-                    }
-                } else {
-                    if ((input[1]) <= (0.3500000089406967)) {
-                        if ((input[0]) <= (30.55555534362793)) {
-                            if ((input[1]) <= (0.2500000074505806)) {
-                                if ((input[1]) <= (0.15000000223517418)) {
-                                    if ((input[0]) <= (26.38888931274414)) {
-                                        if ((input[1]) <= (0.05000000074505806)) {
-                                            var0 = 1.0;
-                                        } else {
-                                            if ((input[0]) <= (20.833333015441895)) {
-                                                var0 = 1.0017491465635708;
-                                            } else {
-                                                if ((input[0]) <= (23.61111068725586)) {
-                                                    var0 = 1.000348802458781;
-                                                } else {
-                                                    var0 = 1.000478163850813;
-                                                }
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[1]) <= (0.05000000074505806)) {
-                                            var0 = 1.0;
-                                        } else {
-                                            var0 = 0.9894042946357431;
-                                        }
-                                    }
-                                } else {
-                                    if ((input[0]) <= (26.38888931274414)) {
-                                        if ((input[0]) <= (23.61111068725586)) {
-                                            if ((input[0]) <= (20.833333015441895)) {
-                                                var0 = 1.016668485096915;
-                                            } else {
-                                                var0 = 1.0178372790966086;
-                                            }
-                                        } else {
-                                            var0 = 1.0221549250876636;
-                                        }
-                                    } else {
-                                        var0 = 1.0041141284648873;
-                                    }
-                                }
-                            } else {
-                                if ((input[0]) <= (26.38888931274414)) {
-                                    if ((input[0]) <= (23.61111068725586)) {
-                                        if ((input[0]) <= (20.833333015441895)) {
-                                            var0 = 1.035120176921355;
-                                        } else {
-                                            var0 = 1.035698689750639;
-                                        }
-                                    } else {
-                                        var0 = 1.0462225055785783;
-                                    }
-                                } else {
-                                    var0 = 1.0260432741006154;
-                                }
-                            }
-                        } else {
-                            if ((input[1]) <= (0.05000000074505806)) {
-                                var0 = 1.0;
-                            } else {
-                                if ((input[1]) <= (0.2500000074505806)) {
-                                    if ((input[0]) <= (37.77777671813965)) {
-                                        if ((input[1]) <= (0.15000000223517418)) {
-                                            if ((input[0]) <= (34.72222137451172)) {
-                                                var0 = 0.9707244888299742;
-                                            } else {
-                                                var0 = 0.9704864729667763;
-                                            }
-                                        } else {
-                                            if ((input[0]) <= (34.72222137451172)) {
-                                                var0 = 0.9805658127299688;
-                                            } else {
-                                                var0 = 0.9726958189170035;
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[1]) <= (0.15000000223517418)) {
-                                            var0 = 0.9581225181705829;
-                                        } else {
-                                            var0 = 0.9558775991568622;
-                                        }
-                                    }
-                                } else {
-                                    if ((input[0]) <= (37.77777671813965)) {
-                                        if ((input[0]) <= (34.72222137451172)) {
-                                            var0 = 1.0013271501562193;
-                                        } else {
-                                            var0 = 0.9947475926466304;
-                                        }
-                                    } else {
-                                        var0 = 0.9754492326178386;
-                                    }
-                                }
-                            }
-                        }
-                    } else {
-                        if ((input[0]) <= (30.55555534362793)) {
-                            if ((input[0]) <= (26.38888931274414)) {
-                                if ((input[0]) <= (23.61111068725586)) {
-                                    if ((input[0]) <= (20.833333015441895)) {
-                                        var0 = 1.0754436468831512;
-                                    } else {
-                                        var0 = 1.0762505219445722;
-                                    }
-                                } else {
-                                    var0 = 1.0819254064392732;
-                                }
-                            } else {
-                                var0 = 1.0618153321426969;
-                            }
-                        } else {
-                            if ((input[0]) <= (37.77777671813965)) {
-                                if ((input[0]) <= (34.72222137451172)) {
-                                    var0 = 1.0288213785681735;
-                                } else {
-                                    var0 = 1.0137563049731135;
-                                }
-                            } else {
-                                var0 = 0.9959309629144142;
-                            }
-                        }
-                    }
-                }
-            } else {
-                if ((input[0]) <= (18.05555534362793)) {
-                    if ((input[1]) <= (0.550000011920929)) {
-                        if ((input[0]) <= (9.722221851348877)) {
-                            if ((input[0]) <= (2.083333373069763)) {
-                                if ((input[0]) <= (1.805555522441864)) {
-                                    if ((input[0]) <= (1.5277777314186096)) {
-                                        var0 = 1.2398753894080998;
-                                    } else {
-                                        var0 = 1.244186046511628;
-                                    }
-                                } else {
-                                    var0 = 1.2285067873303168;
-                                }
-                            } else {
-                                if ((input[0]) <= (6.944444179534912)) {
-                                    if ((input[0]) <= (3.472222089767456)) {
-                                        if ((input[0]) <= (2.5)) {
-                                            var0 = 1.217479674796748;
-                                        } else {
-                                            var0 = 1.2191103789126854;
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (4.8611109256744385)) {
-                                            var0 = 1.2166666666666666;
-                                        } else {
-                                            var0 = 1.2172497965825875;
-                                        }
-                                    }
-                                } else {
-                                    var0 = 1.2032619881013418;
-                                }
-                            }
-                        } else {
-                            if ((input[0]) <= (15.277777671813965)) {
-                                if ((input[0]) <= (12.5)) {
-                                    var0 = 1.1942942949402109;
-                                } else {
-                                    var0 = 1.1881468219544613;
-                                }
-                            } else {
-                                var0 = 1.1657547835256723;
-                            }
-                        }
-                    } else {
-                        if ((input[1]) <= (0.6500000059604645)) {
-                            if ((input[0]) <= (6.944444179534912)) {
-                                if ((input[0]) <= (1.805555522441864)) {
-                                    if ((input[0]) <= (1.5277777314186096)) {
-                                        var0 = 1.29595015576324;
-                                    } else {
-                                        var0 = 1.313953488372093;
-                                    }
-                                } else {
-                                    if ((input[0]) <= (2.5)) {
-                                        if ((input[0]) <= (2.083333373069763)) {
-                                            var0 = 1.2850678733031673;
-                                        } else {
-                                            var0 = 1.288617886178862;
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (4.8611109256744385)) {
-                                            if ((input[0]) <= (3.472222089767456)) {
-                                                var0 = 1.2817133443163098;
-                                            } else {
-                                                var0 = 1.2845238095238096;
-                                            }
-                                        } else {
-                                            var0 = 1.282055871982642;
-                                        }
-                                    }
-                                }
-                            } else {
-                                if ((input[0]) <= (15.277777671813965)) {
-                                    if ((input[0]) <= (12.5)) {
-                                        if ((input[0]) <= (9.722221851348877)) {
-                                            var0 = 1.2637421883548547;
-                                        } else {
-                                            var0 = 1.2604001548488;
-                                        }
-                                    } else {
-                                        var0 = 1.255667613762707;
-                                    }
-                                } else {
-                                    var0 = 1.239309338706013;
-                                }
-                            }
-                        } else {
-                            if ((input[0]) <= (15.277777671813965)) {
-                                if ((input[0]) <= (4.8611109256744385)) {
-                                    if ((input[0]) <= (3.472222089767456)) {
-                                        if ((input[0]) <= (2.5)) {
-                                            if ((input[0]) <= (1.5277777314186096)) {
-                                                var0 = 1.3364485981308412;
-                                            } else {
-                                                if ((input[0]) <= (1.805555522441864)) {
-                                                    var0 = 1.3488372093023255;
-                                                } else {
-                                                    if ((input[0]) <= (2.083333373069763)) {
-                                                        var0 = 1.33710407239819;
-                                                    } else {
-                                                        var0 = 1.339430894308943;
-                                                    }
-                                                }
-                                            }
-                                        } else {
-                                            var0 = 1.3327841845140034;
-                                        }
-                                    } else {
-                                        var0 = 1.35;
-                                    }
-                                } else {
-                                    if ((input[0]) <= (12.5)) {
-                                        if ((input[0]) <= (9.722221851348877)) {
-                                            if ((input[0]) <= (6.944444179534912)) {
-                                                var0 = 1.3331977217249793;
-                                            } else {
-                                                var0 = 1.3267646541729523;
-                                            }
-                                        } else {
-                                            var0 = 1.3209183739934531;
-                                        }
-                                    } else {
-                                        var0 = 1.3303698818324254;
-                                    }
-                                }
-                            } else {
-                                var0 = 1.3160361666859195;
-                            }
-                        }
-                    }
-                } else {
-                    if ((input[1]) <= (0.6500000059604645)) {
-                        if ((input[0]) <= (30.55555534362793)) {
-                            if ((input[1]) <= (0.550000011920929)) {
-                                if ((input[0]) <= (26.38888931274414)) {
-                                    if ((input[0]) <= (20.833333015441895)) {
-                                        var0 = 1.1309308334001356;
-                                    } else {
-                                        if ((input[0]) <= (23.61111068725586)) {
-                                            var0 = 1.1221744518839214;
-                                        } else {
-                                            var0 = 1.1265540325151415;
-                                        }
-                                    }
-                                } else {
-                                    var0 = 1.1039969554147546;
-                                }
-                            } else {
-                                if ((input[0]) <= (26.38888931274414)) {
-                                    if ((input[0]) <= (20.833333015441895)) {
-                                        var0 = 1.191994951494324;
-                                    } else {
-                                        if ((input[0]) <= (23.61111068725586)) {
-                                            var0 = 1.1848353561085947;
-                                        } else {
-                                            var0 = 1.1871792465082227;
-                                        }
-                                    }
-                                } else {
-                                    var0 = 1.165120684225898;
-                                }
-                            }
-                        } else {
-                            if ((input[1]) <= (0.550000011920929)) {
-                                if ((input[0]) <= (37.77777671813965)) {
-                                    if ((input[0]) <= (34.72222137451172)) {
-                                        var0 = 1.0711401075289286;
-                                    } else {
-                                        var0 = 1.059318854474967;
-                                    }
-                                } else {
-                                    var0 = 1.0319835013340952;
-                                }
-                            } else {
-                                if ((input[0]) <= (37.77777671813965)) {
-                                    if ((input[0]) <= (34.72222137451172)) {
-                                        var0 = 1.126097564442135;
-                                    } else {
-                                        var0 = 1.1126009760646476;
-                                    }
-                                } else {
-                                    var0 = 1.0897746908523036;
-                                }
-                            }
-                        }
-                    } else {
-                        if ((input[0]) <= (30.55555534362793)) {
-                            if ((input[0]) <= (26.38888931274414)) {
-                                if ((input[0]) <= (20.833333015441895)) {
-                                    var0 = 1.2715667121758467;
-                                } else {
-                                    if ((input[0]) <= (23.61111068725586)) {
-                                        var0 = 1.267063022062331;
-                                    } else {
-                                        var0 = 1.2650621613006054;
-                                    }
-                                }
-                            } else {
-                                var0 = 1.2440502795992356;
-                            }
-                        } else {
-                            if ((input[0]) <= (34.72222137451172)) {
-                                var0 = 1.2015694107040342;
-                            } else {
-                                if ((input[0]) <= (37.77777671813965)) {
-                                    var0 = 1.1783734211513617;
-                                } else {
-                                    var0 = 1.1582607218065184;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        } else {
-            if ((input[1]) <= (0.8499999940395355)) {
-                if ((input[0]) <= (30.55555534362793)) {
-                    if ((input[0]) <= (18.05555534362793)) {
-                        if ((input[0]) <= (1.805555522441864)) {
-                            if ((input[0]) <= (1.5277777314186096)) {
-                                var0 = 1.4517133956386292;
-                            } else {
-                                var0 = 1.4593023255813955;
-                            }
-                        } else {
-                            if ((input[0]) <= (12.5)) {
-                                if ((input[0]) <= (6.944444179534912)) {
-                                    if ((input[0]) <= (4.8611109256744385)) {
-                                        if ((input[0]) <= (2.5)) {
-                                            if ((input[0]) <= (2.083333373069763)) {
-                                                var0 = 1.4140271493212668;
-                                            } else {
-                                                var0 = 1.4146341463414631;
-                                            }
-                                        } else {
-                                            if ((input[0]) <= (3.472222089767456)) {
-                                                var0 = 1.4070254438952958;
-                                            } else {
-                                                var0 = 1.4142857142857144;
-                                            }
-                                        }
-                                    } else {
-                                        var0 = 1.4174563782659797;
-                                    }
-                                } else {
-                                    if ((input[0]) <= (9.722221851348877)) {
-                                        var0 = 1.4046658281788469;
-                                    } else {
-                                        var0 = 1.40070089413859;
-                                    }
-                                }
-                            } else {
-                                if ((input[0]) <= (15.277777671813965)) {
-                                    var0 = 1.4147241542060596;
-                                } else {
-                                    var0 = 1.4123779794932871;
-                                }
-                            }
-                        }
-                    } else {
-                        if ((input[0]) <= (23.61111068725586)) {
-                            if ((input[0]) <= (20.833333015441895)) {
-                                var0 = 1.370056701219399;
-                            } else {
-                                var0 = 1.3601234745848323;
-                            }
-                        } else {
-                            if ((input[0]) <= (26.38888931274414)) {
-                                var0 = 1.3414089894803956;
-                            } else {
-                                var0 = 1.3365641263339958;
-                            }
-                        }
-                    }
-                } else {
-                    if ((input[0]) <= (37.77777671813965)) {
-                        if ((input[0]) <= (34.72222137451172)) {
-                            var0 = 1.285779756361081;
-                        } else {
-                            var0 = 1.2671641168869048;
-                        }
-                    } else {
-                        var0 = 1.2435762112541273;
-                    }
-                }
-            } else {
-                if ((input[0]) <= (30.55555534362793)) {
-                    if ((input[1]) <= (0.949999988079071)) {
-                        if ((input[0]) <= (26.38888931274414)) {
-                            if ((input[0]) <= (2.5)) {
-                                if ((input[0]) <= (1.5277777314186096)) {
-                                    var0 = 1.4672897196261685;
-                                } else {
-                                    if ((input[0]) <= (1.805555522441864)) {
-                                        var0 = 1.4825581395348837;
-                                    } else {
-                                        if ((input[0]) <= (2.083333373069763)) {
-                                            var0 = 1.495589073236132;
-                                        } else {
-                                            var0 = 1.483739837398374;
-                                        }
-                                    }
-                                }
-                            } else {
-                                if ((input[0]) <= (18.05555534362793)) {
-                                    if ((input[0]) <= (12.5)) {
-                                        if ((input[0]) <= (3.472222089767456)) {
-                                            var0 = 1.514003294892916;
-                                        } else {
-                                            if ((input[0]) <= (6.944444179534912)) {
-                                                if ((input[0]) <= (4.8611109256744385)) {
-                                                    var0 = 1.5311825396825398;
-                                                } else {
-                                                    var0 = 1.5294794021034868;
-                                                }
-                                            } else {
-                                                if ((input[0]) <= (9.722221851348877)) {
-                                                    var0 = 1.5364530981633187;
-                                                } else {
-                                                    var0 = 1.532605400041419;
-                                                }
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (15.277777671813965)) {
-                                            var0 = 1.5502616308418729;
-                                        } else {
-                                            var0 = 1.5637953142747378;
-                                        }
-                                    }
-                                } else {
-                                    if ((input[0]) <= (23.61111068725586)) {
-                                        if ((input[0]) <= (20.833333015441895)) {
-                                            var0 = 1.5293019462587985;
-                                        } else {
-                                            var0 = 1.528878879727594;
-                                        }
-                                    } else {
-                                        var0 = 1.5329868121229293;
-                                    }
-                                }
-                            }
-                        } else {
-                            var0 = 1.5089358697119897;
-                        }
-                    } else {
-                        if ((input[0]) <= (18.05555534362793)) {
-                            if ((input[0]) <= (3.472222089767456)) {
-                                if ((input[0]) <= (1.805555522441864)) {
-                                    if ((input[0]) <= (1.5277777314186096)) {
-                                        var0 = 1.7420779970001157;
-                                    } else {
-                                        var0 = 1.7912220068906115;
-                                    }
-                                } else {
-                                    if ((input[0]) <= (2.5)) {
-                                        if ((input[0]) <= (2.083333373069763)) {
-                                            var0 = 1.7200938495056142;
-                                        } else {
-                                            var0 = 1.7242155977115332;
-                                        }
-                                    } else {
-                                        var0 = 1.705354200988468;
-                                    }
-                                }
-                            } else {
-                                if ((input[0]) <= (15.277777671813965)) {
-                                    if ((input[0]) <= (9.722221851348877)) {
-                                        if ((input[0]) <= (4.8611109256744385)) {
-                                            var0 = 1.6765626102292768;
-                                        } else {
-                                            if ((input[0]) <= (6.944444179534912)) {
-                                                var0 = 1.6608564626465363;
-                                            } else {
-                                                var0 = 1.6595024398520217;
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (12.5)) {
-                                            var0 = 1.6669557669997137;
-                                        } else {
-                                            var0 = 1.6665927822903661;
-                                        }
-                                    }
-                                } else {
-                                    var0 = 1.6500292824721938;
-                                }
-                            }
-                        } else {
-                            if ((input[0]) <= (20.833333015441895)) {
-                                var0 = 1.577108584076774;
-                            } else {
-                                if ((input[0]) <= (26.38888931274414)) {
-                                    if ((input[0]) <= (23.61111068725586)) {
-                                        var0 = 1.6086255606963729;
-                                    } else {
-                                        var0 = 1.6103756833020457;
-                                    }
-                                } else {
-                                    var0 = 1.601769115479536;
-                                }
-                            }
-                        }
-                    }
-                } else {
-                    if ((input[1]) <= (0.949999988079071)) {
-                        if ((input[0]) <= (37.77777671813965)) {
-                            if ((input[0]) <= (34.72222137451172)) {
-                                var0 = 1.45068452147106;
-                            } else {
-                                var0 = 1.4379607011238185;
-                            }
-                        } else {
-                            var0 = 1.406821134313627;
-                        }
-                    } else {
-                        if ((input[0]) <= (34.72222137451172)) {
-                            var0 = 1.5363202730566499;
-                        } else {
-                            if ((input[0]) <= (37.77777671813965)) {
-                                var0 = 1.4931986265309876;
-                            } else {
-                                var0 = 1.4821198944862173;
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return var0;
-    }
+
+	/**
+	 * Tree with the features allowed speed in m/s and share of autonomous connected vehicles in [0, 1].
+	 */
+	public static final TreeModel MODEL = TreeModel.read(ACVModel.class.getResource("ACVModel.csv"));
+
+	/**
+	 * Capacity factor for a link with given allowed speed and vehicle share.
+	 */
+	public static double score(double speed, double share) {
+		return MODEL.score(speed, share);
+	}
 }
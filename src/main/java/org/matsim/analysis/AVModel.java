@@ -1,728 +1,20 @@
 package org.matsim.analysis;
+
+/**
+ * Flow capacity model for automated vehicles.
+ * The regression tree is loaded from {@code AVModel.csv}, see {@link TreeModel}.
+ */
 public class AVModel {
-    public static double score(double... input) {
-        double var0;
-        if ((input[1]) <= (0.05000000074505806)) {
-            var0 = 1.0;
-        } else {
-            if ((input[0]) <= (30.55555534362793)) {
-                if ((input[0]) <= (3.472222089767456)) {
-                    if ((input[1]) <= (0.949999988079071)) {
-                        if ((input[0]) <= (1.805555522441864)) {
-                            if ((input[1]) <= (0.2500000074505806)) {
-                                if ((input[1]) <= (0.15000000223517418)) {
-                                    if ((input[0]) <= (1.5277777314186096)) {
-                                        var0 = 1.003115264797508;
-                                    } else {
-                                        var0 = 1.0087209302325582;
-                                    }
-                                } else {
-                                    if ((input[0]) <= (1.5277777314186096)) {
-                                        var0 = 1.0249221183800623;
-                                    } else {
-                                        var0 = 1.0290697674418603;
-                                    }
-                                }
-                            } else {
-                                if ((input[1]) <= (0.75)) {
-                                    if ((input[1]) <= (0.550000011920929)) {
-                                        if ((input[1]) <= (0.45000000298023224)) {
-                                            if ((input[1]) <= (0.3500000089406967)) {
-                                                if ((input[0]) <= (1.5277777314186096)) {
-                                                    var0 = 1.046728971962617;
-                                                } else {
-                                                    var0 = 1.052325581395349;
-                                                }
-                                            } else {
-                                                if ((input[0]) <= (1.5277777314186096)) {
-                                                    var0 = 1.046728971962617;
-                                                } else {
-                                                    var0 = 1.0406976744186047;
-                                                }
-                                            }
-                                        } else {
-                                            if ((input[0]) <= (1.5277777314186096)) {
-                                                var0 = 1.059190031152648;
-                                            } else {
-                                                var0 = 1.055232558139535;
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (1.5277777314186096)) {
-                                            if ((input[1]) <= (0.6500000059604645)) {
-                                                var0 = 1.046728971962617;
-                                            } else {
-                                                var0 = 1.043613707165109;
-                                            }
-                                        } else {
-                                            if ((input[1]) <= (0.6500000059604645)) {
-                                                var0 = 1.0406976744186047;
-                                            } else {
-                                                var0 = 1.0348837209302326;
-                                            }
-                                        }
-                                    }
-                                } else {
-                                    if ((input[0]) <= (1.5277777314186096)) {
-                                        if ((input[1]) <= (0.8499999940395355)) {
-                                            var0 = 1.0716510903426792;
-                                        } else {
-                                            var0 = 1.0781331487250492;
-                                        }
-                                    } else {
-                                        if ((input[1]) <= (0.8499999940395355)) {
-                                            var0 = 1.0668604651162792;
-                                        } else {
-                                            var0 = 1.0582891903531435;
-                                        }
-                                    }
-                                }
-                            }
-                        } else {
-                            if ((input[0]) <= (2.5)) {
-                                if ((input[1]) <= (0.75)) {
-                                    if ((input[1]) <= (0.6500000059604645)) {
-                                        if ((input[1]) <= (0.15000000223517418)) {
-                                            if ((input[0]) <= (2.083333373069763)) {
-                                                var0 = 1.004524886877828;
-                                            } else {
-                                                var0 = 1.0020325203252034;
-                                            }
-                                        } else {
-                                            if ((input[0]) <= (2.083333373069763)) {
-                                                if ((input[1]) <= (0.550000011920929)) {
-                                                    if ((input[1]) <= (0.45000000298023224)) {
-                                                        if ((input[1]) <= (0.2500000074505806)) {
-                                                            var0 = 1.0226244343891402;
-                                                        } else {
-                                                            if ((input[1]) <= (0.3500000089406967)) {
-                                                                var0 = 1.0180995475113122;
-                                                            } else {
-                                                                var0 = 1.0226244343891402;
-                                                            }
-                                                        }
-                                                    } else {
-                                                        var0 = 1.0271493212669682;
-                                                    }
-                                                } else {
-                                                    var0 = 1.013574660633484;
-                                                }
-                                            } else {
-                                                if ((input[1]) <= (0.550000011920929)) {
-                                                    if ((input[1]) <= (0.3500000089406967)) {
-                                                        if ((input[1]) <= (0.2500000074505806)) {
-                                                            var0 = 1.0121951219512195;
-                                                        } else {
-                                                            var0 = 1.0040650406504068;
-                                                        }
-                                                    } else {
-                                                        if ((input[1]) <= (0.45000000298023224)) {
-                                                            var0 = 1.014227642276423;
-                                                        } else {
-                                                            var0 = 1.0182926829268293;
-                                                        }
-                                                    }
-                                                } else {
-                                                    var0 = 1.0040650406504068;
-                                                }
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (2.083333373069763)) {
-                                            var0 = 1.004601977543154;
-                                        } else {
-                                            var0 = 0.9918699186991871;
-                                        }
-                                    }
-                                } else {
-                                    if ((input[0]) <= (2.083333373069763)) {
-                                        if ((input[1]) <= (0.8499999940395355)) {
-                                            var0 = 1.0384615384615383;
-                                        } else {
-                                            var0 = 1.0272297637003518;
-                                        }
-                                    } else {
-                                        if ((input[1]) <= (0.8499999940395355)) {
-                                            var0 = 1.024390243902439;
-                                        } else {
-                                            var0 = 1.016260162601626;
-                                        }
-                                    }
-                                }
-                            } else {
-                                if ((input[1]) <= (0.2500000074505806)) {
-                                    if ((input[1]) <= (0.15000000223517418)) {
-                                        var0 = 0.9934102141680397;
-                                    } else {
-                                        var0 = 1.013179571663921;
-                                    }
-                                } else {
-                                    if ((input[1]) <= (0.8499999940395355)) {
-                                        if ((input[1]) <= (0.550000011920929)) {
-                                            if ((input[1]) <= (0.45000000298023224)) {
-                                                if ((input[1]) <= (0.3500000089406967)) {
-                                                    var0 = 0.9934102141680397;
-                                                } else {
-                                                    var0 = 0.9950576606260297;
-                                                }
-                                            } else {
-                                                var0 = 0.9967051070840196;
-                                            }
-                                        } else {
-                                            if ((input[1]) <= (0.75)) {
-                                                if ((input[1]) <= (0.6500000059604645)) {
-                                                    var0 = 0.9901153212520594;
-                                                } else {
-                                                    var0 = 0.9819525291353954;
-                                                }
-                                            } else {
-                                                var0 = 0.9950576606260297;
-                                            }
-                                        }
-                                    } else {
-                                        var0 = 1.0;
-                                    }
-                                }
-                            }
-                        }
-                    } else {
-                        if ((input[0]) <= (1.805555522441864)) {
-                            if ((input[0]) <= (1.5277777314186096)) {
-                                var0 = 1.143559478481597;
-                            } else {
-                                var0 = 1.1515891472868218;
-                            }
-                        } else {
-                            if ((input[0]) <= (2.5)) {
-                                if ((input[0]) <= (2.083333373069763)) {
-                                    var0 = 1.090901625607508;
-                                } else {
-                                    var0 = 1.0756014754591992;
-                                }
-                            } else {
-                                var0 = 1.034906339618037;
-                            }
-                        }
-                    }
-                } else {
-                    if ((input[1]) <= (0.949999988079071)) {
-                        if ((input[1]) <= (0.2500000074505806)) {
-                            if ((input[0]) <= (18.05555534362793)) {
-                                if ((input[1]) <= (0.15000000223517418)) {
-                                    if ((input[0]) <= (12.5)) {
-                                        if ((input[0]) <= (6.944444179534912)) {
-                                            if ((input[0]) <= (4.8611109256744385)) {
-                                                var0 = 0.9833333333333334;
-                                            } else {
-                                                var0 = 0.9788445890968268;
-                                            }
-                                        } else {
-                                            if ((input[0]) <= (9.722221851348877)) {
-                                                var0 = 0.9703640045293093;
-                                            } else {
-                                                var0 = 0.9680890779122493;
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (15.277777671813965)) {
-                                            var0 = 0.9641438578031275;
-                                        } else {
-                                            var0 = 0.9572401427774669;
-                                        }
-                                    }
-                                } else {
-                                    if ((input[0]) <= (12.5)) {
-                                        if ((input[0]) <= (6.944444179534912)) {
-                                            if ((input[0]) <= (4.8611109256744385)) {
-                                                var0 = 0.9726190476190476;
-                                            } else {
-                                                var0 = 0.963384865744508;
-                                            }
-                                        } else {
-                                            if ((input[0]) <= (9.722221851348877)) {
-                                                var0 = 0.9478630240395203;
-                                            } else {
-                                                var0 = 0.9430545528716572;
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (15.277777671813965)) {
-                                            var0 = 0.9351963847431315;
-                                        } else {
-                                            var0 = 0.9286817618280457;
-                                        }
-                                    }
-                                }
-                            } else {
-                                if ((input[1]) <= (0.15000000223517418)) {
-                                    if ((input[0]) <= (23.61111068725586)) {
-                                        if ((input[0]) <= (20.833333015441895)) {
-                                            var0 = 0.9403033865249906;
-                                        } else {
-                                            var0 = 0.9398589412637885;
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (26.38888931274414)) {
-                                            var0 = 0.9200329992089636;
-                                        } else {
-                                            var0 = 0.924661384894752;
-                                        }
-                                    }
-                                } else {
-                                    if ((input[0]) <= (23.61111068725586)) {
-                                        if ((input[0]) <= (20.833333015441895)) {
-                                            var0 = 0.9084391529697696;
-                                        } else {
-                                            var0 = 0.9002375327895683;
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (26.38888931274414)) {
-                                            var0 = 0.8760175444810444;
-                                        } else {
-                                            var0 = 0.8827867102320115;
-                                        }
-                                    }
-                                }
-                            }
-                        } else {
-                            if ((input[0]) <= (20.833333015441895)) {
-                                if ((input[0]) <= (6.944444179534912)) {
-                                    if ((input[0]) <= (4.8611109256744385)) {
-                                        if ((input[1]) <= (0.550000011920929)) {
-                                            if ((input[1]) <= (0.45000000298023224)) {
-                                                if ((input[1]) <= (0.3500000089406967)) {
-                                                    var0 = 0.9654761904761904;
-                                                } else {
-                                                    var0 = 0.9656194885361552;
-                                                }
-                                            } else {
-                                                var0 = 0.9678571428571431;
-                                            }
-                                        } else {
-                                            if ((input[1]) <= (0.6500000059604645)) {
-                                                var0 = 0.9538558201058202;
-                                            } else {
-                                                if ((input[1]) <= (0.75)) {
-                                                    var0 = 0.9455207231040564;
-                                                } else {
-                                                    if ((input[1]) <= (0.8499999940395355)) {
-                                                        var0 = 0.9537134038800709;
-                                                    } else {
-                                                        var0 = 0.9489506172839508;
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[1]) <= (0.6500000059604645)) {
-                                            if ((input[1]) <= (0.45000000298023224)) {
-                                                if ((input[1]) <= (0.3500000089406967)) {
-                                                    var0 = 0.951993490642799;
-                                                } else {
-                                                    var0 = 0.9496398758400383;
-                                                }
-                                            } else {
-                                                if ((input[1]) <= (0.550000011920929)) {
-                                                    var0 = 0.9361269324654189;
-                                                } else {
-                                                    var0 = 0.933308019166441;
-                                                }
-                                            }
-                                        } else {
-                                            if ((input[1]) <= (0.8499999940395355)) {
-                                                if ((input[1]) <= (0.75)) {
-                                                    var0 = 0.9208379290600613;
-                                                } else {
-                                                    var0 = 0.9221162944881415;
-                                                }
-                                            } else {
-                                                var0 = 0.9159551577615043;
-                                            }
-                                        }
-                                    }
-                                } else {
-                                    if ((input[1]) <= (0.3500000089406967)) {
-                                        if ((input[0]) <= (18.05555534362793)) {
-                                            if ((input[0]) <= (12.5)) {
-                                                if ((input[0]) <= (9.722221851348877)) {
-                                                    var0 = 0.93134978097272;
-                                                } else {
-                                                    var0 = 0.9245478568055248;
-                                                }
-                                            } else {
-                                                if ((input[0]) <= (15.277777671813965)) {
-                                                    var0 = 0.9202783844138213;
-                                                } else {
-                                                    var0 = 0.9129625834546482;
-                                                }
-                                            }
-                                        } else {
-                                            var0 = 0.8955744792088545;
-                                        }
-                                    } else {
-                                        if ((input[1]) <= (0.8499999940395355)) {
-                                            if ((input[0]) <= (18.05555534362793)) {
-                                                if ((input[1]) <= (0.45000000298023224)) {
-                                                    if ((input[0]) <= (9.722221851348877)) {
-                                                        var0 = 0.9195784447157438;
-                                                    } else {
-                                                        if ((input[0]) <= (15.277777671813965)) {
-                                                            if ((input[0]) <= (12.5)) {
-                                                                var0 = 0.9097635625710537;
-                                                            } else {
-                                                                var0 = 0.9070799158617495;
-                                                            }
-                                                        } else {
-                                                            var0 = 0.8993905673220363;
-                                                        }
-                                                    }
-                                                } else {
-                                                    if ((input[0]) <= (12.5)) {
-                                                        if ((input[1]) <= (0.550000011920929)) {
-                                                            if ((input[0]) <= (9.722221851348877)) {
-                                                                var0 = 0.9011204016873036;
-                                                            } else {
-                                                                var0 = 0.8914755281390693;
-                                                            }
-                                                        } else {
-                                                            if ((input[0]) <= (9.722221851348877)) {
-                                                                if ((input[1]) <= (0.6500000059604645)) {
-                                                                    var0 = 0.8924041117869015;
-                                                                } else {
-                                                                    if ((input[1]) <= (0.75)) {
-                                                                        var0 = 0.8871795704040852;
-                                                                    } else {
-                                                                        var0 = 0.885606114813818;
-                                                                    }
-                                                                }
-                                                            } else {
-                                                                if ((input[1]) <= (0.6500000059604645)) {
-                                                                    var0 = 0.8813715587526724;
-                                                                } else {
-                                                                    if ((input[1]) <= (0.75)) {
-                                                                        var0 = 0.875772554726385;
-                                                                    } else {
-                                                                        var0 = 0.8773063922287296;
-                                                                    }
-                                                                }
-                                                            }
-                                                        }
-                                                    } else {
-                                                        if ((input[1]) <= (0.75)) {
-                                                            if ((input[0]) <= (15.277777671813965)) {
-                                                                if ((input[1]) <= (0.550000011920929)) {
-                                                                    var0 = 0.8962256649866949;
-                                                                } else {
-                                                                    if ((input[1]) <= (0.6500000059604645)) {
-                                                                        var0 = 0.8941711355365682;
-                                                                    } else {
-                                                                        var0 = 0.894969441445605;
-                                                                    }
-                                                                }
-                                                            } else {
-                                                                if ((input[1]) <= (0.6500000059604645)) {
-                                                                    if ((input[1]) <= (0.550000011920929)) {
-                                                                        var0 = 0.8888649080641499;
-                                                                    } else {
-                                                                        var0 = 0.8863107643658215;
-                                                                    }
-                                                                } else {
-                                                                    var0 = 0.8898200011641697;
-                                                                }
-                                                            }
-                                                        } else {
-                                                            if ((input[0]) <= (15.277777671813965)) {
-                                                                var0 = 0.9020907415424231;
-                                                            } else {
-                                                                var0 = 0.8996724891547109;
-                                                            }
-                                                        }
-                                                    }
-                                                }
-                                            } else {
-                                                if ((input[1]) <= (0.75)) {
-                                                    if ((input[1]) <= (0.6500000059604645)) {
-                                                        if ((input[1]) <= (0.45000000298023224)) {
-                                                            var0 = 0.8815057859612161;
-                                                        } else {
-                                                            if ((input[1]) <= (0.550000011920929)) {
-                                                                var0 = 0.8698137393256148;
-                                                            } else {
-                                                                var0 = 0.8729841120116005;
-                                                            }
-                                                        }
-                                                    } else {
-                                                        var0 = 0.8840599876232241;
-                                                    }
-                                                } else {
-                                                    var0 = 0.9015739651269594;
-                                                }
-                                            }
-                                        } else {
-                                            if ((input[0]) <= (12.5)) {
-                                                if ((input[0]) <= (9.722221851348877)) {
-                                                    var0 = 0.8831940730467973;
-                                                } else {
-                                                    var0 = 0.878029582711381;
-                                                }
-                                            } else {
-                                                if ((input[0]) <= (18.05555534362793)) {
-                                                    if ((input[0]) <= (15.277777671813965)) {
-                                                        var0 = 0.9136210592857648;
-                                                    } else {
-                                                        var0 = 0.9174913549049374;
-                                                    }
-                                                } else {
-                                                    var0 = 0.9320777472943783;
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            } else {
-                                if ((input[1]) <= (0.8499999940395355)) {
-                                    if ((input[1]) <= (0.75)) {
-                                        if ((input[0]) <= (23.61111068725586)) {
-                                            if ((input[1]) <= (0.3500000089406967)) {
-                                                var0 = 0.8852492992789961;
-                                            } else {
-                                                if ((input[1]) <= (0.6500000059604645)) {
-                                                    if ((input[1]) <= (0.45000000298023224)) {
-                                                        var0 = 0.8660713056361027;
-                                                    } else {
-                                                        if ((input[1]) <= (0.550000011920929)) {
-                                                            var0 = 0.8582930271103918;
-                                                        } else {
-                                                            var0 = 0.8566228225979777;
-                                                        }
-                                                    }
-                                                } else {
-                                                    var0 = 0.8676660718563859;
-                                                }
-                                            }
-                                        } else {
-                                            if ((input[1]) <= (0.3500000089406967)) {
-                                                if ((input[0]) <= (26.38888931274414)) {
-                                                    var0 = 0.8634045266177879;
-                                                } else {
-                                                    var0 = 0.8632653184994853;
-                                                }
-                                            } else {
-                                                if ((input[1]) <= (0.6500000059604645)) {
-                                                    if ((input[1]) <= (0.45000000298023224)) {
-                                                        if ((input[0]) <= (26.38888931274414)) {
-                                                            var0 = 0.8461906279885238;
-                                                        } else {
-                                                            var0 = 0.8453149266316625;
-                                                        }
-                                                    } else {
-                                                        if ((input[0]) <= (26.38888931274414)) {
-                                                            if ((input[1]) <= (0.550000011920929)) {
-                                                                var0 = 0.8439591966847306;
-                                                            } else {
-                                                                var0 = 0.845413523182092;
-                                                            }
-                                                        } else {
-                                                            if ((input[1]) <= (0.550000011920929)) {
-                                                                var0 = 0.8391276504229821;
-                                                            } else {
-                                                                var0 = 0.8383990414375362;
-                                                            }
-                                                        }
-                                                    }
-                                                } else {
-                                                    if ((input[0]) <= (26.38888931274414)) {
-                                                        var0 = 0.856889809797046;
-                                                    } else {
-                                                        var0 = 0.8514269654168153;
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (23.61111068725586)) {
-                                            var0 = 0.8876487768488935;
-                                        } else {
-                                            if ((input[0]) <= (26.38888931274414)) {
-                                                var0 = 0.8795231938983932;
-                                            } else {
-                                                var0 = 0.8756023303802417;
-                                            }
-                                        }
-                                    }
-                                } else {
-                                    if ((input[0]) <= (23.61111068725586)) {
-                                        var0 = 0.9221789520932779;
-                                    } else {
-                                        if ((input[0]) <= (26.38888931274414)) {
-                                            var0 = 0.9142702393180554;
-                                        } else {
-                                            var0 = 0.917126204281202;
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    } else {
-                        if ((input[0]) <= (18.05555534362793)) {
-                            if ((input[0]) <= (12.5)) {
-                                if ((input[0]) <= (6.944444179534912)) {
-                                    if ((input[0]) <= (4.8611109256744385)) {
-                                        var0 = 0.9681437389770725;
-                                    } else {
-                                        var0 = 0.9234217822378933;
-                                    }
-                                } else {
-                                    if ((input[0]) <= (9.722221851348877)) {
-                                        var0 = 0.8853018494680771;
-                                    } else {
-                                        var0 = 0.8832875671178189;
-                                    }
-                                }
-                            } else {
-                                if ((input[0]) <= (15.277777671813965)) {
-                                    var0 = 0.9282382639065848;
-                                } else {
-                                    var0 = 0.9381909133548494;
-                                }
-                            }
-                        } else {
-                            if ((input[0]) <= (26.38888931274414)) {
-                                if ((input[0]) <= (20.833333015441895)) {
-                                    var0 = 0.9750911479406318;
-                                } else {
-                                    if ((input[0]) <= (23.61111068725586)) {
-                                        var0 = 0.9702616056486099;
-                                    } else {
-                                        var0 = 0.9666158396203026;
-                                    }
-                                }
-                            } else {
-                                var0 = 0.9960224065161035;
-                            }
-                        }
-                    }
-                }
-            } else {
-                if ((input[1]) <= (0.949999988079071)) {
-                    if ((input[1]) <= (0.15000000223517418)) {
-                        if ((input[0]) <= (37.77777671813965)) {
-                            if ((input[0]) <= (34.72222137451172)) {
-                                var0 = 0.8940283713542594;
-                            } else {
-                                var0 = 0.8842443218573947;
-                            }
-                        } else {
-                            var0 = 0.8715658965536066;
-                        }
-                    } else {
-                        if ((input[1]) <= (0.8499999940395355)) {
-                            if ((input[0]) <= (37.77777671813965)) {
-                                if ((input[1]) <= (0.2500000074505806)) {
-                                    if ((input[0]) <= (34.72222137451172)) {
-                                        var0 = 0.8537414773710029;
-                                    } else {
-                                        var0 = 0.8365500854558335;
-                                    }
-                                } else {
-                                    if ((input[1]) <= (0.75)) {
-                                        if ((input[0]) <= (34.72222137451172)) {
-                                            if ((input[1]) <= (0.3500000089406967)) {
-                                                var0 = 0.8258755181959557;
-                                            } else {
-                                                if ((input[1]) <= (0.6500000059604645)) {
-                                                    if ((input[1]) <= (0.45000000298023224)) {
-                                                        var0 = 0.8106213631754854;
-                                                    } else {
-                                                        if ((input[1]) <= (0.550000011920929)) {
-                                                            var0 = 0.8041370507124753;
-                                                        } else {
-                                                            var0 = 0.8026277412193962;
-                                                        }
-                                                    }
-                                                } else {
-                                                    var0 = 0.8199390567499503;
-                                                }
-                                            }
-                                        } else {
-                                            if ((input[1]) <= (0.3500000089406967)) {
-                                                var0 = 0.8133488033867379;
-                                            } else {
-                                                if ((input[1]) <= (0.6500000059604645)) {
-                                                    if ((input[1]) <= (0.550000011920929)) {
-                                                        if ((input[1]) <= (0.45000000298023224)) {
-                                                            var0 = 0.7934053107674351;
-                                                        } else {
-                                                            var0 = 0.7909934645972;
-                                                        }
-                                                    } else {
-                                                        var0 = 0.7840429486971652;
-                                                    }
-                                                } else {
-                                                    var0 = 0.8019925799324689;
-                                                }
-                                            }
-                                        }
-                                    } else {
-                                        if ((input[0]) <= (34.72222137451172)) {
-                                            var0 = 0.8415896196423575;
-                                        } else {
-                                            var0 = 0.8256284130226349;
-                                        }
-                                    }
-                                }
-                            } else {
-                                if ((input[1]) <= (0.2500000074505806)) {
-                                    var0 = 0.8241381186746839;
-                                } else {
-                                    if ((input[1]) <= (0.75)) {
-                                        if ((input[1]) <= (0.3500000089406967)) {
-                                            var0 = 0.7937392357128557;
-                                        } else {
-                                            if ((input[1]) <= (0.6500000059604645)) {
-                                                if ((input[1]) <= (0.45000000298023224)) {
-                                                    var0 = 0.7742719832181295;
-                                                } else {
-                                                    if ((input[1]) <= (0.550000011920929)) {
-                                                        var0 = 0.768915216762451;
-                                                    } else {
-                                                        var0 = 0.766948899852935;
-                                                    }
-                                                }
-                                            } else {
-                                                var0 = 0.783221366541044;
-                                            }
-                                        }
-                                    } else {
-                                        var0 = 0.8045536398816198;
-                                    }
-                                }
-                            }
-                        } else {
-                            if ((input[0]) <= (37.77777671813965)) {
-                                if ((input[0]) <= (34.72222137451172)) {
-                                    var0 = 0.8889015760880187;
-                                } else {
-                                    var0 = 0.8783255442695176;
-                                }
-                            } else {
-                                var0 = 0.8626085531705725;
-                            }
-                        }
-                    }
-                } else {
-                    if ((input[0]) <= (37.77777671813965)) {
-                        if ((input[0]) <= (34.72222137451172)) {
-                            var0 = 1.0058211181796521;
-                        } else {
-                            var0 = 1.0027512609946216;
-                        }
-                    } else {
-                        var0 = 1.0061718280627032;
-                    }
-                }
-            }
-        }
-        return var0;
-    }
+
+	/**
+	 * Tree with the features allowed speed in m/s and share of automated vehicles in [0, 1].
+	 */
+	public static final TreeModel MODEL = TreeModel.read(AVModel.class.getResource("AVModel.csv"));
+
+	/**
+	 * Capacity factor for a link with given allowed speed and vehicle share.
+	 */
+	public static double score(double speed, double share) {
+		return MODEL.score(speed, share);
+	}
 }
@@ -1,43 +1,57 @@
 package org.matsim.analysis;
 
-import org.apache.commons.lang3.tuple.Pair;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleArrays;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.LinkLeaveEvent;
-import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
-import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
 import org.matsim.api.core.v01.network.Link;
-import org.matsim.core.api.experimental.events.EventsManager;
-import org.matsim.core.api.experimental.events.LaneEnterEvent;
-import org.matsim.core.api.experimental.events.LaneLeaveEvent;
-import org.matsim.core.api.experimental.events.handler.LaneEnterEventHandler;
-import org.matsim.core.api.experimental.events.handler.LaneLeaveEventHandler;
-import org.matsim.core.events.EventsManagerImpl;
-import org.matsim.core.events.MatsimEventsReader;
-import org.matsim.lanes.Lane;
+import org.matsim.core.utils.io.IOUtils;
 import picocli.CommandLine;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 
+/**
+ * Counts how often vehicles overtake each other on a link.
+ * <p>
+ * Enter and leave events are paired for each link and vehicle. An overtake is a pair of vehicles, where one enters
+ * the link after the other, but leaves it before. These are the inversions between entry and exit order,
+ * which are counted in O(n log n) per link.
+ */
 @CommandLine.Command(
         name = "analyzeTakeovers",
         description = "Analyze takeover of vehicles on one link, but different lanes."
 )
-public class AnalyzeTakeovers implements Callable<Integer>, LinkEnterEventHandler, LinkLeaveEventHandler, LaneEnterEventHandler, LaneLeaveEventHandler {
+public class AnalyzeTakeovers implements Callable<Integer> {
 
     private static final Logger log = LogManager.getLogger(AnalyzeTakeovers.class);
 
+    /**
+     * Maximum time for one vehicle on a link.
+     */
+    private static final double TIME_THRESHOLD = 300;
+
     @CommandLine.Parameters(arity = "1", paramLabel = "INPUT", description = "Input event file")
     private Path input;
 
-    private List<Event> events;
-    private int countOvertakes = 0;
+    @CommandLine.Option(names = "--output", description = "Output csv with overtakes per link, defaults to takeovers.csv in the run directory of the events")
+    private Path output;
+
+    @CommandLine.Option(names = "--events-cache", description = "Cache file for decoded events, used by repeated analyses of the same run")
+    private Path eventsCache;
 
     public static void main(String[] args) {
         System.exit(new CommandLine(new AnalyzeTakeovers()).execute(args));
@@ -46,39 +60,20 @@ public class AnalyzeTakeovers implements Callable<Integer>, LinkEnterEventHandle
     @Override
     public Integer call() throws Exception {
 
-        events = new ArrayList<>();
-
-        EventsManager manager = new EventsManagerImpl();
-        manager.addHandler(this);
-        manager.initProcessing();
+        ColumnarEvents events = ColumnarEvents.read(input, eventsCache);
 
-        MatsimEventsReader reader = new MatsimEventsReader(manager);
-
-        reader.addCustomEventMapper(LaneLeaveEvent.EVENT_TYPE, event ->
-                new LaneLeaveEvent(
-                        event.getTime(),
-                        Id.createVehicleId(event.getAttributes().get(LaneLeaveEvent.ATTRIBUTE_VEHICLE)),
-                        Id.createLinkId(event.getAttributes().get(LaneLeaveEvent.ATTRIBUTE_LINK)),
-                        Id.create(event.getAttributes().get(LaneLeaveEvent.ATTRIBUTE_LANE), Lane.class)
-                )
-        );
+        log.info("Read {} events", events.size());
 
-        reader.addCustomEventMapper(LaneEnterEvent.EVENT_TYPE, event ->
-                new LaneEnterEvent(
-                        event.getTime(),
-                        Id.createVehicleId(event.getAttributes().get(LaneEnterEvent.ATTRIBUTE_VEHICLE)),
-                        Id.createLinkId(event.getAttributes().get(LaneEnterEvent.ATTRIBUTE_LINK)),
-                        Id.create(event.getAttributes().get(LaneEnterEvent.ATTRIBUTE_LANE), Lane.class)
-                )
-        );
+        List<LinkTakeovers> result = analyze(events);
 
+        if (output == null)
+            output = input.toAbsolutePath().resolveSibling("takeovers.csv");
 
-        reader.readFile(input.toString());
-        manager.finishProcessing();
+        write(result, output);
 
-        log.info("Read {} events", events.size());
+        log.info("Written {}", output);
 
-        analyze(events);
+        log.info("{} overtakes were found", result.stream().mapToLong(r -> r.overtakes).sum());
 
         return 0;
     }
@@ -90,139 +85,224 @@ public class AnalyzeTakeovers implements Callable<Integer>, LinkEnterEventHandle
      */
     int analyze(List<Event> events) {
 
-        Map<Id<Link>, List<LinkEnterEvent>> linkEntered = new HashMap<>();
-        Map<Id<Link>, List<LinkLeaveEvent>> linkLeave = new HashMap<>();
-        Map<Id<Link>, List<Event>> laneEvents = new HashMap<>();
+        ColumnarEvents.Builder columns = new ColumnarEvents.Builder();
+        for (Event event : events) {
+            if (event instanceof LinkEnterEvent) {
+                LinkEnterEvent e = (LinkEnterEvent) event;
+                columns.add(e.getTime(), ColumnarEvents.LINK_ENTER, e.getLinkId().index(), e.getVehicleId().index(), -1);
+            } else if (event instanceof LinkLeaveEvent) {
+                LinkLeaveEvent e = (LinkLeaveEvent) event;
+                columns.add(e.getTime(), ColumnarEvents.LINK_LEAVE, e.getLinkId().index(), e.getVehicleId().index(), -1);
+            }
+        }
 
-        // maximum time for one vehicle on a link
-        double timeThreshold = 300;
+        return (int) analyze(columns.build()).stream().mapToLong(r -> r.overtakes).sum();
+    }
 
-        for (Event value : events) {
+    /**
+     * Count overtakes for each link.
+     */
+    List<LinkTakeovers> analyze(ColumnarEvents events) {
 
-            Id<Link> linkTemp = Id.createLinkId(value.getAttributes().get("link"));
+        IntArrayList link = new IntArrayList();
+        IntArrayList vehicle = new IntArrayList();
+        DoubleArrayList time = new DoubleArrayList();
+        BitSet enter = new BitSet();
 
-            if (linkTemp.toString().startsWith("pt_"))
+        for (int i = 0; i < events.size(); i++) {
+            byte type = events.type(i);
+            if (type != ColumnarEvents.LINK_ENTER && type != ColumnarEvents.LINK_LEAVE)
                 continue;
-            if (value instanceof LinkEnterEvent)
-                linkEntered.computeIfAbsent(linkTemp, (k) -> new ArrayList<>()).add((LinkEnterEvent) value);
-            else if (value instanceof LinkLeaveEvent)
-                linkLeave.computeIfAbsent(linkTemp, (k) -> new ArrayList<>()).add((LinkLeaveEvent) value);
-            else if (value instanceof LaneEnterEvent || value instanceof LaneLeaveEvent)
-                laneEvents.computeIfAbsent(linkTemp, (k) -> new ArrayList<>()).add(value);
+
+            if (type == ColumnarEvents.LINK_ENTER)
+                enter.set(link.size());
+
+            link.add(events.link(i));
+            vehicle.add(events.vehicle(i));
+            time.add(events.time(i));
         }
 
-        linkEntered.values().forEach(l -> l.sort(Comparator.comparingDouble(Event::getTime)));
-        linkLeave.values().forEach(l -> l.sort(Comparator.comparingDouble(Event::getTime)));
+        return analyze(link.toIntArray(), vehicle.toIntArray(), time.toDoubleArray(), enter);
+    }
 
-        Map<Id<Link>, List<Pair<LinkEnterEvent, LinkLeaveEvent>>> linkPairs = new HashMap<>();
+    private List<LinkTakeovers> analyze(int[] link, int[] vehicle, double[] time, BitSet enter) {
 
-        log.info("Total amount of links: " + linkEntered.keySet().size());
+        int n = link.length;
 
-        for (Map.Entry<Id<Link>, List<LinkEnterEvent>> e : linkEntered.entrySet()) {
+        // order by link, vehicle and time, leave events first if time is the same
+        int[] order = IntStream.range(0, n).toArray();
+        IntArrays.parallelQuickSort(order, (a, b) -> {
+            int cmp = Integer.compare(link[a], link[b]);
+            if (cmp != 0)
+                return cmp;
 
-            Id<Link> link = e.getKey();
+            cmp = Integer.compare(vehicle[a], vehicle[b]);
+            if (cmp != 0)
+                return cmp;
 
-            for (LinkEnterEvent linkEnterEvent : e.getValue()) {
+            cmp = Double.compare(time[a], time[b]);
+            if (cmp != 0)
+                return cmp;
 
-                LinkLeaveEvent linkLeaveEvent = new LinkLeaveEvent(0, Id.createVehicleId(""), Id.createLinkId(""));
+            return Boolean.compare(enter.get(a), enter.get(b));
+        });
 
-                try {
-                    for (LinkLeaveEvent otherLinkLeave : linkLeave.get(link)) {
-                        if (otherLinkLeave.getVehicleId().equals(linkEnterEvent.getVehicleId())) {
-                            if (linkLeaveEvent.getAttributes().get("vehicle").equals("") && otherLinkLeave.getTime() > linkEnterEvent.getTime()) {
-                                linkLeaveEvent = otherLinkLeave;
-                            } else {
-                                if (linkLeaveEvent.getTime() > otherLinkLeave.getTime()) {
-                                    if (otherLinkLeave.getTime() > linkEnterEvent.getTime()) {
-                                        linkLeaveEvent = otherLinkLeave;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                } catch (NullPointerException ignored) {
-                }
+        // start of each link within the order
+        IntArrayList starts = new IntArrayList();
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || link[order[i]] != link[order[i - 1]])
+                starts.add(i);
+        }
+        starts.add(n);
 
-                for (LinkEnterEvent linkEnterEventTwo : e.getValue()) {
-                    if(linkEnterEvent.getVehicleId().equals(linkEnterEventTwo.getVehicleId())) {
-                        if (linkEnterEventTwo.getTime() > linkEnterEvent.getTime() && linkEnterEventTwo.getTime() < linkLeaveEvent.getTime()) {
-                            linkLeaveEvent.setTime(0);
-                        }
-                    }
-                }
+        log.info("Total amount of links: {}", starts.size() - 1);
+
+        return IntStream.range(0, starts.size() - 1).parallel()
+                .mapToObj(i -> analyzeLink(order, starts.getInt(i), starts.getInt(i + 1), link, vehicle, time, enter))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Pair events of one link and count the inversions.
+     */
+    private static LinkTakeovers analyzeLink(int[] order, int from, int to, int[] link, int[] vehicle, double[] time, BitSet enter) {
+
+        Id<Link> linkId = Id.get(link[order[from]], Link.class);
+
+        if (linkId.toString().startsWith("pt_"))
+            return null;
+
+        DoubleArrayList enterTimes = new DoubleArrayList();
+        DoubleArrayList leaveTimes = new DoubleArrayList();
+
+        // events of one vehicle are consecutive and sorted by time
+        for (int i = from; i < to; i++) {
+
+            int e = order[i];
+            if (!enter.get(e))
+                continue;
+
+            for (int j = i + 1; j < to && vehicle[order[j]] == vehicle[e]; j++) {
+
+                int other = order[j];
+
+                if (enter.get(other)) {
+                    // vehicle entered again before leaving, no valid pair
+                    if (time[other] > time[e])
+                        break;
+
+                } else if (time[other] > time[e]) {
 
-                if (linkLeaveEvent.getTime() != 0) {
-                    if ((linkLeaveEvent.getTime() - linkEnterEvent.getTime()) < timeThreshold) {
-                        linkPairs.computeIfAbsent(link, (k) -> new ArrayList<>())
-                                .add(Pair.of(linkEnterEvent, linkLeaveEvent));
+                    if (time[other] - time[e] < TIME_THRESHOLD) {
+                        enterTimes.add(time[e]);
+                        leaveTimes.add(time[other]);
                     }
+
+                    break;
                 }
             }
         }
 
-        log.info("Added all pairs!");
+        return new LinkTakeovers(linkId, enterTimes.size(), countInversions(enterTimes.toDoubleArray(), leaveTimes.toDoubleArray()));
+    }
 
-        linkPairs.entrySet().parallelStream().forEach(e -> {
-            List<Pair<LinkEnterEvent, LinkLeaveEvent>> pairs = e.getValue();
+    /**
+     * Number of pairs (i, j) with {@code enter[i] < enter[j]} and {@code leave[i] > leave[j]}, using a Fenwick tree.
+     */
+    static long countInversions(double[] enter, double[] leave) {
 
-            for (int i = 0; i < pairs.size(); i++) {
-                for (Pair<LinkEnterEvent, LinkLeaveEvent> pair : pairs) {
-                    checkLinkForTakeovers(pairs.get(i), pair, laneEvents.get(pair.getLeft().getLinkId()));
-                }
-            }
-        });
+        int n = enter.length;
 
-        log.info("Checked all pairs for overtake!");
-        log.info("########################## " + countOvertakes + " Overtakes were found ##########################");
+        int[] order = IntStream.range(0, n).toArray();
+        IntArrays.quickSort(order, (a, b) -> Double.compare(enter[a], enter[b]));
 
-        return countOvertakes;
-    }
+        // ranks of leave times, starting at 1
+        double[] sorted = leave.clone();
+        DoubleArrays.quickSort(sorted);
 
-    private void checkLinkForTakeovers(Pair<LinkEnterEvent, LinkLeaveEvent> p1, Pair<LinkEnterEvent, LinkLeaveEvent> p2, List<Event> laneEvents) {
-        if (p1.getLeft().getTime() < p2.getLeft().getTime() && p1.getRight().getTime() > p2.getRight().getTime()) {
-            log.info("################################ Found Overtake ################################");
-            log.info("Vehicle " + p2.getLeft().getVehicleId() + " has overtaken vehicle " +
-                    p1.getLeft().getVehicleId() + " on the link " + p1.getLeft().getLinkId() + ".");
-            log.info("Enter Event 1: " + p1.getLeft().getTime());
-            log.info("Leave Event 1: " + p1.getRight().getTime());
-            log.info("Enter Event 2: " + p2.getLeft().getTime());
-            log.info("Leave Event 2: " + p2.getRight().getTime());
-
-            try {
-                for (Event laneEvent : laneEvents) {
-
-                    if (laneEvent.getTime() == p1.getLeft().getTime()) {
-                        log.info("Event 1 lane: " + laneEvent.getAttributes().get("lane"));
-                    }
+        long[] tree = new long[n + 1];
+        long inserted = 0;
+        long inversions = 0;
 
-                    if (laneEvent.getTime() == p2.getLeft().getTime()) {
-                        log.info("Event 2 lane: " + laneEvent.getAttributes().get("lane"));
-                    }
-                }
-            } catch (NullPointerException ignored) {}
+        int i = 0;
+        while (i < n) {
+
+            // vehicles entering at the same time do not overtake each other
+            int j = i;
+            while (j < n && enter[order[j]] == enter[order[i]])
+                j++;
 
-            countOvertakes += 1;
+            for (int k = i; k < j; k++) {
+                int rank = upperBound(sorted, leave[order[k]]);
+
+                // previous vehicles that are leaving strictly later
+                inversions += inserted - prefix(tree, rank);
+            }
 
+            for (int k = i; k < j; k++) {
+                int rank = upperBound(sorted, leave[order[k]]);
+                for (int x = rank; x <= n; x += x & -x)
+                    tree[x]++;
+
+                inserted++;
+            }
+
+            i = j;
         }
+
+        return inversions;
     }
 
-    @Override
-    public void handleEvent(LinkEnterEvent linkEnterEvent) {
-        events.add(linkEnterEvent);
+    /**
+     * Number of elements less or equal than {@code value}.
+     */
+    private static int upperBound(double[] sorted, double value) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
     }
 
-    @Override
-    public void handleEvent(LinkLeaveEvent linkLeaveEvent) {
-        events.add(linkLeaveEvent);
+    private static long prefix(long[] tree, int rank) {
+        long sum = 0;
+        for (int x = rank; x > 0; x -= x & -x)
+            sum += tree[x];
+
+        return sum;
     }
 
-    @Override
-    public void handleEvent(LaneEnterEvent laneEnterEvent) {
-        events.add(laneEnterEvent);
+    private static void write(List<LinkTakeovers> result, Path output) throws IOException {
+
+        try (CSVPrinter printer = new CSVPrinter(IOUtils.getBufferedWriter(output.toString()), CSVFormat.DEFAULT)) {
+
+            printer.printRecord("link", "pairs", "overtakes");
+
+            for (LinkTakeovers r : result) {
+                if (r.pairs > 0)
+                    printer.printRecord(r.link, r.pairs, r.overtakes);
+            }
+        }
     }
 
-    @Override
-    public void handleEvent(LaneLeaveEvent laneLeaveEvent) {
-        events.add(laneLeaveEvent);
+    /**
+     * Result for one link.
+     */
+    static final class LinkTakeovers {
+
+        final Id<Link> link;
+        final int pairs;
+        final long overtakes;
+
+        LinkTakeovers(Id<Link> link, int pairs, long overtakes) {
+            this.link = link;
+            this.pairs = pairs;
+            this.overtakes = overtakes;
+        }
     }
 }
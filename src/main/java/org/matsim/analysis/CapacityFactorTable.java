@@ -0,0 +1,99 @@
+package org.matsim.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed capacity factors of a {@link TreeModel} with the features speed and vehicle share.
+ * <p>
+ * Both axes are discretized at the split thresholds of the tree. Because the tree is constant between two
+ * thresholds, the table is exact and only needs one evaluation per cell.
+ * Tables for the default models are created once and shared by all runs in the same JVM.
+ */
+public final class CapacityFactorTable {
+
+	/**
+	 * Table for {@link AVModel}.
+	 */
+	public static final CapacityFactorTable AV = new CapacityFactorTable(AVModel.MODEL);
+
+	/**
+	 * Table for {@link ACVModel}.
+	 */
+	public static final CapacityFactorTable ACV = new CapacityFactorTable(ACVModel.MODEL);
+
+	private final double[] speeds;
+	private final double[] shares;
+
+	/**
+	 * Factors stored row-wise, one row for each share cell.
+	 */
+	private final double[] factors;
+
+	public CapacityFactorTable(TreeModel model) {
+
+		if (model.getNumberOfFeatures() > 2)
+			throw new IllegalArgumentException("Only models with speed and share as features are supported.");
+
+		speeds = model.getThresholds(0);
+		shares = model.getThresholds(1);
+
+		int stride = speeds.length + 1;
+		factors = new double[(shares.length + 1) * stride];
+
+		for (int j = 0; j <= shares.length; j++) {
+			for (int i = 0; i <= speeds.length; i++) {
+				factors[j * stride + i] = model.score(representative(speeds, i), representative(shares, j));
+			}
+		}
+	}
+
+	/**
+	 * Index of the cell, where a value belongs to. Cell {@code i} contains all values in {@code (t[i-1], t[i]]}.
+	 */
+	private static int cell(double[] thresholds, double x) {
+		int idx = Arrays.binarySearch(thresholds, x);
+		return idx >= 0 ? idx : -idx - 1;
+	}
+
+	/**
+	 * Value that lies within the given cell.
+	 */
+	private static double representative(double[] thresholds, int cell) {
+		return cell < thresholds.length ? thresholds[cell] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Capacity factor for given speed and share.
+	 */
+	public double get(double speed, double share) {
+		return factors[cell(shares, share) * (speeds.length + 1) + cell(speeds, speed)];
+	}
+
+	/**
+	 * Return the factors for a fixed share, which is usually constant during a run.
+	 */
+	public Row row(double share) {
+		int stride = speeds.length + 1;
+		int offset = cell(shares, share) * stride;
+		return new Row(Arrays.copyOfRange(factors, offset, offset + stride));
+	}
+
+	/**
+	 * Capacity factors for one share, depending only on the speed.
+	 */
+	public final class Row {
+
+		private final double[] factors;
+
+		private Row(double[] factors) {
+			this.factors = factors;
+		}
+
+		/**
+		 * Capacity factor for given speed.
+		 */
+		public double get(double speed) {
+			return factors[cell(speeds, speed)];
+		}
+	}
+}
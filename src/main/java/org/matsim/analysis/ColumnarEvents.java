@@ -0,0 +1,336 @@
+package org.matsim.analysis;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.lanes.Lane;
+import org.matsim.vehicles.Vehicle;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Vehicle movements of an events file, decoded into primitive columns.
+ * <p>
+ * Only link, lane and traffic enter/leave events are kept. Links, vehicles and lanes are stored as their {@link Id#index()},
+ * or -1 if not present. Columns can be cached on disk, in which case they are memory-mapped instead of held on the heap.
+ */
+public final class ColumnarEvents {
+
+	public static final byte LINK_ENTER = 1;
+	public static final byte LINK_LEAVE = 2;
+	public static final byte VEHICLE_ENTERS_TRAFFIC = 3;
+	public static final byte VEHICLE_LEAVES_TRAFFIC = 4;
+	public static final byte LANE_ENTER = 5;
+	public static final byte LANE_LEAVE = 6;
+
+	private static final Logger log = LogManager.getLogger(ColumnarEvents.class);
+
+	private static final int MAGIC = 0x45564E54;
+	private static final int FORMAT = 1;
+
+	/**
+	 * Max. number of events in a cache file. Each column is mapped at once, which is limited to 2GB.
+	 */
+	static final int MAX_CACHED_EVENTS = Integer.MAX_VALUE / Double.BYTES;
+
+	private final int size;
+	private final DoubleBuffer time;
+	private final ByteBuffer type;
+
+	/**
+	 * Columns contain positions in the id tables, which are specific to this store.
+	 */
+	private final IntBuffer link;
+	private final IntBuffer vehicle;
+	private final IntBuffer lane;
+
+	/**
+	 * Id index for each table position.
+	 */
+	private final int[] linkIds;
+	private final int[] vehicleIds;
+	private final int[] laneIds;
+
+	private ColumnarEvents(int size, DoubleBuffer time, ByteBuffer type, IntBuffer link, IntBuffer vehicle, IntBuffer lane,
+	                       int[] linkIds, int[] vehicleIds, int[] laneIds) {
+		this.size = size;
+		this.time = time;
+		this.type = type;
+		this.link = link;
+		this.vehicle = vehicle;
+		this.lane = lane;
+		this.linkIds = linkIds;
+		this.vehicleIds = vehicleIds;
+		this.laneIds = laneIds;
+	}
+
+	/**
+	 * Read all events into memory.
+	 */
+	public static ColumnarEvents read(Path events) {
+		return read(events, null);
+	}
+
+	/**
+	 * Read events and use a cache file. If the cache belongs to the same events file it is memory-mapped,
+	 * otherwise the events are parsed and the cache is (re-)created.
+	 */
+	public static ColumnarEvents read(Path events, @Nullable Path cache) {
+
+		try {
+			long size = Files.size(events);
+			long modified = Files.getLastModifiedTime(events).toMillis();
+
+			if (cache != null && Files.exists(cache)) {
+				ColumnarEvents result = map(cache, size, modified);
+				if (result != null) {
+					log.info("Opened {} cached events from {}", result.size(), cache);
+					return result;
+				}
+
+				log.info("Cache {} does not belong to {}, events will be read again", cache, events);
+			}
+
+			ColumnarEvents result = parse(events);
+
+			if (cache != null)
+				result.write(cache, size, modified);
+
+			return result;
+
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static ColumnarEvents parse(Path events) {
+
+		Builder builder = new Builder();
+
+		new ParallelEventsReader().read(events, batch -> {
+			for (int i = 0; i < batch.size(); i++)
+				builder.add(batch.time(i), batch.type(i), batch.link(i), batch.vehicle(i), batch.lane(i));
+		});
+
+		return builder.build();
+	}
+
+	/**
+	 * Map an existing cache file, or return null if it does not match the source.
+	 */
+	@Nullable
+	private static ColumnarEvents map(Path cache, long sourceSize, long sourceModified) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(cache)) {
+
+			// columns are mapped separately, because one mapping is limited to 2GB
+			ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+
+			if (buf.getInt() != MAGIC || buf.getInt() != FORMAT || buf.getLong() != sourceSize || buf.getLong() != sourceModified)
+				return null;
+
+			int n = buf.getInt();
+			if (n < 0 || n > MAX_CACHED_EVENTS)
+				return null;
+
+			int[] linkIds = ids(buf, Link.class);
+			int[] vehicleIds = ids(buf, Vehicle.class);
+			int[] laneIds = ids(buf, Lane.class);
+
+			// mappings stay valid after the channel is closed
+			long offset = buf.position();
+			DoubleBuffer time = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) n * Double.BYTES).asDoubleBuffer();
+			offset += (long) n * Double.BYTES;
+			IntBuffer link = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) n * Integer.BYTES).asIntBuffer();
+			offset += (long) n * Integer.BYTES;
+			IntBuffer vehicle = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) n * Integer.BYTES).asIntBuffer();
+			offset += (long) n * Integer.BYTES;
+			IntBuffer lane = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) n * Integer.BYTES).asIntBuffer();
+			offset += (long) n * Integer.BYTES;
+			ByteBuffer type = channel.map(FileChannel.MapMode.READ_ONLY, offset, n);
+
+			return new ColumnarEvents(n, time, type, link, vehicle, lane, linkIds, vehicleIds, laneIds);
+		}
+	}
+
+	private static int[] ids(ByteBuffer buf, Class<?> type) {
+		int[] ids = new int[buf.getInt()];
+		for (int i = 0; i < ids.length; i++) {
+			byte[] bytes = new byte[buf.getInt()];
+			buf.get(bytes);
+			ids[i] = Id.create(new String(bytes, StandardCharsets.UTF_8), type).index();
+		}
+		return ids;
+	}
+
+	private void write(Path cache, long sourceSize, long sourceModified) throws IOException {
+
+		if (size > MAX_CACHED_EVENTS)
+			throw new IllegalArgumentException(String.format("Can not write %d events to cache %s, at most %d are supported.",
+					size, cache, MAX_CACHED_EVENTS));
+
+		Path parent = cache.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+
+		Path tmp = Files.createTempFile(parent, cache.getFileName().toString(), ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			out.writeLong(sourceSize);
+			out.writeLong(sourceModified);
+			out.writeInt(size);
+
+			writeIds(out, linkIds, Link.class);
+			writeIds(out, vehicleIds, Vehicle.class);
+			writeIds(out, laneIds, Lane.class);
+
+			for (int i = 0; i < size; i++)
+				out.writeDouble(time.get(i));
+			for (int i = 0; i < size; i++)
+				out.writeInt(link.get(i));
+			for (int i = 0; i < size; i++)
+				out.writeInt(vehicle.get(i));
+			for (int i = 0; i < size; i++)
+				out.writeInt(lane.get(i));
+			for (int i = 0; i < size; i++)
+				out.writeByte(type.get(i));
+		}
+
+		Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		log.info("Written events cache {}", cache);
+	}
+
+	private static void writeIds(DataOutputStream out, int[] ids, Class<?> type) throws IOException {
+		out.writeInt(ids.length);
+		for (int idx : ids) {
+			byte[] bytes = Id.get(idx, type).toString().getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Number of events.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public double time(int i) {
+		return time.get(i);
+	}
+
+	/**
+	 * Event type, one of the constants in this class.
+	 */
+	public byte type(int i) {
+		return type.get(i);
+	}
+
+	/**
+	 * Link index of the event.
+	 */
+	public int link(int i) {
+		int idx = link.get(i);
+		return idx < 0 ? -1 : linkIds[idx];
+	}
+
+	/**
+	 * Vehicle index of the event.
+	 */
+	public int vehicle(int i) {
+		int idx = vehicle.get(i);
+		return idx < 0 ? -1 : vehicleIds[idx];
+	}
+
+	/**
+	 * Lane index of the event, or -1 for all non-lane events.
+	 */
+	public int lane(int i) {
+		int idx = lane.get(i);
+		return idx < 0 ? -1 : laneIds[idx];
+	}
+
+	/**
+	 * Collects events in memory.
+	 */
+	public static final class Builder {
+
+		private final DoubleArrayList time = new DoubleArrayList();
+		private final ByteArrayList type = new ByteArrayList();
+		private final IntArrayList link = new IntArrayList();
+		private final IntArrayList vehicle = new IntArrayList();
+		private final IntArrayList lane = new IntArrayList();
+
+		private final Table links = new Table();
+		private final Table vehicles = new Table();
+		private final Table lanes = new Table();
+
+		/**
+		 * Add an event with the indices of its ids, -1 if not present.
+		 */
+		public Builder add(double t, byte eventType, int linkIdx, int vehicleIdx, int laneIdx) {
+			time.add(t);
+			type.add(eventType);
+			link.add(links.get(linkIdx));
+			vehicle.add(vehicles.get(vehicleIdx));
+			lane.add(lanes.get(laneIdx));
+			return this;
+		}
+
+		public int size() {
+			return time.size();
+		}
+
+		public ColumnarEvents build() {
+
+			return new ColumnarEvents(time.size(), DoubleBuffer.wrap(time.toDoubleArray()), ByteBuffer.wrap(type.toByteArray()),
+					IntBuffer.wrap(link.toIntArray()), IntBuffer.wrap(vehicle.toIntArray()), IntBuffer.wrap(lane.toIntArray()),
+					links.ids.toIntArray(), vehicles.ids.toIntArray(), lanes.ids.toIntArray());
+		}
+	}
+
+	/**
+	 * Positions of id indices.
+	 */
+	private static final class Table {
+
+		private final Int2IntMap pos = new Int2IntOpenHashMap();
+		private final IntArrayList ids = new IntArrayList();
+
+		private Table() {
+			pos.defaultReturnValue(-1);
+		}
+
+		private int get(int idx) {
+			if (idx < 0)
+				return -1;
+
+			int p = pos.get(idx);
+			if (p < 0) {
+				p = ids.size();
+				pos.put(idx, p);
+				ids.add(idx);
+			}
+			return p;
+		}
+	}
+}
@@ -0,0 +1,488 @@
+package org.matsim.analysis;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.api.experimental.events.LaneEnterEvent;
+import org.matsim.core.api.experimental.events.LaneLeaveEvent;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.lanes.Lane;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Reads vehicle movements of an events file using multiple threads.
+ * <p>
+ * One thread decompresses the input and splits it into chunks at {@code <event} boundaries. Chunks are parsed in parallel
+ * into {@link Batch}es, which are passed to the consumer on the calling thread in file order. Only the event types
+ * of {@link ColumnarEvents} are decoded, all other events are skipped.
+ */
+public final class ParallelEventsReader {
+
+	private static final Logger log = LogManager.getLogger(ParallelEventsReader.class);
+
+	/**
+	 * Uncompressed size of one chunk.
+	 */
+	private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+	private static final long PROGRESS = 10_000_000;
+
+	private static final byte[] EVENT = "<event".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] TYPE = "type".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] TIME = "time".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] LINK = "link".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] VEHICLE = "vehicle".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] LANE = "lane".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Event types, the index is the constant in {@link ColumnarEvents}.
+	 */
+	private static final byte[][] TYPES = {
+			null,
+			bytes(LinkEnterEvent.EVENT_TYPE),
+			bytes(LinkLeaveEvent.EVENT_TYPE),
+			bytes(VehicleEntersTrafficEvent.EVENT_TYPE),
+			bytes(VehicleLeavesTrafficEvent.EVENT_TYPE),
+			bytes(LaneEnterEvent.EVENT_TYPE),
+			bytes(LaneLeaveEvent.EVENT_TYPE)
+	};
+
+	/**
+	 * Marks the end of the input.
+	 */
+	private static final Batch END = new Batch(0);
+
+	private final int threads;
+
+	/**
+	 * Use all available cores.
+	 */
+	public ParallelEventsReader() {
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	/**
+	 * @param threads number of parsing threads
+	 */
+	public ParallelEventsReader(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is required");
+
+		this.threads = threads;
+	}
+
+	/**
+	 * Read an events file and pass all batches in order to the consumer.
+	 *
+	 * @return number of decoded events
+	 */
+	public long read(Path events, Consumer<Batch> consumer) {
+
+		ExecutorService parser = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "events-parser");
+			t.setDaemon(true);
+			return t;
+		});
+
+		// bounds the number of chunks in memory
+		BlockingQueue<Future<Batch>> queue = new ArrayBlockingQueue<>(2 * threads + 2);
+
+		Thread inflater = new Thread(() -> split(events, parser, queue), "events-inflater");
+		inflater.setDaemon(true);
+
+		long start = System.nanoTime();
+		long n = 0;
+
+		try {
+			inflater.start();
+
+			while (true) {
+				Batch batch = queue.take().get();
+				if (batch == END)
+					break;
+
+				batch.resolve();
+				consumer.accept(batch);
+
+				if ((n + batch.size) / PROGRESS > n / PROGRESS)
+					log.info("Read {} events", n + batch.size);
+
+				n += batch.size;
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while reading " + events, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException)
+				throw (UncheckedIOException) e.getCause();
+
+			throw new IllegalStateException("Could not read " + events, e.getCause());
+		} finally {
+			inflater.interrupt();
+			parser.shutdownNow();
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		log.info("Read {} events from {} in {} s ({} events/sec) using {} threads", n, events,
+				String.format("%.1f", seconds), String.format("%.0f", n / seconds), threads);
+
+		return n;
+	}
+
+	/**
+	 * Decompress the input and submit chunks that end before an {@code <event} element.
+	 */
+	private static void split(Path events, ExecutorService parser, BlockingQueue<Future<Batch>> queue) {
+
+		try {
+			try (InputStream in = IOUtils.getInputStream(IOUtils.getFileUrl(events.toString()))) {
+
+				byte[] buf = new byte[CHUNK_SIZE];
+				int len = 0;
+
+				while (true) {
+					len += in.readNBytes(buf, len, buf.length - len);
+					boolean eof = len < buf.length;
+
+					int split = eof ? len : lastEvent(buf, len);
+
+					// a single event larger than the buffer
+					if (split <= 0 && !eof) {
+						buf = Arrays.copyOf(buf, buf.length * 2);
+						continue;
+					}
+
+					if (split > 0) {
+						byte[] chunk = buf;
+						int end = split;
+						queue.put(parser.submit(() -> parse(chunk, end)));
+					}
+
+					if (eof)
+						break;
+
+					byte[] next = new byte[Math.max(CHUNK_SIZE, len - split)];
+					System.arraycopy(buf, split, next, 0, len - split);
+					buf = next;
+					len -= split;
+				}
+			}
+
+			queue.put(CompletableFuture.completedFuture(END));
+
+		} catch (InterruptedException e) {
+			// reading was aborted
+		} catch (IOException | RuntimeException e) {
+			CompletableFuture<Batch> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e instanceof IOException ? new UncheckedIOException((IOException) e) : e);
+			try {
+				queue.put(failed);
+			} catch (InterruptedException ex) {
+				// reading was aborted
+			}
+		}
+	}
+
+	/**
+	 * Start of the last event element after the first position, or -1 if there is none.
+	 */
+	static int lastEvent(byte[] b, int len) {
+		for (int i = len - EVENT.length - 1; i > 0; i--) {
+			if (b[i] == '<' && isEvent(b, i))
+				return i;
+		}
+		return -1;
+	}
+
+	private static boolean isEvent(byte[] b, int i) {
+		for (int k = 1; k < EVENT.length; k++) {
+			if (b[i + k] != EVENT[k])
+				return false;
+		}
+		return isWhitespace(b[i + EVENT.length]);
+	}
+
+	/**
+	 * Parse all relevant events in {@code b[0, to)}.
+	 */
+	static Batch parse(byte[] b, int to) {
+
+		Batch batch = new Batch(to / 128);
+
+		int i = 0;
+		while (i < to - EVENT.length) {
+
+			if (b[i] != '<' || !isEvent(b, i)) {
+				i++;
+				continue;
+			}
+
+			i += EVENT.length;
+
+			int typeStart = -1, typeEnd = -1, timeStart = -1, timeEnd = -1;
+			int linkStart = -1, linkEnd = -1, vehicleStart = -1, vehicleEnd = -1, laneStart = -1, laneEnd = -1;
+
+			while (true) {
+				while (i < to && isWhitespace(b[i]))
+					i++;
+
+				if (i >= to || b[i] == '/' || b[i] == '>')
+					break;
+
+				int nameStart = i;
+				while (i < to && b[i] != '=' && !isWhitespace(b[i]))
+					i++;
+				int nameEnd = i;
+
+				while (i < to && b[i] != '"' && b[i] != '\'')
+					i++;
+				if (i >= to)
+					break;
+
+				byte quote = b[i++];
+				int valueStart = i;
+				while (i < to && b[i] != quote)
+					i++;
+				int valueEnd = i++;
+
+				if (equals(b, nameStart, nameEnd, TYPE)) {
+					typeStart = valueStart;
+					typeEnd = valueEnd;
+				} else if (equals(b, nameStart, nameEnd, TIME)) {
+					timeStart = valueStart;
+					timeEnd = valueEnd;
+				} else if (equals(b, nameStart, nameEnd, LINK)) {
+					linkStart = valueStart;
+					linkEnd = valueEnd;
+				} else if (equals(b, nameStart, nameEnd, VEHICLE)) {
+					vehicleStart = valueStart;
+					vehicleEnd = valueEnd;
+				} else if (equals(b, nameStart, nameEnd, LANE)) {
+					laneStart = valueStart;
+					laneEnd = valueEnd;
+				}
+			}
+
+			byte type = type(b, typeStart, typeEnd);
+			if (type == 0)
+				continue;
+
+			batch.time.add(parseDouble(b, timeStart, timeEnd));
+			batch.type.add(type);
+			batch.link.add(batch.links.get(b, linkStart, linkEnd));
+			batch.vehicle.add(batch.vehicles.get(b, vehicleStart, vehicleEnd));
+			batch.lane.add(batch.lanes.get(b, laneStart, laneEnd));
+		}
+
+		batch.size = batch.time.size();
+		return batch;
+	}
+
+	private static byte type(byte[] b, int from, int to) {
+		if (from < 0)
+			return 0;
+
+		for (byte i = 1; i < TYPES.length; i++) {
+			if (equals(b, from, to, TYPES[i]))
+				return i;
+		}
+		return 0;
+	}
+
+	/**
+	 * Parses plain decimals directly, everything else with {@link Double#parseDouble(String)}.
+	 */
+	static double parseDouble(byte[] b, int from, int to) {
+
+		long value = 0;
+		int digits = 0;
+		int decimals = -1;
+
+		for (int i = from; i < to; i++) {
+			byte c = b[i];
+			if (c >= '0' && c <= '9' && digits < 15) {
+				value = value * 10 + (c - '0');
+				digits++;
+				if (decimals >= 0)
+					decimals++;
+			} else if (c == '.' && decimals < 0) {
+				decimals = 0;
+			} else
+				return Double.parseDouble(new String(b, from, to - from, StandardCharsets.US_ASCII));
+		}
+
+		if (digits == 0)
+			return Double.parseDouble(new String(b, from, to - from, StandardCharsets.US_ASCII));
+
+		// exact for up to 15 digits, because both operands are representable
+		return decimals <= 0 ? value : value / POW10[decimals];
+	}
+
+	private static final double[] POW10 = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+	private static boolean equals(byte[] b, int from, int to, byte[] other) {
+		if (to - from != other.length)
+			return false;
+
+		for (int i = 0; i < other.length; i++) {
+			if (b[from + i] != other[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isWhitespace(byte c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decode an attribute value.
+	 */
+	static String decode(byte[] b, int from, int to) {
+		String s = new String(b, from, to - from, StandardCharsets.UTF_8);
+		if (s.indexOf('&') < 0)
+			return s;
+
+		return s.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+	}
+
+	/**
+	 * Parsed events of one chunk.
+	 */
+	public static final class Batch {
+
+		private final DoubleArrayList time;
+		private final IntArrayList type;
+		private final IntArrayList link;
+		private final IntArrayList vehicle;
+		private final IntArrayList lane;
+
+		/**
+		 * Ids are collected per chunk, because they can only be created on one thread.
+		 */
+		private final Strings links = new Strings();
+		private final Strings vehicles = new Strings();
+		private final Strings lanes = new Strings();
+
+		private int size;
+
+		private Batch(int capacity) {
+			time = new DoubleArrayList(capacity);
+			type = new IntArrayList(capacity);
+			link = new IntArrayList(capacity);
+			vehicle = new IntArrayList(capacity);
+			lane = new IntArrayList(capacity);
+		}
+
+		/**
+		 * Replace positions in the string tables with id indices.
+		 */
+		private void resolve() {
+			links.resolve(link, Link.class);
+			vehicles.resolve(vehicle, Vehicle.class);
+			lanes.resolve(lane, Lane.class);
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public double time(int i) {
+			return time.getDouble(i);
+		}
+
+		/**
+		 * Event type, one of the constants in {@link ColumnarEvents}.
+		 */
+		public byte type(int i) {
+			return (byte) type.getInt(i);
+		}
+
+		/**
+		 * Link index of the event, or -1.
+		 */
+		public int link(int i) {
+			return link.getInt(i);
+		}
+
+		/**
+		 * Vehicle index of the event, or -1.
+		 */
+		public int vehicle(int i) {
+			return vehicle.getInt(i);
+		}
+
+		/**
+		 * Lane index of the event, or -1.
+		 */
+		public int lane(int i) {
+			return lane.getInt(i);
+		}
+	}
+
+	/**
+	 * Distinct strings of one chunk.
+	 */
+	private static final class Strings {
+
+		private final Object2IntMap<String> pos = new Object2IntOpenHashMap<>();
+		private final List<String> values = new ArrayList<>();
+
+		private Strings() {
+			pos.defaultReturnValue(-1);
+		}
+
+		private int get(byte[] b, int from, int to) {
+			if (from < 0)
+				return -1;
+
+			String s = decode(b, from, to);
+			int p = pos.getInt(s);
+			if (p < 0) {
+				p = values.size();
+				pos.put(s, p);
+				values.add(s);
+			}
+			return p;
+		}
+
+		private void resolve(IntArrayList column, Class<?> type) {
+
+			int[] idx = new int[values.size()];
+			for (int i = 0; i < idx.length; i++)
+				idx[i] = Id.create(values.get(i), type).index();
+
+			for (int i = 0; i < column.size(); i++) {
+				int p = column.getInt(i);
+				if (p >= 0)
+					column.set(i, idx[p]);
+			}
+		}
+	}
+}
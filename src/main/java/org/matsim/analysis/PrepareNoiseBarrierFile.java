@@ -1,9 +1,14 @@
 package org.matsim.analysis;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.geotools.feature.DefaultFeatureCollection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geojson.feature.FeatureJSON;
@@ -17,21 +22,35 @@ import org.matsim.application.MATSimAppCommand;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.core.utils.io.IOUtils;
+import org.matsim.prepare.LinkIndex;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import picocli.CommandLine;
 
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.IntStream;
 
 @CommandLine.Command(
         name = "prepare-noise-barrier",
         description = "Prepare noise barrier file based on the noise barrier data"
 )
 public class PrepareNoiseBarrierFile implements MATSimAppCommand {
+
+    private static final Logger log = LogManager.getLogger(PrepareNoiseBarrierFile.class);
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    /**
+     * Number of features buffered in parallel before they are written.
+     */
+    private static final int BATCH_SIZE = 1024;
+
     @CommandLine.Option(names = "--noise-barrier", description = "Noise barrier file", required = true)
     private String noiseBarrierFile;
 
@@ -45,17 +64,69 @@ public class PrepareNoiseBarrierFile implements MATSimAppCommand {
     @Override
     public Integer call() throws Exception {
         Network network = NetworkUtils.readNetwork(networkFile);
-        GeometryFactory geometryFactory = new GeometryFactory();
 
-        DefaultFeatureCollection featureCollection = new DefaultFeatureCollection();
         SimpleFeatureTypeBuilder featureTypeBuilder = new SimpleFeatureTypeBuilder();
         featureTypeBuilder.setName("soundBarriers");
         featureTypeBuilder.add("geometry", Geometry.class);
         final SimpleFeatureType featureType = featureTypeBuilder.buildFeatureType();
 
-        int counter = 0;
-        List<Link> includedLink = new ArrayList<>();
-        try (CSVParser parser = new CSVParser(Files.newBufferedReader(Path.of(noiseBarrierFile)),
+        List<Coord> barriers = readBarriers(Path.of(noiseBarrierFile));
+
+        LinkIndex index = new LinkIndex(network.getLinks().values());
+
+        // nearest link segment of each barrier
+        int[] nearest = barriers.parallelStream()
+                .mapToInt(c -> index.nearest(c.getX(), c.getY()))
+                .toArray();
+
+        // first barrier at each link, in the order of the input
+        IntSet included = new IntOpenHashSet();
+        IntList links = new IntArrayList();
+        for (int link : nearest) {
+            if (link >= 0 && included.add(link))
+                links.add(link);
+        }
+
+        log.info("Matched {} noise barriers to {} links", barriers.size(), links.size());
+
+        // Write json file. For some reason, the reader cannot read gzip file properly. So only use .json or .geojson as the ending of the output path!
+        FeatureJSON featureJSON = new FeatureJSON();
+        if (!Files.exists(outputPath.getParent()))
+            Files.createDirectories(outputPath.getParent());
+
+        // features are written while they are created, in batches that are buffered in parallel
+        try (OutputStream outputStream = IOUtils.getOutputStream(outputPath.toFile().toURI().toURL(), false)) {
+            outputStream.write("{\"type\":\"FeatureCollection\",\"features\":[".getBytes(StandardCharsets.UTF_8));
+
+            for (int start = 0; start < links.size(); start += BATCH_SIZE) {
+                int offset = start;
+                Geometry[] polygons = IntStream.range(start, Math.min(start + BATCH_SIZE, links.size())).parallel()
+                        .mapToObj(i -> buffer(index.getLink(links.getInt(i))))
+                        .toArray(Geometry[]::new);
+
+                for (int i = 0; i < polygons.length; i++) {
+                    SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType);
+                    featureBuilder.add(polygons[i]);
+                    SimpleFeature feature = featureBuilder.buildFeature("noise_barrier_" + (offset + i));
+
+                    if (offset + i > 0)
+                        outputStream.write(',');
+
+                    featureJSON.writeFeature(feature, outputStream);
+                }
+            }
+
+            outputStream.write("]}".getBytes(StandardCharsets.UTF_8));
+        }
+        return 0;
+    }
+
+    /**
+     * Read coordinates of noise barriers and tunnels.
+     */
+    private static List<Coord> readBarriers(Path path) throws IOException {
+        List<Coord> barriers = new ArrayList<>();
+        try (CSVParser parser = new CSVParser(Files.newBufferedReader(path),
                 CSVFormat.DEFAULT.withDelimiter(';').withFirstRecordAsHeader())) {
             for (CSVRecord record : parser) {
                 if (record.get(2).contains("Lärm") || record.get(2).contains("tunnel")) {
@@ -68,38 +139,23 @@ public class PrepareNoiseBarrierFile implements MATSimAppCommand {
                         continue;
                     }
 
-                    Coord noiseBarrierCoord = new Coord(x, y);
-                    Link noiseBarrierLink = NetworkUtils.getNearestLink(network, noiseBarrierCoord);
-                    if (includedLink.contains(noiseBarrierLink)) {
-                        continue;
-                    }
-                    includedLink.add(noiseBarrierLink);
-
-                    Coord coord1 = noiseBarrierLink.getFromNode().getCoord();
-                    Coord coord2 = noiseBarrierLink.getToNode().getCoord();
-
-                    Coordinate[] coordinates = new Coordinate[]{MGC.coord2Coordinate(coord1), MGC.coord2Coordinate(coord2)};
-                    Geometry line = geometryFactory.createLineString(coordinates);
-                    Geometry polygon = line.buffer(5);
-
-                    SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType);
-                    featureBuilder.add(polygon);
-                    SimpleFeature feature = featureBuilder.buildFeature("noise_barrier_" + counter);
-                    featureCollection.add(feature);
-                    counter++;
+                    barriers.add(new Coord(x, y));
                 }
             }
         }
+        return barriers;
+    }
 
-        // Write json file. For some reason, the reader cannot read gzip file properly. So only use .json or .geojson as the ending of the output path!
-        FeatureJSON featureJSON = new FeatureJSON();
-        if (!Files.exists(outputPath.getParent()))
-            Files.createDirectories(outputPath.getParent());
+    /**
+     * Polygon around the straight line of a link.
+     */
+    private static Geometry buffer(Link link) {
+        Coord coord1 = link.getFromNode().getCoord();
+        Coord coord2 = link.getToNode().getCoord();
 
-        try (OutputStream outputStream = IOUtils.getOutputStream(outputPath.toFile().toURI().toURL(), false)) {
-            featureJSON.writeFeatureCollection(featureCollection, outputStream);
-        }
-        return 0;
+        Coordinate[] coordinates = new Coordinate[]{MGC.coord2Coordinate(coord1), MGC.coord2Coordinate(coord2)};
+        Geometry line = GEOMETRY_FACTORY.createLineString(coordinates);
+        return line.buffer(5);
     }
 
     public static void main(String[] args) {
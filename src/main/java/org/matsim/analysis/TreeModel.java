@@ -0,0 +1,148 @@
+package org.matsim.analysis;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Regression tree, which is evaluated on flat primitive arrays instead of generated code.
+ * <p>
+ * Models are stored as csv with one row per node and the columns <i>node, feature, threshold, left, right, value</i>.
+ * Inner nodes continue with <i>left</i> if the input feature is less or equal than the threshold, otherwise with <i>right</i>.
+ * Leaves have a negative feature index and contain the predicted value.
+ */
+public final class TreeModel {
+
+	private final int[] feature;
+	private final double[] threshold;
+	private final int[] left;
+	private final int[] right;
+	private final double[] value;
+
+	/**
+	 * Number of input features used by this model.
+	 */
+	private final int features;
+
+	private TreeModel(int[] feature, double[] threshold, int[] left, int[] right, double[] value) {
+		this.feature = feature;
+		this.threshold = threshold;
+		this.left = left;
+		this.right = right;
+		this.value = value;
+		this.features = Arrays.stream(feature).max().orElse(-1) + 1;
+	}
+
+	/**
+	 * Read model from a csv file.
+	 */
+	public static TreeModel read(Path path) {
+		return read(IOUtils.getFileUrl(path.toString()));
+	}
+
+	/**
+	 * Read model from a csv resource.
+	 */
+	public static TreeModel read(URL url) {
+
+		if (url == null)
+			throw new IllegalArgumentException("Model resource not found.");
+
+		try (BufferedReader reader = IOUtils.getBufferedReader(url);
+		     CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+
+			List<CSVRecord> records = parser.getRecords();
+			int n = records.size();
+
+			int[] feature = new int[n];
+			double[] threshold = new double[n];
+			int[] left = new int[n];
+			int[] right = new int[n];
+			double[] value = new double[n];
+
+			for (CSVRecord record : records) {
+
+				int node = Integer.parseInt(record.get("node"));
+				if (node < 0 || node >= n)
+					throw new IllegalArgumentException("Node index out of range: " + node);
+
+				feature[node] = Integer.parseInt(record.get("feature"));
+
+				if (feature[node] >= 0) {
+					threshold[node] = Double.parseDouble(record.get("threshold"));
+					left[node] = Integer.parseInt(record.get("left"));
+					right[node] = Integer.parseInt(record.get("right"));
+
+					if (left[node] <= node || right[node] <= node || left[node] >= n || right[node] >= n)
+						throw new IllegalArgumentException("Invalid children for node " + node + " in " + url);
+
+				} else
+					value[node] = Double.parseDouble(record.get("value"));
+			}
+
+			return new TreeModel(feature, threshold, left, right, value);
+
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Evaluate a model with two features, without allocating an input array.
+	 */
+	public double score(double x0, double x1) {
+
+		if (features > 2)
+			throw new IllegalStateException("Model requires " + features + " features.");
+
+		int n = 0;
+		while (feature[n] >= 0) {
+			double x = feature[n] == 0 ? x0 : x1;
+			n = x <= threshold[n] ? left[n] : right[n];
+		}
+
+		return value[n];
+	}
+
+	/**
+	 * Evaluate the model for arbitrary number of features.
+	 */
+	public double score(double[] input) {
+
+		int n = 0;
+		while (feature[n] >= 0) {
+			n = input[feature[n]] <= threshold[n] ? left[n] : right[n];
+		}
+
+		return value[n];
+	}
+
+	/**
+	 * Number of input features.
+	 */
+	public int getNumberOfFeatures() {
+		return features;
+	}
+
+	/**
+	 * Sorted and distinct split thresholds used for one feature.
+	 */
+	public double[] getThresholds(int feature) {
+		return IntStream.range(0, threshold.length)
+				.filter(n -> this.feature[n] == feature)
+				.mapToDouble(n -> threshold[n])
+				.sorted()
+				.distinct()
+				.toArray();
+	}
+}
@@ -1,8 +1,8 @@
 package org.matsim.prepare;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
-import it.unimi.dsi.fastutil.doubles.DoubleList;
-import org.apache.commons.math3.distribution.LogNormalDistribution;
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import org.apache.commons.math3.special.Erf;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Coord;
@@ -10,7 +10,6 @@ import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Person;
-import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.application.options.ShpOptions;
@@ -25,8 +24,8 @@ import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.function.Predicate;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
 import static org.matsim.run.RunDuesseldorfScenario.VERSION;
 
@@ -38,6 +37,11 @@ public class AdjustPopulationForCutout implements MATSimAppCommand {
 
 	private static final Logger log = LogManager.getLogger(AdjustPopulationForCutout.class);
 
+	/**
+	 * Seed for the random displacement, combined with each coordinate.
+	 */
+	private static final long SEED = 1234;
+
 	@CommandLine.Parameters(arity = "1", paramLabel = "INPUT", description = "Input population xml", defaultValue = "scenarios/input/duesseldorf-" + VERSION + "-25pct.plans.xml.gz")
 	private List<Path> input;
 
@@ -69,119 +73,177 @@ public class AdjustPopulationForCutout implements MATSimAppCommand {
 		Population population = PopulationUtils.readPopulation(input.get(0).toString());
 		Network network = NetworkUtils.readNetwork(networkPath.toString());
 
-		ShpOptions.Index index = shp.createIndex(RunDuesseldorfScenario.COORDINATE_SYSTEM, "_");
+		AreaIndex area = AreaIndex.of(shp, RunDuesseldorfScenario.COORDINATE_SYSTEM);
 
-		DoubleList dist = computeLinkDistances(population, network, act -> index.contains(act.getCoord()));
+		LinkIndex links = new LinkIndex(network.getLinks().values());
 
-		// Data exploring
-		/*
-		try (BufferedWriter writer = Files.newBufferedWriter(Path.of("dist.csv"))) {
-			for (Double d : dist) {
-				writer.write(d + "\n");
+		// unique coordinates of all activities, with the number of activities at each
+		Object2IntMap<Coord> counts = new Object2IntLinkedOpenHashMap<>();
+		for (Person p : population.getPersons().values()) {
+			for (Activity act : PopulationUtils.getActivities(p.getSelectedPlan(), TripStructureUtils.StageActivityHandling.ExcludeStageActivities)) {
+				counts.mergeInt(act.getCoord(), 1, Integer::sum);
 			}
 		}
-		 */
 
-		double mean = dist.doubleStream().sum() / dist.size();
-		double std = Math.sqrt(dist.doubleStream().map(x -> (x - mean) * (x - mean)).sum() / dist.size());
+		Coord[] coords = counts.keySet().toArray(new Coord[0]);
+		boolean[] inside = area.contains(coords);
 
-		log.info("Distance to nearest link distribution within shape has mean: {}, std: {}", mean, std);
+		log.info("Mapping {} unique activity coordinates to {} links", coords.length, links.size());
 
-		double lmean = dist.doubleStream().map(Math::log).sum() / dist.size();
-		double lstd = Math.sqrt(dist.doubleStream().map(Math::log).map(x -> (x - lmean) * (x - lmean)).sum() / dist.size());
+		Nearest[] nearest = nearest(links, coords);
 
-		LogNormalDistribution normal = new LogNormalDistribution(lmean, lstd);
-		Random r = new Random(1234);
+		Stats in = new Stats();
+		Stats out = new Stats();
+		for (int i = 0; i < coords.length; i++)
+			(inside[i] ? in : out).add(nearest[i].distance, counts.getInt(coords[i]));
 
-		dist.clear();
+		log.info("Distance to nearest link distribution within shape has mean: {}, std: {}", in.mean(), in.std());
+		log.info("Distance to nearest link distribution outside shape had mean: {}, std: {}", out.mean(), out.std());
 
-		// same coordinates always need to be mapped to same position
-		Map<Coord, Coord> mapping = new HashMap<>();
+		// same coordinates always need to be mapped to same position, the random numbers depend only on the coordinate
+		Coord[] mapped = new Coord[coords.length];
+		IntStream.range(0, coords.length).parallel()
+				.filter(i -> !inside[i])
+				.forEach(i -> mapped[i] = move(coords[i], nearest[i], in.logMean(), in.logStd()));
 
-		for (Person p : population.getPersons().values()) {
+		Map<Coord, Coord> mapping = new HashMap<>();
+		for (int i = 0; i < coords.length; i++) {
+			if (mapped[i] != null)
+				mapping.put(coords[i], mapped[i]);
+		}
 
-			Plan plan = p.getSelectedPlan();
+		Nearest[] adjusted = nearest(links, mapped);
 
-			for (Activity act : PopulationUtils.getActivities(plan, TripStructureUtils.StageActivityHandling.ExcludeStageActivities)) {
+		Stats after = new Stats();
+		for (int i = 0; i < coords.length; i++) {
+			if (adjusted[i] != null)
+				after.add(adjusted[i].distance, counts.getInt(coords[i]));
+		}
 
-				if (!index.contains(act.getCoord())) {
+		log.info("Distance to nearest link distribution outside shape after adjusting has mean: {}, std: {}", after.mean(), after.std());
 
-					Link link = NetworkUtils.getNearestLinkExactly(network, act.getCoord());
-					Coord coord = NetworkUtils.findNearestPointOnLink(act.getCoord(), link);
-					double d = CoordUtils.calcEuclideanDistance(act.getCoord(), coord);
+		for (Person p : population.getPersons().values()) {
+			for (Activity act : PopulationUtils.getActivities(p.getSelectedPlan(), TripStructureUtils.StageActivityHandling.ExcludeStageActivities)) {
+				Coord v = mapping.get(act.getCoord());
+				if (v != null)
+					act.setCoord(v);
+			}
+		}
 
-					dist.add(d);
+		PopulationUtils.writePopulation(population, output.toString());
 
-					Coord v;
-					if (mapping.containsKey(act.getCoord()))
-						v = mapping.get(act.getCoord());
-					else {
+		return 0;
+	}
 
-						// Compute perpendicular vector and normalize length to 1
-						double x = link.getFromNode().getCoord().getX() - link.getToNode().getCoord().getX();
-						double y = link.getFromNode().getCoord().getY() - link.getToNode().getCoord().getY();
+	/**
+	 * Move a coordinate perpendicular to its nearest link, with distance drawn from a log-normal distribution.
+	 */
+	private Coord move(Coord orig, Nearest nearest, double lmean, double lstd) {
 
-						double length = Math.sqrt(x*x + y*y);
-						x /= length;
-						y /= length;
+		Link link = nearest.link;
+		Coord coord = nearest.point;
 
-						double m = scale * Math.max(0, normal.sample());
+		// Compute perpendicular vector and normalize length to 1
+		double x = link.getFromNode().getCoord().getX() - link.getToNode().getCoord().getX();
+		double y = link.getFromNode().getCoord().getY() - link.getToNode().getCoord().getY();
 
-						// Random direction
-						if (r.nextBoolean()) {
-							v = new Coord(coord.getX() + y * m, coord.getY() - x * m);
-						} else {
-							v = new Coord(coord.getX() - y * m, coord.getY() + x * m);
-						}
+		double length = Math.sqrt(x*x + y*y);
+		x /= length;
+		y /= length;
 
+		SplittableRandom r = new SplittableRandom(SEED ^ (31 * Double.hashCode(orig.getX()) + Double.hashCode(orig.getY())));
 
-						mapping.put(act.getCoord(), v);
-					}
+		// inverse of the log-normal cdf
+		double sample = Math.exp(lmean + lstd * Math.sqrt(2) * Erf.erfInv(2 * r.nextDouble() - 1));
+		double m = scale * Math.max(0, sample);
 
-					act.setCoord(v);
-				}
-			}
+		// Random direction
+		if (r.nextBoolean()) {
+			return new Coord(coord.getX() + y * m, coord.getY() - x * m);
+		} else {
+			return new Coord(coord.getX() - y * m, coord.getY() + x * m);
 		}
+	}
 
-		double mean2 = dist.doubleStream().sum() / dist.size();
-		double std2 = Math.sqrt(dist.doubleStream().map(x -> (x - mean2) * (x - mean2)).sum() / dist.size());
-
-		log.info("Distance to nearest link distribution outside shape had mean: {}, std: {}", mean2, std2);
-
-		dist = computeLinkDistances(population, network, act -> !index.contains(act.getCoord()));
-
-		double mean3 = dist.doubleStream().sum() / dist.size();
-		double std3 = Math.sqrt(dist.doubleStream().map(x -> (x - mean3) * (x - mean3)).sum() / dist.size());
+	/**
+	 * Compute nearest link and distance for all given coordinates in parallel. Entries are null where the coordinate is null.
+	 */
+	private static Nearest[] nearest(LinkIndex links, Coord[] coords) {
+		Nearest[] result = new Nearest[coords.length];
+
+		IntStream.range(0, coords.length).parallel()
+				.filter(i -> coords[i] != null)
+				.forEach(i -> {
+					Link link = links.getNearestLink(coords[i]);
+					Coord point = NetworkUtils.findNearestPointOnLink(coords[i], link);
+					result[i] = new Nearest(link, point, CoordUtils.calcEuclideanDistance(coords[i], point));
+				});
+
+		return result;
+	}
 
-		log.info("Distance to nearest link distribution outside shape after adjusting has mean: {}, std: {}", mean3, std3);
+	/**
+	 * Nearest link and point on it.
+	 */
+	private static final class Nearest {
 
-		PopulationUtils.writePopulation(population, output.toString());
+		private final Link link;
+		private final Coord point;
+		private final double distance;
 
-		return 0;
+		Nearest(Link link, Coord point, double distance) {
+			this.link = link;
+			this.point = point;
+			this.distance = distance;
+		}
 	}
 
 	/**
-	 * Compute distances to the nearest link for all activities that match the predicate.
+	 * Mean and standard deviation of distances and their logarithm, computed in one pass.
 	 */
-	private DoubleList computeLinkDistances(Population population, Network network, Predicate<Activity> f) {
-		DoubleList dist = new DoubleArrayList();
+	static final class Stats {
 
-		for (Person p : population.getPersons().values()) {
+		private long n;
+		private double mean;
+		private double m2;
 
-			Plan plan = p.getSelectedPlan();
+		private long logN;
+		private double logMean;
+		private double logM2;
 
-			for (Activity act : PopulationUtils.getActivities(plan, TripStructureUtils.StageActivityHandling.ExcludeStageActivities)) {
-				if (f.test(act)) {
+		/**
+		 * Add a distance {@code count} times.
+		 */
+		void add(double d, int count) {
+			n += count;
+			double delta = d - mean;
+			mean += delta * count / n;
+			m2 += delta * (d - mean) * count;
+
+			// log is undefined for points directly on a link
+			if (d > 0) {
+				double l = Math.log(d);
+				logN += count;
+				delta = l - logMean;
+				logMean += delta * count / logN;
+				logM2 += delta * (l - logMean) * count;
+			}
+		}
 
-					Link link = NetworkUtils.getNearestLinkExactly(network, act.getCoord());
+		double mean() {
+			return n > 0 ? mean : Double.NaN;
+		}
 
-					Coord coord = NetworkUtils.findNearestPointOnLink(act.getCoord(), link);
+		double std() {
+			return n > 0 ? Math.sqrt(m2 / n) : Double.NaN;
+		}
 
-					dist.add(CoordUtils.calcEuclideanDistance(act.getCoord(), coord));
-				}
-			}
+		double logMean() {
+			return logN > 0 ? logMean : Double.NaN;
 		}
 
-		return dist;
+		double logStd() {
+			return logN > 0 ? Math.sqrt(logM2 / logN) : Double.NaN;
+		}
 	}
 }
@@ -0,0 +1,141 @@
+package org.matsim.prepare;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateFilter;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.application.options.ShpOptions;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+
+import java.util.stream.IntStream;
+
+/**
+ * Point in area tests against a fixed geometry, e.g. the study area.
+ * <p>
+ * The envelope of the geometry is rasterized into a grid. Cells entirely inside or outside decide a query with one
+ * array lookup, only points in cells crossing the boundary are tested exactly against the {@link PreparedGeometry}.
+ * Results are the same as for {@link Geometry#contains(Geometry)}, i.e. points on the boundary are not contained.
+ */
+public final class AreaIndex {
+
+	/**
+	 * Number of cells along the longer side of the envelope.
+	 */
+	public static final int RESOLUTION = 256;
+
+	private static final byte OUTSIDE = 0;
+	private static final byte INSIDE = 1;
+	private static final byte BOUNDARY = 2;
+
+	private static final GeometryFactory FACTORY = new GeometryFactory();
+
+	private final PreparedGeometry geometry;
+	private final double minX;
+	private final double minY;
+	private final double cellSize;
+	private final int nx;
+	private final int ny;
+	private final byte[] cells;
+
+	public AreaIndex(Geometry geometry) {
+		this(geometry, RESOLUTION);
+	}
+
+	/**
+	 * @param resolution number of cells along the longer side of the envelope
+	 */
+	public AreaIndex(Geometry geometry, int resolution) {
+
+		this.geometry = PreparedGeometryFactory.prepare(geometry);
+
+		Envelope env = geometry.getEnvelopeInternal();
+		if (env.isNull()) {
+			minX = minY = cellSize = 0;
+			nx = ny = 0;
+			cells = new byte[0];
+			return;
+		}
+
+		minX = env.getMinX();
+		minY = env.getMinY();
+		cellSize = Math.max(Math.max(env.getWidth(), env.getHeight()) / resolution, 1e-9);
+		nx = Math.max(1, (int) Math.ceil(env.getWidth() / cellSize));
+		ny = Math.max(1, (int) Math.ceil(env.getHeight() / cellSize));
+		cells = new byte[nx * ny];
+
+		// the index of the prepared geometry is built before it is used concurrently
+		this.geometry.intersects(FACTORY.toGeometry(env));
+
+		IntStream.range(0, cells.length).parallel().forEach(i -> {
+			double x = minX + (i % nx) * cellSize;
+			double y = minY + (i / nx) * cellSize;
+			Geometry cell = FACTORY.toGeometry(new Envelope(x, x + cellSize, y, y + cellSize));
+
+			if (this.geometry.containsProperly(cell))
+				cells[i] = INSIDE;
+			else if (this.geometry.intersects(cell))
+				cells[i] = BOUNDARY;
+			else
+				cells[i] = OUTSIDE;
+		});
+	}
+
+	/**
+	 * Create an index of all features in a shape file, with coordinates transformed to {@code crs}.
+	 */
+	public static AreaIndex of(ShpOptions shp, String crs) {
+
+		Geometry geometry = shp.getGeometry().copy();
+
+		if (shp.getShapeCrs() != null && !shp.getShapeCrs().equals(crs)) {
+			CoordinateTransformation ct = TransformationFactory.getCoordinateTransformation(shp.getShapeCrs(), crs);
+			geometry.apply((CoordinateFilter) c -> {
+				Coord t = ct.transform(new Coord(c.x, c.y));
+				c.setX(t.getX());
+				c.setY(t.getY());
+			});
+			geometry.geometryChanged();
+		}
+
+		return new AreaIndex(geometry);
+	}
+
+	public boolean contains(double x, double y) {
+
+		int cx = (int) Math.floor((x - minX) / cellSize);
+		int cy = (int) Math.floor((y - minY) / cellSize);
+
+		// right and top edge of the envelope belong to the last cell
+		if (cx == nx && x <= minX + nx * cellSize)
+			cx--;
+		if (cy == ny && y <= minY + ny * cellSize)
+			cy--;
+
+		if (cx < 0 || cy < 0 || cx >= nx || cy >= ny)
+			return false;
+
+		byte cell = cells[cy * nx + cx];
+		if (cell != BOUNDARY)
+			return cell == INSIDE;
+
+		return geometry.contains(FACTORY.createPoint(new Coordinate(x, y)));
+	}
+
+	public boolean contains(Coord coord) {
+		return contains(coord.getX(), coord.getY());
+	}
+
+	/**
+	 * Test all coordinates in parallel.
+	 */
+	public boolean[] contains(Coord[] coords) {
+		boolean[] result = new boolean[coords.length];
+		IntStream.range(0, coords.length).parallel().forEach(i -> result[i] = contains(coords[i]));
+		return result;
+	}
+}
@@ -0,0 +1,178 @@
+package org.matsim.prepare;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output stream that passes written data in chunks to a background thread, which writes them to the delegate.
+ * Expensive stages of the delegate, e.g. compression, then don't block the producing thread.
+ */
+public final class AsyncOutputStream extends OutputStream {
+
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Marks the end of the stream.
+	 */
+	private static final byte[] END = new byte[0];
+
+	/**
+	 * Interval in which a blocked producer checks whether the writing thread has failed.
+	 */
+	private static final long POLL_MS = 100;
+
+	private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(8);
+	private final Thread thread;
+
+	private byte[] buffer = new byte[CHUNK_SIZE];
+	private int pos = 0;
+	private boolean closed = false;
+
+	/**
+	 * First failure of the writing thread, no further chunks are accepted afterwards.
+	 */
+	private volatile Throwable error;
+
+	/**
+	 * Set when the writing thread has ended, either after the end marker or a failure.
+	 */
+	private volatile boolean finished;
+
+	public AsyncOutputStream(OutputStream delegate) {
+
+		thread = new Thread(() -> {
+			try {
+				byte[] chunk;
+				while ((chunk = queue.take()) != END)
+					delegate.write(chunk);
+
+				delegate.close();
+
+			} catch (InterruptedException e) {
+				error = new InterruptedIOException("Writing thread was interrupted");
+			} catch (Throwable e) {
+				error = e;
+			} finally {
+				finished = true;
+
+				// release memory of chunks that will not be written
+				queue.clear();
+
+				if (error != null)
+					closeQuietly(delegate);
+			}
+		}, "async-output");
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static void closeQuietly(OutputStream delegate) {
+		try {
+			delegate.close();
+		} catch (Throwable e) {
+			// the original failure is reported
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (pos == buffer.length)
+			flushChunk();
+
+		buffer[pos++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkError();
+
+		while (len > 0) {
+			if (pos == buffer.length)
+				flushChunk();
+
+			int n = Math.min(len, buffer.length - pos);
+			System.arraycopy(b, off, buffer, pos, n);
+			pos += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Hands buffered data to the writing thread. It is not guaranteed to be written to the delegate on return.
+	 */
+	@Override
+	public void flush() throws IOException {
+		flushChunk();
+	}
+
+	/**
+	 * Hand the current chunk to the writing thread.
+	 */
+	private void flushChunk() throws IOException {
+
+		checkError();
+
+		if (pos == 0)
+			return;
+
+		byte[] chunk = pos == buffer.length ? buffer : Arrays.copyOf(buffer, pos);
+		put(chunk);
+
+		buffer = new byte[CHUNK_SIZE];
+		pos = 0;
+	}
+
+	/**
+	 * Wait for space in the queue, but fail if the writing thread has ended in the meantime.
+	 */
+	private void put(byte[] chunk) throws IOException {
+		try {
+			while (!queue.offer(chunk, POLL_MS, TimeUnit.MILLISECONDS)) {
+				checkError();
+				if (finished)
+					throw new IOException("Writing thread has ended");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing");
+		}
+	}
+
+	private void checkError() throws IOException {
+		Throwable e = error;
+		if (e != null)
+			throw new IOException("Writing failed", e);
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		if (closed)
+			return;
+
+		closed = true;
+
+		try {
+			flushChunk();
+		} finally {
+			if (!finished)
+				put(END);
+
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while closing");
+			}
+		}
+
+		checkError();
+	}
+}
@@ -0,0 +1,354 @@
+package org.matsim.prepare;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.lanes.Lane;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Turn or lane capacities from SUMO, stored in primitive columns.
+ * <p>
+ * Links and lanes are stored as their {@link Id#index()}, rows are unique per from link, to link and lane.
+ * The lane is {@link #NO_LANE} for capacities of whole links. Rows are found by the packed key of from and to link,
+ * which leads to the first row of that turn. Further rows of the same turn, i.e. other lanes, are chained.
+ */
+public final class CapacityTable {
+
+	public static final int NO_LANE = -1;
+
+	/**
+	 * Min. number of bytes parsed by one task.
+	 */
+	private static final int CHUNK_SIZE = 1024 * 1024;
+
+	private final int size;
+	private final int[] from;
+	private final int[] to;
+	private final int[] lane;
+	private final double[] value;
+
+	/**
+	 * First row for each packed key of from and to link.
+	 */
+	private final Long2IntMap index;
+
+	/**
+	 * Next row of the same turn, or -1.
+	 */
+	private final int[] next;
+
+	private CapacityTable(int size, int[] from, int[] to, int[] lane, double[] value, Long2IntMap index, int[] next) {
+		this.size = size;
+		this.from = from;
+		this.to = to;
+		this.lane = lane;
+		this.value = value;
+		this.index = index;
+		this.next = next;
+	}
+
+	/**
+	 * Read capacities from a csv file, which is parsed in chunks on multiple threads.
+	 * Chunks are split at line breaks, so quoted values must not contain these.
+	 *
+	 * @param laneColumn column of the from lane, null if capacities are for whole links
+	 * @param sum        sum values of duplicate rows, otherwise the last value is used
+	 */
+	public static CapacityTable read(Path input, String fromColumn, String toColumn, @Nullable String laneColumn,
+									 String valueColumn, boolean sum) {
+
+		byte[] data;
+		try (InputStream in = IOUtils.getInputStream(IOUtils.getFileUrl(input.toString()))) {
+			data = in.readAllBytes();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		int headerEnd = lineEnd(data, 0);
+		List<String> header = new ArrayList<>();
+		try (CSVParser parser = parser(data, 0, headerEnd)) {
+			for (CSVRecord record : parser)
+				record.forEach(header::add);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		int[] columns = new int[]{
+				column(header, fromColumn, input),
+				column(header, toColumn, input),
+				laneColumn != null ? column(header, laneColumn, input) : -1,
+				column(header, valueColumn, input)
+		};
+
+		// split at line ends, so that each chunk contains complete rows
+		int threads = Runtime.getRuntime().availableProcessors();
+		int chunkSize = Math.max(CHUNK_SIZE, (data.length - headerEnd) / (4 * threads) + 1);
+
+		IntArrayList starts = new IntArrayList();
+		for (int pos = Math.min(data.length, headerEnd + 1); pos < data.length; pos = Math.min(data.length, lineEnd(data, pos + chunkSize) + 1))
+			starts.add(pos);
+
+		starts.add(data.length);
+
+		Chunk[] chunks = IntStream.range(0, starts.size() - 1).parallel()
+				.mapToObj(i -> Chunk.parse(data, starts.getInt(i), starts.getInt(i + 1), columns))
+				.toArray(Chunk[]::new);
+
+		Builder builder = new Builder(sum);
+		for (Chunk chunk : chunks) {
+
+			// ids are resolved on this thread, in the order of the file
+			int[] links = chunk.links.stream().mapToInt(s -> Id.create(s, Link.class).index()).toArray();
+			int[] lanes = chunk.lanes.stream().mapToInt(s -> Id.create(s, Lane.class).index()).toArray();
+
+			for (int i = 0; i < chunk.value.size(); i++) {
+				int l = chunk.lane.getInt(i);
+				builder.add(links[chunk.from.getInt(i)], links[chunk.to.getInt(i)], l >= 0 ? lanes[l] : NO_LANE, chunk.value.getDouble(i));
+			}
+		}
+
+		return builder.build();
+	}
+
+	private static int column(List<String> header, String name, Path input) {
+		int idx = header.indexOf(name);
+		if (idx < 0)
+			throw new IllegalArgumentException("Column " + name + " not found in " + input);
+
+		return idx;
+	}
+
+	/**
+	 * Position of the next line break at or after {@code pos}, or the end of data.
+	 */
+	private static int lineEnd(byte[] data, int pos) {
+		while (pos < data.length && data[pos] != '\n')
+			pos++;
+
+		return Math.min(pos, data.length);
+	}
+
+	/**
+	 * Parser for the records in a part of the data.
+	 */
+	private static CSVParser parser(byte[] data, int start, int end) throws IOException {
+		return new CSVParser(new InputStreamReader(new ByteArrayInputStream(data, start, end - start), StandardCharsets.UTF_8),
+				CSVFormat.DEFAULT.withDelimiter(',').withTrim());
+	}
+
+	/**
+	 * Pack two ids into one key.
+	 */
+	public static long key(int a, int b) {
+		return ((long) a << 32) | (b & 0xFFFFFFFFL);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Index of the from link id in row {@code i}.
+	 */
+	public int from(int i) {
+		return from[i];
+	}
+
+	/**
+	 * Index of the to link id in row {@code i}.
+	 */
+	public int to(int i) {
+		return to[i];
+	}
+
+	/**
+	 * Index of the lane id in row {@code i}, or {@link #NO_LANE}.
+	 */
+	public int lane(int i) {
+		return lane[i];
+	}
+
+	public double value(int i) {
+		return value[i];
+	}
+
+	public Id<Link> fromLink(int i) {
+		return Id.get(from[i], Link.class);
+	}
+
+	public Id<Link> toLink(int i) {
+		return Id.get(to[i], Link.class);
+	}
+
+	/**
+	 * Capacity of a turn, or 0 if not present.
+	 */
+	public double get(int fromLink, int toLink) {
+		for (int row = index.get(key(fromLink, toLink)); row >= 0; row = next[row]) {
+			if (lane[row] == NO_LANE)
+				return value[row];
+		}
+		return 0;
+	}
+
+	/**
+	 * Indices of all from links.
+	 */
+	public IntSet fromLinks() {
+		IntSet set = new IntOpenHashSet();
+		for (int i = 0; i < size; i++)
+			set.add(from[i]);
+
+		return set;
+	}
+
+	/**
+	 * Rows grouped by their from link, in order of first occurrence.
+	 */
+	public int[][] groupByFromLink() {
+		Int2ObjectLinkedOpenHashMap<IntArrayList> groups = new Int2ObjectLinkedOpenHashMap<>();
+		for (int i = 0; i < size; i++)
+			groups.computeIfAbsent(from[i], k -> new IntArrayList()).add(i);
+
+		return groups.values().stream().map(IntArrayList::toIntArray).toArray(int[][]::new);
+	}
+
+	/**
+	 * New table with rows whose from link matches the predicate.
+	 */
+	public CapacityTable filter(IntPredicate fromLink) {
+		Builder builder = new Builder(false);
+		for (int i = 0; i < size; i++) {
+			if (fromLink.test(from[i]))
+				builder.add(from[i], to[i], lane[i], value[i]);
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Collects rows, merging rows with the same key.
+	 */
+	public static final class Builder {
+
+		private final boolean sum;
+		private final IntArrayList from = new IntArrayList();
+		private final IntArrayList to = new IntArrayList();
+		private final IntArrayList lane = new IntArrayList();
+		private final DoubleArrayList value = new DoubleArrayList();
+		private final Long2IntMap index = new Long2IntOpenHashMap();
+		private final IntArrayList next = new IntArrayList();
+
+		/**
+		 * @param sum sum values of the same key, otherwise the last value is used
+		 */
+		public Builder(boolean sum) {
+			this.sum = sum;
+			index.defaultReturnValue(-1);
+		}
+
+		public Builder add(Id<Link> fromLink, Id<Link> toLink, double v) {
+			return add(fromLink.index(), toLink.index(), NO_LANE, v);
+		}
+
+		public Builder add(int fromLink, int toLink, int fromLane, double v) {
+			long key = key(fromLink, toLink);
+			int first = index.get(key);
+
+			int row = first;
+			while (row >= 0 && lane.getInt(row) != fromLane)
+				row = next.getInt(row);
+
+			if (row < 0) {
+				// new row becomes the first of this turn
+				index.put(key, value.size());
+				next.add(first);
+				from.add(fromLink);
+				to.add(toLink);
+				lane.add(fromLane);
+				value.add(v);
+			} else if (sum) {
+				value.set(row, value.getDouble(row) + v);
+			} else {
+				value.set(row, v);
+			}
+			return this;
+		}
+
+		public CapacityTable build() {
+			Long2IntMap copy = new Long2IntOpenHashMap(index);
+			copy.defaultReturnValue(-1);
+
+			return new CapacityTable(value.size(), from.toIntArray(), to.toIntArray(), lane.toIntArray(), value.toDoubleArray(), copy, next.toIntArray());
+		}
+	}
+
+	/**
+	 * Rows of one part of the file, with ids as positions in per-chunk string tables.
+	 */
+	private static final class Chunk {
+
+		private final List<String> links = new ArrayList<>();
+		private final List<String> lanes = new ArrayList<>();
+		private final IntArrayList from = new IntArrayList();
+		private final IntArrayList to = new IntArrayList();
+		private final IntArrayList lane = new IntArrayList();
+		private final DoubleArrayList value = new DoubleArrayList();
+
+		static Chunk parse(byte[] data, int start, int end, int[] columns) {
+
+			Chunk chunk = new Chunk();
+			Object2IntMap<String> linkTable = new Object2IntOpenHashMap<>();
+			Object2IntMap<String> laneTable = new Object2IntOpenHashMap<>();
+
+			try (CSVParser parser = parser(data, start, end)) {
+				for (CSVRecord record : parser) {
+					chunk.from.add(lookup(linkTable, chunk.links, record.get(columns[0])));
+					chunk.to.add(lookup(linkTable, chunk.links, record.get(columns[1])));
+					chunk.lane.add(columns[2] >= 0 ? lookup(laneTable, chunk.lanes, record.get(columns[2])) : -1);
+					chunk.value.add(Double.parseDouble(record.get(columns[3])));
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			return chunk;
+		}
+
+		private static int lookup(Object2IntMap<String> table, List<String> values, String s) {
+			return table.computeIfAbsent(s, k -> {
+				values.add(s);
+				return values.size() - 1;
+			});
+		}
+	}
+}
@@ -2,14 +2,17 @@ package org.matsim.prepare;
 
 import com.google.common.collect.Lists;
 import it.unimi.dsi.fastutil.Pair;
-import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
-import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectAVLTreeMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
-import it.unimi.dsi.fastutil.objects.ObjectReferencePair;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.lang3.tuple.Triple;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
@@ -29,6 +32,7 @@ import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.lanes.*;
 import org.matsim.run.RunDuesseldorfScenario;
+import org.matsim.run.TurnDependentFlowEfficiencyCalculator;
 import org.matsim.utils.objectattributes.attributable.Attributable;
 import picocli.CommandLine;
 
@@ -36,7 +40,7 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 import static org.matsim.run.RunDuesseldorfScenario.VERSION;
 import static org.matsim.run.TurnDependentFlowEfficiencyCalculator.ATTR_TURN_EFFICIENCY;
@@ -78,6 +82,9 @@ public final class CreateNetwork implements MATSimAppCommand {
 	@CommandLine.Option(names = {"--capacities"}, description = "CSV file with lane capacities", required = false)
 	private Path capacities;
 
+	@CommandLine.Option(names = {"--capacities-by-time"}, description = "CSV file with turn capacities for each time interval", required = false)
+	private Path capacitiesByTime;
+
 	public static void main(String[] args) {
 		System.exit(new CommandLine(new CreateNetwork()).execute(args));
 	}
@@ -124,7 +131,7 @@ public final class CreateNetwork implements MATSimAppCommand {
 
 		if (capacities != null) {
 
-			Object2DoubleMap<Pair<Id<Link>, Id<Link>>> map = readLinkCapacities(capacities);
+			CapacityTable map = readLinkCapacities(capacities);
 
 			log.info("Read lane capacities from {}, containing {} links", capacities, map.size());
 
@@ -134,6 +141,17 @@ public final class CreateNetwork implements MATSimAppCommand {
 
 		}
 
+		if (capacitiesByTime != null) {
+
+			Map<Pair<Id<Link>, Id<Link>>, double[]> map = readTurnCapacitiesByTime(capacitiesByTime);
+
+			log.info("Read time dependent turn capacities from {}, containing {} turns", capacitiesByTime, map.size());
+
+			int n = setTurnEfficienciesByTime(network, map);
+
+			log.info("Unmatched turns: {}", n);
+		}
+
 		applyNetworkCorrections(network);
 
 		new NetworkWriter(network).write(output.toAbsolutePath().toString());
@@ -244,13 +262,31 @@ public final class CreateNetwork implements MATSimAppCommand {
 
 
 	/**
-	 * Read lane capacities from csv file.
+	 * Read lane capacities from csv file. Values of the same lane and turn are summed.
+	 *
+	 * @return rows of fromLink, toLink, fromLane
+	 */
+	public static CapacityTable readLaneCapacities(Path input) {
+		return CapacityTable.read(input, "fromEdgeId", "toEdgeId", "fromLaneId", "intervalVehicleSum", true);
+	}
+
+	/**
+	 * Read link capacities from csv file.
+	 * @return rows of from link, to link -> capacity
+	 */
+	public static CapacityTable readLinkCapacities(Path input) {
+		return CapacityTable.read(input, "fromEdgeId", "toEdgeId", null, "flow", false);
+	}
+
+	/**
+	 * Read turn capacities for each time interval from csv file. Intervals are aligned to
+	 * {@link TurnDependentFlowEfficiencyCalculator#TIME_BIN_SIZE}, missing intervals keep the previous value.
 	 *
-	 * @return triples of fromLink, toLink, fromLane
+	 * @return pair of from link, to link -> capacity for each time bin
 	 */
-	public static Object2DoubleMap<Triple<Id<Link>, Id<Link>, Id<Lane>>> readLaneCapacities(Path input) {
+	public static Map<Pair<Id<Link>, Id<Link>>, double[]> readTurnCapacitiesByTime(Path input) {
 
-		Object2DoubleMap<Triple<Id<Link>, Id<Link>, Id<Lane>>> result = new Object2DoubleOpenHashMap<>();
+		Map<Pair<Id<Link>, Id<Link>>, Int2DoubleMap> bins = new HashMap<>();
 
 		try (CSVParser parser = new CSVParser(IOUtils.getBufferedReader(input.toString()),
 				CSVFormat.DEFAULT.withDelimiter(',').withFirstRecordAsHeader())) {
@@ -259,59 +295,113 @@ public final class CreateNetwork implements MATSimAppCommand {
 
 				Id<Link> fromLinkId = Id.create(record.get("fromEdgeId"), Link.class);
 				Id<Link> toLinkId = Id.create(record.get("toEdgeId"), Link.class);
-				Id<Lane> fromLaneId = Id.create(record.get("fromLaneId"), Lane.class);
 
-				Triple<Id<Link>, Id<Link>, Id<Lane>> key = Triple.of(fromLinkId, toLinkId, fromLaneId);
-
-				result.mergeDouble(key, Integer.parseInt(record.get("intervalVehicleSum")), Double::sum);
+				int bin = (int) (Double.parseDouble(record.get("begin")) / TurnDependentFlowEfficiencyCalculator.TIME_BIN_SIZE);
 
+				bins.computeIfAbsent(Pair.of(fromLinkId, toLinkId), k -> new Int2DoubleOpenHashMap())
+						.mergeDouble(bin, Double.parseDouble(record.get("flow")), Double::max);
 			}
 
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
 
+		Map<Pair<Id<Link>, Id<Link>>, double[]> result = new HashMap<>();
+		for (Map.Entry<Pair<Id<Link>, Id<Link>>, Int2DoubleMap> e : bins.entrySet()) {
+
+			Int2DoubleMap m = e.getValue();
+			double[] values = new double[m.keySet().intStream().max().orElse(0) + 1];
+
+			// fill gaps with the previous known value, or the first one
+			double last = m.get(m.keySet().intStream().min().orElse(0));
+			for (int i = 0; i < values.length; i++) {
+				if (m.containsKey(i))
+					last = m.get(i);
+
+				values[i] = last;
+			}
+
+			result.put(e.getKey(), values);
+		}
+
 		return result;
 	}
 
 	/**
-	 * Read link capacities from csv file.
-	 * @return pair of from link, to link -> capacity
+	 * Set time dependent turn efficiencies relative to the link capacity. As for static turn capacities,
+	 * the link capacity is raised to the maximum turn capacity, so that no efficiency is above 1.
+	 * Efficiencies already present on the link are scaled to the new capacity.
+	 *
+	 * @return number of turns from file that are not in the network.
 	 */
-	public static Object2DoubleMap<Pair<Id<Link>, Id<Link>>> readLinkCapacities(Path input) {
+	public static int setTurnEfficienciesByTime(Network network, Map<Pair<Id<Link>, Id<Link>>, double[]> map) {
 
-		Object2DoubleMap<Pair<Id<Link>, Id<Link>>> result = new Object2DoubleOpenHashMap<>();
+		int unmatched = 0;
 
-		try (CSVParser parser = new CSVParser(IOUtils.getBufferedReader(input.toString()),
-				CSVFormat.DEFAULT.withDelimiter(',').withFirstRecordAsHeader())) {
+		Map<Link, Map<Id<Link>, double[]>> byLink = new LinkedHashMap<>();
+		for (Map.Entry<Pair<Id<Link>, Id<Link>>, double[]> e : map.entrySet()) {
 
-			for (CSVRecord record : parser) {
+			Link link = network.getLinks().get(e.getKey().left());
 
-				Id<Link> fromLinkId = Id.create(record.get("fromEdgeId"), Link.class);
-				Id<Link> toLinkId = Id.create(record.get("toEdgeId"), Link.class);
+			if (link == null) {
+				unmatched++;
+				continue;
+			}
+
+			byLink.computeIfAbsent(link, k -> new LinkedHashMap<>()).put(e.getKey().right(), e.getValue());
+		}
 
-				Pair<Id<Link>, Id<Link>> key = Pair.of(fromLinkId, toLinkId);
+		for (Map.Entry<Link, Map<Id<Link>, double[]>> e : byLink.entrySet()) {
 
-				result.put(key, Double.parseDouble(record.get("flow")));
+			Link link = e.getKey();
+			Map<String, String> turns = getTurnEfficiencyMap(link);
 
+			double capacity = 0;
+			for (double[] values : e.getValue().values())
+				for (double cap : values)
+					capacity = Math.max(capacity, Math.max(CAPACITY_THRESHOLD, cap));
+
+			if (capacity > link.getCapacity()) {
+				double factor = link.getCapacity() / capacity;
+				turns.replaceAll((toLink, series) -> scale(series, factor));
+				link.setCapacity(capacity);
 			}
 
-		} catch (IOException e) {
-			throw new UncheckedIOException(e);
+			for (Map.Entry<Id<Link>, double[]> turn : e.getValue().entrySet()) {
+				StringJoiner series = new StringJoiner(",");
+				for (double cap : turn.getValue()) {
+					series.add(String.valueOf(Math.max(CAPACITY_THRESHOLD, cap) / link.getCapacity()));
+				}
+
+				turns.put(turn.getKey().toString(), series.toString());
+			}
 		}
-		return result;
+
+		return unmatched;
+	}
+
+	/**
+	 * Multiply a single efficiency or comma separated values for each time bin.
+	 */
+	private static String scale(String series, double factor) {
+		StringJoiner result = new StringJoiner(",");
+		for (String value : series.split(","))
+			result.add(String.valueOf(Double.parseDouble(value.trim()) * factor));
+
+		return result.toString();
 	}
 
 	/**
 	 * Aggregate maximum lane capacities, independent of turning direction.
+	 *
+	 * @return packed key of link and lane index, see {@link CapacityTable#key(int, int)}
 	 */
-	public static Object2DoubleMap<Pair<Id<Link>, Id<Lane>>> calcMaxLaneCapacities(Object2DoubleMap<Triple<Id<Link>, Id<Link>, Id<Lane>>> map) {
+	public static Long2DoubleMap calcMaxLaneCapacities(CapacityTable map) {
 
-		Object2DoubleMap<Pair<Id<Link>, Id<Lane>>> laneCapacities = new Object2DoubleOpenHashMap<>();
+		Long2DoubleMap laneCapacities = new Long2DoubleOpenHashMap();
 
-		// sum for each link
-		for (Object2DoubleMap.Entry<Triple<Id<Link>, Id<Link>, Id<Lane>>> e : map.object2DoubleEntrySet()) {
-			laneCapacities.mergeDouble(ObjectReferencePair.of(e.getKey().getLeft(), e.getKey().getRight()), e.getDoubleValue(), Double::max);
+		for (int i = 0; i < map.size(); i++) {
+			laneCapacities.mergeDouble(CapacityTable.key(map.from(i), map.lane(i)), map.value(i), Double::max);
 		}
 
 		return laneCapacities;
@@ -322,48 +412,40 @@ public final class CreateNetwork implements MATSimAppCommand {
 	 *
 	 * @return number of links from file that are not in the network.
 	 */
-	public static int setLinkCapacities(Network network, Object2DoubleMap<Pair<Id<Link>, Id<Link>>> map, Set<Id<Link>> filter) {
+	public static int setLinkCapacities(Network network, CapacityTable map, Set<Id<Link>> filter) {
 
-		Object2DoubleMap<Id<Link>> linkCapacities = new Object2DoubleOpenHashMap<>();
-
-		// max of each link
-		for (Object2DoubleMap.Entry<Pair<Id<Link>, Id<Link>>> e : map.object2DoubleEntrySet()) {
-			linkCapacities.mergeDouble(e.getKey().key(), e.getDoubleValue(), Double::max);
-		}
+		Map<Id<Link>, ? extends Link> links = network.getLinks();
+		int[][] groups = map.groupByFromLink();
 
-		int unmatched = 0;
+		// each link only touches its own attributes, so they can be processed independently
+		int unmatched = (int) IntStream.range(0, groups.length).parallel().filter(g -> {
 
-		for (Object2DoubleMap.Entry<Id<Link>> e : linkCapacities.object2DoubleEntrySet()) {
+			int[] rows = groups[g];
+			Link link = links.get(map.fromLink(rows[0]));
 
-			Link link = network.getLinks().get(e.getKey());
+			if (link == null)
+				return true;
 
-			if (link != null) {
-				// ignore unplausible capacities
-				if (e.getDoubleValue() < CAPACITY_THRESHOLD * link.getNumberOfLanes())
-					continue;
+			// max of each link
+			double capacity = 0;
+			for (int row : rows)
+				capacity = Math.max(capacity, map.value(row));
 
-				link.setCapacity(e.getDoubleValue());
+			// ignore unplausible capacities
+			if (capacity >= CAPACITY_THRESHOLD * link.getNumberOfLanes()) {
+				link.setCapacity(capacity);
 				link.getAttributes().putAttribute("junction", true);
-			} else {
-				unmatched++;
 			}
-		}
-
-		// set turn capacities relative to whole link capacity
-		for (Object2DoubleMap.Entry<Pair<Id<Link>, Id<Link>>> e : map.object2DoubleEntrySet()) {
-
-			Id<Link> fromLink = e.getKey().left();
-			Id<Link> toLink = e.getKey().right();
-
-			Link link = network.getLinks().get(fromLink);
 
-			if (link == null)
-				continue;
-
-			double cap = Math.max(CAPACITY_THRESHOLD, e.getDoubleValue());
-			getTurnEfficiencyMap(link).put(toLink.toString(), String.valueOf(cap / link.getCapacity()));
-		}
+			// set turn capacities relative to whole link capacity
+			Map<String, String> turns = getTurnEfficiencyMap(link);
+			for (int row : rows) {
+				double cap = Math.max(CAPACITY_THRESHOLD, map.value(row));
+				turns.put(map.toLink(row).toString(), String.valueOf(cap / link.getCapacity()));
+			}
 
+			return false;
+		}).count();
 
 		propagateJunctionCapacities(network, filter);
 
@@ -372,123 +454,204 @@ public final class CreateNetwork implements MATSimAppCommand {
 
 	/**
 	 * Apply the capacities at intersection to up- and downstream links if applicable.
+	 * <p>
+	 * Links and nodes are mapped to dense indices first. Upstream, capacities are propagated along chains of nodes
+	 * with one in- and one out-link. These chains are disjoint, so each one is processed as a separate task.
+	 * The downstream pass depends on the order of junctions, because each link is only assigned once, and runs
+	 * sequentially on the index arrays.
 	 */
-	private static void propagateJunctionCapacities(Network network, Set<Id<Link>> filter) {
+	static void propagateJunctionCapacities(Network network, Set<Id<Link>> filter) {
 
-		Set<Id<Link>> handled = new HashSet<>();
+		Link[] links = network.getLinks().values().toArray(new Link[0]);
+		int n = links.length;
 
-		// First pass, apply downstream
-		for (Link link : network.getLinks().values()) {
+		int[] pos = new int[Id.getNumberOfIds(Link.class)];
+		Arrays.fill(pos, -1);
+		for (int i = 0; i < n; i++)
+			pos[links[i].getId().index()] = i;
 
-			if (filter != null && !filter.contains(link.getId()))
-				continue;
+		double[] cap = new double[n];
+		boolean[] junction = new boolean[n];
 
-			if (link.getAttributes().getAttribute("junction") != Boolean.TRUE)
-				continue;
+		// Single link upstream and downstream within a chain, or -1
+		int[] pred = new int[n];
+		int[] succ = new int[n];
 
-			double cap = link.getCapacity();
+		IntStream.range(0, n).parallel().forEach(i -> {
+			Link link = links[i];
+			cap[i] = link.getCapacity();
+			junction[i] = (filter == null || filter.contains(link.getId())) && link.getAttributes().getAttribute("junction") == Boolean.TRUE;
 
 			Node from = link.getFromNode();
-			while (from.getOutLinks().size() == 1 && from.getInLinks().size() == 1) {
-				for (Link inLink : from.getInLinks().values()) {
-					handled.add(inLink.getId());
-					if (inLink.getCapacity() < cap) {
-						inLink.setCapacity(cap);
+			pred[i] = from.getOutLinks().size() == 1 && from.getInLinks().size() == 1 ?
+					pos[from.getInLinks().values().iterator().next().getId().index()] : -1;
+
+			Node to = link.getToNode();
+			succ[i] = to.getOutLinks().size() == 1 && to.getInLinks().size() == 1 ?
+					pos[to.getOutLinks().values().iterator().next().getId().index()] : -1;
+		});
+
+		double[] result = Arrays.copyOf(cap, n);
+		boolean[] handled = new boolean[n];
+
+		// First pass, apply downstream capacities to the upstream chain, starting at the last link of each chain.
+		// Chains that form a closed loop have no last link and are skipped.
+		IntStream.range(0, n).parallel()
+				.filter(i -> succ[i] == -1)
+				.forEach(last -> {
+					double max = junction[last] ? cap[last] : Double.NEGATIVE_INFINITY;
+					for (int i = pred[last]; i >= 0; i = pred[i]) {
+						if (max > Double.NEGATIVE_INFINITY) {
+							handled[i] = true;
+							result[i] = Math.max(cap[i], max);
+						}
+
+						if (junction[i])
+							max = Math.max(max, cap[i]);
 					}
+				});
+
+		// Node of each link and links of each node
+		Node[] nodes = network.getNodes().values().toArray(new Node[0]);
+		int[] nodePos = new int[Id.getNumberOfIds(Node.class)];
+		for (int i = 0; i < nodes.length; i++)
+			nodePos[nodes[i].getId().index()] = i;
+
+		int[] toNode = new int[n];
+		int[] inStart = new int[nodes.length + 1];
+		int[] outStart = new int[nodes.length + 1];
+		for (int i = 0; i < n; i++) {
+			toNode[i] = nodePos[links[i].getToNode().getId().index()];
+			inStart[toNode[i] + 1]++;
+			outStart[nodePos[links[i].getFromNode().getId().index()] + 1]++;
+		}
 
-					from = inLink.getFromNode();
-				}
-			}
+		for (int i = 0; i < nodes.length; i++) {
+			inStart[i + 1] += inStart[i];
+			outStart[i + 1] += outStart[i];
 		}
 
-		// Second pass, apply min required capacity upstream
-		for (Link link : network.getLinks().values()) {
+		int[] inLinks = new int[n];
+		int[] outLinks = new int[n];
+		int[] inFill = Arrays.copyOf(inStart, nodes.length);
+		int[] outFill = Arrays.copyOf(outStart, nodes.length);
+		for (int i = 0; i < n; i++) {
+			inLinks[inFill[toNode[i]]++] = i;
+			outLinks[outFill[nodePos[links[i].getFromNode().getId().index()]]++] = i;
+		}
 
-			if (filter != null && !filter.contains(link.getId()))
-				continue;
+		// Second pass, apply min required capacity upstream
+		IntArrayFIFOQueue queue = new IntArrayFIFOQueue();
+		for (int l = 0; l < n; l++) {
 
-			if (link.getAttributes().getAttribute("junction") != Boolean.TRUE || handled.contains(link.getId()))
+			if (!junction[l] || handled[l])
 				continue;
 
-			Node to = link.getToNode();
+			int to = toNode[l];
 
-			double cap = to.getInLinks().values().stream().mapToDouble(Link::getCapacity).min().orElse(0);
+			double min = Double.POSITIVE_INFINITY;
+			for (int k = inStart[to]; k < inStart[to + 1]; k++)
+				min = Math.min(min, result[inLinks[k]]);
 
-			Queue<Link> queue = new LinkedList<>(to.getOutLinks().values());
+			for (int k = outStart[to]; k < outStart[to + 1]; k++)
+				queue.enqueue(outLinks[k]);
 
 			while (!queue.isEmpty()) {
 
-				Link outLink = queue.poll();
-				if (handled.contains(outLink.getId()))
+				int outLink = queue.dequeueInt();
+				if (handled[outLink])
 					continue;
 
-				handled.add(outLink.getId());
+				handled[outLink] = true;
 
-				if (outLink.getCapacity() < cap)
-					outLink.setCapacity(cap);
+				if (result[outLink] < min)
+					result[outLink] = min;
 
 				// Capacity is only applied as long as there is no other intersection
-				if (outLink.getToNode().getOutLinks().size() == 1)
-					queue.addAll(outLink.getToNode().getOutLinks().values());
-
+				int next = toNode[outLink];
+				if (outStart[next + 1] - outStart[next] == 1)
+					queue.enqueue(outLinks[outStart[next]]);
 			}
 		}
+
+		IntStream.range(0, n).parallel()
+				.filter(i -> result[i] != cap[i])
+				.forEach(i -> links[i].setCapacity(result[i]));
 	}
 
 	/**
 	 * Use provided link ids and corridor ids and reduce them by one lane, and process the links' per-lane flow
-	 * capacities by multiplying them by factor
+	 * capacities by multiplying them by factor. Links are grouped by corridor once, and corridors are processed in parallel.
 	 *
 	 * @return number of links from file that are not in the network.
 	 */
 	public static int reduceLinkLanesAndMultiplyPerLaneCapacity(Network network, Object2IntMap<Id<Link>> map, double factor, double reduceLanes) {
 
-		Set<Integer> corridors = new HashSet<>(map.values());
+		Int2ObjectMap<List<Link>> byCorridor = new Int2ObjectAVLTreeMap<>();
 		int unmatched = 0;
 
-		log.info("Processing {} corridors for lane reduction...", corridors.size());
-		for (Integer corridor : corridors) {
+		for (Object2IntMap.Entry<Id<Link>> e : map.object2IntEntrySet()) {
+			Link link = network.getLinks().get(e.getKey());
+			if (link == null) {
+				unmatched++;
+				continue;
+			}
 
-			Set<Link> links = new HashSet<>();
-			map.object2IntEntrySet().stream()
-					.filter(entry -> corridor.equals(entry.getIntValue()))
-					.forEach(entry -> links.add(network.getLinks().get(entry.getKey())));
+			byCorridor.computeIfAbsent(e.getIntValue(), k -> new ArrayList<>()).add(link);
+		}
 
-			if (links.size() == 0)
-				return map.size();
+		log.info("Processing {} corridors for lane reduction...", byCorridor.size());
 
-			for (Link link : links) {
+		List<Int2ObjectMap.Entry<List<Link>>> corridors = new ArrayList<>(byCorridor.int2ObjectEntrySet());
 
-				// Non intersection links are scaled with an average
-				if (link.getAttributes().getAttribute("junction") != Boolean.TRUE) {
-					link.setCapacity(link.getCapacity() * factor);
-				}
+		// Each link belongs to one corridor, so they can be modified independently
+		double[][] stats = IntStream.range(0, corridors.size()).parallel()
+				.mapToObj(i -> reduceCorridor(corridors.get(i).getValue(), factor, reduceLanes))
+				.toArray(double[][]::new);
 
-				if (link.getNumberOfLanes() > 1) {
-					double newLanes = Math.max(1d, link.getNumberOfLanes() - reduceLanes);
+		for (int i = 0; i < corridors.size(); i++) {
+			double corridorLength = stats[i][2];
+			log.info("Corridor {} has an avg. capacity of {} with {} per lane and has total length of {} km.",
+					corridors.get(i).getIntKey(), stats[i][1] / corridorLength, stats[i][0] / corridorLength, corridorLength / 1000d);
+		}
 
-					// Reduce capacity proportional with number of lanes
-					if (newLanes < link.getNumberOfLanes()) {
-						link.setCapacity(link.getCapacity() * newLanes/link.getNumberOfLanes());
-						link.setNumberOfLanes(newLanes);
-					}
+		return unmatched;
+	}
+
+	/**
+	 * Apply factor and lane reduction to the links of one corridor.
+	 *
+	 * @return capacity times length per lane, capacity times length, and total length
+	 */
+	private static double[] reduceCorridor(List<Link> links, double factor, double reduceLanes) {
+
+		double capLengthPerLane = 0;
+		double capLength = 0;
+		double corridorLength = 0;
+
+		for (Link link : links) {
+
+			// Non intersection links are scaled with an average
+			if (link.getAttributes().getAttribute("junction") != Boolean.TRUE) {
+				link.setCapacity(link.getCapacity() * factor);
+			}
+
+			if (link.getNumberOfLanes() > 1) {
+				double newLanes = Math.max(1d, link.getNumberOfLanes() - reduceLanes);
+
+				// Reduce capacity proportional with number of lanes
+				if (newLanes < link.getNumberOfLanes()) {
+					link.setCapacity(link.getCapacity() * newLanes/link.getNumberOfLanes());
+					link.setNumberOfLanes(newLanes);
 				}
 			}
 
-			AtomicReference<Double> capLengthPerLane = new AtomicReference<>(0d);
-			AtomicReference<Double> capLength = new AtomicReference<>(0d);
-			AtomicReference<Double> corridorLength = new AtomicReference<>(0d);
-			links.forEach(link -> {
-				capLengthPerLane.accumulateAndGet(link.getCapacity() * link.getLength() / link.getNumberOfLanes(), Double::sum);
-				capLength.accumulateAndGet(link.getCapacity() * link.getLength(), Double::sum);
-				corridorLength.accumulateAndGet(link.getLength(), Double::sum);
-			});
-			double avgCapPerLane = capLengthPerLane.get() / corridorLength.get();
-			double avgCap = capLength.get() / corridorLength.get();
-			log.info("Corridor {} has an avg. capacity of {} with {} per lane and has total length of {} km.", corridor, avgCap, avgCapPerLane, corridorLength.get() / 1000d);
+			capLengthPerLane += link.getCapacity() * link.getLength() / link.getNumberOfLanes();
+			capLength += link.getCapacity() * link.getLength();
+			corridorLength += link.getLength();
 		}
 
-		return unmatched;
+		return new double[]{capLengthPerLane, capLength, corridorLength};
 	}
 
 	/**
@@ -497,21 +660,21 @@ public final class CreateNetwork implements MATSimAppCommand {
 	 *
 	 * @return number of links from file that are not in the network.
 	 */
-	public static int setLinkCapacitiesFromLaneMap(Network network, Object2DoubleMap<Triple<Id<Link>, Id<Link>, Id<Lane>>> map) {
+	public static int setLinkCapacitiesFromLaneMap(Network network, CapacityTable map) {
 
-		Object2DoubleMap<Id<Link>> linkCapacities = new Object2DoubleOpenHashMap<>();
-		Object2DoubleMap<Pair<Id<Link>, Id<Lane>>> laneCapacities = calcMaxLaneCapacities(map);
+		Int2DoubleMap linkCapacities = new Int2DoubleOpenHashMap();
+		Long2DoubleMap laneCapacities = calcMaxLaneCapacities(map);
 
 		// sum for each link
-		for (Object2DoubleMap.Entry<Pair<Id<Link>, Id<Lane>>> e : laneCapacities.object2DoubleEntrySet()) {
-			linkCapacities.mergeDouble(e.getKey().key(), e.getDoubleValue(), Double::sum);
+		for (Long2DoubleMap.Entry e : laneCapacities.long2DoubleEntrySet()) {
+			linkCapacities.mergeDouble((int) (e.getLongKey() >>> 32), e.getDoubleValue(), Double::sum);
 		}
 
 		int unmatched = 0;
 
-		for (Object2DoubleMap.Entry<Id<Link>> e : linkCapacities.object2DoubleEntrySet()) {
+		for (Int2DoubleMap.Entry e : linkCapacities.int2DoubleEntrySet()) {
 
-			Link link = network.getLinks().get(e.getKey());
+			Link link = network.getLinks().get(Id.get(e.getIntKey(), Link.class));
 
 			if (link != null) {
 				// ignore unplausible capacities
@@ -525,17 +688,17 @@ public final class CreateNetwork implements MATSimAppCommand {
 			}
 		}
 
-		Object2DoubleMap<Pair<Id<Link>, Id<Link>>> turnCapacities = new Object2DoubleOpenHashMap<>();
+		Long2DoubleMap turnCapacities = new Long2DoubleOpenHashMap();
 
-		for (Object2DoubleMap.Entry<Triple<Id<Link>, Id<Link>, Id<Lane>>> e : map.object2DoubleEntrySet()) {
-			turnCapacities.mergeDouble(Pair.of(e.getKey().getLeft(), e.getKey().getMiddle()), e.getDoubleValue(), Double::sum);
+		for (int i = 0; i < map.size(); i++) {
+			turnCapacities.mergeDouble(CapacityTable.key(map.from(i), map.to(i)), map.value(i), Double::sum);
 		}
 
 		// set turn capacities relative to whole link capacity
-		for (Object2DoubleMap.Entry<Pair<Id<Link>, Id<Link>>> e : turnCapacities.object2DoubleEntrySet()) {
+		for (Long2DoubleMap.Entry e : turnCapacities.long2DoubleEntrySet()) {
 
-			Id<Link> fromLink = e.getKey().left();
-			Id<Link> toLink = e.getKey().right();
+			Id<Link> fromLink = Id.get((int) (e.getLongKey() >>> 32), Link.class);
+			Id<Link> toLink = Id.get((int) e.getLongKey(), Link.class);
 
 			Link link = network.getLinks().get(fromLink);
 
@@ -554,24 +717,24 @@ public final class CreateNetwork implements MATSimAppCommand {
 	 *
 	 * @return number of lanes in file, but not in the network.
 	 */
-	public static int setLaneCapacities(Lanes lanes, Object2DoubleMap<Triple<Id<Link>, Id<Link>, Id<Lane>>> map) {
+	public static int setLaneCapacities(Lanes lanes, CapacityTable map) {
 
-		Object2DoubleMap<Pair<Id<Link>, Id<Lane>>> laneCapacities = calcMaxLaneCapacities(map);
+		Long2DoubleMap laneCapacities = calcMaxLaneCapacities(map);
 
 		int unmatched = 0;
 
 		SortedMap<Id<Link>, LanesToLinkAssignment> l2ls = lanes.getLanesToLinkAssignments();
 
-		for (Object2DoubleMap.Entry<Pair<Id<Link>, Id<Lane>>> e : laneCapacities.object2DoubleEntrySet()) {
+		for (Long2DoubleMap.Entry e : laneCapacities.long2DoubleEntrySet()) {
 
-			LanesToLinkAssignment l2l = l2ls.get(e.getKey().key());
+			LanesToLinkAssignment l2l = l2ls.get(Id.get((int) (e.getLongKey() >>> 32), Link.class));
 
 			if (l2l == null) {
 				unmatched++;
 				continue;
 			}
 
-			Lane lane = l2l.getLanes().get(e.getKey().right());
+			Lane lane = l2l.getLanes().get(Id.get((int) e.getLongKey(), Lane.class));
 
 			if (lane == null) {
 				unmatched++;
@@ -586,16 +749,15 @@ public final class CreateNetwork implements MATSimAppCommand {
 		}
 
 		// set turn efficiency depending on to link
-		for (Object2DoubleMap.Entry<Triple<Id<Link>, Id<Link>, Id<Lane>>> e : map.object2DoubleEntrySet()) {
+		for (int i = 0; i < map.size(); i++) {
 
-			LanesToLinkAssignment l2l = l2ls.get(e.getKey().getLeft());
+			LanesToLinkAssignment l2l = l2ls.get(map.fromLink(i));
 			if (l2l == null) continue;
 
-			Lane lane = l2l.getLanes().get(e.getKey().getRight());
+			Lane lane = l2l.getLanes().get(Id.get(map.lane(i), Lane.class));
 			if (lane == null) continue;
 
-			Id<Link> toLink = e.getKey().getMiddle();
-			getTurnEfficiencyMap(lane).put(toLink.toString(), String.valueOf(e.getDoubleValue() / lane.getCapacityVehiclesPerHour()));
+			getTurnEfficiencyMap(lane).put(map.toLink(i).toString(), String.valueOf(map.value(i) / lane.getCapacityVehiclesPerHour()));
 		}
 
 
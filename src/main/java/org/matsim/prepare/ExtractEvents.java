@@ -2,42 +2,41 @@ package org.matsim.prepare;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.matsim.analysis.ColumnarEvents;
+import org.matsim.analysis.ParallelEventsReader;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.LinkLeaveEvent;
-import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
-import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.contrib.sumo.SumoNetworkConverter;
 import org.matsim.contrib.sumo.SumoNetworkHandler;
-import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.api.experimental.events.LaneEnterEvent;
 import org.matsim.core.api.experimental.events.LaneLeaveEvent;
-import org.matsim.core.api.experimental.events.handler.LaneEnterEventHandler;
-import org.matsim.core.api.experimental.events.handler.LaneLeaveEventHandler;
-import org.matsim.core.events.EventsManagerImpl;
-import org.matsim.core.events.MatsimEventsReader;
 import org.matsim.core.events.algorithms.EventWriterXML;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.lanes.Lane;
+import org.matsim.vehicles.Vehicle;
 import picocli.CommandLine;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.BitSet;
 
 /**
  * Executable class to extract events.
+ * <p>
+ * Matching events are written directly while the input is parsed on multiple threads,
+ * compression of the output runs on a separate thread.
+ * Memory usage is therefore independent of the number of events.
  */
 @CommandLine.Command(
         name = "extractEvents",
         description = "Extract events for a certain network area.",
         showDefaultValues = true
 )
-public class ExtractEvents implements MATSimAppCommand, LinkEnterEventHandler, LinkLeaveEventHandler, LaneEnterEventHandler, LaneLeaveEventHandler {
+public class ExtractEvents implements MATSimAppCommand {
 
     private static final Logger log = LogManager.getLogger(ExtractEvents.class);
 
@@ -53,8 +52,17 @@ public class ExtractEvents implements MATSimAppCommand, LinkEnterEventHandler, L
     @CommandLine.Option(names = "--no-lanes", description = "Don't parse lane events", defaultValue = "false")
     private boolean noLanes;
 
-    private SumoNetworkHandler sumo;
-    private List<Event> events;
+    @CommandLine.Option(names = "--events-cache", description = "Cache file for decoded events, used by repeated extractions of the same run")
+    private Path eventsCache;
+
+    /**
+     * Link and lane indices that are part of the SUMO network.
+     */
+    private final BitSet links = new BitSet();
+    private final BitSet lanes = new BitSet();
+
+    private EventWriterXML writer;
+    private long filtered = 0;
 
     public static void main(String[] args) {
         System.exit(new CommandLine(new ExtractEvents()).execute(args));
@@ -63,76 +71,67 @@ public class ExtractEvents implements MATSimAppCommand, LinkEnterEventHandler, L
     @Override
     public Integer call() throws Exception {
 
-        sumo = SumoNetworkConverter.readNetwork(network.toFile());
-        events = new ArrayList<>();
-
-        EventsManager manager = new EventsManagerImpl();
-        manager.addHandler(this);
-        manager.initProcessing();
-
-        MatsimEventsReader reader = new MatsimEventsReader(manager);
-
-        if (!noLanes) {
-            reader.addCustomEventMapper(LaneLeaveEvent.EVENT_TYPE, event ->
-                    new LaneLeaveEvent(
-                            event.getTime(),
-                            Id.createVehicleId(event.getAttributes().get(LaneLeaveEvent.ATTRIBUTE_VEHICLE)),
-                            Id.createLinkId(event.getAttributes().get(LaneLeaveEvent.ATTRIBUTE_LINK)),
-                            Id.create(event.getAttributes().get(LaneLeaveEvent.ATTRIBUTE_LANE), Lane.class)
-                    )
-            );
-
-            reader.addCustomEventMapper(LaneEnterEvent.EVENT_TYPE, event ->
-                    new LaneEnterEvent(
-                            event.getTime(),
-                            Id.createVehicleId(event.getAttributes().get(LaneEnterEvent.ATTRIBUTE_VEHICLE)),
-                            Id.createLinkId(event.getAttributes().get(LaneEnterEvent.ATTRIBUTE_LINK)),
-                            Id.create(event.getAttributes().get(LaneEnterEvent.ATTRIBUTE_LANE), Lane.class)
-                    )
-            );
-        }
-
-        reader.readFile(input.toString());
-        manager.finishProcessing();
+        SumoNetworkHandler sumo = SumoNetworkConverter.readNetwork(network.toFile());
 
-        log.info("Filtered {} events", events.size());
-
-        manager = new EventsManagerImpl();
+        // ids are created here, so that events will refer to the same indices
+        sumo.getEdges().keySet().forEach(edge -> links.set(Id.createLinkId(edge).index()));
+        sumo.getLanes().keySet().forEach(lane -> lanes.set(Id.create(lane, Lane.class).index()));
 
         if (output.getParent() != null)
             Files.createDirectories(output.getParent());
 
-        EventWriterXML writer = new EventWriterXML(IOUtils.getOutputStream(IOUtils.getFileUrl(output.toString()), false));
-        manager.addHandler(writer);
+        writer = new EventWriterXML(new AsyncOutputStream(IOUtils.getOutputStream(IOUtils.getFileUrl(output.toString()), false)));
 
-        events.forEach(manager::processEvent);
+        if (eventsCache != null)
+            extractColumns(ColumnarEvents.read(input, eventsCache));
+        else
+            extract();
 
         writer.closeFile();
 
+        log.info("Filtered {} events", filtered);
+
         return 0;
     }
 
-    @Override
-    public void handleEvent(LinkEnterEvent event) {
-        if (sumo.getEdges().containsKey(event.getLinkId().toString()))
-            events.add(event);
+    /**
+     * Stream events from the input file.
+     */
+    private void extract() {
+        new ParallelEventsReader().read(input, batch -> {
+            for (int i = 0; i < batch.size(); i++)
+                extract(batch.time(i), batch.type(i), batch.link(i), batch.vehicle(i), batch.lane(i));
+        });
     }
 
-    @Override
-    public void handleEvent(LinkLeaveEvent event) {
-        if (sumo.getEdges().containsKey(event.getLinkId().toString()))
-            events.add(event);
+    /**
+     * Extract from decoded events, which only need to be read once for multiple networks.
+     */
+    private void extractColumns(ColumnarEvents events) {
+        for (int i = 0; i < events.size(); i++)
+            extract(events.time(i), events.type(i), events.link(i), events.vehicle(i), events.lane(i));
     }
 
-    @Override
-    public void handleEvent(LaneEnterEvent event) {
-        if (sumo.getEdges().containsKey(event.getLinkId().toString()) || sumo.getLanes().containsKey(event.getLaneId().toString()))
-            events.add(event);
+    private void extract(double time, byte type, int link, int vehicle, int lane) {
+
+        if (type == ColumnarEvents.LINK_ENTER && links.get(link))
+            write(new LinkEnterEvent(time, Id.get(vehicle, Vehicle.class), Id.get(link, Link.class)));
+
+        else if (type == ColumnarEvents.LINK_LEAVE && links.get(link))
+            write(new LinkLeaveEvent(time, Id.get(vehicle, Vehicle.class), Id.get(link, Link.class)));
+
+        else if (!noLanes && (type == ColumnarEvents.LANE_ENTER || type == ColumnarEvents.LANE_LEAVE)
+                && (links.get(link) || lanes.get(lane))) {
+
+            if (type == ColumnarEvents.LANE_ENTER)
+                write(new LaneEnterEvent(time, Id.get(vehicle, Vehicle.class), Id.get(link, Link.class), Id.get(lane, Lane.class)));
+            else
+                write(new LaneLeaveEvent(time, Id.get(vehicle, Vehicle.class), Id.get(link, Link.class), Id.get(lane, Lane.class)));
+        }
     }
 
-    @Override
-    public void handleEvent(LaneLeaveEvent event) {
-        if (sumo.getEdges().containsKey(event.getLinkId().toString()) || sumo.getLanes().containsKey(event.getLaneId().toString()))
-            events.add(event);
+    private void write(Event event) {
+        writer.handleEvent(event);
+        filtered++;
     }
 }
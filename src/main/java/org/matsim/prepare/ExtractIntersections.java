@@ -2,19 +2,19 @@ package org.matsim.prepare;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.locationtech.jts.geom.Geometry;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.application.options.ShpOptions;
 import org.matsim.core.network.NetworkUtils;
-import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.run.RunDuesseldorfScenario;
 import picocli.CommandLine;
 
 import java.io.BufferedWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 
 @CommandLine.Command(
 		name = "extract-intersections",
@@ -51,14 +51,17 @@ public class ExtractIntersections implements MATSimAppCommand {
 		Network network = NetworkUtils.readNetwork(this.network.toString());
 
 		// buffer around the network
-		Geometry geom = shp.getGeometry().getEnvelope().buffer(8000);
+		AreaIndex area = new AreaIndex(shp.getGeometry().getEnvelope().buffer(8000));
+
+		Node[] nodes = network.getNodes().values().toArray(new Node[0]);
+		boolean[] inside = area.contains(Arrays.stream(nodes).map(Node::getCoord).toArray(Coord[]::new));
 
 		int filtered = 0;
 
 		try (BufferedWriter writer = Files.newBufferedWriter(output)) {
-			for (Node node : network.getNodes().values()) {
-				if (geom.contains(MGC.coord2Point(node.getCoord()))) {
-					writer.write(node.getId().toString());
+			for (int i = 0; i < nodes.length; i++) {
+				if (inside[i]) {
+					writer.write(nodes[i].getId().toString());
 					writer.write("\n");
 					filtered++;
 				}
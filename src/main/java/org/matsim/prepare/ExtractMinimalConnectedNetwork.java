@@ -1,10 +1,12 @@
 package org.matsim.prepare;
 
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.locationtech.jts.geom.Polygonal;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
@@ -19,9 +21,6 @@ import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.gbl.MatsimRandom;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
-import org.matsim.core.router.costcalculators.TravelDisutilityFactory;
-import org.matsim.core.router.speedy.SpeedyALTFactory;
-import org.matsim.core.router.util.LeastCostPathCalculator;
 import org.matsim.core.router.util.TravelDisutility;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.utils.io.IOUtils;
@@ -32,8 +31,9 @@ import picocli.CommandLine;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
 import static org.matsim.run.RunDuesseldorfScenario.VERSION;
 
@@ -80,14 +80,14 @@ public class ExtractMinimalConnectedNetwork implements MATSimAppCommand {
 		markConnectedLinksOfQualifyingLevelInOSMHierarchy(inputNetwork, ConfigUtils.createConfig(), 1.5, 0.2);
 
 		extractNetworkContainingMarkedLinks(inputNetwork);
-		removeDeadEnds(inputNetwork);
 
-		new org.matsim.core.network.algorithms.NetworkCleaner().run(inputNetwork);
+		NetworkConnectivity.Report report = NetworkConnectivity.clean(inputNetwork, TransportMode.car);
+		report.write(sibling(output, "-removed-links.csv"));
 
 		// arb code to write out some values to display using SimWrapper
 		NetworkUtils.writeNetwork(inputNetwork, output.toString());
 
-		try (CSVPrinter csv = new CSVPrinter(IOUtils.getBufferedWriter(output.toString().replace(".xml.gz", ".csv")), CSVFormat.DEFAULT)) {
+		try (CSVPrinter csv = new CSVPrinter(IOUtils.getBufferedWriter(sibling(output, ".csv").toString()), CSVFormat.DEFAULT)) {
 			csv.printRecord("link", "cap");
 
 			for (Link link : inputNetwork.getLinks().values()) {
@@ -104,22 +104,20 @@ public class ExtractMinimalConnectedNetwork implements MATSimAppCommand {
 	}
 
 	/**
-	 * Remove nodes without ingoing *and* outgoing links
+	 * File next to the output network, with the xml extension replaced by {@code suffix}.
+	 * The suffix is appended if the network has another extension, so the network is never overwritten.
 	 */
-	private void removeDeadEnds(Network network) {
+	static Path sibling(Path output, String suffix) {
 
-		Set<Id<Node>> toRemove = new HashSet<>();
-
-		for (Node node : network.getNodes().values()) {
-
-			if (node.getInLinks().size() == 0 || node.getOutLinks().size() == 0)
-				toRemove.add(node.getId());
+		String name = output.getFileName().toString();
+		for (String ext : new String[]{".xml.gz", ".xml"}) {
+			if (name.endsWith(ext)) {
+				name = name.substring(0, name.length() - ext.length());
+				break;
+			}
 		}
 
-		log.info("Removing {} dead-ends", toRemove.size());
-
-		toRemove.forEach(network::removeNode);
-
+		return output.resolveSibling(name + suffix);
 	}
 
 	/**
@@ -133,14 +131,17 @@ public class ExtractMinimalConnectedNetwork implements MATSimAppCommand {
 	 */
 	public static void networkSpatialJoinToBoundaryPolygon(Network network, ShpOptions shp) {
 
-		ShpOptions.Index index = shp.createIndex(RunDuesseldorfScenario.COORDINATE_SYSTEM, "_");
+		AreaIndex area = AreaIndex.of(shp, RunDuesseldorfScenario.COORDINATE_SYSTEM);
+
+		Node[] nodes = network.getNodes().values().toArray(new Node[0]);
+		boolean[] inside = area.contains(Arrays.stream(nodes).map(Node::getCoord).toArray(Coord[]::new));
 
-		network.getNodes().values().forEach(node -> {
-			if (index.contains(node.getCoord())) {
-				node.getInLinks().values().forEach(link -> link.getAttributes().putAttribute("keepLink", true));
-				node.getOutLinks().values().forEach(link -> link.getAttributes().putAttribute("keepLink", true));
+		for (int i = 0; i < nodes.length; i++) {
+			if (inside[i]) {
+				nodes[i].getInLinks().values().forEach(link -> link.getAttributes().putAttribute("keepLink", true));
+				nodes[i].getOutLinks().values().forEach(link -> link.getAttributes().putAttribute("keepLink", true));
 			}
-		});
+		}
 
 		int numberOfIrrelevantLinks = (int) network
 				.getLinks()
@@ -179,13 +180,12 @@ public class ExtractMinimalConnectedNetwork implements MATSimAppCommand {
 
 	/**
 	 * Based on the costs specified in {@link OSMHierarchyTravelDisutility}, takes the set of links with cost lower than
-	 * <tt>maxOSMLinkTypeCost</tt>, shuffles them, reduces the set size to <tt>current size x sampleRate</tt>
-	 * distributes the resulting set of links across available cores and processes each subset as follows.
+	 * <tt>maxOSMLinkTypeCost</tt>, shuffles them and reduces the set size to <tt>current size x sampleRate</tt>.
 	 * <p>
-	 * The subset is divided into two, then a pair of qualifying links is produced by taking elements in each set in
-	 * sequence. A path between the two links is calculated using {@link OSMHierarchyFavouringFastestPathCalculator},
-	 * and all the links in the path, as well as links in the opposite direction, are given an attribute
-	 * <tt>"keepLink" = true</tt>.
+	 * The sample is divided into two, origins and destinations. From both nodes of each origin, a complete
+	 * {@link ShortestPathTree} is grown, and the paths to both nodes of all destinations are marked. Trees are
+	 * distributed across available cores, with one tree instance per thread. All links in these paths, as well as
+	 * links in the opposite direction, are given an attribute <tt>"keepLink" = true</tt>.
 	 *
 	 * @param network
 	 * @param config
@@ -195,112 +195,60 @@ public class ExtractMinimalConnectedNetwork implements MATSimAppCommand {
 	public static void markConnectedLinksOfQualifyingLevelInOSMHierarchy(Network network, Config config,
 	                                                                     double maxOSMLinkTypeCost,
 	                                                                     double sampleRate) {
-		Set<Id<Link>> linkstoKeep = new ConcurrentSkipListSet<>();
-		AtomicInteger i = new AtomicInteger(0);
 
-		network.getLinks()
-				.values()
-				.stream()
-				.filter(
-						link -> OSMHierarchyTravelDisutility.getOSMLinkTypeCost(link) <= maxOSMLinkTypeCost &&
-								!link.getAllowedModes().contains(TransportMode.pt))
-				.forEach(link -> linkstoKeep.add(link.getId()));
+		TravelDisutility disutility = new OSMHierarchyTravelDisutility(new FreespeedTravelTimeAndDisutility(config.planCalcScore()));
+		Graph graph = new Graph(network, disutility);
 
+		BitSet qualifying = new BitSet(graph.links.length);
+		for (int l = 0; l < graph.links.length; l++) {
+			Link link = graph.links[l];
+			if (OSMHierarchyTravelDisutility.getOSMLinkTypeCost(link) <= maxOSMLinkTypeCost &&
+					!link.getAllowedModes().contains(TransportMode.pt))
+				qualifying.set(l);
+		}
 
-		class Runner implements Callable<Integer> {
+		int[] links = qualifying.stream().toArray();
+		IntArrays.shuffle(links, MatsimRandom.getRandom());
+		int size = (int) Math.ceil(sampleRate * links.length);
 
-			final OSMHierarchyFavouringFastestPathCalculator pathCalculator = new OSMHierarchyFavouringFastestPathCalculator(network, config);
-			final List<Id<Link>> myOriginLinks;
-			final List<Id<Link>> myDestinationLinks;
+		int[] origins = Arrays.copyOfRange(links, 0, size / 2);
+		int[] destinations = Arrays.stream(links, size / 2, size)
+				.flatMap(l -> IntStream.of(graph.linkFrom[l], graph.linkTo[l]))
+				.distinct()
+				.toArray();
 
-			Runner(List<Id<Link>> myLinks) {
-				this.myOriginLinks = myLinks.subList(0, myLinks.size() / 2);
-				this.myDestinationLinks = myLinks.subList(myLinks.size() / 2, myLinks.size());
-			}
+		log.info("Growing {} shortest path trees to {} destination nodes", 2 * origins.length, destinations.length);
 
-			@Override
-			public Integer call() {
-				for (int j = 0; j < Math.min(myOriginLinks.size(), myDestinationLinks.size()); j++) {
-					Id<Link> link = myOriginLinks.get(j);
-					Id<Link> dlink = myDestinationLinks.get(j);
-					LeastCostPathCalculator.Path path = pathCalculator.getPath(network.getLinks().get(link).getToNode(),
-							network.getLinks().get(dlink).getFromNode());
-					if (path == null) {
-						log.warn("No route found for {} and {}", link, dlink);
-						continue;
-					}
+		ThreadLocal<ShortestPathTree> trees = ThreadLocal.withInitial(() -> new ShortestPathTree(graph));
+		AtomicInteger processed = new AtomicInteger();
+		LongAdder unreachable = new LongAdder();
 
-					for (Link pathLink : path.links) {
-						linkstoKeep.add(pathLink.getId());
-					}
-					//checking all possible combinations
-					path = pathCalculator.getPath(network.getLinks().get(link).getFromNode(),
-							network.getLinks().get(dlink).getToNode());
-					if (path == null) {
-						log.warn("No route found for {} and {}", link, dlink);
-						continue;
-					}
+		BitSet used = IntStream.range(0, 2 * origins.length).parallel().collect(BitSet::new, (bits, j) -> {
 
-					for (Link pathLink : path.links) {
-						linkstoKeep.add(pathLink.getId());
-					}
-					path = pathCalculator.getPath(network.getLinks().get(link).getFromNode(),
-							network.getLinks().get(dlink).getFromNode());
-					if (path == null) {
-						log.warn("No route found for {} and {}", link, dlink);
-						continue;
-					}
+			int origin = origins[j / 2];
+			ShortestPathTree tree = trees.get();
+			tree.calculate(j % 2 == 0 ? graph.linkTo[origin] : graph.linkFrom[origin]);
 
-					for (Link pathLink : path.links) {
-						linkstoKeep.add(pathLink.getId());
-					}
-					path = pathCalculator.getPath(network.getLinks().get(link).getToNode(),
-							network.getLinks().get(dlink).getToNode());
-					if (path == null) {
-						log.warn("No route found for {} and {}", link, dlink);
-						continue;
-					}
+			for (int node : destinations) {
+				if (!tree.mark(node, bits))
+					unreachable.increment();
+			}
 
-					for (Link pathLink : path.links) {
-						linkstoKeep.add(pathLink.getId());
-					}
+			int n = processed.incrementAndGet();
+			if (n % 1000 == 0)
+				log.info("Processed {} trees", n);
 
-					int localI = i.incrementAndGet();
-					// pieter jan 22: this is only to get some indication of progress, so not logging it.
-					if (localI % 100 == 0)
-						System.out.print(String.format("%06d:%06d...%s", i.get(), linkstoKeep.size(),
-								(localI % 1000 == 0 ?
-										"\n" :
-										"")));
-				}
+		}, BitSet::or);
 
-				return 0;
-			}
-		}
+		if (unreachable.sum() > 0)
+			log.warn("No route found for {} origin and destination pairs", unreachable.sum());
 
-		int startIndex = 0;
-		List<List<Id<Link>>> linkLists = new ArrayList<>();
-
-		List<Id<Link>> links = new ArrayList<>();
-		links.addAll(linkstoKeep);
-		Collections.shuffle(links);
-		Random random = MatsimRandom.getRandom();
-		double targetSize = sampleRate * (double) links.size();
-		while (links.size() > targetSize)
-			links.remove(random.nextInt(links.size()));
-		while (startIndex < links.size()) {
-			linkLists.add(links.subList(startIndex, Math.min(startIndex + 49, links.size())));
-			startIndex += 49;
-		}
-		// pieter jan 22: if something goes wrong, run the set in a single thread and debug with
-		// new Runner(links).run();
+		used.or(qualifying);
 
-		linkLists.parallelStream().forEach(linkList -> {
-			new Runner(linkList).call();
-		});
+		log.info("Marked {} links, of which {} are of qualifying level", used.cardinality(), qualifying.cardinality());
 
-		linkstoKeep.forEach(linkId -> {
-			Link link = network.getLinks().get(linkId);
+		used.stream().forEach(l -> {
+			Link link = graph.links[l];
 			link.getAttributes().putAttribute(
 					"keepLink", true);
 			Link linkInOppositeDirection = NetworkUtils.findLinkInOppositeDirection(link);
@@ -311,57 +259,222 @@ public class ExtractMinimalConnectedNetwork implements MATSimAppCommand {
 	}
 
 	/**
-	 * Finds the path between two nodes, favouring travel time and level of OSM hierarchy, with links lower in the
-	 * hierarchy incurring increasing penalties.
+	 * Network as index arrays, with fixed link costs. Nodes and links are numbered in the order of the network.
 	 */
-	private static class OSMHierarchyFavouringFastestPathCalculator {
-		final Network network;
-		final Config config;
+	static final class Graph {
+
+		final Link[] links;
+		final int[] linkFrom;
+		final int[] linkTo;
+		final double[] linkCost;
+
+		/**
+		 * Out links of each node, as positions in {@link #outLinks}.
+		 */
+		final int[] outStart;
+		final int[] outLinks;
+
+		/**
+		 * Position of each node, by id index.
+		 */
+		final int[] nodePos;
+
+		Graph(Network network, TravelDisutility disutility) {
+
+			nodePos = new int[Id.getNumberOfIds(Node.class)];
+			int numNodes = 0;
+			for (Node node : network.getNodes().values())
+				nodePos[node.getId().index()] = numNodes++;
+
+			links = network.getLinks().values().toArray(new Link[0]);
+			linkFrom = new int[links.length];
+			linkTo = new int[links.length];
+			linkCost = new double[links.length];
+			outStart = new int[numNodes + 1];
+
+			for (int l = 0; l < links.length; l++) {
+				linkFrom[l] = nodePos[links[l].getFromNode().getId().index()];
+				linkTo[l] = nodePos[links[l].getToNode().getId().index()];
+				linkCost[l] = disutility.getLinkMinimumTravelDisutility(links[l]);
+				outStart[linkFrom[l] + 1]++;
+			}
 
-		final LeastCostPathCalculator lcpc;
+			for (int i = 0; i < numNodes; i++)
+				outStart[i + 1] += outStart[i];
 
-		final static ThreadLocal<LeastCostPathCalculator> var = new ThreadLocal<>();
+			outLinks = new int[links.length];
+			int[] fill = Arrays.copyOf(outStart, numNodes);
+			for (int l = 0; l < links.length; l++)
+				outLinks[fill[linkFrom[l]]++] = l;
+		}
 
-		// define how the travel disutility is computed:
+		int numberOfNodes() {
+			return outStart.length - 1;
+		}
+
+		int node(Node node) {
+			return nodePos[node.getId().index()];
+		}
+	}
+
+	/**
+	 * One-to-all least cost path tree on a {@link Graph}, using Dijkstra with an indexed binary heap.
+	 * Instances are not thread-safe, but can be reused for many trees without clearing their arrays.
+	 */
+	static final class ShortestPathTree {
+
+		private final Graph graph;
+		private final double[] cost;
+
+		/**
+		 * Link used to reach each node, or -1 for the root.
+		 */
+		private final int[] comingFrom;
+
+		/**
+		 * Number of the tree in which each node was reached and marked.
+		 */
+		private final int[] reached;
+		private final int[] marked;
+
+		private final int[] heap;
+		private final int[] heapPos;
+		private int heapSize;
+		private int tree;
+
+		ShortestPathTree(Graph graph) {
+			this.graph = graph;
+			int n = graph.numberOfNodes();
+			this.cost = new double[n];
+			this.comingFrom = new int[n];
+			this.reached = new int[n];
+			this.marked = new int[n];
+			this.heap = new int[n];
+			this.heapPos = new int[n];
+		}
 
-		OSMHierarchyFavouringFastestPathCalculator(Network network, Config config) {
-			this.network = network;
-			this.config = config;
+		/**
+		 * Grow the tree from a start node.
+		 */
+		void calculate(int start) {
+
+			tree++;
+			heapSize = 0;
+
+			reached[start] = tree;
+			cost[start] = 0;
+			comingFrom[start] = -1;
+			push(start);
+
+			while (heapSize > 0) {
+				int node = poll();
+				double c = cost[node];
+
+				for (int i = graph.outStart[node]; i < graph.outStart[node + 1]; i++) {
+					int link = graph.outLinks[i];
+					int to = graph.linkTo[link];
+					double newCost = c + graph.linkCost[link];
+
+					if (reached[to] != tree) {
+						reached[to] = tree;
+						cost[to] = newCost;
+						comingFrom[to] = link;
+						push(to);
+					} else if (newCost < cost[to] && heapPos[to] >= 0) {
+						cost[to] = newCost;
+						comingFrom[to] = link;
+						up(heapPos[to]);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Cost to reach a node, or infinity if it is not reachable.
+		 */
+		double getCost(int node) {
+			return reached[node] == tree ? cost[node] : Double.POSITIVE_INFINITY;
+		}
 
-			// Cache this instance for each thread
-			if (var.get() == null) {
+		/**
+		 * Set the links on the path to a node. The trace stops at nodes already marked in this tree.
+		 *
+		 * @return whether the node is reachable
+		 */
+		boolean mark(int node, BitSet links) {
 
-				TravelDisutilityFactory disutilityFactory = new OSMHierarchyTravelDisutilityFactory();
-				TravelTime travelTime = new FreespeedTravelTimeAndDisutility(config.planCalcScore());
+			if (reached[node] != tree)
+				return false;
 
-				var.set(new SpeedyALTFactory().createPathCalculator(network,
-						disutilityFactory.createTravelDisutility(travelTime), travelTime
-				));
+			while (marked[node] != tree) {
+				marked[node] = tree;
+				int link = comingFrom[node];
+				if (link < 0)
+					break;
+
+				links.set(link);
+				node = graph.linkFrom[link];
 			}
 
-			lcpc = var.get();
+			return true;
 		}
 
-		LeastCostPathCalculator.Path getPath(Node fromNode, Node toNode) {
+		private void push(int node) {
+			heap[heapSize] = node;
+			heapPos[node] = heapSize;
+			up(heapSize++);
+		}
 
-			return lcpc.calcLeastCostPath(fromNode, toNode, 0, null, null);
+		private int poll() {
+			int node = heap[0];
+			heapPos[node] = -1;
+			if (--heapSize > 0) {
+				heap[0] = heap[heapSize];
+				heapPos[heap[0]] = 0;
+				down(0);
+			}
+			return node;
 		}
 
-	}
+		private void up(int i) {
+			int node = heap[i];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (cost[heap[parent]] <= cost[node])
+					break;
 
-	/**
-	 * Helper class to {@link OSMHierarchyFavouringFastestPathCalculator}
-	 */
-	private static class OSMHierarchyTravelDisutilityFactory implements TravelDisutilityFactory {
+				heap[i] = heap[parent];
+				heapPos[heap[i]] = i;
+				i = parent;
+			}
+			heap[i] = node;
+			heapPos[node] = i;
+		}
 
-		@Override
-		public TravelDisutility createTravelDisutility(TravelTime timeCalculator) {
-			return new OSMHierarchyTravelDisutility(timeCalculator);
+		private void down(int i) {
+			int node = heap[i];
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= heapSize)
+					break;
+
+				if (child + 1 < heapSize && cost[heap[child + 1]] < cost[heap[child]])
+					child++;
+
+				if (cost[node] <= cost[heap[child]])
+					break;
+
+				heap[i] = heap[child];
+				heapPos[heap[i]] = i;
+				i = child;
+			}
+			heap[i] = node;
+			heapPos[node] = i;
 		}
 	}
 
 	/**
-	 * Helper class to {@link OSMHierarchyFavouringFastestPathCalculator}, where a disutility factor is associated with
+	 * Costs of the {@link ShortestPathTree}, where a disutility factor is associated with
 	 * each level of the OSM hierarchy observed in the Duesseldorf scenario.
 	 * <p>
 	 * The map of disutilities is pretty arbitrary, tuned after several runs of
@@ -369,7 +482,7 @@ public class ExtractMinimalConnectedNetwork implements MATSimAppCommand {
 	 * to produce a network providing adequate connection and few orphaned links. May have to be adjusted based on
 	 * context, and certainly does not contain the entire hierarchy specified in the <a href="">OSM wiki</a>.
 	 */
-	private static class OSMHierarchyTravelDisutility implements TravelDisutility {
+	static class OSMHierarchyTravelDisutility implements TravelDisutility {
 		final TravelTime travelTime;
 		static Map<String, Double> osmHierarchyMap = new HashMap<>();
 
@@ -0,0 +1,225 @@
+package org.matsim.prepare;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.Collection;
+import java.util.function.IntConsumer;
+
+/**
+ * Uniform grid over the straight segments of links to find the nearest link of a coordinate.
+ * <p>
+ * Results are the same as {@link NetworkUtils#getNearestLinkExactly}: links are compared by their distance to the
+ * segment between from and to node, on ties the link that comes first in the given collection is returned.
+ * The index is immutable and can be queried from multiple threads.
+ */
+public final class LinkIndex {
+
+	/**
+	 * Average number of links per cell, used to determine the cell size.
+	 */
+	private static final int LINKS_PER_CELL = 4;
+
+	private final Link[] links;
+	private final double[] coords;
+
+	private final double minX;
+	private final double minY;
+	private final double cellSize;
+	private final int nx;
+	private final int ny;
+
+	/**
+	 * Links of each cell, cell i contains entries {@code cellStart[i]} until {@code cellStart[i + 1]} of {@code cellLinks}.
+	 */
+	private final int[] cellStart;
+	private final int[] cellLinks;
+
+	/**
+	 * Create an index with a cell size derived from the density of links.
+	 */
+	public LinkIndex(Collection<? extends Link> links) {
+		this(links, Double.NaN);
+	}
+
+	/**
+	 * Create an index with given cell size in the unit of the coordinates.
+	 */
+	public LinkIndex(Collection<? extends Link> links, double cellSize) {
+
+		if (links.isEmpty())
+			throw new IllegalArgumentException("No links given");
+
+		this.links = links.toArray(new Link[0]);
+		this.coords = new double[this.links.length * 4];
+
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+		for (int i = 0; i < this.links.length; i++) {
+			Coord from = this.links[i].getFromNode().getCoord();
+			Coord to = this.links[i].getToNode().getCoord();
+
+			coords[i * 4] = from.getX();
+			coords[i * 4 + 1] = from.getY();
+			coords[i * 4 + 2] = to.getX();
+			coords[i * 4 + 3] = to.getY();
+
+			minX = Math.min(minX, Math.min(from.getX(), to.getX()));
+			minY = Math.min(minY, Math.min(from.getY(), to.getY()));
+			maxX = Math.max(maxX, Math.max(from.getX(), to.getX()));
+			maxY = Math.max(maxY, Math.max(from.getY(), to.getY()));
+		}
+
+		double width = Math.max(maxX - minX, 1);
+		double height = Math.max(maxY - minY, 1);
+
+		if (Double.isNaN(cellSize))
+			cellSize = Math.sqrt(width * height * LINKS_PER_CELL / this.links.length);
+
+		// limit the number of cells for degenerated bounds
+		cellSize = Math.max(cellSize, Math.sqrt(width * height / (16d * this.links.length)));
+
+		this.minX = minX;
+		this.minY = minY;
+		this.cellSize = cellSize;
+		this.nx = (int) (width / cellSize) + 1;
+		this.ny = (int) (height / cellSize) + 1;
+
+		// count links per cell first, then fill the cells
+		this.cellStart = new int[nx * ny + 1];
+		for (int i = 0; i < this.links.length; i++)
+			forEachCell(i, cell -> cellStart[cell + 1]++);
+
+		for (int i = 0; i < nx * ny; i++)
+			cellStart[i + 1] += cellStart[i];
+
+		this.cellLinks = new int[cellStart[nx * ny]];
+		int[] fill = new int[nx * ny];
+		for (int i = 0; i < this.links.length; i++) {
+			int link = i;
+			forEachCell(i, cell -> cellLinks[cellStart[cell] + fill[cell]++] = link);
+		}
+	}
+
+	/**
+	 * Call consumer for all cells overlapped by the bounding box of link {@code i}.
+	 */
+	private void forEachCell(int i, IntConsumer consumer) {
+		int x0 = cellX(Math.min(coords[i * 4], coords[i * 4 + 2]));
+		int x1 = cellX(Math.max(coords[i * 4], coords[i * 4 + 2]));
+		int y0 = cellY(Math.min(coords[i * 4 + 1], coords[i * 4 + 3]));
+		int y1 = cellY(Math.max(coords[i * 4 + 1], coords[i * 4 + 3]));
+
+		for (int x = x0; x <= x1; x++)
+			for (int y = y0; y <= y1; y++)
+				consumer.accept(x * ny + y);
+	}
+
+	private int cellX(double x) {
+		return Math.min(nx - 1, (int) ((x - minX) / cellSize));
+	}
+
+	private int cellY(double y) {
+		return Math.min(ny - 1, (int) ((y - minY) / cellSize));
+	}
+
+	/**
+	 * Number of indexed links.
+	 */
+	public int size() {
+		return links.length;
+	}
+
+	/**
+	 * Find the nearest link.
+	 */
+	public Link getNearestLink(Coord coord) {
+		return links[nearest(coord.getX(), coord.getY())];
+	}
+
+	/**
+	 * Find the position of the nearest link in the collection given at construction.
+	 */
+	public int nearest(double x, double y) {
+
+		// cell of the point, which may be outside the grid
+		int cx = (int) Math.floor((x - minX) / cellSize);
+		int cy = (int) Math.floor((y - minY) / cellSize);
+
+		// first ring that touches the grid
+		int r = Math.max(0, Math.max(Math.max(-cx, cx - nx + 1), Math.max(-cy, cy - ny + 1)));
+
+		int best = -1;
+		double bestDist = Double.POSITIVE_INFINITY;
+
+		while (true) {
+
+			for (int x0 = Math.max(0, cx - r); x0 <= Math.min(nx - 1, cx + r); x0++) {
+
+				// only the border of the ring
+				boolean border = x0 == cx - r || x0 == cx + r;
+				int step = border ? 1 : 2 * r;
+
+				for (int y0 = cy - r; y0 <= cy + r; y0 += Math.max(1, step)) {
+					if (y0 < 0 || y0 >= ny)
+						continue;
+
+					int cell = x0 * ny + y0;
+					for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+						int i = cellLinks[k];
+						double d = distanceSq(x, y, i);
+						if (d < bestDist || (d == bestDist && i < best)) {
+							bestDist = d;
+							best = i;
+						}
+					}
+				}
+			}
+
+			// all cells have been searched
+			if (cx - r <= 0 && cy - r <= 0 && cx + r >= nx - 1 && cy + r >= ny - 1)
+				break;
+
+			// distance to the area not searched yet
+			double left = x - (minX + (cx - r) * cellSize);
+			double right = minX + (cx + r + 1) * cellSize - x;
+			double bottom = y - (minY + (cy - r) * cellSize);
+			double top = minY + (cy + r + 1) * cellSize - y;
+			double bound = Math.min(Math.min(left, right), Math.min(bottom, top));
+
+			if (best >= 0 && bestDist <= bound * bound)
+				break;
+
+			r++;
+		}
+
+		return best;
+	}
+
+	/**
+	 * Indexed link at position.
+	 */
+	public Link getLink(int i) {
+		return links[i];
+	}
+
+	/**
+	 * Squared distance to the segment of link {@code i}.
+	 */
+	private double distanceSq(double x, double y, int i) {
+		double x1 = coords[i * 4];
+		double y1 = coords[i * 4 + 1];
+		double dx = coords[i * 4 + 2] - x1;
+		double dy = coords[i * 4 + 3] - y1;
+
+		double len = dx * dx + dy * dy;
+		double t = len > 0 ? ((x - x1) * dx + (y - y1) * dy) / len : 0;
+		t = Math.max(0, Math.min(1, t));
+
+		double px = x1 + t * dx - x;
+		double py = y1 + t * dy - y;
+		return px * px + py * py;
+	}
+}
@@ -0,0 +1,325 @@
+package org.matsim.prepare;
+
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Removes links of one mode that are not part of the largest strongly connected component.
+ * <p>
+ * Dead ends are peeled first with a worklist, the remaining graph is split into components with an iterative version
+ * of Tarjan's algorithm. Both steps work on index arrays and run in linear time, independent of the length of
+ * dangling chains. Links not allowing the mode are not touched.
+ */
+public final class NetworkConnectivity {
+
+	private static final Logger log = LogManager.getLogger(NetworkConnectivity.class);
+
+	private final Link[] links;
+	private final int[] linkFrom;
+	private final int[] linkTo;
+
+	private final int[] outStart;
+	private final int[] outLinks;
+	private final int[] inStart;
+	private final int[] inLinks;
+
+	private final int numNodes;
+
+	/**
+	 * Nodes removed as dead ends.
+	 */
+	private final boolean[] peeled;
+
+	private NetworkConnectivity(Network network, String mode) {
+
+		int[] nodePos = new int[Id.getNumberOfIds(Node.class)];
+		int n = 0;
+		for (Node node : network.getNodes().values())
+			nodePos[node.getId().index()] = n++;
+
+		numNodes = n;
+		links = network.getLinks().values().stream()
+				.filter(l -> l.getAllowedModes().contains(mode))
+				.toArray(Link[]::new);
+
+		linkFrom = new int[links.length];
+		linkTo = new int[links.length];
+		outStart = new int[numNodes + 1];
+		inStart = new int[numNodes + 1];
+
+		for (int l = 0; l < links.length; l++) {
+			linkFrom[l] = nodePos[links[l].getFromNode().getId().index()];
+			linkTo[l] = nodePos[links[l].getToNode().getId().index()];
+			outStart[linkFrom[l] + 1]++;
+			inStart[linkTo[l] + 1]++;
+		}
+
+		for (int i = 0; i < numNodes; i++) {
+			outStart[i + 1] += outStart[i];
+			inStart[i + 1] += inStart[i];
+		}
+
+		outLinks = new int[links.length];
+		inLinks = new int[links.length];
+		int[] outFill = Arrays.copyOf(outStart, numNodes);
+		int[] inFill = Arrays.copyOf(inStart, numNodes);
+		for (int l = 0; l < links.length; l++) {
+			outLinks[outFill[linkFrom[l]]++] = l;
+			inLinks[inFill[linkTo[l]]++] = l;
+		}
+
+		peeled = new boolean[numNodes];
+	}
+
+	/**
+	 * Keep only the largest strongly connected component of links allowing {@code mode}. Nodes without any links
+	 * are removed as well.
+	 *
+	 * @return links that have been removed from the network
+	 */
+	public static Report clean(Network network, String mode) {
+
+		NetworkConnectivity graph = new NetworkConnectivity(network, mode);
+
+		Report report = new Report();
+		graph.peelDeadEnds(report.deadEnds);
+
+		int[] component = graph.components();
+		int largest = graph.largestComponent(component);
+
+		for (int l = 0; l < graph.links.length; l++) {
+			int from = graph.linkFrom[l];
+			int to = graph.linkTo[l];
+			if (!graph.peeled[from] && !graph.peeled[to] && (component[from] != largest || component[to] != largest))
+				report.components.add(graph.links[l].getId());
+		}
+
+		report.deadEnds.forEach(network::removeLink);
+		report.components.forEach(network::removeLink);
+
+		List<Id<Node>> empty = new ArrayList<>();
+		for (Node node : network.getNodes().values()) {
+			if (node.getInLinks().isEmpty() && node.getOutLinks().isEmpty())
+				empty.add(node.getId());
+		}
+
+		empty.forEach(network::removeNode);
+
+		log.info("Removed {} links at dead-ends, {} links outside the largest component and {} nodes",
+				report.deadEnds.size(), report.components.size(), empty.size());
+
+		return report;
+	}
+
+	/**
+	 * Repeatedly remove nodes without in or out links, including their links.
+	 */
+	private void peelDeadEnds(List<Id<Link>> removed) {
+
+		int[] inDegree = new int[numNodes];
+		int[] outDegree = new int[numNodes];
+		boolean[] removedLink = new boolean[links.length];
+
+		IntArrayFIFOQueue queue = new IntArrayFIFOQueue();
+
+		for (int i = 0; i < numNodes; i++) {
+			inDegree[i] = inStart[i + 1] - inStart[i];
+			outDegree[i] = outStart[i + 1] - outStart[i];
+
+			// nodes without any links of this mode are left alone
+			if ((inDegree[i] == 0) != (outDegree[i] == 0)) {
+				peeled[i] = true;
+				queue.enqueue(i);
+			}
+		}
+
+		while (!queue.isEmpty()) {
+			int node = queue.dequeueInt();
+
+			for (int i = outStart[node]; i < outStart[node + 1]; i++) {
+				int l = outLinks[i];
+				if (removedLink[l])
+					continue;
+
+				removedLink[l] = true;
+				removed.add(links[l].getId());
+
+				int to = linkTo[l];
+				if (--inDegree[to] == 0 && !peeled[to]) {
+					peeled[to] = true;
+					queue.enqueue(to);
+				}
+			}
+
+			for (int i = inStart[node]; i < inStart[node + 1]; i++) {
+				int l = inLinks[i];
+				if (removedLink[l])
+					continue;
+
+				removedLink[l] = true;
+				removed.add(links[l].getId());
+
+				int from = linkFrom[l];
+				if (--outDegree[from] == 0 && !peeled[from]) {
+					peeled[from] = true;
+					queue.enqueue(from);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Iterative Tarjan on nodes that have not been peeled.
+	 *
+	 * @return component of each node, -1 for peeled nodes
+	 */
+	private int[] components() {
+
+		int[] component = new int[numNodes];
+		int[] index = new int[numNodes];
+		int[] low = new int[numNodes];
+		boolean[] onStack = new boolean[numNodes];
+
+		Arrays.fill(component, -1);
+		Arrays.fill(index, -1);
+
+		int[] stack = new int[numNodes];
+		int stackSize = 0;
+
+		// emulated call stack, with the position of the next out link for each node
+		int[] callStack = new int[numNodes];
+		int[] next = new int[numNodes];
+		int depth;
+
+		int counter = 0;
+		int components = 0;
+
+		for (int root = 0; root < numNodes; root++) {
+
+			if (peeled[root] || index[root] >= 0)
+				continue;
+
+			depth = 0;
+			callStack[depth++] = root;
+			index[root] = low[root] = counter++;
+			next[root] = outStart[root];
+			stack[stackSize++] = root;
+			onStack[root] = true;
+
+			while (depth > 0) {
+
+				int node = callStack[depth - 1];
+
+				if (next[node] < outStart[node + 1]) {
+
+					int to = linkTo[outLinks[next[node]++]];
+					if (peeled[to])
+						continue;
+
+					if (index[to] < 0) {
+						index[to] = low[to] = counter++;
+						next[to] = outStart[to];
+						stack[stackSize++] = to;
+						onStack[to] = true;
+						callStack[depth++] = to;
+					} else if (onStack[to]) {
+						low[node] = Math.min(low[node], index[to]);
+					}
+
+					continue;
+				}
+
+				// all successors visited
+				depth--;
+				if (depth > 0) {
+					int parent = callStack[depth - 1];
+					low[parent] = Math.min(low[parent], low[node]);
+				}
+
+				if (low[node] == index[node]) {
+					int member;
+					do {
+						member = stack[--stackSize];
+						onStack[member] = false;
+						component[member] = components;
+					} while (member != node);
+
+					components++;
+				}
+			}
+		}
+
+		return component;
+	}
+
+	private int largestComponent(int[] component) {
+
+		int[] size = new int[numNodes + 1];
+		int largest = -1;
+		for (int c : component) {
+			if (c < 0)
+				continue;
+
+			if (++size[c] > (largest >= 0 ? size[largest] : 0))
+				largest = c;
+		}
+
+		return largest;
+	}
+
+	/**
+	 * Links removed from the network, by the reason of their removal.
+	 */
+	public static final class Report {
+
+		private final List<Id<Link>> deadEnds = new ArrayList<>();
+		private final List<Id<Link>> components = new ArrayList<>();
+
+		/**
+		 * Links removed while peeling dead-ends.
+		 */
+		public List<Id<Link>> getDeadEnds() {
+			return deadEnds;
+		}
+
+		/**
+		 * Links removed because they are not in the largest component.
+		 */
+		public List<Id<Link>> getComponents() {
+			return components;
+		}
+
+		/**
+		 * Write all removed links as csv.
+		 */
+		public void write(Path output) {
+			try (CSVPrinter csv = new CSVPrinter(IOUtils.getBufferedWriter(output.toString()), CSVFormat.DEFAULT)) {
+				csv.printRecord("link", "reason");
+
+				for (Id<Link> link : deadEnds)
+					csv.printRecord(link, "dead-end");
+
+				for (Id<Link> link : components)
+					csv.printRecord(link, "component");
+
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
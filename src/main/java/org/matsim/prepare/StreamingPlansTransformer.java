@@ -0,0 +1,476 @@
+package org.matsim.prepare;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.core.utils.io.IOUtils;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Rewrites a plans file person by person, without loading the whole population.
+ * <p>
+ * The input is read with StAX. Each {@code <person>} is collected into a small element tree, and batches of persons
+ * are passed through the {@link Rule}s on multiple threads. Persons are written in the order of the input, everything
+ * outside of persons is copied unchanged. Input and output are compressed when the file name ends with {@code .gz}.
+ * Memory usage only depends on the number of batches in flight, not on the size of the population.
+ */
+public final class StreamingPlansTransformer {
+
+	private static final Logger log = LogManager.getLogger(StreamingPlansTransformer.class);
+
+	/**
+	 * Number of persons processed as one task.
+	 */
+	private static final int BATCH_SIZE = 500;
+
+	private static final long PROGRESS = 100_000;
+
+	private static final String PERSON = "person";
+
+	private final int threads;
+	private final List<Rule> rules = new ArrayList<>();
+	private final List<Consumer<Element>> listeners = new ArrayList<>();
+
+	/**
+	 * Use all available cores.
+	 */
+	public StreamingPlansTransformer() {
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	/**
+	 * @param threads number of threads applying the rules
+	 */
+	public StreamingPlansTransformer(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is required");
+
+		this.threads = threads;
+	}
+
+	/**
+	 * Add a rule, which is applied after all previously added rules.
+	 */
+	public StreamingPlansTransformer addRule(Rule rule) {
+		rules.add(rule);
+		return this;
+	}
+
+	/**
+	 * Add a listener that receives each transformed person in output order. Listeners are called on a single thread,
+	 * so they can collect results without synchronization.
+	 */
+	public StreamingPlansTransformer addListener(Consumer<Element> listener) {
+		listeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * Transform all persons of {@code input} and write them to {@code output}.
+	 *
+	 * @return number of persons
+	 */
+	public long transform(Path input, Path output) {
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "plans-transformer");
+			t.setDaemon(true);
+			return t;
+		});
+
+		long start = System.nanoTime();
+
+		try (InputStream in = IOUtils.getInputStream(IOUtils.getFileUrl(input.toString()));
+			 OutputStream out = IOUtils.getOutputStream(IOUtils.getFileUrl(output.toString()), false)) {
+
+			XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+			inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+			XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+			XMLStreamWriter writer = XMLOutputFactory.newFactory().createXMLStreamWriter(out, "UTF-8");
+
+			long n = new Run(reader, writer, executor).run();
+
+			writer.close();
+			reader.close();
+
+			double seconds = (System.nanoTime() - start) / 1e9;
+			log.info("Transformed {} persons from {} in {} s using {} threads", n, input, String.format("%.1f", seconds), threads);
+
+			return n;
+
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Could not transform " + input, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while transforming " + input, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+
+			throw new IllegalStateException("Could not transform " + input, e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * State of one transformation.
+	 */
+	private final class Run {
+
+		private final XMLStreamReader reader;
+		private final XMLStreamWriter writer;
+		private final ExecutorService executor;
+
+		/**
+		 * Batches in the order of the input.
+		 */
+		private final Deque<Future<List<Element>>> pending = new ArrayDeque<>();
+
+		/**
+		 * Whether each open element already has child elements, used for indentation.
+		 */
+		private final Deque<Boolean> open = new ArrayDeque<>();
+
+		private List<Element> batch = new ArrayList<>(BATCH_SIZE);
+		private long n;
+
+		Run(XMLStreamReader reader, XMLStreamWriter writer, ExecutorService executor) {
+			this.reader = reader;
+			this.writer = writer;
+			this.executor = executor;
+		}
+
+		long run() throws XMLStreamException, ExecutionException, InterruptedException {
+
+			writer.writeStartDocument("UTF-8", "1.0");
+
+			while (reader.hasNext()) {
+				int event = reader.next();
+
+				switch (event) {
+					case XMLStreamConstants.START_ELEMENT:
+						if (PERSON.equals(reader.getLocalName())) {
+							add(read());
+						} else {
+							flush(0);
+							startElement();
+						}
+						break;
+					case XMLStreamConstants.END_ELEMENT:
+						flush(0);
+						endElement();
+						break;
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.CDATA:
+					case XMLStreamConstants.SPACE:
+						// whitespace is replaced by own indentation
+						if (!reader.isWhiteSpace()) {
+							flush(0);
+							writer.writeCharacters(reader.getText());
+						}
+						break;
+					case XMLStreamConstants.COMMENT:
+						flush(0);
+						indent(open.size());
+						writer.writeComment(reader.getText());
+						break;
+					case XMLStreamConstants.DTD:
+						writer.writeCharacters("\n");
+						writer.writeDTD(reader.getText());
+						break;
+					default:
+						break;
+				}
+			}
+
+			flush(0);
+			writer.writeCharacters("\n");
+			writer.writeEndDocument();
+
+			return n;
+		}
+
+		private void startElement() throws XMLStreamException {
+			indent(open.size());
+			markChild();
+
+			writer.writeStartElement(qualified(reader.getPrefix(), reader.getLocalName()));
+			for (int i = 0; i < reader.getNamespaceCount(); i++) {
+				String prefix = reader.getNamespacePrefix(i);
+				if (prefix == null || prefix.isEmpty())
+					writer.writeDefaultNamespace(reader.getNamespaceURI(i));
+				else
+					writer.writeNamespace(prefix, reader.getNamespaceURI(i));
+			}
+
+			for (int i = 0; i < reader.getAttributeCount(); i++)
+				writer.writeAttribute(qualified(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+
+			open.push(false);
+		}
+
+		private void endElement() throws XMLStreamException {
+			if (open.pop())
+				indent(open.size());
+
+			writer.writeEndElement();
+		}
+
+		/**
+		 * Read the current element and all its children.
+		 */
+		private Element read() throws XMLStreamException {
+
+			Element element = new Element(reader.getLocalName());
+			for (int i = 0; i < reader.getAttributeCount(); i++)
+				element.setAttribute(qualified(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+
+			StringBuilder text = null;
+
+			while (true) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT)
+					element.children.add(read());
+				else if (event == XMLStreamConstants.END_ELEMENT)
+					break;
+				else if ((event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) && !reader.isWhiteSpace()) {
+					if (text == null)
+						text = new StringBuilder();
+
+					text.append(reader.getText());
+				}
+			}
+
+			if (text != null)
+				element.text = text.toString();
+
+			return element;
+		}
+
+		private void add(Element person) throws ExecutionException, InterruptedException, XMLStreamException {
+
+			batch.add(person);
+			if (batch.size() < BATCH_SIZE)
+				return;
+
+			List<Element> persons = batch;
+			pending.add(executor.submit(() -> {
+				for (Element p : persons) {
+					for (Rule rule : rules)
+						rule.apply(p);
+				}
+				return persons;
+			}));
+
+			batch = new ArrayList<>(BATCH_SIZE);
+
+			// bounds the number of persons in memory
+			flush(2 * threads);
+		}
+
+		/**
+		 * Write finished batches until at most {@code limit} are pending. With limit 0, the current batch is also written.
+		 */
+		private void flush(int limit) throws ExecutionException, InterruptedException, XMLStreamException {
+
+			while (pending.size() > limit)
+				write(pending.poll().get());
+
+			if (limit == 0 && !batch.isEmpty()) {
+				for (Element p : batch) {
+					for (Rule rule : rules)
+						rule.apply(p);
+				}
+				write(batch);
+				batch = new ArrayList<>(BATCH_SIZE);
+			}
+		}
+
+		private void write(List<Element> persons) throws XMLStreamException {
+			for (Element person : persons) {
+				indent(open.size());
+				markChild();
+				write(person, open.size());
+
+				for (Consumer<Element> listener : listeners)
+					listener.accept(person);
+
+				if (++n % PROGRESS == 0)
+					log.info("Transformed {} persons", n);
+			}
+		}
+
+		private void write(Element element, int depth) throws XMLStreamException {
+
+			if (element.children.isEmpty() && element.text == null)
+				writer.writeEmptyElement(element.name);
+			else
+				writer.writeStartElement(element.name);
+
+			for (int i = 0; i < element.attributes.size(); i += 2)
+				writer.writeAttribute(element.attributes.get(i), element.attributes.get(i + 1));
+
+			if (element.children.isEmpty() && element.text == null)
+				return;
+
+			if (element.text != null)
+				writer.writeCharacters(element.text);
+
+			for (Element child : element.children) {
+				indent(depth + 1);
+				write(child, depth + 1);
+			}
+
+			if (!element.children.isEmpty())
+				indent(depth);
+
+			writer.writeEndElement();
+		}
+
+		private void markChild() {
+			if (!open.isEmpty() && !open.peek()) {
+				open.pop();
+				open.push(true);
+			}
+		}
+
+		private void indent(int depth) throws XMLStreamException {
+			writer.writeCharacters("\n" + "\t".repeat(depth));
+		}
+	}
+
+	private static String qualified(@Nullable String prefix, String name) {
+		return prefix == null || prefix.isEmpty() ? name : prefix + ":" + name;
+	}
+
+	/**
+	 * Rewrites a single person. Rules are called concurrently for different persons and must be thread-safe.
+	 */
+	@FunctionalInterface
+	public interface Rule {
+
+		/**
+		 * Modify the person element in place.
+		 */
+		void apply(Element person);
+
+	}
+
+	/**
+	 * Minimal mutable XML element, either with text or with child elements.
+	 */
+	public static final class Element {
+
+		private final String name;
+
+		/**
+		 * Alternating attribute names and values, in document order.
+		 */
+		private final List<String> attributes = new ArrayList<>(4);
+		private final List<Element> children = new ArrayList<>();
+
+		@Nullable
+		private String text;
+
+		public Element(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Value of an attribute, or null if it is not present.
+		 */
+		@Nullable
+		public String getAttribute(String key) {
+			for (int i = 0; i < attributes.size(); i += 2) {
+				if (attributes.get(i).equals(key))
+					return attributes.get(i + 1);
+			}
+			return null;
+		}
+
+		/**
+		 * Set an attribute, keeping its position if it is already present.
+		 */
+		public void setAttribute(String key, String value) {
+			for (int i = 0; i < attributes.size(); i += 2) {
+				if (attributes.get(i).equals(key)) {
+					attributes.set(i + 1, value);
+					return;
+				}
+			}
+			attributes.add(key);
+			attributes.add(value);
+		}
+
+		/**
+		 * Child elements, which can be modified.
+		 */
+		public List<Element> getChildren() {
+			return children;
+		}
+
+		@Nullable
+		public String getText() {
+			return text;
+		}
+
+		public void setText(@Nullable String text) {
+			this.text = text;
+		}
+
+		/**
+		 * All descendants with the given name, in document order.
+		 */
+		public List<Element> find(String name) {
+			List<Element> result = new ArrayList<>();
+			find(name, result);
+			return result;
+		}
+
+		private void find(String name, List<Element> result) {
+			for (Element child : children) {
+				if (child.name.equals(name))
+					result.add(child);
+
+				child.find(name, result);
+			}
+		}
+
+		/**
+		 * Deep copy of this element.
+		 */
+		public Element copy() {
+			Element copy = new Element(name);
+			copy.attributes.addAll(attributes);
+			copy.text = text;
+			for (Element child : children)
+				copy.children.add(child.copy());
+
+			return copy;
+		}
+	}
+}
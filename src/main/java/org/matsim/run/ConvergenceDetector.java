@@ -0,0 +1,246 @@
+package org.matsim.run;
+
+import com.google.inject.Inject;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.TerminationCriterion;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.router.AnalysisMainModeIdentifier;
+import org.matsim.core.router.TripStructureUtils;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.DoubleStream;
+import java.util.stream.Stream;
+
+/**
+ * Detects when a run has converged and ends it early.
+ * <p>
+ * After each iteration the average executed score, the mode shares and the change of link volumes to the previous
+ * iteration are recorded. The run is considered converged when, over the last {@link #WINDOW} iterations, the score
+ * stays within a relative band of {@link #SCORE_TOLERANCE}, each mode share within {@link #MODE_SHARE_TOLERANCE}
+ * and the link volume drift below {@link #VOLUME_TOLERANCE}.
+ * <p>
+ * Once converged, the {@link StrategyWeightFadeout} schedules are moved to start immediately. After the fade-out all
+ * innovative strategies are disabled, and the run terminates after this period without innovation.
+ * The configured last iteration remains the upper bound.
+ */
+public final class ConvergenceDetector implements IterationEndsListener, TerminationCriterion, LinkEnterEventHandler {
+
+	/**
+	 * Number of iterations for the rolling statistics.
+	 */
+	static final int WINDOW = 20;
+
+	/**
+	 * Max. relative range of the average score.
+	 */
+	static final double SCORE_TOLERANCE = 0.005;
+
+	/**
+	 * Max. absolute range of each mode share.
+	 */
+	static final double MODE_SHARE_TOLERANCE = 0.005;
+
+	/**
+	 * Max. relative sum of absolute link volume changes between two iterations.
+	 */
+	static final double VOLUME_TOLERANCE = 0.05;
+
+	/**
+	 * Fade-out and the following period without innovation, as share of the last iteration.
+	 */
+	static final double FADEOUT = 0.15;
+	static final double COOLDOWN = 0.1;
+
+	private static final Logger log = LogManager.getLogger(ConvergenceDetector.class);
+
+	private final Population population;
+	private final AnalysisMainModeIdentifier mainModeIdentifier;
+	private final StrategyWeightFadeout fadeout;
+	private final int lastIteration;
+
+	private final Deque<Double> scores = new ArrayDeque<>();
+	private final Deque<Double> drifts = new ArrayDeque<>();
+	private final Deque<Object2DoubleMap<String>> modeShares = new ArrayDeque<>();
+
+	/**
+	 * Link volumes of the current and previous iteration, by link index.
+	 */
+	private int[] volumes = new int[0];
+	private int[] previous;
+
+	/**
+	 * Iteration after which the run terminates.
+	 */
+	private int terminateAt;
+	private boolean converged;
+
+	@Inject
+	ConvergenceDetector(Config config, Population population, AnalysisMainModeIdentifier mainModeIdentifier,
+						StrategyWeightFadeout fadeout, EventsManager eventsManager) {
+		this.population = population;
+		this.mainModeIdentifier = mainModeIdentifier;
+		this.fadeout = fadeout;
+		this.lastIteration = config.controler().getLastIteration();
+		this.terminateAt = lastIteration;
+		eventsManager.addHandler(this);
+	}
+
+	@Override
+	public void handleEvent(LinkEnterEvent event) {
+		int idx = event.getLinkId().index();
+		if (idx >= volumes.length)
+			volumes = Arrays.copyOf(volumes, Math.max(idx + 1, volumes.length * 2));
+
+		volumes[idx]++;
+	}
+
+	@Override
+	public void reset(int iteration) {
+		// no volumes before the first mobsim
+		previous = volumes.length > 0 ? volumes : null;
+		volumes = new int[volumes.length];
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+
+		add(scores, averageScore());
+		add(modeShares, modeShares());
+
+		if (previous != null)
+			add(drifts, drift(previous, volumes));
+
+		Object2DoubleMap<String> shares = modeShares.getLast();
+		log.info("Iteration {}: score {}, volume drift {}, mode shares {}", event.getIteration(), scores.getLast(),
+				drifts.isEmpty() ? Double.NaN : drifts.getLast(), shares);
+
+		if (converged || !isConverged(scores, modeShares, drifts))
+			return;
+
+		converged = true;
+
+		int length = Math.max(1, (int) (lastIteration * FADEOUT));
+		terminateAt = Math.min(lastIteration, event.getIteration() + length + (int) (lastIteration * COOLDOWN));
+
+		log.info("Converged at iteration {}, terminating after iteration {}", event.getIteration(), terminateAt);
+
+		fadeout.fadeOut(event.getIteration(), length);
+		fadeout.disableInnovation(event.getIteration() + length);
+	}
+
+	@Override
+	public boolean mayTerminateAfterIteration(int iteration) {
+		return iteration >= terminateAt;
+	}
+
+	@Override
+	public boolean doTerminate(int iteration) {
+		return iteration >= terminateAt;
+	}
+
+	private double averageScore() {
+		return population.getPersons().values().stream()
+				.map(Person::getSelectedPlan)
+				.filter(p -> p != null && p.getScore() != null)
+				.mapToDouble(Plan::getScore)
+				.average().orElse(0);
+	}
+
+	private Object2DoubleMap<String> modeShares() {
+
+		Object2DoubleMap<String> shares = new Object2DoubleOpenHashMap<>();
+		int trips = 0;
+
+		for (Person person : population.getPersons().values()) {
+			Plan plan = person.getSelectedPlan();
+			if (plan == null)
+				continue;
+
+			for (TripStructureUtils.Trip trip : TripStructureUtils.getTrips(plan)) {
+				shares.mergeDouble(mainModeIdentifier.identifyMainMode(trip.getTripElements()), 1, Double::sum);
+				trips++;
+			}
+		}
+
+		for (Object2DoubleMap.Entry<String> e : shares.object2DoubleEntrySet())
+			e.setValue(e.getDoubleValue() / Math.max(1, trips));
+
+		return shares;
+	}
+
+	/**
+	 * Whether the last {@link #WINDOW} iterations of each series stay within their tolerances.
+	 */
+	static boolean isConverged(Collection<Double> scores, Collection<Object2DoubleMap<String>> modeShares, Collection<Double> drifts) {
+
+		if (drifts.size() < WINDOW || scores.size() < WINDOW || modeShares.size() < WINDOW)
+			return false;
+
+		double scoreRange = range(last(scores).mapToDouble(d -> d)) /
+				Math.max(1e-9, Math.abs(last(scores).mapToDouble(d -> d).average().orElse(0)));
+
+		Set<String> modes = new HashSet<>();
+		last(modeShares).forEach(m -> modes.addAll(m.keySet()));
+
+		double modeRange = 0;
+		for (String mode : modes)
+			modeRange = Math.max(modeRange, range(last(modeShares).mapToDouble(m -> m.getDouble(mode))));
+
+		double maxDrift = last(drifts).mapToDouble(d -> d).max().orElse(0);
+
+		log.debug("Score range {}, mode share range {}, volume drift {}", scoreRange, modeRange, maxDrift);
+
+		return scoreRange <= SCORE_TOLERANCE && modeRange <= MODE_SHARE_TOLERANCE && maxDrift <= VOLUME_TOLERANCE;
+	}
+
+	/**
+	 * Sum of absolute volume changes relative to the previous total volume. Infinite if there was no volume
+	 * before, but there is now.
+	 */
+	static double drift(int[] previous, int[] current) {
+		long diff = 0;
+		long total = 0;
+		for (int i = 0; i < Math.max(previous.length, current.length); i++) {
+			int a = i < previous.length ? previous[i] : 0;
+			int b = i < current.length ? current[i] : 0;
+			diff += Math.abs(a - b);
+			total += a;
+		}
+		if (total == 0)
+			return diff == 0 ? 0 : Double.POSITIVE_INFINITY;
+
+		return (double) diff / total;
+	}
+
+	private static double range(DoubleStream values) {
+		DoubleSummaryStatistics stats = values.summaryStatistics();
+		return stats.getMax() - stats.getMin();
+	}
+
+	private static <T> Stream<T> last(Collection<T> values) {
+		return values.stream().skip(Math.max(0, values.size() - WINDOW));
+	}
+
+	private static <T> void add(Deque<T> deque, T value) {
+		deque.addLast(value);
+		if (deque.size() > WINDOW)
+			deque.removeFirst();
+	}
+}
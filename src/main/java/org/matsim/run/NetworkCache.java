@@ -0,0 +1,539 @@
+package org.matsim.run;
+
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.lanes.Lane;
+import org.matsim.lanes.Lanes;
+import org.matsim.lanes.LanesFactory;
+import org.matsim.lanes.LanesToLinkAssignment;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import static org.matsim.run.TurnDependentFlowEfficiencyCalculator.ATTR_TURN_EFFICIENCY;
+
+/**
+ * Binary snapshot of a fully prepared network and its lanes.
+ * <p>
+ * Node and link properties are stored column-wise as primitive arrays, all strings (ids, modes, attributes) once in a
+ * string table. Turn efficiencies are stored as numbers. The file is memory-mapped on load, which is much faster than parsing the xml and applying all
+ * capacity modifications again.
+ * <p>
+ * Snapshots are identified by a key, which is a hash over the content of the input files and all options that
+ * modify the network. Remote inputs are only identified by their url.
+ */
+public final class NetworkCache {
+
+	private static final Logger log = LogManager.getLogger(NetworkCache.class);
+
+	private static final int MAGIC = 0x4D4E4554;
+	private static final int FORMAT = 2;
+
+	/**
+	 * Attribute types, which can be stored.
+	 */
+	private static final byte STRING = 0;
+	private static final byte DOUBLE = 1;
+	private static final byte INT = 2;
+	private static final byte LONG = 3;
+	private static final byte BOOLEAN = 4;
+	private static final byte STRING_MAP = 5;
+	private static final byte TURN_EFFICIENCY = 6;
+
+	private NetworkCache() {
+	}
+
+	/**
+	 * Compute the key for network and lane inputs given in the config, additional files and options.
+	 *
+	 * @param files   additional input files, may contain null entries
+	 * @param options all options that influence the prepared network
+	 */
+	public static String key(Config config, List<Path> files, Object... options) {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		update(digest, RunDuesseldorfScenario.VERSION + ":" + FORMAT);
+
+		for (String input : new String[]{config.network().getInputFile(), config.network().getLaneDefinitionsFile()}) {
+			if (input == null)
+				update(digest, "null");
+			else
+				hash(digest, ConfigGroup.getInputFileURL(config.getContext(), input));
+		}
+
+		for (Path file : files) {
+			if (file == null)
+				update(digest, "null");
+			else {
+				try {
+					hash(digest, file.toUri().toURL());
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+
+		for (Object option : options)
+			update(digest, String.valueOf(option));
+
+		StringBuilder hex = new StringBuilder();
+		byte[] bytes = digest.digest();
+
+		// 128bit are sufficient to identify the inputs
+		for (int i = 0; i < 16; i++)
+			hex.append(String.format("%02x", bytes[i]));
+
+		return hex.toString();
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Hash content of local files, and only the url of remote ones.
+	 */
+	private static void hash(MessageDigest digest, URL url) {
+
+		update(digest, url.toString());
+
+		if (!"file".equals(url.getProtocol()))
+			return;
+
+		try (InputStream in = Files.newInputStream(Path.of(url.toURI()))) {
+			byte[] buffer = new byte[1 << 16];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				digest.update(buffer, 0, n);
+
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/**
+	 * Write network and lanes to a cache file. The file is written atomically.
+	 *
+	 * @throws IllegalArgumentException if an attribute type can not be stored
+	 */
+	public static void write(Path file, Network network, @Nullable Lanes lanes) throws IOException {
+
+		Writer w = new Writer();
+		w.write(network, lanes);
+
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+
+		Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+
+			out.writeInt(w.strings.size());
+			for (String s : w.strings.keySet()) {
+				byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			w.body.writeTo(out);
+		}
+
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		log.info("Written network cache {} with {} nodes and {} links", file, network.getNodes().size(), network.getLinks().size());
+	}
+
+	/**
+	 * Read a cache file into an empty network and lanes container.
+	 */
+	public static void read(Path file, Network network, @Nullable Lanes lanes) throws IOException {
+
+		if (!network.getNodes().isEmpty())
+			throw new IllegalArgumentException("Network must be empty.");
+
+		try (FileChannel channel = FileChannel.open(file)) {
+
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buf.getInt() != MAGIC || buf.getInt() != FORMAT)
+				throw new IOException("Not a network cache or unsupported format: " + file);
+
+			String[] strings = new String[buf.getInt()];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[buf.getInt()];
+				buf.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+
+			new Reader(buf, strings).read(network, lanes);
+		}
+
+		log.info("Read network cache {} with {} nodes and {} links", file, network.getNodes().size(), network.getLinks().size());
+	}
+
+	/**
+	 * Writes the body and collects strings.
+	 */
+	private static final class Writer {
+
+		private final Object2IntMap<String> strings = new Object2IntLinkedOpenHashMap<>();
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(body);
+
+		private Writer() {
+			strings.defaultReturnValue(-1);
+		}
+
+		private int string(String s) {
+			int idx = strings.getInt(s);
+			if (idx < 0) {
+				idx = strings.size();
+				strings.put(s, idx);
+			}
+			return idx;
+		}
+
+		private void write(Network network, @Nullable Lanes lanes) throws IOException {
+
+			out.writeDouble(network.getCapacityPeriod());
+			out.writeDouble(network.getEffectiveLaneWidth());
+			attributes(network.getAttributes());
+
+			List<Node> nodes = new ArrayList<>(network.getNodes().values());
+			List<Link> links = new ArrayList<>(network.getLinks().values());
+
+			Object2IntMap<Node> nodeIdx = new Object2IntLinkedOpenHashMap<>();
+
+			out.writeInt(nodes.size());
+			for (Node node : nodes) {
+				nodeIdx.put(node, nodeIdx.size());
+				out.writeInt(string(node.getId().toString()));
+			}
+			for (Node node : nodes)
+				out.writeDouble(node.getCoord().getX());
+			for (Node node : nodes)
+				out.writeDouble(node.getCoord().getY());
+			for (Node node : nodes)
+				out.writeDouble(node.getCoord().hasZ() ? node.getCoord().getZ() : Double.NaN);
+			for (Node node : nodes)
+				attributes(node.getAttributes());
+
+			// mode sets are shared by many links
+			Map<Set<String>, Integer> modeSets = new LinkedHashMap<>();
+			for (Link link : links)
+				modeSets.putIfAbsent(link.getAllowedModes(), modeSets.size());
+
+			out.writeInt(modeSets.size());
+			for (Set<String> modes : modeSets.keySet()) {
+				out.writeInt(modes.size());
+				for (String mode : modes)
+					out.writeInt(string(mode));
+			}
+
+			out.writeInt(links.size());
+			for (Link link : links)
+				out.writeInt(string(link.getId().toString()));
+			for (Link link : links)
+				out.writeInt(nodeIdx.getInt(link.getFromNode()));
+			for (Link link : links)
+				out.writeInt(nodeIdx.getInt(link.getToNode()));
+			for (Link link : links)
+				out.writeDouble(link.getLength());
+			for (Link link : links)
+				out.writeDouble(link.getFreespeed());
+			for (Link link : links)
+				out.writeDouble(link.getCapacity());
+			for (Link link : links)
+				out.writeDouble(link.getNumberOfLanes());
+			for (Link link : links)
+				out.writeInt(modeSets.get(link.getAllowedModes()));
+			for (Link link : links)
+				attributes(link.getAttributes());
+
+			Collection<LanesToLinkAssignment> l2ls = lanes != null ? lanes.getLanesToLinkAssignments().values() : List.of();
+
+			out.writeInt(l2ls.size());
+			for (LanesToLinkAssignment l2l : l2ls) {
+				out.writeInt(string(l2l.getLinkId().toString()));
+				out.writeInt(l2l.getLanes().size());
+
+				for (Lane lane : l2l.getLanes().values()) {
+					out.writeInt(string(lane.getId().toString()));
+					out.writeDouble(lane.getCapacityVehiclesPerHour());
+					out.writeDouble(lane.getNumberOfRepresentedLanes());
+					out.writeDouble(lane.getStartsAtMeterFromLinkEnd());
+					out.writeInt(lane.getAlignment());
+
+					List<Id<Link>> toLinks = lane.getToLinkIds() != null ? lane.getToLinkIds() : List.of();
+					out.writeInt(toLinks.size());
+					for (Id<Link> toLink : toLinks)
+						out.writeInt(string(toLink.toString()));
+
+					List<Id<Lane>> toLanes = lane.getToLaneIds() != null ? lane.getToLaneIds() : List.of();
+					out.writeInt(toLanes.size());
+					for (Id<Lane> toLane : toLanes)
+						out.writeInt(string(toLane.toString()));
+
+					attributes(lane.getAttributes());
+				}
+			}
+
+			out.flush();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void attributes(Attributes attributes) throws IOException {
+
+			Map<String, Object> map = attributes.getAsMap();
+			out.writeInt(map.size());
+
+			for (Map.Entry<String, Object> e : map.entrySet()) {
+
+				out.writeInt(string(e.getKey()));
+				Object v = e.getValue();
+
+				if (v instanceof String) {
+					out.writeByte(STRING);
+					out.writeInt(string((String) v));
+				} else if (v instanceof Double) {
+					out.writeByte(DOUBLE);
+					out.writeDouble((Double) v);
+				} else if (v instanceof Integer) {
+					out.writeByte(INT);
+					out.writeInt((Integer) v);
+				} else if (v instanceof Long) {
+					out.writeByte(LONG);
+					out.writeLong((Long) v);
+				} else if (v instanceof Boolean) {
+					out.writeByte(BOOLEAN);
+					out.writeBoolean((Boolean) v);
+				} else if (v instanceof Map && ATTR_TURN_EFFICIENCY.equals(e.getKey())) {
+					// efficiencies of each time bin as numbers
+					out.writeByte(TURN_EFFICIENCY);
+					Map<String, String> m = (Map<String, String>) v;
+					out.writeInt(m.size());
+					for (Map.Entry<String, String> me : m.entrySet()) {
+						out.writeInt(string(me.getKey()));
+						String[] values = me.getValue().split(",");
+						out.writeInt(values.length);
+						for (String value : values)
+							out.writeDouble(Double.parseDouble(value.trim()));
+					}
+				} else if (v instanceof Map) {
+					out.writeByte(STRING_MAP);
+					Map<String, String> m = (Map<String, String>) v;
+					out.writeInt(m.size());
+					for (Map.Entry<String, String> me : m.entrySet()) {
+						out.writeInt(string(me.getKey()));
+						out.writeInt(string(me.getValue()));
+					}
+				} else
+					throw new IllegalArgumentException("Attribute " + e.getKey() + " of type " + v.getClass() + " can not be cached.");
+			}
+		}
+	}
+
+	/**
+	 * Reads the body from the mapped buffer.
+	 */
+	private static final class Reader {
+
+		private final ByteBuffer buf;
+		private final String[] strings;
+
+		private Reader(ByteBuffer buf, String[] strings) {
+			this.buf = buf;
+			this.strings = strings;
+		}
+
+		private double[] doubles(int n) {
+			double[] result = new double[n];
+			buf.asDoubleBuffer().get(result);
+			buf.position(buf.position() + n * Double.BYTES);
+			return result;
+		}
+
+		private int[] ints(int n) {
+			int[] result = new int[n];
+			buf.asIntBuffer().get(result);
+			buf.position(buf.position() + n * Integer.BYTES);
+			return result;
+		}
+
+		private void read(Network network, @Nullable Lanes lanes) {
+
+			network.setCapacityPeriod(buf.getDouble());
+			network.setEffectiveLaneWidth(buf.getDouble());
+			attributes(network.getAttributes());
+
+			NetworkFactory f = network.getFactory();
+
+			int n = buf.getInt();
+			int[] nodeIds = ints(n);
+			double[] x = doubles(n);
+			double[] y = doubles(n);
+			double[] z = doubles(n);
+
+			Node[] nodes = new Node[n];
+			for (int i = 0; i < n; i++) {
+				Coord coord = Double.isNaN(z[i]) ? new Coord(x[i], y[i]) : new Coord(x[i], y[i], z[i]);
+				nodes[i] = f.createNode(Id.createNodeId(strings[nodeIds[i]]), coord);
+				attributes(nodes[i].getAttributes());
+				network.addNode(nodes[i]);
+			}
+
+			List<Set<String>> modeSets = new ArrayList<>();
+			int sets = buf.getInt();
+			for (int i = 0; i < sets; i++) {
+				int[] modes = ints(buf.getInt());
+				Set<String> set = new HashSet<>();
+				for (int mode : modes)
+					set.add(strings[mode]);
+
+				modeSets.add(set);
+			}
+
+			int m = buf.getInt();
+			int[] linkIds = ints(m);
+			int[] from = ints(m);
+			int[] to = ints(m);
+			double[] length = doubles(m);
+			double[] freespeed = doubles(m);
+			double[] capacity = doubles(m);
+			double[] numberOfLanes = doubles(m);
+			int[] modes = ints(m);
+
+			for (int i = 0; i < m; i++) {
+				Link link = f.createLink(Id.createLinkId(strings[linkIds[i]]), nodes[from[i]], nodes[to[i]]);
+				link.setLength(length[i]);
+				link.setFreespeed(freespeed[i]);
+				link.setCapacity(capacity[i]);
+				link.setNumberOfLanes(numberOfLanes[i]);
+				link.setAllowedModes(modeSets.get(modes[i]));
+				attributes(link.getAttributes());
+				network.addLink(link);
+			}
+
+			int l2ls = buf.getInt();
+			if (l2ls > 0 && lanes == null)
+				throw new IllegalArgumentException("Cache contains lanes, but no container was given.");
+
+			LanesFactory lf = lanes != null ? lanes.getFactory() : null;
+
+			for (int i = 0; i < l2ls; i++) {
+
+				LanesToLinkAssignment l2l = lf.createLanesToLinkAssignment(Id.createLinkId(strings[buf.getInt()]));
+
+				int k = buf.getInt();
+				for (int j = 0; j < k; j++) {
+					Lane lane = lf.createLane(Id.create(strings[buf.getInt()], Lane.class));
+					lane.setCapacityVehiclesPerHour(buf.getDouble());
+					lane.setNumberOfRepresentedLanes(buf.getDouble());
+					lane.setStartsAtMeterFromLinkEnd(buf.getDouble());
+					lane.setAlignment(buf.getInt());
+
+					for (int toLink : ints(buf.getInt()))
+						lane.addToLinkId(Id.createLinkId(strings[toLink]));
+
+					for (int toLane : ints(buf.getInt()))
+						lane.addToLaneId(Id.create(strings[toLane], Lane.class));
+
+					attributes(lane.getAttributes());
+					l2l.addLane(lane);
+				}
+
+				lanes.addLanesToLinkAssignment(l2l);
+			}
+		}
+
+		private void attributes(Attributes attributes) {
+
+			int n = buf.getInt();
+			for (int i = 0; i < n; i++) {
+
+				String key = strings[buf.getInt()];
+				byte type = buf.get();
+
+				Object value;
+				switch (type) {
+					case STRING:
+						value = strings[buf.getInt()];
+						break;
+					case DOUBLE:
+						value = buf.getDouble();
+						break;
+					case INT:
+						value = buf.getInt();
+						break;
+					case LONG:
+						value = buf.getLong();
+						break;
+					case BOOLEAN:
+						value = buf.get() != 0;
+						break;
+					case STRING_MAP:
+						int size = buf.getInt();
+						Map<String, String> map = new HashMap<>(size * 2);
+						for (int j = 0; j < size; j++)
+							map.put(strings[buf.getInt()], strings[buf.getInt()]);
+
+						value = map;
+						break;
+					case TURN_EFFICIENCY:
+						int turns = buf.getInt();
+						Map<String, String> efficiencies = new HashMap<>(turns * 2);
+						for (int j = 0; j < turns; j++) {
+							String toLink = strings[buf.getInt()];
+							StringJoiner joiner = new StringJoiner(",");
+							for (double efficiency : doubles(buf.getInt()))
+								joiner.add(Double.toString(efficiency));
+
+							efficiencies.put(toLink, joiner.toString());
+						}
+
+						value = efficiencies;
+						break;
+					default:
+						throw new IllegalStateException("Unknown attribute type " + type);
+				}
+
+				attributes.putAttribute(key, value);
+			}
+		}
+	}
+}
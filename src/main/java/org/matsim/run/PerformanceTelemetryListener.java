@@ -0,0 +1,317 @@
+package org.matsim.run;
+
+import com.google.inject.Inject;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.*;
+import org.matsim.core.controler.listener.*;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records where the time of each iteration is spent.
+ * <p>
+ * Phases are measured between the controler events, so each phase also contains the listeners of the same event
+ * that are notified after this one:
+ * <ul>
+ *     <li>start: iteration start until replanning</li>
+ *     <li>replanning: replanning until the mobsim starts</li>
+ *     <li>mobsim: mobsim, including the events processing and writing that happens in parallel</li>
+ *     <li>events: after mobsim, where remaining events are processed and the events file is closed</li>
+ *     <li>scoring: scoring until iteration end</li>
+ *     <li>analysis: iteration end until the next iteration starts</li>
+ * </ul>
+ * Results are written to {@code performance_telemetry.csv} after each iteration. Phases and iterations are also
+ * emitted as JFR events, which are visible when the run is started with {@code -XX:StartFlightRecording}.
+ */
+public final class PerformanceTelemetryListener implements StartupListener, IterationStartsListener, ReplanningListener,
+		BeforeMobsimListener, AfterMobsimListener, ScoringListener, IterationEndsListener, ShutdownListener, BasicEventHandler {
+
+	private static final Logger log = LogManager.getLogger(PerformanceTelemetryListener.class);
+
+	private static final String[] PHASES = {"start", "replanning", "mobsim", "events", "scoring", "analysis"};
+
+	private static final int START = 0;
+	private static final int REPLANNING = 1;
+	private static final int MOBSIM = 2;
+	private static final int EVENTS = 3;
+	private static final int SCORING = 4;
+	private static final int ANALYSIS = 5;
+
+	private final OutputDirectoryHierarchy io;
+
+	private CSVPrinter csv;
+
+	/**
+	 * Iteration that is currently recorded, -1 if none.
+	 */
+	private int iteration = -1;
+	private int phase = -1;
+	private long phaseStart;
+	private PhaseEvent phaseEvent;
+
+	private final long[] phaseNanos = new long[PHASES.length];
+
+	private long gcCount;
+	private long gcMillis;
+
+	/**
+	 * Events of the current mobsim, only updated by the events handling thread.
+	 * Processing is finished when the mobsim ends, so these can be read afterwards.
+	 */
+	private long events;
+	private double firstEventTime = Double.NaN;
+	private double lastEventTime = Double.NaN;
+
+	/**
+	 * Copy of the event counts at iteration end.
+	 */
+	private long iterationEvents;
+	private double simSeconds;
+
+	@Inject
+	PerformanceTelemetryListener(EventsManager eventsManager, OutputDirectoryHierarchy io) {
+		this.io = io;
+		eventsManager.addHandler(this);
+	}
+
+	@Override
+	public void notifyStartup(StartupEvent event) {
+		try {
+			csv = new CSVPrinter(IOUtils.getBufferedWriter(io.getOutputFilename("performance_telemetry.csv")), CSVFormat.DEFAULT);
+			csv.printRecord("iteration", "start_s", "replanning_s", "mobsim_s", "events_s", "scoring_s", "analysis_s", "total_s",
+					"events", "events_per_s", "sim_s_per_wall_s", "gc_count", "gc_s", "heap_used_mb", "heap_committed_mb");
+			csv.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		finishIteration();
+
+		iteration = event.getIteration();
+		iterationEvents = 0;
+		simSeconds = 0;
+		Arrays.fill(phaseNanos, 0);
+
+		long[] gc = gc();
+		gcCount = gc[0];
+		gcMillis = gc[1];
+
+		startPhase(START);
+	}
+
+	@Override
+	public void notifyReplanning(ReplanningEvent event) {
+		startPhase(REPLANNING);
+	}
+
+	@Override
+	public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+		startPhase(MOBSIM);
+	}
+
+	@Override
+	public void notifyAfterMobsim(AfterMobsimEvent event) {
+		startPhase(EVENTS);
+	}
+
+	@Override
+	public void notifyScoring(ScoringEvent event) {
+		startPhase(SCORING);
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		iterationEvents = events;
+		simSeconds = events > 0 ? lastEventTime - firstEventTime : 0;
+		startPhase(ANALYSIS);
+	}
+
+	@Override
+	public void notifyShutdown(ShutdownEvent event) {
+		finishIteration();
+
+		try {
+			if (csv != null)
+				csv.close();
+		} catch (IOException e) {
+			log.warn("Could not close performance telemetry", e);
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+		if (Double.isNaN(firstEventTime))
+			firstEventTime = event.getTime();
+
+		lastEventTime = event.getTime();
+		events++;
+	}
+
+	@Override
+	public void reset(int iteration) {
+		events = 0;
+		firstEventTime = Double.NaN;
+		lastEventTime = Double.NaN;
+	}
+
+	private void startPhase(int next) {
+		long now = System.nanoTime();
+		endPhase(now);
+
+		phase = next;
+		phaseStart = now;
+		phaseEvent = new PhaseEvent();
+		phaseEvent.iteration = iteration;
+		phaseEvent.phase = PHASES[next];
+		phaseEvent.begin();
+	}
+
+	private void endPhase(long now) {
+		if (phase < 0)
+			return;
+
+		phaseNanos[phase] += now - phaseStart;
+		phaseEvent.end();
+		phaseEvent.commit();
+		phase = -1;
+	}
+
+	/**
+	 * Write the record of the current iteration, if there is one.
+	 */
+	private void finishIteration() {
+		if (iteration < 0)
+			return;
+
+		endPhase(System.nanoTime());
+
+		long total = 0;
+		for (long n : phaseNanos)
+			total += n;
+
+		long[] gc = gc();
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+
+		double mobsim = phaseNanos[MOBSIM] / 1e9;
+
+		IterationEvent e = new IterationEvent();
+		e.iteration = iteration;
+		e.seconds = total / 1e9;
+		e.mobsimSeconds = mobsim;
+		e.events = iterationEvents;
+		e.eventsPerSecond = mobsim > 0 ? iterationEvents / mobsim : 0;
+		e.simSecondsPerWallSecond = mobsim > 0 ? simSeconds / mobsim : 0;
+		e.gcCount = gc[0] - gcCount;
+		e.gcSeconds = (gc[1] - gcMillis) / 1e3;
+		e.heapUsed = heap.getUsed();
+		e.commit();
+
+		try {
+			csv.print(iteration);
+			for (long n : phaseNanos)
+				csv.print(String.format(Locale.ROOT, "%.3f", n / 1e9));
+
+			csv.print(String.format(Locale.ROOT, "%.3f", e.seconds));
+			csv.print(e.events);
+			csv.print(String.format(Locale.ROOT, "%.0f", e.eventsPerSecond));
+			csv.print(String.format(Locale.ROOT, "%.1f", e.simSecondsPerWallSecond));
+			csv.print(e.gcCount);
+			csv.print(String.format(Locale.ROOT, "%.3f", e.gcSeconds));
+			csv.print(heap.getUsed() >> 20);
+			csv.print(heap.getCommitted() >> 20);
+			csv.println();
+			csv.flush();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+
+		log.info("Iteration {} took {} s, mobsim {} s with {} events/s and {} sim-s per s, gc {} s",
+				iteration, String.format(Locale.ROOT, "%.1f", e.seconds), String.format(Locale.ROOT, "%.1f", mobsim),
+				String.format(Locale.ROOT, "%.0f", e.eventsPerSecond), String.format(Locale.ROOT, "%.1f", e.simSecondsPerWallSecond), String.format(Locale.ROOT, "%.1f", e.gcSeconds));
+
+		iteration = -1;
+	}
+
+	/**
+	 * Total number and time in ms of garbage collections.
+	 */
+	private static long[] gc() {
+		long count = 0;
+		long time = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, bean.getCollectionCount());
+			time += Math.max(0, bean.getCollectionTime());
+		}
+		return new long[]{count, time};
+	}
+
+	@Name("org.matsim.IterationPhase")
+	@Label("Iteration Phase")
+	@Category("MATSim")
+	@Description("Phase of a MATSim iteration")
+	static final class PhaseEvent extends jdk.jfr.Event {
+
+		@Label("Iteration")
+		int iteration;
+
+		@Label("Phase")
+		String phase;
+	}
+
+	@Name("org.matsim.Iteration")
+	@Label("Iteration")
+	@Category("MATSim")
+	@Description("Summary of a MATSim iteration")
+	static final class IterationEvent extends jdk.jfr.Event {
+
+		@Label("Iteration")
+		int iteration;
+
+		@Label("Seconds")
+		double seconds;
+
+		@Label("Mobsim Seconds")
+		double mobsimSeconds;
+
+		@Label("Events")
+		long events;
+
+		@Label("Events per Second")
+		double eventsPerSecond;
+
+		@Label("Simulated Seconds per Second")
+		double simSecondsPerWallSecond;
+
+		@Label("GC Count")
+		long gcCount;
+
+		@Label("GC Seconds")
+		double gcSeconds;
+
+		@Label("Heap Used")
+		@DataAmount
+		long heapUsed;
+	}
+}
@@ -5,13 +5,9 @@ import com.google.common.collect.Sets;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.multibindings.Multibinder;
-import it.unimi.dsi.fastutil.Pair;
-import it.unimi.dsi.fastutil.doubles.Double2DoubleMap;
-import it.unimi.dsi.fastutil.doubles.Double2DoubleOpenHashMap;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.doubles.DoubleList;
-import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
-import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntSet;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.apache.commons.csv.CSVFormat;
@@ -19,8 +15,8 @@ import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.matsim.analysis.ACVModel;
-import org.matsim.analysis.AVModel;
+import org.matsim.ModifyPlansFile;
+import org.matsim.analysis.CapacityFactorTable;
 import org.matsim.analysis.ModeChoiceCoverageControlerListener;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
@@ -45,20 +41,26 @@ import org.matsim.core.config.groups.*;
 import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ActivityParams;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.TerminationCriterion;
 import org.matsim.core.mobsim.qsim.AbstractQSimModule;
+import org.matsim.core.mobsim.qsim.interfaces.MobsimTimer;
 import org.matsim.core.mobsim.qsim.qnetsimengine.ConfigurableQNetworkFactory;
 import org.matsim.core.mobsim.qsim.qnetsimengine.QLanesNetworkFactory;
 import org.matsim.core.mobsim.qsim.qnetsimengine.QNetworkFactory;
 import org.matsim.core.replanning.strategies.DefaultPlanStrategiesModule;
+import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.router.AnalysisMainModeIdentifier;
 import org.matsim.lanes.Lane;
 import org.matsim.lanes.LanesToLinkAssignment;
 import org.matsim.prepare.*;
+import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
 import picocli.CommandLine;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -70,7 +72,7 @@ import java.util.stream.Collectors;
 	CreateNetwork.class, CreateTransitScheduleFromGtfs.class, CreateCityCounts.class, CleanPopulation.class,
 	ExtractEvents.class, CreateBAStCounts.class, TrajectoryToPlans.class, ExtractRelevantFreightTrips.class,
 	GenerateShortDistanceTrips.class, MergePopulations.class, DownSamplePopulation.class, ResolveGridCoordinates.class,
-	ExtractHomeCoordinates.class, ExtractMinimalConnectedNetwork.class, AdjustPopulationForCutout.class
+	ExtractHomeCoordinates.class, ExtractMinimalConnectedNetwork.class, AdjustPopulationForCutout.class, ModifyPlansFile.class
 })
 @MATSimApplication.Analysis({
 	CheckPopulation.class, AirPollutionByVehicleCategory.class, AirPollutionSpatialAggregation.class,
@@ -117,6 +119,27 @@ public class RunDuesseldorfScenario extends MATSimApplication {
 	private double freeFlowFactor;
 	@CommandLine.Option(names = "--no-mc", defaultValue = "false", description = "Disable mode choice as replanning strategy.")
 	private boolean noModeChoice;
+	@CommandLine.Option(names = "--early-stopping", defaultValue = "false", description = "Fade out innovation and end the run when it has converged.")
+	private boolean earlyStopping;
+	@CommandLine.Option(names = "--fadeout-curve", defaultValue = "LINEAR", description = "Shape of the strategy weight fade-out: ${COMPLETION-CANDIDATES}.")
+	private StrategyWeightFadeout.Curve fadeoutCurve;
+	@CommandLine.Option(names = "--network-cache", description = "Directory to store and reuse prepared networks.", required = false)
+	private Path networkCache;
+
+	/**
+	 * Cache file for the prepared network of this run, if enabled.
+	 */
+	private Path cachedNetwork;
+	private boolean networkFromCache;
+
+	/**
+	 * Original inputs, which are restored after the cached network has been read, so that the output config still references them.
+	 * Plans and schedule reference links and are read after the cached network.
+	 */
+	private String inputNetwork;
+	private String inputLanes;
+	private String inputPlans;
+	private String inputSchedule;
 
 	public RunDuesseldorfScenario() {
 		super("scenarios/input/duesseldorf-v1.0-1pct.config.xml");
@@ -229,15 +252,68 @@ public class RunDuesseldorfScenario extends MATSimApplication {
 		config.plans().setHandlingOfPlansWithoutRoutingMode(
 			PlansConfigGroup.HandlingOfPlansWithoutRoutingMode.useMainModeIdentifier);
 
+		if (networkCache != null) {
+
+			String key = NetworkCache.key(config, Arrays.asList(laneCapacity, policy.linkFilter, policy.carFilter, policy.capacity),
+				demandCorrection, capacityFactor, vehicleShare.av, vehicleShare.acv, freeFlowFactor, policy.laneReduction);
+
+			cachedNetwork = networkCache.resolve("network-" + key + ".bin");
+
+			// network will be read from cache instead
+			if (Files.exists(cachedNetwork)) {
+				log.info("Using cached network {}", cachedNetwork);
+				networkFromCache = true;
+
+				inputNetwork = config.network().getInputFile();
+				inputLanes = config.network().getLaneDefinitionsFile();
+				config.network().setInputFile(null);
+				config.network().setLaneDefinitionsFile(null);
+
+				// Id indices are assigned in order of creation, the network has to be loaded first as without the cache
+				inputPlans = config.plans().getInputFile();
+				config.plans().setInputFile(null);
+
+				if (config.transit().isUseTransit()) {
+					inputSchedule = config.transit().getTransitScheduleFile();
+					config.transit().setTransitScheduleFile(null);
+				}
+			}
+		}
+
 		return config;
 	}
 
 	@Override
 	protected void prepareScenario(Scenario scenario) {
 
+		if (networkFromCache) {
+			try {
+				NetworkCache.read(cachedNetwork, scenario.getNetwork(), scenario.getLanes());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			Config config = scenario.getConfig();
+			config.network().setInputFile(inputNetwork);
+			config.network().setLaneDefinitionsFile(inputLanes);
+
+			// same order as the scenario loader
+			if (inputPlans != null) {
+				config.plans().setInputFile(inputPlans);
+				new PopulationReader(scenario).parse(config.plans().getInputFileURL(config.getContext()));
+			}
+
+			if (inputSchedule != null) {
+				config.transit().setTransitScheduleFile(inputSchedule);
+				new TransitScheduleReader(scenario).readURL(config.transit().getTransitScheduleFileURL(config.getContext()));
+			}
+
+			return;
+		}
+
 		// scale free flow speed
 		Map<Id<Link>, ? extends Link> links = scenario.getNetwork().getLinks();
-		Object2DoubleMap<Pair<Id<Link>, Id<Link>>> capacities = new Object2DoubleOpenHashMap<>();
+		CapacityTable capacities = new CapacityTable.Builder(false).build();
 
 		if (laneCapacity != null) {
 
@@ -257,27 +333,25 @@ public class RunDuesseldorfScenario extends MATSimApplication {
 
 			log.info("Applying model AV {} ACV {} to road capacities", vehicleShare.av, vehicleShare.acv);
 
-			Set<Id<Link>> ids = capacities.keySet().stream().map(Pair::left).collect(Collectors.toSet());
+			IntSet ids = capacities.fromLinks();
 
-			Double2DoubleMap factors = new Double2DoubleOpenHashMap();
+			// share is constant, factors only depend on the speed
+			CapacityFactorTable.Row factors = vehicleShare.av > 0 ?
+				CapacityFactorTable.AV.row(vehicleShare.av / 100d) :
+				CapacityFactorTable.ACV.row(vehicleShare.acv / 100d);
 
-			for (Link link : links.values()) {
+			links.values().parallelStream().forEach(link -> {
 
 				// Skip links that have been set already
-				if (ids.contains(link.getId()))
-					continue;
+				if (ids.contains(link.getId().index()))
+					return;
 
-				if (link.getAttributes().getAttribute("allowed_speed") == null)
-					continue;
+				Object speed = link.getAttributes().getAttribute("allowed_speed");
+				if (speed == null)
+					return;
 
-				double cap = 1d;
-				if (vehicleShare.av > 0)
-					cap = factors.computeIfAbsent((double) link.getAttributes().getAttribute("allowed_speed"), s -> AVModel.score(s, vehicleShare.av / 100d));
-				else
-					cap = factors.computeIfAbsent((double) link.getAttributes().getAttribute("allowed_speed"), s -> ACVModel.score(s, vehicleShare.acv / 100d));
-
-				link.setCapacity(link.getCapacity() * cap);
-			}
+				link.setCapacity(link.getCapacity() * factors.get((double) speed));
+			});
 
 			log.trace("Done");
 		}
@@ -316,8 +390,8 @@ public class RunDuesseldorfScenario extends MATSimApplication {
 
 			if (policy.capacity != null) {
 
-				Object2DoubleMap<Pair<Id<Link>, Id<Link>>> newCapacities = CreateNetwork.readLinkCapacities(policy.capacity);
-				newCapacities.keySet().removeIf(e -> !linkFilter.containsKey(e.key()));
+				CapacityTable newCapacities = CreateNetwork.readLinkCapacities(policy.capacity)
+					.filter(from -> linkFilter.containsKey(Id.get(from, Link.class)));
 
 				log.info("Policy capacities from {}, containing {} links", policy.capacity, newCapacities.size());
 
@@ -327,8 +401,8 @@ public class RunDuesseldorfScenario extends MATSimApplication {
 
 				DoubleList rel = new DoubleArrayList();
 
-				for (Object2DoubleMap.Entry<Pair<Id<Link>, Id<Link>>> e : newCapacities.object2DoubleEntrySet()) {
-					rel.add(e.getDoubleValue() / capacities.getDouble(e.getKey()));
+				for (int i = 0; i < newCapacities.size(); i++) {
+					rel.add(newCapacities.value(i) / capacities.get(newCapacities.from(i), newCapacities.to(i)));
 				}
 
 				factor = rel.doubleStream().average().orElseThrow();
@@ -378,6 +452,14 @@ public class RunDuesseldorfScenario extends MATSimApplication {
 
 		}
 
+		if (cachedNetwork != null) {
+			try {
+				NetworkCache.write(cachedNetwork, scenario.getNetwork(), scenario.getLanes());
+			} catch (IOException | IllegalArgumentException e) {
+				log.warn("Could not write network cache", e);
+			}
+		}
+
 	}
 
 	@Override
@@ -393,19 +475,28 @@ public class RunDuesseldorfScenario extends MATSimApplication {
 				addControlerListenerBinding().to(ModeChoiceCoverageControlerListener.class);
 				bind(AnalysisMainModeIdentifier.class).to(DefaultAnalysisMainModeIdentifier.class);
 
-				addControlerListenerBinding().to(StrategyWeightFadeout.class).in(Singleton.class);
+				// bound explicitly, so that the same instance is used by the convergence detector
+				bind(StrategyWeightFadeout.class).in(Singleton.class);
+				addControlerListenerBinding().to(StrategyWeightFadeout.class);
+				addControlerListenerBinding().to(PerformanceTelemetryListener.class).in(Singleton.class);
 
 				Multibinder<StrategyWeightFadeout.Schedule> schedules = Multibinder.newSetBinder(binder(), StrategyWeightFadeout.Schedule.class);
 
 				if (noModeChoice) {
 
-					schedules.addBinding().toInstance(new StrategyWeightFadeout.Schedule(DefaultPlanStrategiesModule.DefaultStrategy.ReRoute, "person", 0.6));
+					schedules.addBinding().toInstance(new StrategyWeightFadeout.Schedule(DefaultPlanStrategiesModule.DefaultStrategy.ReRoute, "person", 0.6, Double.NaN, fadeoutCurve));
 
 
 				} else {
-					schedules.addBinding().toInstance(new StrategyWeightFadeout.Schedule(DefaultPlanStrategiesModule.DefaultStrategy.SubtourModeChoice, "person", 0.65, 0.85));
-					schedules.addBinding().toInstance(new StrategyWeightFadeout.Schedule(DefaultPlanStrategiesModule.DefaultStrategy.ReRoute, "person", 0.78));
+					schedules.addBinding().toInstance(new StrategyWeightFadeout.Schedule(DefaultPlanStrategiesModule.DefaultStrategy.SubtourModeChoice, "person", 0.65, 0.85, fadeoutCurve));
+					schedules.addBinding().toInstance(new StrategyWeightFadeout.Schedule(DefaultPlanStrategiesModule.DefaultStrategy.ReRoute, "person", 0.78, Double.NaN, fadeoutCurve));
+
+				}
 
+				if (earlyStopping) {
+					bind(ConvergenceDetector.class).in(Singleton.class);
+					addControlerListenerBinding().to(ConvergenceDetector.class);
+					bind(TerminationCriterion.class).to(ConvergenceDetector.class);
 				}
 
 
@@ -418,12 +509,11 @@ public class RunDuesseldorfScenario extends MATSimApplication {
 			}
 
 			@Provides
-			QNetworkFactory provideQNetworkFactory(EventsManager eventsManager, Scenario scenario) {
+			QNetworkFactory provideQNetworkFactory(EventsManager eventsManager, Scenario scenario, MobsimTimer timer) {
 				ConfigurableQNetworkFactory factory = new ConfigurableQNetworkFactory(eventsManager, scenario);
 
-				TurnDependentFlowEfficiencyCalculator fe;
 				if (!noCapacityReduction) {
-					fe = new TurnDependentFlowEfficiencyCalculator(scenario);
+					TurnDependentFlowEfficiencyCalculator fe = new TurnDependentFlowEfficiencyCalculator(scenario, timer);
 					factory.setFlowEfficiencyCalculator(fe);
 				}
 
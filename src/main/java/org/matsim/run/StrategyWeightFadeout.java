@@ -25,24 +25,42 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.groups.StrategyConfigGroup;
+import org.matsim.core.controler.events.IterationEndsEvent;
 import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
 import org.matsim.core.controler.listener.IterationStartsListener;
 import org.matsim.core.replanning.GenericPlanStrategy;
 import org.matsim.core.replanning.PlanStrategy;
+import org.matsim.core.replanning.ReplanningUtils;
 import org.matsim.core.replanning.StrategyManager;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 
 /**
  * Fade-out the strategy weight during the simulation.
  * This class as well as the {@link Schedule}s has be bound with guice in the controller.
+ * <p>
+ * Schedules are resolved to their strategy once at the first iteration. The shape of the fade-out is given by the
+ * {@link Curve} of each schedule.
  */
-public final class StrategyWeightFadeout implements IterationStartsListener {
+public final class StrategyWeightFadeout implements IterationStartsListener, IterationEndsListener {
+
+	/**
+	 * Smoothing factor of the improvement rate.
+	 */
+	static final double SMOOTHING = 0.3;
+
+	/**
+	 * Min. score increase for a plan to count as improvement.
+	 */
+	private static final double EPSILON = 1e-6;
 
 	private final Logger log = LogManager.getLogger(StrategyWeightFadeout.class);
 
@@ -55,64 +73,259 @@ public final class StrategyWeightFadeout implements IterationStartsListener {
 	@Inject
 	private StrategyManager strategyManager;
 
+	@Inject
+	private Population population;
+
 	@Inject
 	private Set<Schedule> schedules;
 
+	private boolean resolved;
+
+	/**
+	 * Iteration from which all innovative strategies have weight zero, if moved before the configured one.
+	 */
+	private int disableInnovationAt = Integer.MAX_VALUE;
+
+	/**
+	 * Executed score of each person in the previous iteration, by person index.
+	 */
+	private double[] scores = new double[0];
+
+	/**
+	 * Smoothed share of persons whose executed score improved, NaN until known.
+	 */
+	private double improvementRate = Double.NaN;
+
 	@Override
 	public void notifyIterationStarts(IterationStartsEvent iterationStartsEvent) {
+		update(iterationStartsEvent.getIteration());
+	}
+
+	/**
+	 * Set the strategy weights for the given iteration.
+	 */
+	void update(int iteration) {
+
+		if (!resolved) {
+			for (Schedule s : schedules)
+				resolve(s);
+
+			resolved = true;
+		}
 
 		for (Schedule s : schedules) {
 
-			StrategyConfigGroup.StrategySettings settings = null;
+			if (s.strategy == null)
+				continue;
+
+			// improvement rate at the start is the reference for the adaptive curve
+			if (iteration <= s.startIteration)
+				s.initialRate = improvementRate;
 
-			for (StrategyConfigGroup.StrategySettings strategySettings : planStrategies.keySet()) {
-				if (strategySettings.getStrategyName().equals(s.name) && strategySettings.getSubpopulation().equals(s.subpopulation)) {
-					settings = strategySettings;
-					break;
+			if (iteration > s.startIteration && iteration <= s.endIteration) {
+
+				double progress = (double) (iteration - s.startIteration) / (s.endIteration - s.startIteration);
+				double weight = s.initialWeight * s.curve.factor(progress, improvementRate / s.initialRate);
+
+				log.info("Setting {} weight at iteration {} to {}", s.name, iteration, weight);
+
+				strategyManager.changeWeightOfStrategy(s.strategy, s.subpopulation, weight);
+			}
+		}
+
+		if (iteration >= disableInnovationAt) {
+
+			Set<String> subpopulations = new HashSet<>();
+			for (StrategyConfigGroup.StrategySettings settings : planStrategies.keySet())
+				subpopulations.add(settings.getSubpopulation());
+
+			// also strategies without schedule, the weight stays at zero until the end
+			for (String subpopulation : subpopulations) {
+				for (GenericPlanStrategy<Plan, Person> strategy : strategyManager.getStrategies(subpopulation)) {
+					if (!ReplanningUtils.isOnlySelector(strategy))
+						strategyManager.changeWeightOfStrategy(strategy, subpopulation, 0);
 				}
 			}
+		}
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+
+		int improved = 0;
+		int n = 0;
+		boolean first = scores.length == 0;
+
+		for (Person person : population.getPersons().values()) {
+			int idx = person.getId().index();
+			if (idx >= scores.length) {
+				int size = scores.length;
+				scores = Arrays.copyOf(scores, Math.max(idx + 1, size * 2));
+				Arrays.fill(scores, size, scores.length, Double.NaN);
+			}
 
-			if (settings == null) {
-				log.info("Strategy settings for {} not found", s.name);
-				return;
+			Plan plan = person.getSelectedPlan();
+			double score = plan != null && plan.getScore() != null ? plan.getScore() : Double.NaN;
+
+			if (!Double.isNaN(score) && !Double.isNaN(scores[idx])) {
+				n++;
+				if (score > scores[idx] + EPSILON)
+					improved++;
 			}
 
-			String strategyName = settings.getStrategyName();
+			scores[idx] = score;
+		}
 
-			if (Double.isNaN(s.initialWeight)) {
-				s.initialWeight = settings.getWeight();
-				s.startIteration = (int) (config.controler().getLastIteration() * s.startAt);
-				double disable = config.strategy().getFractionOfIterationsToDisableInnovation();
+		if (first || n == 0)
+			return;
 
-				// use disable after if it is set
-				if (!Double.isNaN(s.endAt))
-					s.endIteration = (int) (config.controler().getLastIteration() * s.endAt);
-				else if (settings.getDisableAfter() > 0 && settings.getDisableAfter() < Integer.MAX_VALUE && settings.getDisableAfter() <= disable)
-					s.endIteration = settings.getDisableAfter();
-				else if (Double.isFinite(disable) && disable < Integer.MAX_VALUE)
-					s.endIteration = (int) (config.controler().getLastIteration() * disable);
-				else
-					s.endIteration = settings.getDisableAfter();
+		double rate = (double) improved / n;
+		improvementRate = Double.isNaN(improvementRate) ? rate : SMOOTHING * rate + (1 - SMOOTHING) * improvementRate;
 
-				log.info("{} fadeout from iteration {} to {} with start weight {}", strategyName, s.startIteration, s.endIteration, s.initialWeight);
+		log.debug("Share of persons with improved score: {} (smoothed {})", rate, improvementRate);
+	}
+
+	/**
+	 * Find the settings and loaded strategy of a schedule and initialize its iterations.
+	 */
+	private void resolve(Schedule s) {
+
+		StrategyConfigGroup.StrategySettings settings = null;
+
+		for (StrategyConfigGroup.StrategySettings strategySettings : planStrategies.keySet()) {
+			if (strategySettings.getStrategyName().equals(s.name) && strategySettings.getSubpopulation().equals(s.subpopulation)) {
+				settings = strategySettings;
+				break;
 			}
+		}
+
+		if (settings == null) {
+			log.info("Strategy settings for {} not found", s.name);
+			return;
+		}
 
-			// Find the implementation to update the strategy weight
-			List<GenericPlanStrategy<Plan, Person>> strategies = strategyManager.getStrategies(s.subpopulation);
-			Optional<GenericPlanStrategy<Plan, Person>> strategy = strategies.stream().filter(st -> st.toString().contains(strategyName)).findFirst();
+		// Find the implementation to update the strategy weight, preferably the same instance
+		List<GenericPlanStrategy<Plan, Person>> strategies = strategyManager.getStrategies(s.subpopulation);
+		PlanStrategy planStrategy = planStrategies.get(settings);
 
-			if (strategy.isEmpty()) {
-				log.warn("Could not find loaded strategy for {}", strategy);
-				return;
+		GenericPlanStrategy<Plan, Person> strategy = null;
+		for (GenericPlanStrategy<Plan, Person> st : strategies) {
+			if (st == planStrategy) {
+				strategy = st;
+				break;
 			}
+			if (strategy == null && st.toString().contains(s.name))
+				strategy = st;
+		}
+
+		if (strategy == null) {
+			log.warn("Could not find loaded strategy for {}", s.name);
+			return;
+		}
+
+		s.strategy = strategy;
+		s.initialWeight = settings.getWeight();
+		s.startIteration = (int) (config.controler().getLastIteration() * s.startAt);
+		double disable = config.strategy().getFractionOfIterationsToDisableInnovation();
+
+		// use disable after if it is set
+		if (!Double.isNaN(s.endAt))
+			s.endIteration = (int) (config.controler().getLastIteration() * s.endAt);
+		else if (settings.getDisableAfter() > 0 && settings.getDisableAfter() < Integer.MAX_VALUE && settings.getDisableAfter() <= disable)
+			s.endIteration = settings.getDisableAfter();
+		else if (Double.isFinite(disable) && disable < Integer.MAX_VALUE)
+			s.endIteration = (int) (config.controler().getLastIteration() * disable);
+		else
+			s.endIteration = settings.getDisableAfter();
+
+		log.info("{} {} fadeout from iteration {} to {} with start weight {}", s.name, s.curve, s.startIteration, s.endIteration, s.initialWeight);
+	}
+
+	/**
+	 * Start the fade-out of all schedules at {@code iteration}, if they would start later. Used when a run has
+	 * converged before the configured schedule.
+	 *
+	 * @param length number of iterations until the weight reaches zero
+	 */
+	public void fadeOut(int iteration, int length) {
+		for (Schedule s : schedules) {
+
+			// schedule without matching strategy
+			if (s.strategy == null)
+				continue;
+
+			if (s.endIteration <= iteration + length)
+				continue;
+
+			s.startIteration = Math.min(s.startIteration, iteration);
+			s.endIteration = iteration + length;
+
+			log.info("Fadeout of {} moved to iterations {} to {}", s.name, s.startIteration, s.endIteration);
+		}
+	}
+
+	/**
+	 * Set the weight of all innovative strategies in all subpopulations to zero from {@code iteration} on.
+	 * This includes strategies without schedule and moves the innovation cutoff of the config forward.
+	 */
+	public void disableInnovation(int iteration) {
+
+		disableInnovationAt = Math.min(disableInnovationAt, iteration);
+
+		log.info("Innovation disabled from iteration {}", disableInnovationAt);
+	}
+
+	/**
+	 * Shape of the fade-out, as factor of the initial weight.
+	 */
+	public enum Curve {
 
-			if (iterationStartsEvent.getIteration() > s.startIteration && iterationStartsEvent.getIteration() <= s.endIteration) {
-				double step = s.initialWeight / (s.endIteration - s.startIteration);
-				double weight = s.initialWeight + step * (s.startIteration - iterationStartsEvent.getIteration());
+		/**
+		 * Decrease by the same amount each iteration.
+		 */
+		LINEAR,
 
-				log.info("Setting {} weight at iteration {} to {}", strategyName, iterationStartsEvent.getIteration(), weight);
+		/**
+		 * Decrease fast at the beginning and slow towards the end.
+		 */
+		EXPONENTIAL,
+
+		/**
+		 * Decrease slow at the beginning and the end, fast in the middle.
+		 */
+		COSINE,
+
+		/**
+		 * Decrease with the share of persons that still improve their score, relative to the share at the start.
+		 * The linear fade-out is used as upper bound, so that the weight reaches zero at the end.
+		 */
+		IMPROVEMENT;
+
+		/**
+		 * Steepness of the exponential curve.
+		 */
+		private static final double K = 5;
 
-				strategyManager.changeWeightOfStrategy(strategy.get(), s.subpopulation, weight);
+		/**
+		 * Factor of the initial weight.
+		 *
+		 * @param progress    share of the fade-out that has passed, between 0 and 1
+		 * @param improvement improvement rate relative to the start of the fade-out, NaN if unknown
+		 */
+		double factor(double progress, double improvement) {
+			switch (this) {
+				case LINEAR:
+					return 1 - progress;
+				case EXPONENTIAL:
+					return (Math.exp(-K * progress) - Math.exp(-K)) / (1 - Math.exp(-K));
+				case COSINE:
+					return 0.5 * (1 + Math.cos(Math.PI * progress));
+				case IMPROVEMENT:
+					if (!Double.isFinite(improvement))
+						return 1 - progress;
+					return Math.max(0, Math.min(1 - progress, improvement));
+				default:
+					throw new IllegalStateException("Unknown curve: " + this);
 			}
 		}
 	}
@@ -133,26 +346,39 @@ public final class StrategyWeightFadeout implements IterationStartsListener {
 		private int startIteration;
 		private int endIteration;
 
+		/**
+		 * Loaded strategy, null if not found.
+		 */
+		private GenericPlanStrategy<Plan, Person> strategy;
+
+		/**
+		 * Improvement rate at the start of the fade-out.
+		 */
+		private double initialRate = Double.NaN;
+
 		private final String name;
 		private final String subpopulation;
 		private final double startAt;
 		private final double endAt;
+		private final Curve curve;
 
 		/**
 		 * Constructor where the end is taken from the config and not given explicitly.
 		 */
 		public Schedule(String name, String subpopulation, double startAt) {
-			this.name = name;
-			this.subpopulation = subpopulation;
-			this.startAt = startAt;
-			this.endAt = Double.NaN;
+			this(name, subpopulation, startAt, Double.NaN, Curve.LINEAR);
 		}
 
 		public Schedule(String name, String subpopulation, double startAt, double endAt) {
+			this(name, subpopulation, startAt, endAt, Curve.LINEAR);
+		}
+
+		public Schedule(String name, String subpopulation, double startAt, double endAt, Curve curve) {
 			this.name = name;
 			this.subpopulation = subpopulation;
 			this.startAt = startAt;
 			this.endAt = endAt;
+			this.curve = curve;
 		}
 	}
 }
@@ -1,21 +1,41 @@
 package org.matsim.run;
 
 import com.google.inject.Inject;
-import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
-import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.mobsim.qsim.interfaces.MobsimTimer;
 import org.matsim.core.mobsim.qsim.qnetsimengine.QVehicle;
 import org.matsim.core.mobsim.qsim.qnetsimengine.flow_efficiency.FlowEfficiencyCalculator;
 import org.matsim.lanes.Lane;
 import org.matsim.lanes.LanesToLinkAssignment;
 
 import javax.annotation.Nullable;
-import java.util.IdentityHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
-public class TurnDependentFlowEfficiencyCalculator implements FlowEfficiencyCalculator {
+/**
+ * Reduces the flow efficiency depending on the turn a vehicle takes when leaving a link.
+ * <p>
+ * The tables are immutable after construction and split into one partition for each thread of the QSim.
+ * Links are assigned like the QSim distributes them to its engines: nodes round-robin in network order, and
+ * each link belongs to the engine of its from node, which is the thread computing its flow efficiency.
+ * Each thread therefore only reads the contiguous tables of its own partition. Only the small lookup of the row
+ * by link and lane index is shared.
+ * <p>
+ * Efficiencies can vary over the day. Instead of a single number, the attribute then contains a comma separated
+ * list with one value for each time bin of {@link #TIME_BIN_SIZE} seconds. The last value is used for the rest of the day.
+ */
+public final class TurnDependentFlowEfficiencyCalculator implements FlowEfficiencyCalculator {
 
 	/**
 	 * Attribute name for turn efficiency parameter.
@@ -23,64 +43,145 @@ public class TurnDependentFlowEfficiencyCalculator implements FlowEfficiencyCalc
 	public static final String ATTR_TURN_EFFICIENCY = "turnEfficiency";
 
 	/**
-	 * Maps from link to link to turn efficiencies.
+	 * Size of one time bin in seconds.
 	 */
-	private final Long2DoubleMap linkEfficiencies = new Long2DoubleOpenHashMap();
+	public static final int TIME_BIN_SIZE = 900;
 
 	/**
-	 * Maps from lane to link to turn efficiency.
+	 * Turn efficiencies are given for the whole link, or for each of its lanes.
 	 */
-	private final Long2DoubleMap laneEfficiencies = new Long2DoubleOpenHashMap();
+	private static final byte LINK = 1;
+	private static final byte LANE = 2;
 
 	/**
-	 * Contains links that have turn efficiencies, true if also for each lane.
+	 * Partition of each link index, null if the link has no turn efficiencies.
 	 */
-	private final Map<Link, Boolean> hasLaneEfficiency = new IdentityHashMap<>();
+	private final Partition[] partition;
+
+	/**
+	 * Row of each link index within its partition, -1 if the link has no turn efficiencies.
+	 */
+	private final int[] linkRow;
+
+	/**
+	 * Row of each lane index within the partition of its link, -1 if the lane has no turn efficiencies.
+	 */
+	private final int[] laneRow;
+
+	/**
+	 * Provides the current time, if null the first time bin is always used.
+	 */
+	@Nullable
+	private final MobsimTimer timer;
 
 	@Inject
+	public TurnDependentFlowEfficiencyCalculator(Scenario scenario, @Nullable MobsimTimer timer) {
+		this(scenario, Math.max(1, scenario.getConfig().qsim().getNumberOfThreads()), timer);
+	}
+
 	public TurnDependentFlowEfficiencyCalculator(Scenario scenario) {
+		this(scenario, 1, null);
+	}
+
+	/**
+	 * Create tables for a number of partitions, which should be the number of QSim threads.
+	 */
+	public TurnDependentFlowEfficiencyCalculator(Scenario scenario, int numberOfPartitions, @Nullable MobsimTimer timer) {
+
+		if (numberOfPartitions < 1)
+			throw new IllegalArgumentException("Number of partitions must be positive, was " + numberOfPartitions);
+
+		this.timer = timer;
+
+		Network network = scenario.getNetwork();
+
+		int maxLink = network.getLinks().keySet().stream().mapToInt(Id::index).max().orElse(-1);
+		int[] assignment = assignPartitions(network, numberOfPartitions);
+
+		Map<Id<Link>, LanesToLinkAssignment> l2ls = scenario.getLanes().getLanesToLinkAssignments();
+		int maxLane = l2ls.values().stream().flatMap(l2l -> l2l.getLanes().keySet().stream())
+				.mapToInt(Id::index).max().orElse(-1);
 
-		for (Link link : scenario.getNetwork().getLinks().values()) {
+		Builder[] builders = new Builder[numberOfPartitions];
+		for (int i = 0; i < numberOfPartitions; i++)
+			builders[i] = new Builder();
+
+		partition = new Partition[maxLink + 1];
+		linkRow = new int[maxLink + 1];
+		laneRow = new int[maxLane + 1];
+		Arrays.fill(linkRow, -1);
+		Arrays.fill(laneRow, -1);
+
+		for (Link link : network.getLinks().values()) {
+
+			int idx = link.getId().index();
+			Builder b = builders[assignment[idx]];
 
 			Map<String, String> turnEfficiency = (Map<String, String>) link.getAttributes().getAttribute(ATTR_TURN_EFFICIENCY);
-			if (turnEfficiency != null) {
+			LanesToLinkAssignment l2l = l2ls.get(link.getId());
 
-				hasLaneEfficiency.put(link, false);
+			List<Lane> lanes = new ArrayList<>();
+			if (l2l != null) {
+				for (Lane lane : l2l.getLanes().values()) {
+					if (lane.getAttributes().getAttribute(ATTR_TURN_EFFICIENCY) != null)
+						lanes.add(lane);
+				}
+			}
 
-				for (Map.Entry<String, String> e : turnEfficiency.entrySet()) {
-					Id<Link> toLink = Id.createLinkId(e.getKey());
-					double f = Double.parseDouble(e.getValue());
-					linkEfficiencies.put(key(link.getId(), toLink), f);
+			// lanes take precedence over the link
+			if (!lanes.isEmpty()) {
+				linkRow[idx] = b.addRow(LANE);
+				for (Lane lane : lanes) {
+					int row = b.laneRows++;
+					laneRow[lane.getId().index()] = row;
+					b.add(b.laneKeys, b.laneValues, row, (Map<String, String>) lane.getAttributes().getAttribute(ATTR_TURN_EFFICIENCY));
 				}
+			} else if (turnEfficiency != null) {
+				linkRow[idx] = b.addRow(LINK);
+				b.add(b.linkKeys, b.linkValues, linkRow[idx], turnEfficiency);
 			}
+		}
 
+		Partition[] partitions = new Partition[numberOfPartitions];
+		for (int i = 0; i < numberOfPartitions; i++)
+			partitions[i] = builders[i].build();
+
+		for (int i = 0; i <= maxLink; i++) {
+			if (linkRow[i] >= 0)
+				partition[i] = partitions[assignment[i]];
 		}
+	}
 
-		for (Map.Entry<Id<Link>, LanesToLinkAssignment> l2l : scenario.getLanes().getLanesToLinkAssignments().entrySet()) {
+	/**
+	 * Assign each link index to one of {@code n} partitions. Nodes are distributed round-robin in the iteration
+	 * order of the network and links belong to the partition of their from node.
+	 * This is the same rule the QSim uses to distribute nodes and links to its engines.
+	 *
+	 * @return partition for each link index, -1 for unused indices
+	 */
+	static int[] assignPartitions(Network network, int n) {
 
-			Link link = scenario.getNetwork().getLinks().get(l2l.getKey());
+		int maxLink = network.getLinks().keySet().stream().mapToInt(Id::index).max().orElse(-1);
+		int[] assignment = new int[maxLink + 1];
+		Arrays.fill(assignment, -1);
 
-			for (Lane lane : l2l.getValue().getLanes().values()) {
-				Map<String, String> turnEfficiency = (Map<String, String>) lane.getAttributes().getAttribute(ATTR_TURN_EFFICIENCY);
-				if (turnEfficiency != null) {
-					hasLaneEfficiency.put(link, true);
+		int roundRobin = 0;
+		for (Node node : network.getNodes().values()) {
+			int i = roundRobin % n;
+			for (Link link : node.getOutLinks().values())
+				assignment[link.getId().index()] = i;
 
-					for (Map.Entry<String, String> e : turnEfficiency.entrySet()) {
-						Id<Link> toLink = Id.createLinkId(e.getKey());
-						double f = Double.parseDouble(e.getValue());
-						laneEfficiencies.put(key(lane.getId(), toLink), f);
-					}
-				}
-			}
+			roundRobin++;
 		}
+
+		return assignment;
 	}
 
 	@Override
 	public double calculateFlowEfficiency(QVehicle qVehicle, @Nullable QVehicle previousQVehicle, @Nullable Double timeGapToPreviousVeh, Link link, Id<Lane> laneId) {
 
-		Boolean laneEfficiency = hasLaneEfficiency.get(link);
 		// no turn efficiency known
-		if (laneEfficiency == null)
+		if (partition(link) == null)
 			return 1.0;
 
 		Id<Link> toLink = qVehicle.getDriver().chooseNextLinkId();
@@ -88,18 +189,193 @@ public class TurnDependentFlowEfficiencyCalculator implements FlowEfficiencyCalc
 		if (toLink == null)
 			return 1.0;
 
-		if (laneEfficiency) {
-			return laneEfficiencies.getOrDefault(key(laneId, toLink), 1);
-		} else {
-			return linkEfficiencies.getOrDefault(key(link.getId(), toLink), 1);
+		return getFlowEfficiency(link, laneId, toLink, timer != null ? timer.getTimeOfDay() : 0);
+	}
+
+	/**
+	 * Turn efficiency when leaving {@code link} (and {@code laneId}) towards {@code toLink} in the first time bin.
+	 */
+	double getFlowEfficiency(Link link, @Nullable Id<Lane> laneId, Id<Link> toLink) {
+		return getFlowEfficiency(link, laneId, toLink, 0);
+	}
+
+	/**
+	 * Turn efficiency when leaving {@code link} (and {@code laneId}) towards {@code toLink} at given time.
+	 */
+	double getFlowEfficiency(Link link, @Nullable Id<Lane> laneId, Id<Link> toLink, double time) {
+
+		Partition p = partition(link);
+		if (p == null)
+			return 1.0;
+
+		int bin = time > 0 ? (int) (time / TIME_BIN_SIZE) : 0;
+		int row = linkRow[link.getId().index()];
+
+		if (p.mode[row] == LINK)
+			return p.links.get(row, toLink.index(), bin);
+
+		if (laneId == null || laneId.index() >= laneRow.length || laneRow[laneId.index()] < 0)
+			return 1.0;
+
+		return p.lanes.get(laneRow[laneId.index()], toLink.index(), bin);
+	}
+
+	/**
+	 * Parse a single efficiency or comma separated values for each time bin.
+	 */
+	static float[] parse(String value) {
+
+		String[] split = value.split(",");
+		float[] result = new float[split.length];
+		for (int i = 0; i < split.length; i++)
+			result[i] = Float.parseFloat(split[i].trim());
+
+		return result;
+	}
+
+	@Nullable
+	private Partition partition(Link link) {
+		int index = link.getId().index();
+		return index < partition.length ? partition[index] : null;
+	}
+
+	/**
+	 * 64bit compound key of two indices.
+	 */
+	private static long key(int a, int b) {
+		return ((long) a << 32) | ((long) b & 0xFFFF_FFFFL);
+	}
+
+	/**
+	 * Tables of the links assigned to one partition, rows are numbered within the partition.
+	 */
+	private static final class Partition {
+
+		/**
+		 * Whether the turn efficiencies of each row are stored for the link or its lanes.
+		 */
+		private final byte[] mode;
+		private final Turns links;
+		private final Turns lanes;
+
+		private Partition(byte[] mode, Turns links, Turns lanes) {
+			this.mode = mode;
+			this.links = links;
+			this.lanes = lanes;
 		}
 	}
 
+	/**
+	 * Collects the turns of one partition during construction.
+	 */
+	private static final class Builder {
+
+		private final ByteArrayList mode = new ByteArrayList();
+		private final LongList linkKeys = new LongArrayList();
+		private final List<float[]> linkValues = new ObjectArrayList<>();
+		private final LongList laneKeys = new LongArrayList();
+		private final List<float[]> laneValues = new ObjectArrayList<>();
+		private int laneRows;
+
+		private int addRow(byte type) {
+			mode.add(type);
+			return mode.size() - 1;
+		}
+
+		private void add(LongList keys, List<float[]> values, int row, Map<String, String> turnEfficiency) {
+			for (Map.Entry<String, String> e : turnEfficiency.entrySet()) {
+				Id<Link> toLink = Id.createLinkId(e.getKey());
+				keys.add(key(row, toLink.index()));
+				values.add(parse(e.getValue()));
+			}
+		}
+
+		private Partition build() {
+			return new Partition(mode.toByteArray(), new Turns(linkKeys, linkValues), new Turns(laneKeys, laneValues));
+		}
+	}
 
 	/**
-	 * 64bit compound key of two ids.
+	 * Compressed sparse rows of turn efficiencies. For each source index the target link indices are stored
+	 * sorted in one contiguous range of {@link #toLink}. The efficiencies are stored as {@code [timeBin][turnIndex]}.
 	 */
-	private static long key(Id<?> a, Id<?> b) {
-		return ((long) a.index() << 32) | ((long) b.index() & 0xFFFF_FFFFL);
+	private static final class Turns {
+
+		/**
+		 * Start of each row, the row of index {@code i} ends at {@code offset[i + 1]}.
+		 */
+		private final int[] offset;
+		private final int[] toLink;
+		private final float[][] efficiency;
+
+		private Turns(LongList keys, List<float[]> values) {
+
+			int n = keys.size();
+
+			int[] order = new int[n];
+			for (int i = 0; i < n; i++)
+				order[i] = i;
+
+			// stable sort, so that the last value of duplicated keys wins
+			IntArrays.mergeSort(order, (a, b) -> Long.compare(keys.getLong(a), keys.getLong(b)));
+
+			int rows = 0;
+			for (int i = 0; i < n; i++)
+				rows = Math.max(rows, (int) (keys.getLong(i) >>> 32) + 1);
+
+			offset = new int[rows + 1];
+
+			LongList distinct = new LongArrayList(n);
+			List<float[]> distinctValues = new ObjectArrayList<>(n);
+
+			for (int i = 0; i < n; i++) {
+				long key = keys.getLong(order[i]);
+				if (!distinct.isEmpty() && distinct.getLong(distinct.size() - 1) == key)
+					distinctValues.set(distinctValues.size() - 1, values.get(order[i]));
+				else {
+					distinct.add(key);
+					distinctValues.add(values.get(order[i]));
+				}
+			}
+
+			int bins = distinctValues.stream().mapToInt(v -> v.length).max().orElse(1);
+
+			toLink = new int[distinct.size()];
+			efficiency = new float[bins][distinct.size()];
+
+			for (int i = 0; i < distinct.size(); i++) {
+				long key = distinct.getLong(i);
+				toLink[i] = (int) key;
+				offset[(int) (key >>> 32) + 1]++;
+
+				// shorter series keep their last value
+				float[] v = distinctValues.get(i);
+				for (int t = 0; t < bins; t++)
+					efficiency[t][i] = v[Math.min(t, v.length - 1)];
+			}
+
+			for (int i = 0; i < rows; i++)
+				offset[i + 1] += offset[i];
+		}
+
+		/**
+		 * Return the efficiency in a time bin or 1 if not present.
+		 */
+		double get(int from, int to, int bin) {
+
+			if (from >= offset.length - 1)
+				return 1.0;
+
+			float[] values = efficiency[Math.min(bin, efficiency.length - 1)];
+
+			for (int i = offset[from]; i < offset[from + 1]; i++) {
+				if (toLink[i] == to)
+					return values[i];
+				else if (toLink[i] > to)
+					break;
+			}
+
+			return 1.0;
+		}
 	}
 }
@@ -0,0 +1,64 @@
+package org.matsim;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.prepare.StreamingPlansTransformer.Element;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.Vehicles;
+
+import java.util.List;
+
+public class ModifyPlansFileTest {
+
+	@Test
+	public void rules() {
+
+		Element person = new Element("person");
+		person.setAttribute("id", "p1");
+
+		Element plan = new Element("plan");
+		person.getChildren().add(plan);
+
+		Element home = new Element("activity");
+		home.setAttribute("type", "home_600");
+		home.setAttribute("end_time", "08:00:00");
+
+		Element leg = new Element("leg");
+		leg.setAttribute("mode", "car");
+
+		Element other = new Element("activity");
+		other.setAttribute("type", "other_3600");
+
+		plan.getChildren().addAll(List.of(home, leg, other));
+
+		new ModifyPlansFile.CarToEv().apply(person);
+		new ModifyPlansFile.VehicleIds().apply(person);
+		new ModifyPlansFile.ChargingActivities().apply(person);
+
+		Assert.assertEquals("EV_car", leg.getAttribute("mode"));
+		Assert.assertEquals("veh_p1", leg.getAttribute("vehicleId"));
+
+		Assert.assertEquals(4, plan.getChildren().size());
+		Element charging = plan.getChildren().get(1);
+		Assert.assertEquals("charging", charging.getAttribute("type"));
+		Assert.assertEquals("08:00:00", charging.getAttribute("start_time"));
+		Assert.assertSame(leg, plan.getChildren().get(2));
+	}
+
+	@Test
+	public void vehicles() {
+
+		IntArrayList persons = new IntArrayList();
+		persons.add(Id.createPersonId("b").index());
+		persons.add(Id.createPersonId("a").index());
+
+		Vehicles vehicles = ModifyPlansFile.createVehicles(persons);
+
+		Assert.assertEquals(2, vehicles.getVehicles().size());
+		Vehicle v = vehicles.getVehicles().get(Id.createVehicleId("veh_a"));
+		Assert.assertNotNull(v);
+		Assert.assertEquals(100.0, v.getAttributes().getAttribute("initialSoC"));
+	}
+}
@@ -0,0 +1,72 @@
+package org.matsim.analysis;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.run.SyntheticNetwork;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overtake analysis of link enter and leave events, roughly the car traffic of a 10pct run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AnalyzeTakeoversBenchmark {
+
+	/**
+	 * Number of link traversals.
+	 */
+	private static final int TRAVERSALS = 2_000_000;
+
+	private static final int VEHICLES = 50_000;
+
+	private AnalyzeTakeovers analyzer;
+	private ColumnarEvents events;
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(AnalyzeTakeoversBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup
+	public void setup() {
+
+		Network network = SyntheticNetwork.create(0, 1);
+		int[] links = network.getLinks().keySet().stream().mapToInt(Id::index).toArray();
+
+		int[] vehicles = new int[VEHICLES];
+		for (int i = 0; i < VEHICLES; i++)
+			vehicles[i] = Id.createVehicleId("v" + i).index();
+
+		Random rnd = new Random(1);
+		ColumnarEvents.Builder builder = new ColumnarEvents.Builder();
+
+		// traffic concentrated on a part of the links, so that there are overtakes
+		for (int i = 0; i < TRAVERSALS; i++) {
+			int link = links[(int) (Math.abs(rnd.nextGaussian()) * links.length / 8) % links.length];
+			int vehicle = vehicles[rnd.nextInt(VEHICLES)];
+			double enter = rnd.nextInt(24 * 3600);
+			double leave = enter + 10 + rnd.nextInt(60);
+
+			builder.add(enter, ColumnarEvents.LINK_ENTER, link, vehicle, -1);
+			builder.add(leave, ColumnarEvents.LINK_LEAVE, link, vehicle, -1);
+		}
+
+		events = builder.build();
+		analyzer = new AnalyzeTakeovers();
+	}
+
+	@Benchmark
+	public Object analyze() {
+		return analyzer.analyze(events);
+	}
+}
@@ -1,17 +1,35 @@
 package org.matsim.analysis;
 
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.LinkLeaveEvent;
 
+import picocli.CommandLine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 
 public class AnalyzeTakeoversTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private AnalyzeTakeovers analyzer;
 
     @Before
@@ -42,4 +60,92 @@ public class AnalyzeTakeoversTest {
         assert n == 1 : "There must be 1 takeovers";
 
     }
+
+    @Test
+    public void perLink() throws IOException {
+
+        Path events = folder.getRoot().toPath().resolve("output_events.xml");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(events)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<events version=\"1.0\">\n");
+
+            // v1 is overtaken by v2 and v3 on l1, v3 overtakes v2 as well
+            event(writer, 100, "entered link", "v1", "l1");
+            event(writer, 101, "entered link", "v2", "l1");
+            event(writer, 102, "entered link", "v3", "l1");
+            event(writer, 105, "left link", "v3", "l1");
+            event(writer, 107, "left link", "v2", "l1");
+            event(writer, 110, "left link", "v1", "l1");
+
+            // no overtakes on l2
+            event(writer, 110, "entered link", "v1", "l2");
+            event(writer, 112, "entered link", "v2", "l2");
+            event(writer, 120, "left link", "v1", "l2");
+            event(writer, 125, "left link", "v2", "l2");
+
+            // exceeds the time threshold, not paired
+            event(writer, 200, "entered link", "v4", "l3");
+            event(writer, 201, "entered link", "v5", "l3");
+            event(writer, 210, "left link", "v5", "l3");
+            event(writer, 900, "left link", "v4", "l3");
+
+            // transit links are ignored
+            event(writer, 300, "entered link", "v6", "pt_1");
+            event(writer, 301, "entered link", "v7", "pt_1");
+            event(writer, 302, "left link", "v7", "pt_1");
+            event(writer, 303, "left link", "v6", "pt_1");
+
+            writer.write("</events>\n");
+        }
+
+        Assert.assertEquals(0, new CommandLine(new AnalyzeTakeovers()).execute(events.toString()));
+
+        Map<String, String> overtakes = new HashMap<>();
+        Map<String, String> pairs = new HashMap<>();
+
+        // written next to the events
+        try (CSVParser parser = new CSVParser(Files.newBufferedReader(events.resolveSibling("takeovers.csv")),
+                CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+            for (CSVRecord record : parser) {
+                overtakes.put(record.get("link"), record.get("overtakes"));
+                pairs.put(record.get("link"), record.get("pairs"));
+            }
+        }
+
+        Assert.assertEquals(Map.of("l1", "3", "l2", "0", "l3", "0"), overtakes);
+        Assert.assertEquals(Map.of("l1", "3", "l2", "2", "l3", "1"), pairs);
+    }
+
+    @Test
+    public void inversions() {
+
+        Random rnd = new Random(0);
+
+        for (int k = 0; k < 100; k++) {
+
+            int n = rnd.nextInt(200);
+            double[] enter = new double[n];
+            double[] leave = new double[n];
+
+            // coarse times to produce ties
+            for (int i = 0; i < n; i++) {
+                enter[i] = rnd.nextInt(50);
+                leave[i] = enter[i] + 1 + rnd.nextInt(20);
+            }
+
+            long expected = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    if (enter[i] < enter[j] && leave[i] > leave[j])
+                        expected++;
+                }
+            }
+
+            assert AnalyzeTakeovers.countInversions(enter, leave) == expected : "Wrong number of inversions";
+        }
+    }
+
+    private static void event(BufferedWriter writer, double time, String type, String vehicle, String link) throws IOException {
+        writer.write("\t<event time=\"" + time + "\" type=\"" + type + "\" vehicle=\"" + vehicle + "\" link=\"" + link + "\"  />\n");
+    }
 }
@@ -0,0 +1,76 @@
+package org.matsim.analysis;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.run.SyntheticNetwork;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capacity factors of the AV and ACV models for all links of a network, as applied in the scenario setup.
+ * <p>
+ * One invocation covers all links of a network with about 100k links.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CapacityModelBenchmark {
+
+	@Param({"0.2", "0.8"})
+	private double share;
+
+	private double[] speeds;
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(CapacityModelBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup
+	public void setup() {
+		Network network = SyntheticNetwork.create(0.3, 1);
+		speeds = network.getLinks().values().stream()
+				.mapToDouble(l -> (double) l.getAttributes().getAttribute("allowed_speed"))
+				.toArray();
+	}
+
+	@Benchmark
+	public double avModel() {
+		double sum = 0;
+		for (double speed : speeds)
+			sum += AVModel.score(speed, share);
+		return sum;
+	}
+
+	@Benchmark
+	public double acvModel() {
+		double sum = 0;
+		for (double speed : speeds)
+			sum += ACVModel.score(speed, share);
+		return sum;
+	}
+
+	@Benchmark
+	public double avTable() {
+		CapacityFactorTable.Row row = CapacityFactorTable.AV.row(share);
+		double sum = 0;
+		for (double speed : speeds)
+			sum += row.get(speed);
+		return sum;
+	}
+
+	@Benchmark
+	public double acvTable() {
+		CapacityFactorTable.Row row = CapacityFactorTable.ACV.row(share);
+		double sum = 0;
+		for (double speed : speeds)
+			sum += row.get(speed);
+		return sum;
+	}
+}
@@ -0,0 +1,58 @@
+package org.matsim.analysis;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.lanes.Lane;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ColumnarEventsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void cache() throws IOException {
+
+		Path events = folder.getRoot().toPath().resolve("events.xml");
+		Files.writeString(events, "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<events version=\"1.0\">\n" +
+				"\t<event time=\"10.0\" type=\"vehicle enters traffic\" person=\"p1\" link=\"l1\" vehicle=\"v1\" networkMode=\"car\" relativePosition=\"1.0\"  />\n" +
+				"\t<event time=\"11.0\" type=\"left link\" vehicle=\"v1\" link=\"l1\"  />\n" +
+				"\t<event time=\"11.0\" type=\"entered link\" vehicle=\"v1\" link=\"l2\"  />\n" +
+				"\t<event time=\"12.0\" type=\"actstart\" person=\"p2\" link=\"l2\" actType=\"home\"  />\n" +
+				"\t<event time=\"15.5\" type=\"entered lane\" vehicle=\"v1\" link=\"l2\" lane=\"l2_0\"  />\n" +
+				"\t<event time=\"20.0\" type=\"vehicle leaves traffic\" person=\"p1\" link=\"l2\" vehicle=\"v1\" networkMode=\"car\" relativePosition=\"1.0\"  />\n" +
+				"</events>\n");
+
+		Path cache = folder.getRoot().toPath().resolve("events.cache");
+
+		ColumnarEvents parsed = ColumnarEvents.read(events, cache);
+		Assert.assertTrue(Files.exists(cache));
+
+		ColumnarEvents mapped = ColumnarEvents.read(events, cache);
+
+		for (ColumnarEvents e : new ColumnarEvents[]{parsed, mapped}) {
+
+			Assert.assertEquals(5, e.size());
+
+			Assert.assertEquals(ColumnarEvents.VEHICLE_ENTERS_TRAFFIC, e.type(0));
+			Assert.assertEquals(ColumnarEvents.LINK_LEAVE, e.type(1));
+			Assert.assertEquals(ColumnarEvents.LINK_ENTER, e.type(2));
+			Assert.assertEquals(ColumnarEvents.LANE_ENTER, e.type(3));
+			Assert.assertEquals(ColumnarEvents.VEHICLE_LEAVES_TRAFFIC, e.type(4));
+
+			Assert.assertEquals(15.5, e.time(3), 0);
+			Assert.assertEquals(Id.create("l2", Link.class).index(), e.link(3));
+			Assert.assertEquals(Id.create("v1", Vehicle.class).index(), e.vehicle(3));
+			Assert.assertEquals(Id.create("l2_0", Lane.class).index(), e.lane(3));
+			Assert.assertEquals(-1, e.lane(2));
+		}
+	}
+}
@@ -1,11 +1,21 @@
 package org.matsim.analysis;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
 
 
 public class ModelTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void av() {
 
@@ -44,4 +54,42 @@ public class ModelTest {
 		Assert.assertEquals(1.536,  ACVModel.score(32, 1), 0.001);
 
 	}
+
+	@Test
+	public void readModel() throws IOException {
+
+		Path file = folder.newFile("model.csv").toPath();
+		Files.writeString(file, String.join("\n",
+				"node,feature,threshold,left,right,value",
+				"0,0,10,1,2,",
+				"1,-1,,-1,-1,1.5",
+				"2,1,0.5,3,4,",
+				"3,-1,,-1,-1,2",
+				"4,-1,,-1,-1,3"
+		));
+
+		TreeModel model = TreeModel.read(file);
+
+		Assert.assertEquals(2, model.getNumberOfFeatures());
+		Assert.assertArrayEquals(new double[]{10}, model.getThresholds(0), 0);
+
+		Assert.assertEquals(1.5, model.score(10, 1), 0);
+		Assert.assertEquals(2, model.score(11, 0.5), 0);
+		Assert.assertEquals(3, model.score(new double[]{11, 0.6}), 0);
+	}
+
+	@Test
+	public void table() {
+
+		Random rnd = new Random(0);
+
+		for (int i = 0; i < 10000; i++) {
+
+			double speed = rnd.nextDouble() * 45;
+			double share = rnd.nextInt(11) / 10d;
+
+			Assert.assertEquals(AVModel.score(speed, share), CapacityFactorTable.AV.get(speed, share), 0);
+			Assert.assertEquals(ACVModel.score(speed, share), CapacityFactorTable.ACV.row(share).get(speed), 0);
+		}
+	}
 }
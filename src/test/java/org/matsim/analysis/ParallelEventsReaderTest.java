@@ -0,0 +1,97 @@
+package org.matsim.analysis;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+public class ParallelEventsReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void order() throws IOException {
+
+		Path events = folder.getRoot().toPath().resolve("events.xml.gz");
+
+		Random rnd = new Random(0);
+
+		DoubleArrayList time = new DoubleArrayList();
+		IntArrayList link = new IntArrayList();
+		IntArrayList vehicle = new IntArrayList();
+
+		// large enough for multiple chunks
+		try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(events)), StandardCharsets.UTF_8))) {
+
+			writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<events version=\"1.0\">\n");
+
+			for (int i = 0; i < 150_000; i++) {
+
+				double t = i / 4 + rnd.nextInt(10) / 10d;
+				String l = "l" + rnd.nextInt(1000) + (i % 10 == 0 ? "&amp;x" : "");
+				String v = "v" + rnd.nextInt(5000);
+
+				writer.write("\t<event time=\"" + t + "\" type=\"actend\" person=\"p1\" link=\"" + l + "\" actType=\"home\"  />\n");
+				writer.write("\t<event time=\"" + t + "\" type=\"entered link\" vehicle=\"" + v + "\" link=\"" + l + "\"  />\n");
+
+				time.add(t);
+				link.add(Id.create(l.replace("&amp;", "&"), Link.class).index());
+				vehicle.add(Id.create(v, Vehicle.class).index());
+			}
+
+			writer.write("</events>\n");
+		}
+
+		IntArrayList types = new IntArrayList();
+		DoubleArrayList readTime = new DoubleArrayList();
+		IntArrayList readLink = new IntArrayList();
+		IntArrayList readVehicle = new IntArrayList();
+
+		long n = new ParallelEventsReader(4).read(events, batch -> {
+			for (int i = 0; i < batch.size(); i++) {
+				types.add(batch.type(i));
+				readTime.add(batch.time(i));
+				readLink.add(batch.link(i));
+				readVehicle.add(batch.vehicle(i));
+				Assert.assertEquals(-1, batch.lane(i));
+			}
+		});
+
+		Assert.assertEquals(time.size(), n);
+		Assert.assertTrue(types.intStream().allMatch(t -> t == ColumnarEvents.LINK_ENTER));
+		Assert.assertEquals(time, readTime);
+		Assert.assertEquals(link, readLink);
+		Assert.assertEquals(vehicle, readVehicle);
+	}
+
+	@Test
+	public void parseDouble() {
+
+		for (String s : new String[]{"0", "0.0", "12.5", "86399.999", "1.0E7", "123456789012345678", "-3.25", "7."}) {
+			byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+			Assert.assertEquals(s, Double.parseDouble(s), ParallelEventsReader.parseDouble(b, 0, b.length), 0);
+		}
+
+		Random rnd = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			String s = String.valueOf(rnd.nextInt(100000) + rnd.nextInt(1000) / 1000d);
+			byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+			Assert.assertEquals(s, Double.parseDouble(s), ParallelEventsReader.parseDouble(b, 0, b.length), 0);
+		}
+	}
+}
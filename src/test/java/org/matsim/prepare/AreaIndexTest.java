@@ -0,0 +1,67 @@
+package org.matsim.prepare;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.matsim.api.core.v01.Coord;
+
+import java.util.Random;
+
+public class AreaIndexTest {
+
+	private final GeometryFactory f = new GeometryFactory();
+
+	@Test
+	public void sameAsGeometry() {
+
+		Random rnd = new Random(1);
+
+		// irregular polygon with a hole
+		Coordinate[] shell = new Coordinate[41];
+		for (int i = 0; i < 40; i++) {
+			double a = 2 * Math.PI * i / 40;
+			double r = 5000 + rnd.nextInt(3000);
+			shell[i] = new Coordinate(r * Math.cos(a), r * Math.sin(a));
+		}
+		shell[40] = shell[0];
+
+		Geometry geom = f.createPolygon(shell).difference(f.createPoint(new Coordinate(0, 0)).buffer(1000));
+
+		AreaIndex index = new AreaIndex(geom, 64);
+
+		Coord[] coords = new Coord[100_000];
+		for (int i = 0; i < coords.length; i++)
+			coords[i] = new Coord(rnd.nextDouble() * 20000 - 10000, rnd.nextDouble() * 20000 - 10000);
+
+		boolean[] inside = index.contains(coords);
+
+		int n = 0;
+		for (int i = 0; i < coords.length; i++) {
+			boolean expected = geom.contains(f.createPoint(new Coordinate(coords[i].getX(), coords[i].getY())));
+			Assert.assertEquals(expected, inside[i]);
+			if (expected)
+				n++;
+		}
+
+		Assert.assertTrue(n > 10_000);
+
+		// vertices are on the boundary
+		Assert.assertFalse(index.contains(shell[3].x, shell[3].y));
+	}
+
+	@Test
+	public void rectangle() {
+
+		Geometry geom = f.toGeometry(new org.locationtech.jts.geom.Envelope(0, 100, 0, 50));
+		AreaIndex index = new AreaIndex(geom, 10);
+
+		Assert.assertTrue(index.contains(50, 25));
+		Assert.assertTrue(index.contains(10, 10));
+		Assert.assertFalse(index.contains(100, 25));
+		Assert.assertFalse(index.contains(0, 0));
+		Assert.assertFalse(index.contains(100.5, 25));
+		Assert.assertFalse(index.contains(-1, 25));
+	}
+}
@@ -0,0 +1,62 @@
+package org.matsim.prepare;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+public class AsyncOutputStreamTest {
+
+	@Test
+	public void writesAllData() throws IOException {
+
+		byte[] data = new byte[5_000_000];
+		new Random(1).nextBytes(data);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (AsyncOutputStream stream = new AsyncOutputStream(out)) {
+			stream.write(data, 0, 1000);
+			for (int i = 1000; i < 2000; i++)
+				stream.write(data[i]);
+
+			stream.write(data, 2000, data.length - 2000);
+		}
+
+		Assert.assertArrayEquals(data, out.toByteArray());
+	}
+
+	@Test(timeout = 30_000)
+	public void failingDelegate() {
+
+		OutputStream delegate = new OutputStream() {
+			@Override
+			public void write(int b) {
+				throw new IllegalStateException("broken");
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				throw new IllegalStateException("broken");
+			}
+		};
+
+		byte[] chunk = new byte[1 << 16];
+
+		AsyncOutputStream stream = new AsyncOutputStream(delegate);
+
+		// much more than fits into the queue, the producer has to fail instead of blocking
+		IOException e = Assert.assertThrows(IOException.class, () -> {
+			for (int i = 0; i < 10_000; i++)
+				stream.write(chunk);
+		});
+
+		Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+
+		IOException closed = Assert.assertThrows(IOException.class, stream::close);
+		Assert.assertTrue(closed.getCause() instanceof IllegalStateException);
+	}
+}
@@ -0,0 +1,330 @@
+package org.matsim.prepare;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.*;
+
+/**
+ * Compares the index based capacity propagation of {@link CreateNetwork} with the previous implementation on random networks.
+ */
+public class CapacityPropagationTest {
+
+	private static final int SEEDS = 200;
+
+	@Test
+	public void sameAsPrevious() {
+
+		int compared = 0;
+		for (long seed = 0; seed < SEEDS; seed++) {
+
+			Network expected = create(seed);
+
+			// the previous implementation does not terminate on these
+			if (hasClosedChain(expected))
+				continue;
+
+			Network actual = create(seed);
+
+			Set<Id<Link>> filter = filter(expected, seed);
+
+			previousPropagateJunctionCapacities(expected, filter);
+			CreateNetwork.propagateJunctionCapacities(actual, filter);
+
+			assertCapacities(expected, actual, seed);
+			compared++;
+		}
+
+		// most networks do not contain closed chains
+		Assert.assertTrue("Only " + compared + " networks compared", compared > SEEDS / 2);
+	}
+
+	@Test(timeout = 10_000)
+	public void closedChainLoop() {
+
+		Network network = NetworkUtils.createNetwork();
+
+		// ring of nodes with one in- and one out-link each
+		link(network, "r0", "r1", "ra", 500, false);
+		link(network, "r1", "r2", "rb", 1000, true);
+		link(network, "r2", "r3", "rc", 1200, false);
+		link(network, "r3", "r0", "rd", 600, false);
+
+		// second ring without any junction
+		link(network, "s0", "s1", "sa", 500, false);
+		link(network, "s1", "s0", "sb", 800, false);
+
+		Assert.assertTrue(hasClosedChain(network));
+
+		CreateNetwork.propagateJunctionCapacities(network, null);
+
+		// the junction capacity is applied around the whole ring, but not lowered
+		Assert.assertEquals(1000, capacity(network, "ra"), 0);
+		Assert.assertEquals(1000, capacity(network, "rb"), 0);
+		Assert.assertEquals(1200, capacity(network, "rc"), 0);
+		Assert.assertEquals(1000, capacity(network, "rd"), 0);
+
+		Assert.assertEquals(500, capacity(network, "sa"), 0);
+		Assert.assertEquals(800, capacity(network, "sb"), 0);
+	}
+
+	@Test
+	public void sameCorridorReduction() {
+
+		for (long seed = 0; seed < SEEDS; seed++) {
+
+			Network expected = create(seed);
+			Network actual = create(seed);
+
+			Random rnd = new Random(seed);
+			Object2IntMap<Id<Link>> corridors = new Object2IntOpenHashMap<>();
+			for (Id<Link> id : expected.getLinks().keySet()) {
+				if (rnd.nextDouble() < 0.6)
+					corridors.put(id, rnd.nextInt(5));
+			}
+
+			double factor = 0.7 + rnd.nextDouble() * 0.6;
+			double reduceLanes = rnd.nextInt(2);
+
+			previousReduceLinkLanesAndMultiplyPerLaneCapacity(expected, corridors, factor, reduceLanes);
+			Assert.assertEquals(0, CreateNetwork.reduceLinkLanesAndMultiplyPerLaneCapacity(actual, corridors, factor, reduceLanes));
+
+			assertCapacities(expected, actual, seed);
+
+			for (Link link : expected.getLinks().values())
+				Assert.assertEquals("Lanes of " + link.getId() + " with seed " + seed,
+						link.getNumberOfLanes(), actual.getLinks().get(link.getId()).getNumberOfLanes(), 0);
+		}
+	}
+
+	@Test
+	public void unmatchedCorridorLinks() {
+
+		Network network = create(1);
+
+		Object2IntMap<Id<Link>> corridors = new Object2IntOpenHashMap<>();
+		corridors.put(network.getLinks().keySet().iterator().next(), 1);
+		corridors.put(Id.createLinkId("missing"), 1);
+		corridors.put(Id.createLinkId("missing2"), 2);
+
+		Assert.assertEquals(2, CreateNetwork.reduceLinkLanesAndMultiplyPerLaneCapacity(network, corridors, 0.9, 1));
+	}
+
+	/**
+	 * Random junctions, connected by chains of up to three nodes with one in- and one out-link.
+	 */
+	private static Network create(long seed) {
+
+		Random rnd = new Random(seed);
+		Network network = NetworkUtils.createNetwork();
+
+		int junctions = 10 + rnd.nextInt(40);
+		int connections = junctions + rnd.nextInt(2 * junctions);
+
+		int chainNodes = 0;
+		int links = 0;
+		for (int i = 0; i < connections; i++) {
+
+			String from = "n" + rnd.nextInt(junctions);
+			String to = "n" + rnd.nextInt(junctions);
+			if (from.equals(to))
+				continue;
+
+			int length = rnd.nextInt(4);
+			for (int k = 0; k <= length; k++) {
+				String next = k == length ? to : "c" + chainNodes++;
+				link(network, from, next, "l" + links++, 100 * (1 + rnd.nextInt(30)), rnd.nextDouble() < 0.3);
+
+				Link link = network.getLinks().get(Id.createLinkId("l" + (links - 1)));
+				link.setNumberOfLanes(1 + rnd.nextInt(3));
+				link.setLength(10 + rnd.nextInt(500));
+
+				from = next;
+			}
+		}
+
+		return network;
+	}
+
+	/**
+	 * Random subset of links or no filter.
+	 */
+	private static Set<Id<Link>> filter(Network network, long seed) {
+
+		if (seed % 2 == 0)
+			return null;
+
+		Random rnd = new Random(seed);
+		Set<Id<Link>> filter = new HashSet<>();
+		for (Id<Link> id : network.getLinks().keySet()) {
+			if (rnd.nextDouble() < 0.7)
+				filter.add(id);
+		}
+
+		return filter;
+	}
+
+	/**
+	 * Whether a link lies on a cycle of nodes with exactly one in- and one out-link.
+	 */
+	private static boolean hasClosedChain(Network network) {
+
+		for (Link link : network.getLinks().values()) {
+			Link current = link;
+			for (int i = 0; i < network.getLinks().size(); i++) {
+				Node to = current.getToNode();
+				if (to.getInLinks().size() != 1 || to.getOutLinks().size() != 1)
+					break;
+
+				current = to.getOutLinks().values().iterator().next();
+				if (current == link)
+					return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static void assertCapacities(Network expected, Network actual, long seed) {
+		for (Link link : expected.getLinks().values())
+			Assert.assertEquals("Capacity of " + link.getId() + " with seed " + seed,
+					link.getCapacity(), actual.getLinks().get(link.getId()).getCapacity(), 0);
+	}
+
+	private static double capacity(Network network, String id) {
+		return network.getLinks().get(Id.createLinkId(id)).getCapacity();
+	}
+
+	private static void link(Network network, String from, String to, String id, double capacity, boolean junction) {
+
+		NetworkFactory f = network.getFactory();
+
+		Node fromNode = node(network, from);
+		Node toNode = node(network, to);
+
+		Link link = f.createLink(Id.createLinkId(id), fromNode, toNode);
+		link.setCapacity(capacity);
+		if (junction)
+			link.getAttributes().putAttribute("junction", true);
+
+		network.addLink(link);
+	}
+
+	private static Node node(Network network, String id) {
+		Node node = network.getNodes().get(Id.createNodeId(id));
+		if (node == null) {
+			node = network.getFactory().createNode(Id.createNodeId(id), new Coord(0, 0));
+			network.addNode(node);
+		}
+		return node;
+	}
+
+	/**
+	 * Previous implementation of {@link CreateNetwork#propagateJunctionCapacities(Network, Set)}.
+	 */
+	private static void previousPropagateJunctionCapacities(Network network, Set<Id<Link>> filter) {
+
+		Set<Id<Link>> handled = new HashSet<>();
+
+		// First pass, apply downstream
+		for (Link link : network.getLinks().values()) {
+
+			if (filter != null && !filter.contains(link.getId()))
+				continue;
+
+			if (link.getAttributes().getAttribute("junction") != Boolean.TRUE)
+				continue;
+
+			double cap = link.getCapacity();
+
+			Node from = link.getFromNode();
+			while (from.getOutLinks().size() == 1 && from.getInLinks().size() == 1) {
+				for (Link inLink : from.getInLinks().values()) {
+					handled.add(inLink.getId());
+					if (inLink.getCapacity() < cap) {
+						inLink.setCapacity(cap);
+					}
+
+					from = inLink.getFromNode();
+				}
+			}
+		}
+
+		// Second pass, apply min required capacity upstream
+		for (Link link : network.getLinks().values()) {
+
+			if (filter != null && !filter.contains(link.getId()))
+				continue;
+
+			if (link.getAttributes().getAttribute("junction") != Boolean.TRUE || handled.contains(link.getId()))
+				continue;
+
+			Node to = link.getToNode();
+
+			double cap = to.getInLinks().values().stream().mapToDouble(Link::getCapacity).min().orElse(0);
+
+			Queue<Link> queue = new LinkedList<>(to.getOutLinks().values());
+
+			while (!queue.isEmpty()) {
+
+				Link outLink = queue.poll();
+				if (handled.contains(outLink.getId()))
+					continue;
+
+				handled.add(outLink.getId());
+
+				if (outLink.getCapacity() < cap)
+					outLink.setCapacity(cap);
+
+				// Capacity is only applied as long as there is no other intersection
+				if (outLink.getToNode().getOutLinks().size() == 1)
+					queue.addAll(outLink.getToNode().getOutLinks().values());
+
+			}
+		}
+	}
+
+	/**
+	 * Previous implementation of {@link CreateNetwork#reduceLinkLanesAndMultiplyPerLaneCapacity(Network, Object2IntMap, double, double)},
+	 * without logging.
+	 */
+	private static void previousReduceLinkLanesAndMultiplyPerLaneCapacity(Network network, Object2IntMap<Id<Link>> map, double factor, double reduceLanes) {
+
+		Set<Integer> corridors = new HashSet<>(map.values());
+
+		for (Integer corridor : corridors) {
+
+			Set<Link> links = new HashSet<>();
+			map.object2IntEntrySet().stream()
+					.filter(entry -> corridor.equals(entry.getIntValue()))
+					.forEach(entry -> links.add(network.getLinks().get(entry.getKey())));
+
+			for (Link link : links) {
+
+				// Non intersection links are scaled with an average
+				if (link.getAttributes().getAttribute("junction") != Boolean.TRUE) {
+					link.setCapacity(link.getCapacity() * factor);
+				}
+
+				if (link.getNumberOfLanes() > 1) {
+					double newLanes = Math.max(1d, link.getNumberOfLanes() - reduceLanes);
+
+					// Reduce capacity proportional with number of lanes
+					if (newLanes < link.getNumberOfLanes()) {
+						link.setCapacity(link.getCapacity() * newLanes / link.getNumberOfLanes());
+						link.setNumberOfLanes(newLanes);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package org.matsim.prepare;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.lanes.Lane;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class CapacityTableTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void linkCapacities() throws IOException {
+
+		Path input = tmp.getRoot().toPath().resolve("capacities.csv.gz");
+
+		int n = 200_000;
+
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(input.toString())) {
+			writer.write("\"toEdgeId\",flow,fromEdgeId\n");
+			for (int i = 0; i < n; i++)
+				writer.write("\"t" + (i % 1000) + "\"," + i + ",f" + (i % 2000) + "\n");
+
+			// last value is used
+			writer.write("t5,42.5,f5\n");
+		}
+
+		CapacityTable table = CreateNetwork.readLinkCapacities(input);
+
+		Assert.assertEquals(2000, table.size());
+		Assert.assertEquals(2000, table.fromLinks().size());
+		Assert.assertEquals(CapacityTable.NO_LANE, table.lane(0));
+
+		Assert.assertEquals(42.5, table.get(Id.createLinkId("f5").index(), Id.createLinkId("t5").index()), 0);
+		Assert.assertEquals(n - 1, table.get(Id.createLinkId("f1999").index(), Id.createLinkId("t999").index()), 0);
+		Assert.assertEquals(0, table.get(Id.createLinkId("f1").index(), Id.createLinkId("t2").index()), 0);
+
+		// rows are in order of the file
+		Assert.assertEquals(Id.createLinkId("f0"), table.fromLink(0));
+		Assert.assertEquals(Id.createLinkId("t999"), table.toLink(1999));
+
+		CapacityTable filtered = table.filter(from -> Id.get(from, Link.class).toString().equals("f5"));
+		Assert.assertEquals(1, filtered.size());
+		Assert.assertEquals(42.5, filtered.value(0), 0);
+	}
+
+	@Test
+	public void laneCapacities() throws IOException {
+
+		Path input = tmp.getRoot().toPath().resolve("lanes.csv");
+
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(input.toString())) {
+			writer.write("fromEdgeId,toEdgeId,fromLaneId,intervalVehicleSum\n");
+			writer.write("a,b,a_0,10\n");
+			writer.write("a,b,a_0,5\n");
+			writer.write("a,c,a_1,7\n");
+			writer.write("a,c,a_0,3\n");
+		}
+
+		CapacityTable table = CreateNetwork.readLaneCapacities(input);
+
+		Assert.assertEquals(3, table.size());
+		Assert.assertEquals(15, table.value(0), 0);
+		Assert.assertEquals(Id.create("a_1", Lane.class), Id.get(table.lane(1), Lane.class));
+
+		// max for each lane
+		Assert.assertEquals(15, CreateNetwork.calcMaxLaneCapacities(table)
+				.get(CapacityTable.key(Id.createLinkId("a").index(), Id.create("a_0", Lane.class).index())), 0);
+	}
+
+	@Test
+	public void quotedIds() throws IOException {
+
+		Path input = tmp.getRoot().toPath().resolve("quoted.csv");
+
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(input.toString())) {
+			writer.write("fromEdgeId,toEdgeId,flow\n");
+			writer.write("\"q1,a\",\"q2\"\"b\",100\n");
+			writer.write("\r\n");
+			writer.write("q1,q3,200\r\n");
+		}
+
+		CapacityTable table = CreateNetwork.readLinkCapacities(input);
+
+		Assert.assertEquals(2, table.size());
+		Assert.assertEquals(100, table.get(Id.createLinkId("q1,a").index(), Id.createLinkId("q2\"b").index()), 0);
+		Assert.assertEquals(200, table.get(Id.createLinkId("q1").index(), Id.createLinkId("q3").index()), 0);
+	}
+
+	@Test
+	public void largeIndices() {
+
+		int large = 3_000_000;
+
+		CapacityTable table = new CapacityTable.Builder(true)
+				.add(large, large + 1, CapacityTable.NO_LANE, 10)
+				.add(large, large + 1, large + 2, 20)
+				.add(large, large + 1, large + 3, 30)
+				.add(large, large + 1, large + 2, 5)
+				// same lower 21 bits as the first row
+				.add(large - (1 << 21), large + 1, CapacityTable.NO_LANE, 40)
+				.build();
+
+		Assert.assertEquals(4, table.size());
+		Assert.assertEquals(10, table.get(large, large + 1), 0);
+		Assert.assertEquals(40, table.get(large - (1 << 21), large + 1), 0);
+		Assert.assertEquals(0, table.get(large + 1, large), 0);
+
+		Assert.assertEquals(large + 2, table.lane(1));
+		Assert.assertEquals(25, table.value(1), 0);
+		Assert.assertEquals(30, table.value(2), 0);
+	}
+}
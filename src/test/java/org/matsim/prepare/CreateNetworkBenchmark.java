@@ -0,0 +1,65 @@
+package org.matsim.prepare;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.run.SyntheticNetwork;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies SUMO turn capacities to a network with about 100k links, including the propagation along corridors.
+ * The network is modified, so each invocation uses a fresh copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class CreateNetworkBenchmark {
+
+	/**
+	 * Share of links at intersections with capacities from SUMO.
+	 */
+	private static final double SHARE = 0.3;
+
+	private CapacityTable capacities;
+	private Network network;
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(CreateNetworkBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup(Level.Trial)
+	public void setupCapacities() {
+
+		Network network = SyntheticNetwork.create(0, 1);
+		Random rnd = new Random(1);
+
+		CapacityTable.Builder builder = new CapacityTable.Builder(false);
+		for (Link link : network.getLinks().values()) {
+			if (rnd.nextDouble() > SHARE)
+				continue;
+
+			for (Link out : link.getToNode().getOutLinks().values())
+				builder.add(link.getId(), out.getId(), 300 + rnd.nextInt(2000));
+		}
+
+		capacities = builder.build();
+	}
+
+	@Setup(Level.Invocation)
+	public void setupNetwork() {
+		network = SyntheticNetwork.create(0, 1);
+	}
+
+	@Benchmark
+	public int setLinkCapacities() {
+		return CreateNetwork.setLinkCapacities(network, capacities, null);
+	}
+}
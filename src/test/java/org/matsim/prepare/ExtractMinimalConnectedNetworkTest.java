@@ -0,0 +1,116 @@
+package org.matsim.prepare;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.run.SyntheticNetwork;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+public class ExtractMinimalConnectedNetworkTest {
+
+	@Test
+	public void shortestPathTree() {
+
+		Network network = SyntheticNetwork.create(0, 1);
+		ExtractMinimalConnectedNetwork.Graph graph = new ExtractMinimalConnectedNetwork.Graph(network,
+				new ExtractMinimalConnectedNetwork.OSMHierarchyTravelDisutility(
+						new FreespeedTravelTimeAndDisutility(ConfigUtils.createConfig().planCalcScore())));
+
+		ExtractMinimalConnectedNetwork.ShortestPathTree tree = new ExtractMinimalConnectedNetwork.ShortestPathTree(graph);
+		Random rnd = new Random(1);
+
+		// same instance is reused for all trees
+		for (int k = 0; k < 5; k++) {
+
+			int start = rnd.nextInt(graph.numberOfNodes());
+			tree.calculate(start);
+
+			double[] expected = dijkstra(graph, start);
+
+			for (int node = 0; node < graph.numberOfNodes(); node++)
+				Assert.assertEquals(expected[node], tree.getCost(node), 1e-6);
+
+			int target = rnd.nextInt(graph.numberOfNodes());
+			BitSet links = new BitSet();
+			Assert.assertTrue(tree.mark(target, links));
+
+			double cost = links.stream().mapToDouble(l -> graph.linkCost[l]).sum();
+			Assert.assertEquals(expected[target], cost, 1e-6);
+		}
+	}
+
+	@Test
+	public void marksQualifyingLinks() {
+
+		Network network = SyntheticNetwork.create(0, 1);
+		ExtractMinimalConnectedNetwork.markConnectedLinksOfQualifyingLevelInOSMHierarchy(network, ConfigUtils.createConfig(), 1.5, 0.002);
+
+		long marked = 0;
+		for (Link link : network.getLinks().values()) {
+			boolean keep = link.getAttributes().getAttribute("keepLink") != null;
+			if (ExtractMinimalConnectedNetwork.OSMHierarchyTravelDisutility.getOSMLinkTypeCost(link) <= 1.5 &&
+					!link.getAllowedModes().contains(TransportMode.pt))
+				Assert.assertTrue(keep);
+
+			if (keep)
+				marked++;
+		}
+
+		// paths add links of lower levels, but not the whole network
+		Assert.assertTrue(marked < network.getLinks().size());
+		Assert.assertTrue(marked > network.getLinks().values().stream()
+				.filter(l -> ExtractMinimalConnectedNetwork.OSMHierarchyTravelDisutility.getOSMLinkTypeCost(l) <= 1.5).count());
+	}
+
+	@Test
+	public void outputNames() {
+
+		Assert.assertEquals(Path.of("out", "network-removed-links.csv"),
+				ExtractMinimalConnectedNetwork.sibling(Path.of("out", "network.xml.gz"), "-removed-links.csv"));
+		Assert.assertEquals(Path.of("network-removed-links.csv"),
+				ExtractMinimalConnectedNetwork.sibling(Path.of("network.xml"), "-removed-links.csv"));
+
+		// other extensions are kept
+		Assert.assertEquals(Path.of("out", "network.pbf-removed-links.csv"),
+				ExtractMinimalConnectedNetwork.sibling(Path.of("out", "network.pbf"), "-removed-links.csv"));
+		Assert.assertEquals(Path.of("out.xml.gz", "network.csv"),
+				ExtractMinimalConnectedNetwork.sibling(Path.of("out.xml.gz", "network"), ".csv"));
+	}
+
+	private static double[] dijkstra(ExtractMinimalConnectedNetwork.Graph graph, int start) {
+
+		double[] cost = new double[graph.numberOfNodes()];
+		Arrays.fill(cost, Double.POSITIVE_INFINITY);
+		cost[start] = 0;
+
+		PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+		queue.add(new double[]{0, start});
+
+		while (!queue.isEmpty()) {
+			double[] e = queue.poll();
+			int node = (int) e[1];
+			if (e[0] > cost[node])
+				continue;
+
+			for (int i = graph.outStart[node]; i < graph.outStart[node + 1]; i++) {
+				int link = graph.outLinks[i];
+				double c = e[0] + graph.linkCost[link];
+				if (c < cost[graph.linkTo[link]]) {
+					cost[graph.linkTo[link]] = c;
+					queue.add(new double[]{c, graph.linkTo[link]});
+				}
+			}
+		}
+
+		return cost;
+	}
+}
@@ -0,0 +1,100 @@
+package org.matsim.prepare;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.CoordUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class LinkIndexTest {
+
+	@Test
+	public void sameAsNetworkUtils() {
+
+		Network network = NetworkUtils.createNetwork();
+		NetworkFactory f = network.getFactory();
+		Random rnd = new Random(1);
+
+		List<Node> nodes = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			Node n = f.createNode(Id.createNodeId(i), new Coord(rnd.nextDouble() * 10000, rnd.nextDouble() * 5000));
+			network.addNode(n);
+			nodes.add(n);
+		}
+
+		// mostly short links, some long ones spanning many cells
+		for (int i = 0; i < 1000; i++) {
+			Node from = nodes.get(rnd.nextInt(nodes.size()));
+			Node to = i % 50 == 0 ? nodes.get(rnd.nextInt(nodes.size())) : nearby(nodes, from, rnd);
+			network.addLink(f.createLink(Id.createLinkId(i), from, to));
+		}
+
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+
+		for (double cellSize : new double[]{Double.NaN, 50, 1000}) {
+			LinkIndex index = new LinkIndex(links, cellSize);
+
+			for (int i = 0; i < 2000; i++) {
+				// includes points outside the network bounds
+				double x = rnd.nextDouble() * 30000 - 10000;
+				double y = rnd.nextDouble() * 20000 - 7500;
+
+				Coord coord = new Coord(x, y);
+				Link expected = NetworkUtils.getNearestLinkExactly(network, coord);
+				Link actual = index.getNearestLink(coord);
+
+				// links with equal distance may be chosen in a different order
+				if (expected != actual)
+					Assert.assertEquals("Nearest link of " + coord, distance(expected, coord), distance(actual, coord), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void ties() {
+
+		Network network = NetworkUtils.createNetwork();
+		NetworkFactory f = network.getFactory();
+
+		Node a = f.createNode(Id.createNodeId("a"), new Coord(0, 0));
+		Node b = f.createNode(Id.createNodeId("b"), new Coord(100, 0));
+		network.addNode(a);
+		network.addNode(b);
+
+		Link ab = f.createLink(Id.createLinkId("ab"), a, b);
+		Link ba = f.createLink(Id.createLinkId("ba"), b, a);
+		network.addLink(ab);
+		network.addLink(ba);
+
+		Assert.assertSame(ab, new LinkIndex(List.of(ab, ba)).getNearestLink(new Coord(50, 20)));
+		Assert.assertSame(ba, new LinkIndex(List.of(ba, ab)).getNearestLink(new Coord(50, 20)));
+	}
+
+	private static Node nearby(List<Node> nodes, Node from, Random rnd) {
+		Node best = null;
+		double bestDist = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < 10; i++) {
+			Node n = nodes.get(rnd.nextInt(nodes.size()));
+			double dx = n.getCoord().getX() - from.getCoord().getX();
+			double dy = n.getCoord().getY() - from.getCoord().getY();
+			if (n != from && dx * dx + dy * dy < bestDist) {
+				bestDist = dx * dx + dy * dy;
+				best = n;
+			}
+		}
+		return best;
+	}
+
+	private static double distance(Link link, Coord coord) {
+		return CoordUtils.distancePointLinesegment(link.getFromNode().getCoord(), link.getToNode().getCoord(), coord);
+	}
+}
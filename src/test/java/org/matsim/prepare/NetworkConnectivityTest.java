@@ -0,0 +1,137 @@
+package org.matsim.prepare;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.*;
+
+public class NetworkConnectivityTest {
+
+	@Test
+	public void chainsAndComponents() {
+
+		Network network = NetworkUtils.createNetwork();
+
+		// large cycle a-b-c-d
+		link(network, "a", "b", TransportMode.car);
+		link(network, "b", "c", TransportMode.car);
+		link(network, "c", "d", TransportMode.car);
+		link(network, "d", "a", TransportMode.car);
+
+		// dangling chain with a loop at its end, which is only reachable in one direction
+		link(network, "c", "e", TransportMode.car);
+		link(network, "e", "f", TransportMode.car);
+		link(network, "f", "g", TransportMode.car);
+		link(network, "g", "f", TransportMode.car);
+
+		// chain leading into the cycle
+		link(network, "x", "y", TransportMode.car);
+		link(network, "y", "a", TransportMode.car);
+
+		// other modes are kept
+		link(network, "a", "p", TransportMode.pt);
+
+		NetworkConnectivity.Report report = NetworkConnectivity.clean(network, TransportMode.car);
+
+		Assert.assertEquals(Set.of("x-y", "y-a"), ids(report.getDeadEnds()));
+		Assert.assertEquals(Set.of("c-e", "e-f", "f-g", "g-f"), ids(report.getComponents()));
+
+		Assert.assertEquals(Set.of("a-b", "b-c", "c-d", "d-a", "a-p"), ids(network.getLinks().keySet()));
+		Assert.assertEquals(5, network.getNodes().size());
+	}
+
+	@Test
+	public void randomNetworks() {
+
+		Random rnd = new Random(1);
+
+		for (int k = 0; k < 50; k++) {
+
+			Network network = NetworkUtils.createNetwork();
+			int n = 5 + rnd.nextInt(40);
+			int m = rnd.nextInt(3 * n);
+
+			for (int i = 0; i < n; i++)
+				node(network, "r" + k + "_" + i);
+
+			for (int i = 0; i < m; i++)
+				link(network, "r" + k + "_" + rnd.nextInt(n), "r" + k + "_" + rnd.nextInt(n), TransportMode.car);
+
+			int expected = largestComponent(network).size();
+
+			NetworkConnectivity.clean(network, TransportMode.car);
+
+			// components of the same size might be chosen, single nodes may not have any links
+			if (expected == 1)
+				continue;
+
+			Assert.assertEquals(expected, network.getNodes().size());
+			for (Node node : network.getNodes().values())
+				Assert.assertEquals(expected, reachable(node, true).size());
+		}
+	}
+
+	/**
+	 * Largest strongly connected component, using forward and backward search from every node.
+	 */
+	private static Set<Node> largestComponent(Network network) {
+
+		Set<Node> largest = Set.of();
+		for (Node node : network.getNodes().values()) {
+			Set<Node> component = reachable(node, true);
+			component.retainAll(reachable(node, false));
+			if (component.size() > largest.size())
+				largest = component;
+		}
+		return largest;
+	}
+
+	private static Set<Node> reachable(Node start, boolean forward) {
+		Set<Node> visited = new HashSet<>();
+		Deque<Node> queue = new ArrayDeque<>(List.of(start));
+		visited.add(start);
+		while (!queue.isEmpty()) {
+			Node node = queue.poll();
+			for (Link link : (forward ? node.getOutLinks() : node.getInLinks()).values()) {
+				Node next = forward ? link.getToNode() : link.getFromNode();
+				if (visited.add(next))
+					queue.add(next);
+			}
+		}
+		return visited;
+	}
+
+	private static Node node(Network network, String id) {
+		Node node = network.getNodes().get(Id.createNodeId(id));
+		if (node == null) {
+			node = network.getFactory().createNode(Id.createNodeId(id), new Coord(0, 0));
+			network.addNode(node);
+		}
+		return node;
+	}
+
+	private static void link(Network network, String from, String to, String mode) {
+		NetworkFactory f = network.getFactory();
+		Id<Link> id = Id.createLinkId(from + "-" + to);
+		if (network.getLinks().containsKey(id))
+			return;
+
+		Link link = f.createLink(id, node(network, from), node(network, to));
+		link.setAllowedModes(Set.of(mode));
+		network.addLink(link);
+	}
+
+	private static Set<String> ids(Collection<Id<Link>> ids) {
+		Set<String> result = new HashSet<>();
+		ids.forEach(id -> result.add(id.toString()));
+		return result;
+	}
+}
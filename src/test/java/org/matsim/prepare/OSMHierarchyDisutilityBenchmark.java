@@ -0,0 +1,48 @@
+package org.matsim.prepare;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.run.SyntheticNetwork;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Disutility used for extracting the minimal connected network. The router evaluates it for every link it relaxes,
+ * one invocation evaluates all links of a network with about 100k links.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class OSMHierarchyDisutilityBenchmark {
+
+	private TravelDisutility disutility;
+	private Link[] links;
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(OSMHierarchyDisutilityBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup
+	public void setup() {
+		links = SyntheticNetwork.create(0, 1).getLinks().values().toArray(new Link[0]);
+		disutility = new ExtractMinimalConnectedNetwork.OSMHierarchyTravelDisutility(
+				new FreespeedTravelTimeAndDisutility(ConfigUtils.createConfig().planCalcScore()));
+	}
+
+	@Benchmark
+	public double disutility() {
+		double sum = 0;
+		for (Link link : links)
+			sum += disutility.getLinkTravelDisutility(link, 0, null, null);
+		return sum;
+	}
+}
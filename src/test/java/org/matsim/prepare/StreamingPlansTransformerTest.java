@@ -0,0 +1,91 @@
+package org.matsim.prepare;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+public class StreamingPlansTransformerTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void keepsOrderAndStructure() throws IOException {
+
+		Path input = tmp.getRoot().toPath().resolve("plans.xml.gz");
+		Path output = tmp.getRoot().toPath().resolve("out.xml.gz");
+
+		int n = 1234;
+
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(input.toString())) {
+			writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+			writer.write("<!DOCTYPE population SYSTEM \"http://www.matsim.org/files/dtd/population_v6.dtd\">\n\n");
+			writer.write("<population>\n\t<attributes>\n\t\t<attribute name=\"crs\" class=\"java.lang.String\">EPSG:25832</attribute>\n\t</attributes>\n");
+			for (int i = 0; i < n; i++) {
+				writer.write("\t<person id=\"" + i + "\">\n\t\t<plan selected=\"yes\">\n");
+				writer.write("\t\t\t<activity type=\"home_1\" x=\"1.0\" y=\"2.0\" end_time=\"08:00:00\" />\n");
+				writer.write("\t\t\t<leg mode=\"" + (i % 2 == 0 ? "car" : "walk") + "\">\n\t\t\t\t<route type=\"links\">1 2 &amp; 3</route>\n\t\t\t</leg>\n");
+				writer.write("\t\t\t<activity type=\"work_1\" x=\"3.0\" y=\"4.0\" />\n");
+				writer.write("\t\t</plan>\n\t</person>\n");
+			}
+			writer.write("</population>\n");
+		}
+
+		List<String> order = new ArrayList<>();
+
+		long persons = new StreamingPlansTransformer(3)
+				.addRule(p -> p.find("leg").stream()
+						.filter(leg -> "car".equals(leg.getAttribute("mode")))
+						.forEach(leg -> leg.setAttribute("mode", "EV_car")))
+				.addRule(p -> p.getChildren().get(0).getChildren().add(1, new StreamingPlansTransformer.Element("activity")))
+				.addListener(p -> order.add(p.getAttribute("id")))
+				.transform(input, output);
+
+		Assert.assertEquals(n, persons);
+		Assert.assertEquals(n, order.size());
+		for (int i = 0; i < n; i++)
+			Assert.assertEquals(String.valueOf(i), order.get(i));
+
+		String content;
+		try (BufferedReader reader = IOUtils.getBufferedReader(output.toString())) {
+			content = reader.lines().collect(Collectors.joining("\n"));
+		}
+
+		Assert.assertTrue(content.contains("<!DOCTYPE population SYSTEM \"http://www.matsim.org/files/dtd/population_v6.dtd\">"));
+		Assert.assertTrue(content.contains("<attribute name=\"crs\" class=\"java.lang.String\">EPSG:25832</attribute>"));
+		Assert.assertTrue(content.contains("<route type=\"links\">1 2 &amp; 3</route>"));
+		Assert.assertTrue(content.trim().endsWith("</population>"));
+
+		Matcher m = Pattern.compile("<person id=\"(\\d+)\">").matcher(content);
+		int i = 0;
+		while (m.find())
+			Assert.assertEquals(String.valueOf(i++), m.group(1));
+
+		Assert.assertEquals(n, i);
+		Assert.assertEquals(n / 2, count(content, "mode=\"EV_car\""));
+		Assert.assertEquals(0, count(content, "mode=\"car\""));
+		Assert.assertEquals(n, count(content, "<activity/>"));
+	}
+
+	private static int count(String content, String s) {
+		int n = 0;
+		int idx = 0;
+		while ((idx = content.indexOf(s, idx)) >= 0) {
+			n++;
+			idx += s.length();
+		}
+		return n;
+	}
+}
@@ -0,0 +1,118 @@
+package org.matsim.prepare;
+
+import it.unimi.dsi.fastutil.Pair;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.matsim.run.TurnDependentFlowEfficiencyCalculator.ATTR_TURN_EFFICIENCY;
+
+public class TurnCapacitiesByTimeTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void readAndSet() throws IOException {
+
+		Path input = tmp.getRoot().toPath().resolve("turns.csv");
+
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(input.toString())) {
+			writer.write("fromEdgeId,toEdgeId,begin,end,flow\n");
+
+			// two intervals in the first bin, the maximum is used
+			writer.write("ta,tb,0,300,500\n");
+			writer.write("ta,tb,300,900,800\n");
+
+			// second bin is missing
+			writer.write("ta,tb,1800,2700,600\n");
+
+			// starts in the second bin, below the threshold
+			writer.write("ta,tc,900,1800,100\n");
+			writer.write("ta,tc,1850,1900,1500\n");
+
+			writer.write("tx,tb,0,900,500\n");
+		}
+
+		Map<Pair<Id<Link>, Id<Link>>, double[]> map = CreateNetwork.readTurnCapacitiesByTime(input);
+
+		Assert.assertEquals(3, map.size());
+		Assert.assertArrayEquals(new double[]{800, 800, 600}, map.get(turn("ta", "tb")), 0);
+		Assert.assertArrayEquals(new double[]{100, 100, 1500}, map.get(turn("ta", "tc")), 0);
+		Assert.assertArrayEquals(new double[]{500}, map.get(turn("tx", "tb")), 0);
+
+		Network network = NetworkUtils.createNetwork();
+		Node n1 = network.getFactory().createNode(Id.createNodeId("t1"), new Coord(0, 0));
+		Node n2 = network.getFactory().createNode(Id.createNodeId("t2"), new Coord(100, 0));
+		network.addNode(n1);
+		network.addNode(n2);
+
+		Link link = network.getFactory().createLink(Id.createLinkId("ta"), n1, n2);
+		link.setCapacity(1000);
+		network.addLink(link);
+
+		// static efficiencies
+		Map<String, String> efficiencies = new HashMap<>();
+		efficiencies.put("tb", "0.5");
+		efficiencies.put("td", "0.9");
+		link.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, efficiencies);
+
+		Assert.assertEquals(1, CreateNetwork.setTurnEfficienciesByTime(network, map));
+
+		Map<String, String> result = (Map<String, String>) link.getAttributes().getAttribute(ATTR_TURN_EFFICIENCY);
+
+		// link capacity is raised to the max turn capacity
+		Assert.assertEquals(1500, link.getCapacity(), 0);
+
+		// relative to link capacity, with capacities below the threshold raised
+		Assert.assertArrayEquals(new double[]{800 / 1500d, 800 / 1500d, 600 / 1500d}, parse(result.get("tb")), 1e-9);
+		Assert.assertArrayEquals(new double[]{375 / 1500d, 375 / 1500d, 1}, parse(result.get("tc")), 1e-9);
+
+		// static efficiency is scaled to the new capacity
+		Assert.assertArrayEquals(new double[]{900 / 1500d}, parse(result.get("td")), 1e-9);
+	}
+
+	@Test
+	public void capacityNotLowered() {
+
+		Network network = NetworkUtils.createNetwork();
+		Node n1 = network.getFactory().createNode(Id.createNodeId("u1"), new Coord(0, 0));
+		Node n2 = network.getFactory().createNode(Id.createNodeId("u2"), new Coord(100, 0));
+		network.addNode(n1);
+		network.addNode(n2);
+
+		Link link = network.getFactory().createLink(Id.createLinkId("ua"), n1, n2);
+		link.setCapacity(2000);
+		network.addLink(link);
+
+		Assert.assertEquals(0, CreateNetwork.setTurnEfficienciesByTime(network, Map.of(turn("ua", "ub"), new double[]{1000, 500})));
+
+		Map<String, String> result = (Map<String, String>) link.getAttributes().getAttribute(ATTR_TURN_EFFICIENCY);
+
+		Assert.assertEquals(2000, link.getCapacity(), 0);
+		Assert.assertArrayEquals(new double[]{0.5, 0.25}, parse(result.get("ub")), 1e-9);
+	}
+
+	private static double[] parse(String series) {
+		return Arrays.stream(series.split(",")).mapToDouble(Double::parseDouble).toArray();
+	}
+
+	private static Pair<Id<Link>, Id<Link>> turn(String from, String to) {
+		return Pair.of(Id.createLinkId(from), Id.createLinkId(to));
+	}
+}
@@ -0,0 +1,113 @@
+package org.matsim.run;
+
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.matsim.run.ConvergenceDetector.WINDOW;
+
+public class ConvergenceDetectorTest {
+
+	@Test
+	public void convergesInsideWindow() {
+
+		List<Double> scores = new ArrayList<>();
+		List<Object2DoubleMap<String>> shares = new ArrayList<>();
+		List<Double> drifts = new ArrayList<>();
+
+		// large changes at the start, settling after 10 iterations
+		for (int i = 0; i < 10; i++) {
+			scores.add(100.0 + 10 * i);
+			shares.add(shares(0.5 - 0.02 * i));
+			drifts.add(0.3);
+		}
+
+		int converged = -1;
+		for (int i = 10; i < 10 + 2 * WINDOW; i++) {
+			scores.add(200.0 + 0.1 * Math.sin(i));
+			shares.add(shares(0.3 + 0.001 * Math.sin(i)));
+			drifts.add(0.01);
+
+			if (ConvergenceDetector.isConverged(scores, shares, drifts)) {
+				converged = i;
+				break;
+			}
+		}
+
+		// all entries of the last window are within the tolerances
+		Assert.assertEquals(10 + WINDOW - 1, converged);
+	}
+
+	@Test
+	public void oscillating() {
+
+		List<Double> scores = new ArrayList<>();
+		List<Object2DoubleMap<String>> shares = new ArrayList<>();
+		List<Double> drifts = new ArrayList<>();
+
+		for (int i = 0; i < 3 * WINDOW; i++) {
+			scores.add(200.0);
+			shares.add(shares(i % 2 == 0 ? 0.3 : 0.31));
+			drifts.add(0.01);
+
+			Assert.assertFalse(ConvergenceDetector.isConverged(scores, shares, drifts));
+		}
+
+		scores.clear();
+		shares.clear();
+		drifts.clear();
+
+		for (int i = 0; i < 3 * WINDOW; i++) {
+			scores.add(i % 2 == 0 ? 200.0 : 202.0);
+			shares.add(shares(0.3));
+			drifts.add(0.01);
+
+			Assert.assertFalse(ConvergenceDetector.isConverged(scores, shares, drifts));
+		}
+	}
+
+	@Test
+	public void tooShort() {
+
+		List<Double> scores = new ArrayList<>();
+		List<Object2DoubleMap<String>> shares = new ArrayList<>();
+		List<Double> drifts = new ArrayList<>();
+
+		for (int i = 0; i < WINDOW - 1; i++) {
+			scores.add(200.0);
+			shares.add(shares(0.3));
+			drifts.add(0.0);
+		}
+
+		Assert.assertFalse(ConvergenceDetector.isConverged(scores, shares, drifts));
+	}
+
+	@Test
+	public void drift() {
+
+		Assert.assertEquals(0, ConvergenceDetector.drift(new int[]{5, 5}, new int[]{5, 5}), 0);
+		Assert.assertEquals(0.2, ConvergenceDetector.drift(new int[]{5, 5}, new int[]{4, 6}), 1e-9);
+
+		// no volumes at all
+		Assert.assertEquals(0, ConvergenceDetector.drift(new int[0], new int[0]), 0);
+		Assert.assertEquals(0, ConvergenceDetector.drift(new int[]{0, 0}, new int[]{0}), 0);
+		Assert.assertEquals(Double.POSITIVE_INFINITY, ConvergenceDetector.drift(new int[]{0, 0}, new int[]{0, 3}), 0);
+
+		// unequal totals, relative to the previous total
+		Assert.assertEquals(1.0, ConvergenceDetector.drift(new int[]{5, 5}, new int[]{10, 10}), 1e-9);
+		Assert.assertEquals(0.5, ConvergenceDetector.drift(new int[]{5, 5}, new int[]{5}), 1e-9);
+		Assert.assertEquals(0.5, ConvergenceDetector.drift(new int[]{10}, new int[]{10, 0, 5}), 1e-9);
+		Assert.assertEquals(1.0, ConvergenceDetector.drift(new int[]{10}, new int[0]), 1e-9);
+	}
+
+	private static Object2DoubleMap<String> shares(double car) {
+		Object2DoubleMap<String> shares = new Object2DoubleOpenHashMap<>();
+		shares.put("car", car);
+		shares.put("pt", 1 - car);
+		return shares;
+	}
+}
@@ -0,0 +1,124 @@
+package org.matsim.run;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.lanes.Lane;
+import org.matsim.lanes.LanesFactory;
+import org.matsim.lanes.LanesToLinkAssignment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.matsim.run.TurnDependentFlowEfficiencyCalculator.ATTR_TURN_EFFICIENCY;
+
+public class NetworkCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTrip() throws IOException {
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = scenario.getNetwork();
+		NetworkFactory f = network.getFactory();
+
+		Node n1 = f.createNode(Id.createNodeId("1"), new Coord(0, 0));
+		Node n2 = f.createNode(Id.createNodeId("2"), new Coord(100, 50, 10));
+		n2.getAttributes().putAttribute("type", "traffic_light");
+
+		network.addNode(n1);
+		network.addNode(n2);
+
+		Link a = f.createLink(Id.createLinkId("a"), n1, n2);
+		a.setCapacity(1234);
+		a.setFreespeed(13.9);
+		a.setLength(111);
+		a.setNumberOfLanes(2);
+		a.setAllowedModes(Set.of("car", "freight"));
+		a.getAttributes().putAttribute("allowed_speed", 13.9);
+		a.getAttributes().putAttribute("junction", true);
+		a.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, Map.of("b", "0.5,0.7", "c", String.valueOf(800 / 1500d)));
+
+		Link b = f.createLink(Id.createLinkId("b"), n2, n1);
+		b.setAllowedModes(Set.of("bike"));
+
+		network.addLink(a);
+		network.addLink(b);
+
+		LanesFactory lf = scenario.getLanes().getFactory();
+		LanesToLinkAssignment l2l = lf.createLanesToLinkAssignment(a.getId());
+		Lane lane = lf.createLane(Id.create("a_0", Lane.class));
+		lane.setCapacityVehiclesPerHour(800);
+		lane.setNumberOfRepresentedLanes(1);
+		lane.setStartsAtMeterFromLinkEnd(50);
+		lane.addToLinkId(b.getId());
+		l2l.addLane(lane);
+		scenario.getLanes().addLanesToLinkAssignment(l2l);
+
+		Path file = folder.getRoot().toPath().resolve("network.bin");
+		NetworkCache.write(file, network, scenario.getLanes());
+
+		Scenario copy = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		NetworkCache.read(file, copy.getNetwork(), copy.getLanes());
+
+		Assert.assertEquals(2, copy.getNetwork().getNodes().size());
+		Assert.assertEquals(2, copy.getNetwork().getLinks().size());
+
+		Node c2 = copy.getNetwork().getNodes().get(n2.getId());
+		Assert.assertEquals(10, c2.getCoord().getZ(), 0);
+		Assert.assertEquals("traffic_light", c2.getAttributes().getAttribute("type"));
+
+		Link ca = copy.getNetwork().getLinks().get(a.getId());
+		Assert.assertEquals(1234, ca.getCapacity(), 0);
+		Assert.assertEquals(13.9, ca.getFreespeed(), 0);
+		Assert.assertEquals(111, ca.getLength(), 0);
+		Assert.assertEquals(2, ca.getNumberOfLanes(), 0);
+		Assert.assertEquals(Set.of("car", "freight"), ca.getAllowedModes());
+		Assert.assertEquals(n1.getId(), ca.getFromNode().getId());
+		Assert.assertEquals(13.9, ca.getAttributes().getAttribute("allowed_speed"));
+		Assert.assertEquals(true, ca.getAttributes().getAttribute("junction"));
+		Assert.assertEquals(Map.of("b", "0.5,0.7", "c", String.valueOf(800 / 1500d)), ca.getAttributes().getAttribute(ATTR_TURN_EFFICIENCY));
+
+		Assert.assertEquals(Set.of("bike"), copy.getNetwork().getLinks().get(b.getId()).getAllowedModes());
+
+		Lane cl = copy.getLanes().getLanesToLinkAssignments().get(a.getId()).getLanes().get(lane.getId());
+		Assert.assertEquals(800, cl.getCapacityVehiclesPerHour(), 0);
+		Assert.assertEquals(50, cl.getStartsAtMeterFromLinkEnd(), 0);
+		Assert.assertEquals(List.of(b.getId()), cl.getToLinkIds());
+	}
+
+	@Test
+	public void key() throws IOException {
+
+		Config config = ConfigUtils.createConfig();
+
+		Path file = folder.newFile("capacities.csv").toPath();
+		Files.writeString(file, "fromEdgeId,toEdgeId,flow\na,b,1000\n");
+
+		String key = NetworkCache.key(config, List.of(file), 1.14, 1.0);
+
+		Assert.assertEquals(key, NetworkCache.key(config, List.of(file), 1.14, 1.0));
+		Assert.assertNotEquals(key, NetworkCache.key(config, List.of(file), 1.14, 1.2));
+
+		// content is part of the key
+		Files.writeString(file, "fromEdgeId,toEdgeId,flow\na,b,1200\n");
+		Assert.assertNotEquals(key, NetworkCache.key(config, List.of(file), 1.14, 1.0));
+	}
+}
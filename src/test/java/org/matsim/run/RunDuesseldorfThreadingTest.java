@@ -0,0 +1,112 @@
+package org.matsim.run;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.application.MATSimApplication;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs the scenario with different numbers of QSim threads, each reading its own partition of the {@link TurnDependentFlowEfficiencyCalculator}.
+ */
+public class RunDuesseldorfThreadingTest {
+
+	private static final int[] THREADS = {4, 16};
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public final void deterministic() {
+
+		Result reference = run(1);
+
+		for (int threads : THREADS) {
+			Result parallel = run(threads);
+
+			Assert.assertEquals("Link volumes differ with " + threads + " threads", reference.volumes, parallel.volumes);
+			Assert.assertEquals("Scores differ with " + threads + " threads", reference.scores, parallel.scores);
+		}
+	}
+
+	private Result run(int threads) {
+
+		Config config = ConfigUtils.loadConfig("scenarios/input/duesseldorf-v1.0-1pct.config.xml");
+
+		config.controler().setLastIteration(0);
+		config.strategy().setFractionOfIterationsToDisableInnovation(1);
+		config.controler().setOverwriteFileSetting(OutputDirectoryHierarchy.OverwriteFileSetting.deleteDirectoryIfExists);
+		config.controler().setOutputDirectory(utils.getOutputDirectory() + "threads-" + threads);
+		config.qsim().setNumberOfThreads(threads);
+
+		Controler controler = MATSimApplication.prepare(RunDuesseldorfScenario.class, config);
+
+		// same sample for every run
+		downsample(controler.getScenario().getPopulation().getPersons(), 0.25);
+
+		LinkVolumes volumes = new LinkVolumes();
+		controler.addOverridingModule(new AbstractModule() {
+			@Override
+			public void install() {
+				addEventHandlerBinding().toInstance(volumes);
+			}
+		});
+
+		controler.run();
+
+		Map<Id<Person>, Double> scores = new HashMap<>();
+		for (Person person : controler.getScenario().getPopulation().getPersons().values())
+			scores.put(person.getId(), person.getSelectedPlan().getScore());
+
+		return new Result(volumes.counts, scores);
+	}
+
+	private static void downsample(final Map<Id<Person>, ? extends Person> map, final double sample) {
+		final Random rnd = new Random(1234);
+		map.values().removeIf(person -> rnd.nextDouble() > sample);
+	}
+
+	private static final class Result {
+
+		private final Int2IntMap volumes;
+		private final Map<Id<Person>, Double> scores;
+
+		Result(Int2IntMap volumes, Map<Id<Person>, Double> scores) {
+			this.volumes = volumes;
+			this.scores = scores;
+		}
+	}
+
+	/**
+	 * Counts vehicles leaving each link, which does not depend on the order of events within one time step.
+	 */
+	private static final class LinkVolumes implements LinkLeaveEventHandler {
+
+		private final Int2IntMap counts = new Int2IntOpenHashMap();
+
+		@Override
+		public void handleEvent(LinkLeaveEvent event) {
+			counts.mergeInt(event.getLinkId().index(), 1, Integer::sum);
+		}
+
+		@Override
+		public void reset(int iteration) {
+			counts.clear();
+		}
+	}
+}
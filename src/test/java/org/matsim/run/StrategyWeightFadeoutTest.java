@@ -0,0 +1,174 @@
+package org.matsim.run;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.TypeLiteral;
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.StrategyConfigGroup;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.replanning.GenericPlanStrategy;
+import org.matsim.core.replanning.PlanStrategy;
+import org.matsim.core.replanning.PlanStrategyImpl;
+import org.matsim.core.replanning.ReplanningContext;
+import org.matsim.core.replanning.StrategyManager;
+import org.matsim.core.replanning.modules.PlanStrategyModule;
+import org.matsim.core.replanning.selectors.RandomPlanSelector;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class StrategyWeightFadeoutTest {
+
+	@Test
+	public void curvesStartAtOneAndEndAtZero() {
+
+		for (StrategyWeightFadeout.Curve curve : StrategyWeightFadeout.Curve.values()) {
+			Assert.assertEquals(curve.toString(), 1, curve.factor(0, 1), 1e-9);
+			Assert.assertEquals(curve.toString(), 0, curve.factor(1, 1), 1e-9);
+
+			double last = 1;
+			for (int i = 1; i <= 10; i++) {
+				double f = curve.factor(i / 10d, 1);
+				Assert.assertTrue(curve + " is not decreasing", f <= last + 1e-9);
+				last = f;
+			}
+		}
+	}
+
+	@Test
+	public void shapes() {
+
+		Assert.assertEquals(0.5, StrategyWeightFadeout.Curve.LINEAR.factor(0.5, 1), 1e-9);
+		Assert.assertEquals(0.5, StrategyWeightFadeout.Curve.COSINE.factor(0.5, 1), 1e-9);
+
+		// exponential drops faster, cosine slower at the beginning
+		Assert.assertTrue(StrategyWeightFadeout.Curve.EXPONENTIAL.factor(0.2, 1) < 0.8);
+		Assert.assertTrue(StrategyWeightFadeout.Curve.COSINE.factor(0.2, 1) > 0.8);
+	}
+
+	@Test
+	public void improvement() {
+
+		StrategyWeightFadeout.Curve curve = StrategyWeightFadeout.Curve.IMPROVEMENT;
+
+		// falls with the improvement rate
+		Assert.assertEquals(0.3, curve.factor(0.1, 0.3), 1e-9);
+		Assert.assertEquals(0, curve.factor(0.1, 0), 1e-9);
+
+		// linear fade-out is the upper bound
+		Assert.assertEquals(0.5, curve.factor(0.5, 2), 1e-9);
+
+		// unknown rate
+		Assert.assertEquals(0.9, curve.factor(0.1, Double.NaN), 1e-9);
+		Assert.assertEquals(0.9, curve.factor(0.1, Double.POSITIVE_INFINITY), 1e-9);
+	}
+
+	@Test
+	public void noInnovationAfterConvergence() {
+
+		Config config = ConfigUtils.createConfig();
+		config.controler().setLastIteration(100);
+
+		StrategyManager manager = new StrategyManager();
+		Map<StrategyConfigGroup.StrategySettings, PlanStrategy> strategies = new HashMap<>();
+
+		PlanStrategy personSelector = strategy(strategies, manager, "ChangeExpBeta", "person", 0.8, false);
+		strategy(strategies, manager, "ReRoute", "person", 0.1, true);
+		strategy(strategies, manager, "SubtourModeChoice", "person", 0.1, true);
+		PlanStrategy mutator = strategy(strategies, manager, "TimeAllocationMutator", "person", 0.05, true);
+		PlanStrategy freightSelector = strategy(strategies, manager, "ChangeExpBeta", "freight", 0.9, false);
+		strategy(strategies, manager, "ReRoute", "freight", 0.1, true);
+
+		Population population = PopulationUtils.createPopulation(config);
+
+		// only two strategies have a schedule, which would start much later
+		Set<StrategyWeightFadeout.Schedule> schedules = Set.of(
+				new StrategyWeightFadeout.Schedule("SubtourModeChoice", "person", 0.65, 0.85),
+				new StrategyWeightFadeout.Schedule("ReRoute", "person", 0.78)
+		);
+
+		StrategyWeightFadeout fadeout = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(Config.class).toInstance(config);
+				bind(StrategyManager.class).toInstance(manager);
+				bind(Population.class).toInstance(population);
+				bind(new TypeLiteral<Map<StrategyConfigGroup.StrategySettings, PlanStrategy>>() {}).toInstance(strategies);
+				bind(new TypeLiteral<Set<StrategyWeightFadeout.Schedule>>() {}).toInstance(schedules);
+			}
+		}).getInstance(StrategyWeightFadeout.class);
+
+		fadeout.update(0);
+
+		// same as the convergence detector at iteration 20, with a fade-out of 10 iterations
+		fadeout.fadeOut(20, 10);
+		fadeout.disableInnovation(30);
+
+		for (int iteration = 21; iteration < 30; iteration++) {
+			fadeout.update(iteration);
+			Assert.assertEquals(0.05, weight(manager, "person", mutator), 0);
+		}
+
+		for (int iteration = 30; iteration < 40; iteration++) {
+			fadeout.update(iteration);
+
+			for (String subpopulation : List.of("person", "freight")) {
+				List<GenericPlanStrategy<Plan, Person>> loaded = manager.getStrategies(subpopulation);
+				for (int i = 0; i < loaded.size(); i++) {
+					boolean selector = loaded.get(i) == personSelector || loaded.get(i) == freightSelector;
+					Assert.assertEquals(loaded.get(i) + " in " + subpopulation + " at iteration " + iteration,
+							selector ? (subpopulation.equals("person") ? 0.8 : 0.9) : 0, manager.getWeights(subpopulation).get(i), 0);
+				}
+			}
+		}
+	}
+
+	private static PlanStrategy strategy(Map<StrategyConfigGroup.StrategySettings, PlanStrategy> strategies, StrategyManager manager,
+										 String name, String subpopulation, double weight, boolean innovative) {
+
+		PlanStrategyImpl.Builder builder = new PlanStrategyImpl.Builder(new RandomPlanSelector<>());
+		if (innovative)
+			builder.addStrategyModule(new NoopModule());
+
+		PlanStrategy strategy = builder.build();
+
+		StrategyConfigGroup.StrategySettings settings = new StrategyConfigGroup.StrategySettings();
+		settings.setStrategyName(name);
+		settings.setSubpopulation(subpopulation);
+		settings.setWeight(weight);
+
+		strategies.put(settings, strategy);
+		manager.addStrategy(strategy, subpopulation, weight);
+		return strategy;
+	}
+
+	private static double weight(StrategyManager manager, String subpopulation, PlanStrategy strategy) {
+		return manager.getWeights(subpopulation).get(manager.getStrategies(subpopulation).indexOf(strategy));
+	}
+
+	/**
+	 * Makes a strategy innovative, plans are not changed.
+	 */
+	private static final class NoopModule implements PlanStrategyModule {
+
+		@Override
+		public void prepareReplanning(ReplanningContext replanningContext) {
+		}
+
+		@Override
+		public void handlePlan(Plan plan) {
+		}
+
+		@Override
+		public void finishReplanning() {
+		}
+	}
+}
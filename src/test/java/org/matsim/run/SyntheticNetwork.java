@@ -0,0 +1,128 @@
+package org.matsim.run;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.matsim.run.TurnDependentFlowEfficiencyCalculator.ATTR_TURN_EFFICIENCY;
+
+/**
+ * Grid network of the size of the Duesseldorf network, used as fixture by the benchmarks.
+ * <p>
+ * Links carry the attributes of the network created from OSM and SUMO, with an OSM type distribution
+ * dominated by residential roads.
+ */
+public final class SyntheticNetwork {
+
+	/**
+	 * Grid size, resulting in roughly 100k links.
+	 */
+	public static final int GRID = 160;
+
+	private static final String[] TYPES = {
+			"highway.motorway", "highway.motorway_link", "highway.trunk", "highway.primary", "highway.primary|railway.tram",
+			"highway.secondary", "highway.tertiary", "highway.unclassified", "highway.residential", "highway.living_street"
+	};
+
+	/**
+	 * Cumulative share of each type.
+	 */
+	private static final double[] SHARES = {0.02, 0.03, 0.05, 0.1, 0.12, 0.2, 0.32, 0.4, 0.95, 1};
+
+	/**
+	 * Allowed speed of each type in m/s.
+	 */
+	private static final double[] SPEEDS = {36.1, 22.2, 27.8, 13.9, 13.9, 13.9, 13.9, 13.9, 8.3, 2.8};
+
+	private static final Set<String> MODES = Set.of(TransportMode.car, TransportMode.ride, "freight");
+
+	private SyntheticNetwork() {
+	}
+
+	/**
+	 * Create a new network with attributes.
+	 *
+	 * @param turnShare share of links with turn efficiencies
+	 */
+	public static Network create(double turnShare, long seed) {
+		Network network = NetworkUtils.createNetwork();
+		createGrid(network);
+		addAttributes(network, turnShare, new Random(seed));
+		return network;
+	}
+
+	/**
+	 * Create a grid with links in both directions between neighbouring nodes.
+	 */
+	public static void createGrid(Network network) {
+
+		NetworkFactory f = network.getFactory();
+
+		Node[][] nodes = new Node[GRID][GRID];
+		for (int x = 0; x < GRID; x++) {
+			for (int y = 0; y < GRID; y++) {
+				nodes[x][y] = f.createNode(Id.createNodeId(x + "_" + y), new Coord(x * 200, y * 200));
+				network.addNode(nodes[x][y]);
+			}
+		}
+
+		for (int x = 0; x < GRID; x++) {
+			for (int y = 0; y < GRID; y++) {
+				if (x + 1 < GRID) {
+					network.addLink(f.createLink(Id.createLinkId(x + "_" + y + "_e"), nodes[x][y], nodes[x + 1][y]));
+					network.addLink(f.createLink(Id.createLinkId(x + "_" + y + "_w"), nodes[x + 1][y], nodes[x][y]));
+				}
+				if (y + 1 < GRID) {
+					network.addLink(f.createLink(Id.createLinkId(x + "_" + y + "_n"), nodes[x][y], nodes[x][y + 1]));
+					network.addLink(f.createLink(Id.createLinkId(x + "_" + y + "_s"), nodes[x][y + 1], nodes[x][y]));
+				}
+			}
+		}
+	}
+
+	private static void addAttributes(Network network, double turnShare, Random rnd) {
+
+		for (Link link : network.getLinks().values()) {
+
+			double r = rnd.nextDouble();
+			int type = 0;
+			while (SHARES[type] < r)
+				type++;
+
+			int lanes = type < 3 ? 2 + rnd.nextInt(2) : type < 7 ? 1 + rnd.nextInt(2) : 1;
+
+			link.setLength(200);
+			link.setFreespeed(SPEEDS[type]);
+			link.setNumberOfLanes(lanes);
+			link.setCapacity(lanes * (type < 3 ? 2000 : type < 7 ? 1200 : 600));
+			link.setAllowedModes(MODES);
+
+			link.getAttributes().putAttribute("type", TYPES[type]);
+			link.getAttributes().putAttribute("allowed_speed", SPEEDS[type]);
+
+			if (rnd.nextDouble() < turnShare) {
+				Map<String, String> turns = new HashMap<>();
+				for (Link out : link.getToNode().getOutLinks().values())
+					turns.put(out.getId().toString(), String.valueOf(0.5 + rnd.nextDouble() / 2));
+
+				link.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, turns);
+				link.getAttributes().putAttribute("junction", true);
+			}
+		}
+
+		for (Node node : network.getNodes().values()) {
+			if (rnd.nextDouble() < 0.1)
+				node.getAttributes().putAttribute("type", "traffic_light");
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package org.matsim.run;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.lanes.Lane;
+import org.matsim.lanes.Lanes;
+import org.matsim.lanes.LanesFactory;
+import org.matsim.lanes.LanesToLinkAssignment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.matsim.run.TurnDependentFlowEfficiencyCalculator.ATTR_TURN_EFFICIENCY;
+
+public class TurnDependentFlowEfficiencyCalculatorTest {
+
+	private Scenario scenario;
+	private Link a, b, c;
+
+	@Before
+	public void setUp() {
+
+		scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = scenario.getNetwork();
+		NetworkFactory f = network.getFactory();
+
+		Node n1 = f.createNode(Id.createNodeId("1"), new Coord(0, 0));
+		Node n2 = f.createNode(Id.createNodeId("2"), new Coord(100, 0));
+		Node n3 = f.createNode(Id.createNodeId("3"), new Coord(200, 0));
+
+		network.addNode(n1);
+		network.addNode(n2);
+		network.addNode(n3);
+
+		a = f.createLink(Id.createLinkId("a"), n1, n2);
+		b = f.createLink(Id.createLinkId("b"), n2, n3);
+		c = f.createLink(Id.createLinkId("c"), n2, n1);
+
+		network.addLink(a);
+		network.addLink(b);
+		network.addLink(c);
+	}
+
+	@Test
+	public void linkEfficiencies() {
+
+		a.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, Map.of("b", "0.5", "c", "0.25"));
+
+		TurnDependentFlowEfficiencyCalculator fe = new TurnDependentFlowEfficiencyCalculator(scenario);
+
+		Assert.assertEquals(0.5, fe.getFlowEfficiency(a, null, b.getId()), 1e-6);
+		Assert.assertEquals(0.25, fe.getFlowEfficiency(a, null, c.getId()), 1e-6);
+		Assert.assertEquals(1, fe.getFlowEfficiency(a, null, a.getId()), 1e-6);
+		Assert.assertEquals(1, fe.getFlowEfficiency(b, null, c.getId()), 1e-6);
+	}
+
+	@Test
+	public void laneEfficiencies() {
+
+		Lanes lanes = scenario.getLanes();
+		LanesFactory lf = lanes.getFactory();
+
+		LanesToLinkAssignment l2l = lf.createLanesToLinkAssignment(a.getId());
+
+		Lane lane = lf.createLane(Id.create("a_0", Lane.class));
+		lane.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, Map.of("b", "0.8"));
+
+		l2l.addLane(lane);
+		lanes.addLanesToLinkAssignment(l2l);
+
+		a.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, Map.of("b", "0.5"));
+
+		TurnDependentFlowEfficiencyCalculator fe = new TurnDependentFlowEfficiencyCalculator(scenario);
+
+		// lane information takes precedence
+		Assert.assertEquals(0.8, fe.getFlowEfficiency(a, lane.getId(), b.getId()), 1e-6);
+		Assert.assertEquals(1, fe.getFlowEfficiency(a, lane.getId(), c.getId()), 1e-6);
+		Assert.assertEquals(1, fe.getFlowEfficiency(a, Id.create("a_1", Lane.class), b.getId()), 1e-6);
+	}
+
+	@Test
+	public void multipleLinks() {
+
+		a.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, Map.of("b", "0.5", "c", "0.25"));
+		b.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, Map.of("c", "0.75"));
+		c.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, Map.of("a", "0.9"));
+
+		TurnDependentFlowEfficiencyCalculator fe = new TurnDependentFlowEfficiencyCalculator(scenario);
+
+		Assert.assertEquals(0.5, fe.getFlowEfficiency(a, null, b.getId()), 1e-6);
+		Assert.assertEquals(0.25, fe.getFlowEfficiency(a, null, c.getId()), 1e-6);
+		Assert.assertEquals(0.75, fe.getFlowEfficiency(b, null, c.getId()), 1e-6);
+		Assert.assertEquals(0.9, fe.getFlowEfficiency(c, null, a.getId()), 1e-6);
+		Assert.assertEquals(1, fe.getFlowEfficiency(c, null, b.getId()), 1e-6);
+	}
+
+	@Test
+	public void timeDependent() {
+
+		a.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, Map.of("b", "0.5,0.6,0.7", "c", "0.25"));
+
+		TurnDependentFlowEfficiencyCalculator fe = new TurnDependentFlowEfficiencyCalculator(scenario);
+
+		int bin = TurnDependentFlowEfficiencyCalculator.TIME_BIN_SIZE;
+
+		Assert.assertEquals(0.5, fe.getFlowEfficiency(a, null, b.getId(), 0), 1e-6);
+		Assert.assertEquals(0.5, fe.getFlowEfficiency(a, null, b.getId(), bin - 1), 1e-6);
+		Assert.assertEquals(0.6, fe.getFlowEfficiency(a, null, b.getId(), bin), 1e-6);
+		Assert.assertEquals(0.7, fe.getFlowEfficiency(a, null, b.getId(), 2 * bin), 1e-6);
+
+		// last value is kept
+		Assert.assertEquals(0.7, fe.getFlowEfficiency(a, null, b.getId(), 30 * 3600), 1e-6);
+
+		// static efficiencies are the same for all bins
+		Assert.assertEquals(0.25, fe.getFlowEfficiency(a, null, c.getId(), bin), 1e-6);
+		Assert.assertEquals(0.25, fe.getFlowEfficiency(a, null, c.getId(), 10 * bin), 1e-6);
+	}
+
+	@Test
+	public void partitionsFollowFromNode() {
+
+		Network network = NetworkUtils.createNetwork();
+		SyntheticNetwork.createGrid(network);
+
+		int n = 3;
+		int[] assignment = TurnDependentFlowEfficiencyCalculator.assignPartitions(network, n);
+
+		int[] nodes = new int[n];
+		for (Node node : network.getNodes().values()) {
+
+			int p = -1;
+			for (Link link : node.getOutLinks().values()) {
+				int lp = assignment[link.getId().index()];
+				Assert.assertTrue(lp >= 0 && lp < n);
+
+				if (p == -1)
+					p = lp;
+
+				Assert.assertEquals("Out links of " + node.getId() + " in different partitions", p, lp);
+			}
+
+			nodes[p]++;
+		}
+
+		// round-robin, so sizes differ by at most one node
+		int min = Arrays.stream(nodes).min().orElseThrow();
+		int max = Arrays.stream(nodes).max().orElseThrow();
+		Assert.assertTrue(max - min <= 1);
+	}
+
+	@Test
+	public void partitionsEqualSingleTable() {
+
+		Scenario grid = createGrid(5);
+
+		TurnDependentFlowEfficiencyCalculator reference = new TurnDependentFlowEfficiencyCalculator(grid);
+
+		for (int n : new int[]{2, 3, 8}) {
+			TurnDependentFlowEfficiencyCalculator fe = new TurnDependentFlowEfficiencyCalculator(grid, n, null);
+
+			for (Link link : grid.getNetwork().getLinks().values()) {
+				for (Id<Lane> lane : lanes(grid, link)) {
+					for (Link out : link.getToNode().getOutLinks().values()) {
+						for (int t = 0; t < 4; t++) {
+							double time = t * TurnDependentFlowEfficiencyCalculator.TIME_BIN_SIZE;
+							Assert.assertEquals(reference.getFlowEfficiency(link, lane, out.getId(), time),
+									fe.getFlowEfficiency(link, lane, out.getId(), time), 0);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test(timeout = 60_000)
+	public void concurrentPartitions() throws InterruptedException {
+
+		Scenario grid = createGrid(7);
+
+		int n = 4;
+		TurnDependentFlowEfficiencyCalculator reference = new TurnDependentFlowEfficiencyCalculator(grid);
+		TurnDependentFlowEfficiencyCalculator fe = new TurnDependentFlowEfficiencyCalculator(grid, n, null);
+
+		int[] assignment = TurnDependentFlowEfficiencyCalculator.assignPartitions(grid.getNetwork(), n);
+		AtomicInteger errors = new AtomicInteger();
+		AtomicInteger queries = new AtomicInteger();
+
+		// like the QSim, each thread only evaluates the links of its own partition
+		Thread[] threads = new Thread[n];
+		for (int i = 0; i < n; i++) {
+			int p = i;
+			threads[i] = new Thread(() -> {
+				for (int k = 0; k < 5; k++) {
+					for (Link link : grid.getNetwork().getLinks().values()) {
+						if (assignment[link.getId().index()] != p)
+							continue;
+
+						for (Id<Lane> lane : lanes(grid, link)) {
+							for (Link out : link.getToNode().getOutLinks().values()) {
+								queries.incrementAndGet();
+								if (reference.getFlowEfficiency(link, lane, out.getId(), k * 1000) != fe.getFlowEfficiency(link, lane, out.getId(), k * 1000))
+									errors.incrementAndGet();
+							}
+						}
+					}
+				}
+			});
+			threads[i].start();
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+
+		Assert.assertTrue(queries.get() > 0);
+		Assert.assertEquals(0, errors.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void noPartitions() {
+		new TurnDependentFlowEfficiencyCalculator(scenario, 0, null);
+	}
+
+	/**
+	 * Grid with random, partly time dependent, turn efficiencies on links and lanes.
+	 */
+	private static Scenario createGrid(long seed) {
+
+		Scenario grid = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		SyntheticNetwork.createGrid(grid.getNetwork());
+
+		Random rnd = new Random(seed);
+		LanesFactory lf = grid.getLanes().getFactory();
+
+		for (Link link : grid.getNetwork().getLinks().values()) {
+
+			double r = rnd.nextDouble();
+			if (r < 0.3)
+				link.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, turns(link, rnd));
+			else if (r < 0.4) {
+				LanesToLinkAssignment l2l = lf.createLanesToLinkAssignment(link.getId());
+				for (int i = 0; i < 2; i++) {
+					Lane lane = lf.createLane(Id.create(link.getId() + "_" + i, Lane.class));
+					if (i == 0 || rnd.nextBoolean())
+						lane.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, turns(link, rnd));
+
+					l2l.addLane(lane);
+				}
+				grid.getLanes().addLanesToLinkAssignment(l2l);
+			}
+		}
+
+		return grid;
+	}
+
+	private static Map<String, String> turns(Link link, Random rnd) {
+		Map<String, String> turns = new HashMap<>();
+		for (Link out : link.getToNode().getOutLinks().values()) {
+			if (rnd.nextBoolean())
+				turns.put(out.getId().toString(), String.valueOf(rnd.nextFloat()));
+			else
+				turns.put(out.getId().toString(), rnd.nextFloat() + "," + rnd.nextFloat());
+		}
+		return turns;
+	}
+
+	private static List<Id<Lane>> lanes(Scenario scenario, Link link) {
+		List<Id<Lane>> lanes = new ArrayList<>();
+		lanes.add(null);
+
+		LanesToLinkAssignment l2l = scenario.getLanes().getLanesToLinkAssignments().get(link.getId());
+		if (l2l != null)
+			lanes.addAll(l2l.getLanes().keySet());
+
+		return lanes;
+	}
+}
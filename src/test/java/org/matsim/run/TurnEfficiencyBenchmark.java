@@ -0,0 +1,124 @@
+package org.matsim.run;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.matsim.run.TurnDependentFlowEfficiencyCalculator.ATTR_TURN_EFFICIENCY;
+
+/**
+ * Compares the array based turn efficiency lookup with the previous hash map based implementation.
+ * <p>
+ * One invocation resembles the links left by vehicles in a short period of a 25pct run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class TurnEfficiencyBenchmark {
+
+	/**
+	 * Number of link leave queries per invocation.
+	 */
+	private static final int QUERIES = 1 << 20;
+
+	private TurnDependentFlowEfficiencyCalculator calculator;
+
+	private Map<Link, Boolean> hasLinkEfficiency;
+	private Long2DoubleMap linkEfficiencies;
+
+	private Link[] fromLinks;
+	private Id<Link>[] toLinks;
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(TurnEfficiencyBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() {
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = scenario.getNetwork();
+		SyntheticNetwork.createGrid(network);
+
+		Random rnd = new Random(1);
+
+		hasLinkEfficiency = new IdentityHashMap<>();
+		linkEfficiencies = new Long2DoubleOpenHashMap();
+
+		for (Link link : network.getLinks().values()) {
+
+			// roughly the share of links at intersections with sumo capacities
+			if (rnd.nextDouble() > 0.3)
+				continue;
+
+			Map<String, String> turns = new HashMap<>();
+			for (Link out : link.getToNode().getOutLinks().values()) {
+				double f = 0.5 + rnd.nextDouble() / 2;
+				turns.put(out.getId().toString(), String.valueOf(f));
+				linkEfficiencies.put(key(link.getId(), out.getId()), f);
+			}
+
+			link.getAttributes().putAttribute(ATTR_TURN_EFFICIENCY, turns);
+			hasLinkEfficiency.put(link, false);
+		}
+
+		calculator = new TurnDependentFlowEfficiencyCalculator(scenario);
+
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+
+		fromLinks = new Link[QUERIES];
+		toLinks = new Id[QUERIES];
+
+		for (int i = 0; i < QUERIES; i++) {
+			Link link = links.get(rnd.nextInt(links.size()));
+			List<Link> out = new ArrayList<>(link.getToNode().getOutLinks().values());
+
+			fromLinks[i] = link;
+			toLinks[i] = out.get(rnd.nextInt(out.size())).getId();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public double denseTable() {
+		double sum = 0;
+		for (int i = 0; i < QUERIES; i++) {
+			sum += calculator.getFlowEfficiency(fromLinks[i], null, toLinks[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public double hashMap() {
+		double sum = 0;
+		for (int i = 0; i < QUERIES; i++) {
+			Boolean laneEfficiency = hasLinkEfficiency.get(fromLinks[i]);
+			if (laneEfficiency == null)
+				sum += 1.0;
+			else
+				sum += linkEfficiencies.getOrDefault(key(fromLinks[i].getId(), toLinks[i]), 1);
+		}
+		return sum;
+	}
+
+	private static long key(Id<?> a, Id<?> b) {
+		return ((long) a.index() << 32) | ((long) b.index() & 0xFFFF_FFFFL);
+	}
+}
@@ -1,7 +1,5 @@
 package routerTesting;
 
-import java.util.Map;
-
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Link;
@@ -29,8 +27,8 @@ public class RouterAnalysisRun {
 		Network network = scenario.getNetwork();
 
 		RouterAnalysisWithTraffic routerAnalysisWithTraffic = new RouterAnalysisWithTraffic(EVENTS_FILE, network);
-		Map<Double, Map<String, Double>> linkTravelTimeMap = routerAnalysisWithTraffic.processEventsFile();
-		RouterTestingTravelTime travelTime = new RouterTestingTravelTime(linkTravelTimeMap, network);
+		float[][] linkTravelTimes = routerAnalysisWithTraffic.processEventsFile();
+		RouterTestingTravelTime travelTime = new RouterTestingTravelTime(linkTravelTimes);
 
 		FastAStarLandmarksFactory fastAStarLandmarksFactory = new FastAStarLandmarksFactory(8);
 		RandomizingTimeDistanceTravelDisutilityFactory disutilityFactory = new RandomizingTimeDistanceTravelDisutilityFactory(
@@ -1,193 +1,85 @@
 package routerTesting;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import org.matsim.api.core.v01.events.LinkEnterEvent;
-import org.matsim.api.core.v01.events.LinkLeaveEvent;
-import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
-import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
-import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
-import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
-import org.matsim.api.core.v01.events.handler.VehicleEntersTrafficEventHandler;
-import org.matsim.api.core.v01.events.handler.VehicleLeavesTrafficEventHandler;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.matsim.analysis.ColumnarEvents;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
-import org.matsim.core.events.MatsimEventsReader;
-import org.matsim.core.events.ParallelEventsManager;
+
+import javax.annotation.Nullable;
 
 public class RouterAnalysisWithTraffic {
-	private final static int EVENT_QUEUE_SIZE = 1048576 * 32;
 	public final static double TIME_BIN_SIZE = 900;
 	public final static double TOTAL_TIME_BIN = 96;
 	private final String eventsFile;
 	private final Network network;
+	@Nullable
+	private final Path eventsCache;
 
 	public RouterAnalysisWithTraffic(String eventsFile, Network network) {
+		this(eventsFile, network, null);
+	}
+
+	/**
+	 * Use a cache file for the decoded events, so that repeated analyses of the same run start instantly.
+	 */
+	public RouterAnalysisWithTraffic(String eventsFile, Network network, @Nullable Path eventsCache) {
 		this.eventsFile = eventsFile;
 		this.network = network;
+		this.eventsCache = eventsCache;
 	}
 
-	public Map<Double, Map<String, Double>> processEventsFile() {
-		ParallelEventsManager eventManager = new ParallelEventsManager(false, EVENT_QUEUE_SIZE);
-		CarTrafficExtractor carTrafficExtractor = new CarTrafficExtractor();
-		eventManager.addHandler(carTrafficExtractor);
-		eventManager.initProcessing();
-		new MatsimEventsReader(eventManager).readFile(eventsFile);
+	/**
+	 * Mean travel time per time bin and link index, {@link Float#NaN} if there is no observation.
+	 */
+	public float[][] processEventsFile() {
+		ColumnarEvents events = ColumnarEvents.read(Path.of(eventsFile), eventsCache);
 		System.out.println("Event processing complete");
-		Map<Double, Map<String, List<Double>>> rawData = carTrafficExtractor.getRawData();
-		return getTravelTimeMap(rawData);
-	}
 
-	public synchronized Map<Double, Map<String, Double>> getTravelTimeMap(
-			Map<Double, Map<String, List<Double>>> rawData) {
-		Map<Double, Map<String, Double>> linkTravelTimeMap = new HashMap<>();
-
-		for (Double timeBin : rawData.keySet()) {
-			linkTravelTimeMap.put(timeBin, new HashMap<>());
-			for (Link link : network.getLinks().values()) {
-				String linkId = link.getId().toString();
-				if (rawData.get(timeBin).containsKey(linkId)) {
-					List<Double> travelTimes = rawData.get(timeBin).get(linkId);
-					double sum = 0;
-					for (Double travelTime : travelTimes) {
-						sum += travelTime;
-					}
-					double meanTravelTime = sum / travelTimes.size();
-					linkTravelTimeMap.get(timeBin).put(linkId, meanTravelTime);
-				}
-			}
-		}
-
-		// Calculate
-//		for (Double timeBin : rawData.keySet()) {
-//			linkTravelTimeMap.put(timeBin, new HashMap<>());
-//			for (String linkId : rawData.get(timeBin).keySet()) {
-//				double sum = 0;
-//				List<Double> travelTimes = rawData.get(timeBin).get(linkId);
-//				for (Double travelTime : travelTimes) {
-//					sum += travelTime;
-//				}
-//				double meanTravelTime = sum / travelTimes.size();
-//				linkTravelTimeMap.get(timeBin).put(linkId, meanTravelTime);
-//			}
-//		}
-		return linkTravelTimeMap;
-	}
+		BitSet links = new BitSet();
+		for (Link link : network.getLinks().values())
+			links.set(link.getId().index());
 
-	private class CarTrafficExtractor implements VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler,
-			LinkEnterEventHandler, LinkLeaveEventHandler {
-		private final Map<Double, Map<String, List<Double>>> rawData = new HashMap<>();
-		private final List<LinkTravelDataEntry> incompleteEntries = new ArrayList<>();
+		float[][] mean = new float[(int) TOTAL_TIME_BIN + 1][links.length()];
+		int[][] count = new int[mean.length][links.length()];
+		for (float[] row : mean)
+			Arrays.fill(row, Float.NaN);
 
-		public CarTrafficExtractor() {
-			// Empty now
-		}
+		// link and enter time of each vehicle currently in traffic
+		Int2IntMap vehicleLink = new Int2IntOpenHashMap();
+		Int2DoubleMap vehicleEnterTime = new Int2DoubleOpenHashMap();
+		vehicleLink.defaultReturnValue(-1);
 
-		@Override
-		public void reset(int iter) {
-			for (double i = 0; i < TOTAL_TIME_BIN + 1; i++) {
-				rawData.put(i, new HashMap<>());
-			}
-		}
+		for (int i = 0; i < events.size(); i++) {
+			byte type = events.type(i);
+			int vehicle = events.vehicle(i);
 
-		@Override
-		public void handleEvent(VehicleEntersTrafficEvent event) {
-			LinkTravelDataEntry linkTravelDataEntry = new LinkTravelDataEntry(event.getLinkId().toString(),
-					event.getVehicleId().toString(), event.getTime());
-			incompleteEntries.add(linkTravelDataEntry);
-		}
+			if (type == ColumnarEvents.LINK_ENTER || type == ColumnarEvents.VEHICLE_ENTERS_TRAFFIC) {
+				vehicleLink.put(vehicle, events.link(i));
+				vehicleEnterTime.put(vehicle, events.time(i));
 
-		@Override
-		public void handleEvent(LinkEnterEvent event) {
-			LinkTravelDataEntry linkTravelDataEntry = new LinkTravelDataEntry(event.getLinkId().toString(),
-					event.getVehicleId().toString(), event.getTime());
-			incompleteEntries.add(linkTravelDataEntry);
-		}
+			} else if (type == ColumnarEvents.LINK_LEAVE || type == ColumnarEvents.VEHICLE_LEAVES_TRAFFIC) {
+				int link = events.link(i);
+				if (vehicleLink.remove(vehicle) != link || !links.get(link))
+					continue;
 
-		@Override
-		public void handleEvent(LinkLeaveEvent event) {
-			String vehicleId = event.getVehicleId().toString();
-			String linkId = event.getLinkId().toString();
-			int indexToRemove = 0;
-			for (int i = 0; i < incompleteEntries.size(); i++) {
-				LinkTravelDataEntry linkTravelDataEntry = incompleteEntries.get(i);
-				if (vehicleId.equals(linkTravelDataEntry.getVehicleId())
-						&& linkId.equals(linkTravelDataEntry.getLinkId())) {
-					linkTravelDataEntry.setExitTime(event.getTime());
-					double timeBin = Math.min(TOTAL_TIME_BIN,
-							Math.floor(linkTravelDataEntry.getEnterTime() / TIME_BIN_SIZE));
-					List<Double> travelTimes = rawData.get(timeBin).getOrDefault(linkId, new ArrayList<>());
-					travelTimes.add(linkTravelDataEntry.getTravelTime());
-					rawData.get(timeBin).put(linkId, travelTimes);
-					indexToRemove = i;
-					break;
-				}
-			}
-			incompleteEntries.remove(indexToRemove);
-		}
+				double enterTime = vehicleEnterTime.get(vehicle);
+				int timeBin = (int) Math.min(TOTAL_TIME_BIN, Math.floor(enterTime / TIME_BIN_SIZE));
 
-		@Override
-		public void handleEvent(VehicleLeavesTrafficEvent event) {
-			String vehicleId = event.getVehicleId().toString();
-			String linkId = event.getLinkId().toString();
-			int indexToRemove = 0;
-			for (int i = 0; i < incompleteEntries.size(); i++) {
-				LinkTravelDataEntry linkTravelDataEntry = incompleteEntries.get(i);
-				if (vehicleId.equals(linkTravelDataEntry.getVehicleId())
-						&& linkId.equals(linkTravelDataEntry.getLinkId())) {
-					linkTravelDataEntry.setExitTime(event.getTime());
-					double timeBin = Math.min(TOTAL_TIME_BIN,
-							Math.floor(linkTravelDataEntry.getEnterTime() / TIME_BIN_SIZE));
-					List<Double> travelTimes = rawData.get(timeBin).getOrDefault(linkId, new ArrayList<>());
-					travelTimes.add(linkTravelDataEntry.getTravelTime());
-					rawData.get(timeBin).put(linkId, travelTimes);
-					indexToRemove = i;
-					break;
-				}
+				// running mean, which stays accurate in float precision
+				int n = ++count[timeBin][link];
+				float m = n == 1 ? 0 : mean[timeBin][link];
+				mean[timeBin][link] = m + (float) ((events.time(i) - enterTime - m) / n);
 			}
-			incompleteEntries.remove(indexToRemove);
-		}
-
-		public Map<Double, Map<String, List<Double>>> getRawData() {
-			return rawData;
-		}
-	}
-
-	private class LinkTravelDataEntry {
-		private String linkId;
-		private String vehicleId;
-		private double enterTime;
-		private double exitTime;
-
-		public LinkTravelDataEntry(String linkId, String vehicleId, double enterTime) {
-			this.enterTime = enterTime;
-			this.linkId = linkId;
-			this.vehicleId = vehicleId;
-		}
-
-		public void setExitTime(double exitTime) {
-			this.exitTime = exitTime;
-		}
-
-		public String getLinkId() {
-			return linkId;
-		}
-
-		public String getVehicleId() {
-			return vehicleId;
-		}
-
-		public double getEnterTime() {
-			return enterTime;
-		}
-
-		public double getTravelTime() {
-			return exitTime - enterTime;
 		}
 
+		return mean;
 	}
 
 }
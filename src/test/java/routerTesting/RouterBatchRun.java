@@ -0,0 +1,330 @@
+package routerTesting;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.AStarLandmarksFactory;
+import org.matsim.core.router.DijkstraFactory;
+import org.matsim.core.router.FastAStarLandmarksFactory;
+import org.matsim.core.router.costcalculators.RandomizingTimeDistanceTravelDisutilityFactory;
+import org.matsim.core.router.speedy.SpeedyALTFactory;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
+import org.matsim.core.utils.io.IOUtils;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Routes a batch of origin-destination queries with different routing algorithms on multiple threads.
+ * Reports latency percentiles per algorithm and compares the routes with the exact result of Dijkstra.
+ */
+@CommandLine.Command(
+		name = "router-batch",
+		description = "Compare routing algorithms on a batch of od pairs.",
+		showDefaultValues = true
+)
+public class RouterBatchRun implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(RouterBatchRun.class);
+
+	@CommandLine.Option(names = "--network", description = "Input network", required = true)
+	private Path network;
+
+	@CommandLine.Option(names = "--config", description = "Config with scoring parameters for the travel disutility")
+	private Path config;
+
+	@CommandLine.Option(names = "--events", description = "Events of a run to use as congested travel times, otherwise free speed")
+	private Path events;
+
+	@CommandLine.Option(names = "--events-cache", description = "Cache file for decoded events")
+	private Path eventsCache;
+
+	@CommandLine.Option(names = "--od", description = "CSV with columns from, to (link ids) and departure (seconds)")
+	private Path od;
+
+	@CommandLine.Option(names = "--sample", description = "Number of random od pairs, if no csv is given", defaultValue = "5000")
+	private int sample;
+
+	@CommandLine.Option(names = "--threads", description = "Number of routing threads", defaultValue = "4")
+	private int threads;
+
+	@CommandLine.Option(names = "--warmup", description = "Number of queries that are routed before measuring", defaultValue = "500")
+	private int warmup;
+
+	@CommandLine.Option(names = "--output", description = "Output csv with results per query and algorithm", defaultValue = "router-batch.csv")
+	private Path output;
+
+	public static void main(String[] args) {
+		new RouterBatchRun().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		Network net = NetworkUtils.readNetwork(network.toString());
+		Config cfg = config != null ? ConfigUtils.loadConfig(config.toString()) : ConfigUtils.createConfig();
+
+		TravelTime travelTime = events != null ?
+				new RouterTestingTravelTime(new RouterAnalysisWithTraffic(events.toString(), net, eventsCache).processEventsFile()) :
+				new FreeSpeedTravelTime();
+
+		List<Query> queries = od != null ? readQueries(net, od) : sampleQueries(net, sample, new Random(0));
+
+		log.info("Routing {} queries on {} threads", queries.size(), threads);
+
+		// Dijkstra first, it is the reference for all others
+		Map<String, Supplier<LeastCostPathCalculatorFactory>> algorithms = new LinkedHashMap<>();
+		algorithms.put("Dijkstra", DijkstraFactory::new);
+		algorithms.put("AStarLandmarks", () -> new AStarLandmarksFactory(threads));
+		algorithms.put("FastAStarLandmarks", () -> new FastAStarLandmarksFactory(threads));
+		algorithms.put("SpeedyALT", SpeedyALTFactory::new);
+
+		Map<String, Result[]> results = new LinkedHashMap<>();
+
+		for (Map.Entry<String, Supplier<LeastCostPathCalculatorFactory>> e : algorithms.entrySet()) {
+
+			// one calculator per thread, each with its own disutility because these are not thread-safe
+			LeastCostPathCalculatorFactory factory = e.getValue().get();
+			List<LeastCostPathCalculator> routers = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				RandomizingTimeDistanceTravelDisutilityFactory disutility = new RandomizingTimeDistanceTravelDisutilityFactory(TransportMode.car, cfg);
+				disutility.setSigma(0);
+				routers.add(factory.createPathCalculator(net, disutility.createTravelDisutility(travelTime), travelTime));
+			}
+
+			route(routers, queries.subList(0, Math.min(warmup, queries.size())));
+
+			long start = System.nanoTime();
+			Result[] result = route(routers, queries);
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			results.put(e.getKey(), result);
+			log.info("{}: {} queries/sec, {}", e.getKey(), String.format("%.0f", queries.size() / seconds), latency(result));
+		}
+
+		Result[] reference = results.get("Dijkstra");
+		for (Map.Entry<String, Result[]> e : results.entrySet()) {
+			if (e.getValue() != reference)
+				log.info("{}: {}", e.getKey(), compare(reference, e.getValue()));
+		}
+
+		write(queries, results, reference);
+
+		return 0;
+	}
+
+	/**
+	 * Route all queries with one router per thread.
+	 */
+	private Result[] route(List<LeastCostPathCalculator> routers, List<Query> queries) throws InterruptedException, ExecutionException {
+
+		Result[] result = new Result[queries.size()];
+		AtomicInteger next = new AtomicInteger();
+
+		ExecutorService pool = Executors.newFixedThreadPool(routers.size());
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (LeastCostPathCalculator router : routers) {
+				futures.add(pool.submit(() -> {
+					int i;
+					while ((i = next.getAndIncrement()) < result.length) {
+						Query q = queries.get(i);
+
+						long start = System.nanoTime();
+						LeastCostPathCalculator.Path path = router.calcLeastCostPath(q.from.getToNode(), q.to.getFromNode(), q.departure, null, null);
+						long nanos = System.nanoTime() - start;
+
+						if (path == null)
+							result[i] = new Result(nanos, Double.NaN, Double.NaN, new int[0]);
+						else
+							result[i] = new Result(nanos, path.travelTime, path.travelCost,
+									path.links.stream().mapToInt(l -> l.getId().index()).toArray());
+					}
+				}));
+			}
+
+			for (Future<?> f : futures)
+				f.get();
+
+		} finally {
+			pool.shutdown();
+		}
+
+		return result;
+	}
+
+	private static String latency(Result[] result) {
+
+		if (result.length == 0)
+			return "latency n/a, no queries";
+
+		long[] nanos = Arrays.stream(result).mapToLong(r -> r.nanos).sorted().toArray();
+
+		return String.format("latency ms p50=%.3f p90=%.3f p99=%.3f max=%.3f mean=%.3f",
+				percentile(nanos, 0.5) / 1e6, percentile(nanos, 0.9) / 1e6, percentile(nanos, 0.99) / 1e6,
+				nanos[nanos.length - 1] / 1e6, Arrays.stream(nanos).average().orElse(0) / 1e6);
+	}
+
+	private static long percentile(long[] sorted, double p) {
+		return sorted[Math.max(0, (int) Math.ceil(p * sorted.length) - 1)];
+	}
+
+	/**
+	 * Summarize route differences to the reference. Queries that could not be routed by either algorithm
+	 * are counted separately and excluded from the cost differences.
+	 */
+	static Comparison compare(Result[] reference, Result[] result) {
+
+		Comparison c = new Comparison();
+
+		for (int i = 0; i < result.length; i++) {
+			Result ref = reference[i];
+			Result r = result[i];
+
+			if (!Double.isFinite(ref.cost) || !Double.isFinite(r.cost)) {
+				c.unroutable++;
+				continue;
+			}
+
+			double diff = r.cost - ref.cost;
+
+			if (Arrays.equals(ref.links, r.links))
+				c.same++;
+			else if (Math.abs(diff) <= 1e-6 * Math.max(1, Math.abs(ref.cost)))
+				c.equalCost++;
+			else {
+				double relative = ref.cost > 0 ? diff / ref.cost : 0;
+				if (diff < 0) {
+					c.lower++;
+					c.maxLower = Math.max(c.maxLower, -relative);
+				} else {
+					c.higher++;
+					c.maxHigher = Math.max(c.maxHigher, relative);
+				}
+			}
+		}
+
+		return c;
+	}
+
+	private void write(List<Query> queries, Map<String, Result[]> results, Result[] reference) throws IOException {
+
+		try (CSVPrinter printer = new CSVPrinter(IOUtils.getBufferedWriter(output.toString()), CSVFormat.DEFAULT)) {
+
+			printer.printRecord("from", "to", "departure", "algorithm", "latency_ms", "travel_time", "travel_cost", "links", "same_route");
+
+			for (Map.Entry<String, Result[]> e : results.entrySet()) {
+				for (int i = 0; i < queries.size(); i++) {
+					Query q = queries.get(i);
+					Result r = e.getValue()[i];
+					printer.printRecord(q.from.getId(), q.to.getId(), q.departure, e.getKey(), r.nanos / 1e6,
+							r.travelTime, r.cost, r.links.length, Arrays.equals(r.links, reference[i].links));
+				}
+			}
+		}
+	}
+
+	private static List<Query> readQueries(Network network, Path od) throws IOException {
+
+		List<Query> queries = new ArrayList<>();
+
+		try (Reader reader = IOUtils.getBufferedReader(od.toString());
+			 CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(reader)) {
+
+			for (CSVRecord record : parser) {
+				Link from = network.getLinks().get(Id.createLinkId(record.get("from")));
+				Link to = network.getLinks().get(Id.createLinkId(record.get("to")));
+
+				if (from == null || to == null) {
+					log.warn("Skipping unknown link in {}", record);
+					continue;
+				}
+
+				queries.add(new Query(from, to, Double.parseDouble(record.get("departure"))));
+			}
+		}
+
+		return queries;
+	}
+
+	private static List<Query> sampleQueries(Network network, int n, Random rnd) {
+
+		Link[] links = network.getLinks().values().stream()
+				.filter(l -> l.getAllowedModes().contains(TransportMode.car))
+				.toArray(Link[]::new);
+
+		List<Query> queries = new ArrayList<>();
+		for (int i = 0; i < n; i++)
+			queries.add(new Query(links[rnd.nextInt(links.length)], links[rnd.nextInt(links.length)], rnd.nextInt(24 * 3600)));
+
+		return queries;
+	}
+
+	private static final class Query {
+
+		private final Link from;
+		private final Link to;
+		private final double departure;
+
+		private Query(Link from, Link to, double departure) {
+			this.from = from;
+			this.to = to;
+			this.departure = departure;
+		}
+	}
+
+	static final class Result {
+
+		private final long nanos;
+		private final double travelTime;
+		private final double cost;
+		private final int[] links;
+
+		Result(long nanos, double travelTime, double cost, int[] links) {
+			this.nanos = nanos;
+			this.travelTime = travelTime;
+			this.cost = cost;
+			this.links = links;
+		}
+	}
+
+	/**
+	 * Number of queries by how the route differs from the reference, with the largest relative cost differences.
+	 */
+	static final class Comparison {
+
+		int same;
+		int equalCost;
+		int lower;
+		int higher;
+		int unroutable;
+		double maxLower;
+		double maxHigher;
+
+		@Override
+		public String toString() {
+			return String.format("same route=%d, different route with equal cost=%d, lower cost=%d (max -%.2f%%), higher cost=%d (max +%.2f%%), unroutable=%d",
+					same, equalCost, lower, maxLower * 100, higher, maxHigher * 100, unroutable);
+		}
+	}
+}
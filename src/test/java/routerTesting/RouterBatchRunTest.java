@@ -0,0 +1,42 @@
+package routerTesting;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RouterBatchRunTest {
+
+	@Test
+	public void compare() {
+
+		RouterBatchRun.Result[] reference = {
+				new RouterBatchRun.Result(0, 100, 10, new int[]{1, 2, 3}),
+				new RouterBatchRun.Result(0, 100, 10, new int[]{1, 2, 3}),
+				new RouterBatchRun.Result(0, 100, 10, new int[]{1, 2, 3}),
+				new RouterBatchRun.Result(0, 100, 10, new int[]{1, 2, 3}),
+				new RouterBatchRun.Result(0, 100, 10, new int[]{1, 2, 3}),
+				new RouterBatchRun.Result(0, Double.NaN, Double.POSITIVE_INFINITY, new int[0])
+		};
+
+		RouterBatchRun.Result[] result = {
+				new RouterBatchRun.Result(0, 100, 10, new int[]{1, 2, 3}),
+				new RouterBatchRun.Result(0, 100, 10, new int[]{1, 4, 3}),
+				// cheaper and more expensive than the reference
+				new RouterBatchRun.Result(0, 90, 9, new int[]{1, 5, 3}),
+				new RouterBatchRun.Result(0, 120, 12.5, new int[]{1, 6, 3}),
+				// no route found
+				new RouterBatchRun.Result(0, Double.NaN, Double.NaN, new int[0]),
+				new RouterBatchRun.Result(0, Double.NaN, Double.POSITIVE_INFINITY, new int[0])
+		};
+
+		RouterBatchRun.Comparison c = RouterBatchRun.compare(reference, result);
+
+		Assert.assertEquals(1, c.same);
+		Assert.assertEquals(1, c.equalCost);
+		Assert.assertEquals(1, c.lower);
+		Assert.assertEquals(1, c.higher);
+		Assert.assertEquals(2, c.unroutable);
+
+		Assert.assertEquals(0.1, c.maxLower, 1e-9);
+		Assert.assertEquals(0.25, c.maxHigher, 1e-9);
+	}
+}
@@ -1,33 +1,32 @@
 package routerTesting;
 
-import java.util.Map;
-
 import org.matsim.api.core.v01.network.Link;
-import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.vehicles.Vehicle;
 
 public class RouterTestingTravelTime implements TravelTime {
-	private final Map<Double, Map<String, Double>> linkTravelTimeMap;
-	private final Network network;
+	private final float[][] linkTravelTimes;
 
-	public RouterTestingTravelTime(Map<Double, Map<String, Double>> linkTravelTimeMap, Network network) {
-		this.linkTravelTimeMap = linkTravelTimeMap;
-		this.network = network;
+	/**
+	 * @param linkTravelTimes travel time per time bin and link index, as created by {@link RouterAnalysisWithTraffic}
+	 */
+	public RouterTestingTravelTime(float[][] linkTravelTimes) {
+		this.linkTravelTimes = linkTravelTimes;
 	}
 
 	@Override
 	public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
-		double timeBin = Math.min(Math.floor(time / RouterAnalysisWithTraffic.TIME_BIN_SIZE),
+		int timeBin = (int) Math.min(Math.floor(time / RouterAnalysisWithTraffic.TIME_BIN_SIZE),
 				RouterAnalysisWithTraffic.TOTAL_TIME_BIN);
-		if (linkTravelTimeMap.get(timeBin).containsKey(link.getId().toString())) {
-			return linkTravelTimeMap.get(timeBin).get(link.getId().toString());
+
+		float[] travelTimes = linkTravelTimes[timeBin];
+		int idx = link.getId().index();
+		if (idx < travelTimes.length && !Float.isNaN(travelTimes[idx])) {
+			return travelTimes[idx];
 		}
 
-		double freeSpeed = network.getLinks().get(link.getId()).getFreespeed();
-		double length = network.getLinks().get(link.getId()).getLength();
-		return Math.floor(length / freeSpeed) + 1;
+		return Math.floor(link.getLength() / link.getFreespeed()) + 1;
 	}
 
 }
@@ -0,0 +1,71 @@
+package routerTesting;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.run.SyntheticNetwork;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Travel time lookups of the router tests, with observed travel times for a part of the links.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class TravelTimeBenchmark {
+
+	/**
+	 * Number of lookups per invocation.
+	 */
+	private static final int QUERIES = 1 << 20;
+
+	private RouterTestingTravelTime travelTime;
+
+	private Link[] links;
+	private double[] times;
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(TravelTimeBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup
+	public void setup() {
+
+		Link[] network = SyntheticNetwork.create(0, 1).getLinks().values().toArray(new Link[0]);
+		int size = Arrays.stream(network).mapToInt(l -> l.getId().index()).max().orElse(0) + 1;
+
+		Random rnd = new Random(1);
+
+		float[][] matrix = new float[(int) RouterAnalysisWithTraffic.TOTAL_TIME_BIN + 1][size];
+		for (float[] row : matrix) {
+			for (int i = 0; i < size; i++)
+				row[i] = rnd.nextDouble() < 0.4 ? 10 + rnd.nextFloat() * 60 : Float.NaN;
+		}
+
+		travelTime = new RouterTestingTravelTime(matrix);
+
+		links = new Link[QUERIES];
+		times = new double[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			links[i] = network[rnd.nextInt(network.length)];
+			times[i] = rnd.nextInt(30 * 3600);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public double getLinkTravelTime() {
+		double sum = 0;
+		for (int i = 0; i < QUERIES; i++)
+			sum += travelTime.getLinkTravelTime(links[i], times[i], null, null);
+		return sum;
+	}
+}